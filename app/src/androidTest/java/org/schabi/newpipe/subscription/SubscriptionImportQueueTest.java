@@ -0,0 +1,195 @@
+package org.schabi.newpipe.subscription;
+
+import android.arch.persistence.room.Room;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.schabi.newpipe.database.AppDatabase;
+import org.schabi.newpipe.database.subscription.SubscriptionEntity;
+import org.schabi.newpipe.database.subscription.SubscriptionImportEntity;
+import org.schabi.newpipe.extractor.channel.ChannelInfo;
+import org.schabi.newpipe.extractor.subscription.SubscriptionItem;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.schabi.newpipe.database.subscription.SubscriptionImportEntity.STATUS_DONE;
+import static org.schabi.newpipe.database.subscription.SubscriptionImportEntity.STATUS_FAILED;
+import static org.schabi.newpipe.database.subscription.SubscriptionImportEntity.STATUS_PENDING;
+
+/**
+ * Instrumented tests for {@link SubscriptionImportQueue} on an in-memory database
+ */
+@RunWith(AndroidJUnit4.class)
+@MediumTest
+public class SubscriptionImportQueueTest {
+    private static final int MAX_INTERRUPTIONS = 3;
+
+    private AppDatabase database;
+    private SubscriptionImportQueue queue;
+
+    @Before
+    public void setUp() {
+        database = Room.inMemoryDatabaseBuilder(InstrumentationRegistry.getTargetContext(),
+                AppDatabase.class).allowMainThreadQueries().build();
+        queue = new SubscriptionImportQueue(database);
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    private static SubscriptionItem item(final String name) {
+        return new SubscriptionItem(0, "https://www.youtube.com/channel/" + name, name);
+    }
+
+    private static ChannelInfo channel(final String name) {
+        final ChannelInfo info = new ChannelInfo(0, "https://www.youtube.com/channel/" + name,
+                name, name + " channel");
+        info.setAvatarUrl("https://example.com/" + name + ".jpg");
+        info.setSubscriberCount(42);
+        return info;
+    }
+
+    private List<Long> pendingIds() {
+        final List<SubscriptionEntity> pending = queue.getPendingAfter(-1, Integer.MAX_VALUE);
+        final Long[] ids = new Long[pending.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = pending.get(i).getUid();
+        return Arrays.asList(ids);
+    }
+
+    private SubscriptionImportEntity importOf(final long subscriptionId) {
+        for (final SubscriptionImportEntity entity :
+                database.subscriptionImportDAO().getAll().blockingFirst()) {
+            if (entity.getSubscriptionUid() == subscriptionId) return entity;
+        }
+        throw new AssertionError("Subscription " + subscriptionId + " is not queued");
+    }
+
+    private SubscriptionEntity subscriptionOf(final long subscriptionId) {
+        for (final SubscriptionEntity entity : database.subscriptionDAO().getAll().blockingFirst()) {
+            if (entity.getUid() == subscriptionId) return entity;
+        }
+        throw new AssertionError("Subscription " + subscriptionId + " doesn't exist");
+    }
+
+    @Test
+    public void enqueueSkipsExistingSubscriptions() {
+        database.subscriptionDAO().insert(SubscriptionEntity.from(item("a")));
+
+        queue.enqueue(Arrays.asList(item("a"), item("b"), item("c")));
+        queue.enqueue(Collections.singletonList(item("b")));
+
+        assertEquals(3, database.subscriptionDAO().getAll().blockingFirst().size());
+        assertEquals(2, queue.countPending());
+
+        final List<SubscriptionEntity> pending = queue.getPendingAfter(-1, 10);
+        assertEquals("b", pending.get(0).getName());
+        assertEquals("c", pending.get(1).getName());
+        assertTrue(SubscriptionImportQueue.isIncomplete(pending.get(0)));
+    }
+
+    @Test
+    public void pendingArePagedInImportOrder() {
+        queue.enqueue(Arrays.asList(item("a"), item("b"), item("c")));
+
+        final List<SubscriptionEntity> first = queue.getPendingAfter(-1, 2);
+        assertEquals(2, first.size());
+        assertEquals("a", first.get(0).getName());
+
+        final List<SubscriptionEntity> second = queue.getPendingAfter(first.get(1).getUid(), 2);
+        assertEquals(1, second.size());
+        assertEquals("c", second.get(0).getName());
+    }
+
+    @Test
+    public void saveProgressUpdatesStatuses() {
+        queue.enqueue(Arrays.asList(item("a"), item("b"), item("c")));
+        final List<Long> ids = pendingIds();
+
+        final Map<Long, ChannelInfo> loaded = new HashMap<>();
+        loaded.put(ids.get(0), channel("a"));
+        queue.saveProgress(loaded, Collections.singletonList(ids.get(1)),
+                Collections.singletonList(ids.get(2)), MAX_INTERRUPTIONS);
+
+        assertEquals(STATUS_DONE, importOf(ids.get(0)).getStatus());
+        assertEquals(STATUS_FAILED, importOf(ids.get(1)).getStatus());
+        assertEquals(STATUS_PENDING, importOf(ids.get(2)).getStatus());
+        assertEquals(Collections.singletonList(ids.get(2)), pendingIds());
+
+        final SubscriptionEntity completed = subscriptionOf(ids.get(0));
+        assertEquals("a channel", completed.getName());
+        assertFalse(SubscriptionImportQueue.isIncomplete(completed));
+    }
+
+    @Test
+    public void addFailureGivesUpAfterMaxFailures() {
+        queue.enqueue(Arrays.asList(item("a"), item("b")));
+        final List<Long> ids = pendingIds();
+        final List<Long> interrupted = Collections.singletonList(ids.get(0));
+
+        for (int i = 1; i < MAX_INTERRUPTIONS; i++) {
+            database.subscriptionImportDAO().addFailure(interrupted, MAX_INTERRUPTIONS);
+            assertEquals(i, importOf(ids.get(0)).getFailureCount());
+            assertEquals(STATUS_PENDING, importOf(ids.get(0)).getStatus());
+        }
+
+        database.subscriptionImportDAO().addFailure(interrupted, MAX_INTERRUPTIONS);
+        assertEquals(MAX_INTERRUPTIONS, importOf(ids.get(0)).getFailureCount());
+        assertEquals(STATUS_FAILED, importOf(ids.get(0)).getStatus());
+
+        // Other subscriptions are left alone
+        assertEquals(0, importOf(ids.get(1)).getFailureCount());
+        assertEquals(Collections.singletonList(ids.get(1)), pendingIds());
+    }
+
+    @Test
+    public void clearIfDoneKeepsPendingQueue() {
+        queue.enqueue(Arrays.asList(item("a"), item("b")));
+        final List<Long> ids = pendingIds();
+
+        queue.saveProgress(Collections.<Long, ChannelInfo>emptyMap(),
+                Collections.singletonList(ids.get(0)), Collections.<Long>emptyList(),
+                MAX_INTERRUPTIONS);
+        queue.clearIfDone();
+        assertEquals(2, database.subscriptionImportDAO().getAll().blockingFirst().size());
+
+        queue.saveProgress(Collections.<Long, ChannelInfo>emptyMap(),
+                Collections.singletonList(ids.get(1)), Collections.<Long>emptyList(),
+                MAX_INTERRUPTIONS);
+        queue.clearIfDone();
+        assertTrue(database.subscriptionImportDAO().getAll().blockingFirst().isEmpty());
+    }
+
+    @Test
+    public void completeFromFeedFinishesFailedAndPending() {
+        queue.enqueue(Arrays.asList(item("a"), item("b")));
+        final List<Long> ids = pendingIds();
+        queue.saveProgress(Collections.<Long, ChannelInfo>emptyMap(),
+                Collections.singletonList(ids.get(0)), Collections.<Long>emptyList(),
+                MAX_INTERRUPTIONS);
+
+        final Map<Long, ChannelInfo> loaded = new HashMap<>();
+        loaded.put(ids.get(0), channel("a"));
+        loaded.put(ids.get(1), channel("b"));
+        queue.completeFromFeed(loaded);
+
+        assertEquals(STATUS_DONE, importOf(ids.get(0)).getStatus());
+        assertEquals(STATUS_DONE, importOf(ids.get(1)).getStatus());
+        assertEquals(0, queue.countPending());
+        assertEquals("a channel", subscriptionOf(ids.get(0)).getName());
+        assertFalse(SubscriptionImportQueue.isIncomplete(subscriptionOf(ids.get(1))));
+    }
+}
@@ -21,11 +21,14 @@ import org.acra.config.ConfigurationBuilder;
 import org.acra.sender.ReportSenderFactory;
 import org.schabi.newpipe.extractor.Downloader;
 import org.schabi.newpipe.extractor.NewPipe;
+import org.schabi.newpipe.player.helper.BandwidthEstimator;
+import org.schabi.newpipe.player.metrics.MetricsStore;
 import org.schabi.newpipe.report.AcraReportSenderFactory;
 import org.schabi.newpipe.report.ErrorActivity;
 import org.schabi.newpipe.report.UserAction;
 import org.schabi.newpipe.settings.SettingsActivity;
 import org.schabi.newpipe.util.ExtractorHelper;
+import org.schabi.newpipe.util.InfoCache;
 import org.schabi.newpipe.util.StateSaver;
 
 import java.io.IOException;
@@ -90,6 +93,9 @@ public class App extends Application {
 
         NewPipe.init(getDownloader());
         StateSaver.init(this);
+        InfoCache.init(this);
+        BandwidthEstimator.init(this);
+        MetricsStore.init(this);
         initNotificationChannel();
 
         // Initialize image loader
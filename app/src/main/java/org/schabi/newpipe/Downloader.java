@@ -65,6 +65,14 @@ public class Downloader implements org.schabi.newpipe.extractor.Downloader {
         return instance;
     }
 
+    /**
+     * @return the client used for all requests, use {@link OkHttpClient#newBuilder()}
+     * to derive clients with different settings
+     */
+    public OkHttpClient getClient() {
+        return client;
+    }
+
     public String getCookies() {
         return mCookies;
     }
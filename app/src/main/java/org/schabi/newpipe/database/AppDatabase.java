@@ -4,6 +4,10 @@ import android.arch.persistence.room.Database;
 import android.arch.persistence.room.RoomDatabase;
 import android.arch.persistence.room.TypeConverters;
 
+import org.schabi.newpipe.database.feed.dao.FeedRefreshDAO;
+import org.schabi.newpipe.database.feed.dao.FeedStreamDAO;
+import org.schabi.newpipe.database.feed.model.FeedRefreshEntity;
+import org.schabi.newpipe.database.feed.model.FeedStreamEntity;
 import org.schabi.newpipe.database.history.dao.SearchHistoryDAO;
 import org.schabi.newpipe.database.history.dao.StreamHistoryDAO;
 import org.schabi.newpipe.database.history.model.SearchHistoryEntry;
@@ -20,17 +24,20 @@ import org.schabi.newpipe.database.stream.model.StreamEntity;
 import org.schabi.newpipe.database.stream.model.StreamStateEntity;
 import org.schabi.newpipe.database.subscription.SubscriptionDAO;
 import org.schabi.newpipe.database.subscription.SubscriptionEntity;
+import org.schabi.newpipe.database.subscription.SubscriptionImportDAO;
+import org.schabi.newpipe.database.subscription.SubscriptionImportEntity;
 
-import static org.schabi.newpipe.database.Migrations.DB_VER_12_0;
+import static org.schabi.newpipe.database.Migrations.DB_VER_13_0;
 
 @TypeConverters({Converters.class})
 @Database(
         entities = {
                 SubscriptionEntity.class, SearchHistoryEntry.class,
                 StreamEntity.class, StreamHistoryEntity.class, StreamStateEntity.class,
-                PlaylistEntity.class, PlaylistStreamEntity.class, PlaylistRemoteEntity.class
+                PlaylistEntity.class, PlaylistStreamEntity.class, PlaylistRemoteEntity.class,
+                FeedStreamEntity.class, FeedRefreshEntity.class, SubscriptionImportEntity.class
         },
-        version = DB_VER_12_0,
+        version = DB_VER_13_0,
         exportSchema = false
 )
 public abstract class AppDatabase extends RoomDatabase {
@@ -52,4 +59,10 @@ public abstract class AppDatabase extends RoomDatabase {
     public abstract PlaylistStreamDAO playlistStreamDAO();
 
     public abstract PlaylistRemoteDAO playlistRemoteDAO();
+
+    public abstract FeedStreamDAO feedStreamDAO();
+
+    public abstract FeedRefreshDAO feedRefreshDAO();
+
+    public abstract SubscriptionImportDAO subscriptionImportDAO();
 }
@@ -8,6 +8,7 @@ public class Migrations {
 
     public static final int DB_VER_11_0 = 1;
     public static final int DB_VER_12_0 = 2;
+    public static final int DB_VER_13_0 = 3;
 
     public static final Migration MIGRATION_11_12 = new Migration(DB_VER_11_0, DB_VER_12_0) {
         @Override
@@ -58,4 +59,22 @@ public class Migrations {
             database.execSQL("DROP TABLE IF EXISTS watch_history");
         }
     };
+
+    public static final Migration MIGRATION_12_13 = new Migration(DB_VER_12_0, DB_VER_13_0) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            // Feed cache
+            database.execSQL("CREATE TABLE IF NOT EXISTS `feed_stream` (`stream_id` INTEGER NOT NULL, `subscription_id` INTEGER NOT NULL, `upload_date` TEXT, `upload_time` INTEGER, `view_count` INTEGER NOT NULL, `sort_time` INTEGER NOT NULL, PRIMARY KEY(`stream_id`), FOREIGN KEY(`stream_id`) REFERENCES `streams`(`uid`) ON UPDATE CASCADE ON DELETE CASCADE , FOREIGN KEY(`subscription_id`) REFERENCES `subscriptions`(`uid`) ON UPDATE CASCADE ON DELETE CASCADE )");
+            database.execSQL("CREATE  INDEX `index_feed_stream_subscription_id` ON `feed_stream` (`subscription_id`)");
+            database.execSQL("CREATE  INDEX `index_feed_stream_sort_time` ON `feed_stream` (`sort_time`)");
+
+            // Feed refresh schedule
+            database.execSQL("CREATE TABLE IF NOT EXISTS `feed_refresh` (`subscription_id` INTEGER NOT NULL, `last_check_time` INTEGER NOT NULL, `next_check_time` INTEGER NOT NULL, `upload_interval` INTEGER, `failure_count` INTEGER NOT NULL, PRIMARY KEY(`subscription_id`), FOREIGN KEY(`subscription_id`) REFERENCES `subscriptions`(`uid`) ON UPDATE CASCADE ON DELETE CASCADE )");
+            database.execSQL("CREATE  INDEX `index_feed_refresh_next_check_time` ON `feed_refresh` (`next_check_time`)");
+
+            // Subscription import queue
+            database.execSQL("CREATE TABLE IF NOT EXISTS `subscription_import` (`subscription_id` INTEGER NOT NULL, `status` INTEGER NOT NULL, `failure_count` INTEGER NOT NULL, PRIMARY KEY(`subscription_id`), FOREIGN KEY(`subscription_id`) REFERENCES `subscriptions`(`uid`) ON UPDATE CASCADE ON DELETE CASCADE )");
+            database.execSQL("CREATE  INDEX `index_subscription_import_status` ON `subscription_import` (`status`)");
+        }
+    };
 }
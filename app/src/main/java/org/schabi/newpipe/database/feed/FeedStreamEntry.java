@@ -0,0 +1,66 @@
+package org.schabi.newpipe.database.feed;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.text.format.DateUtils;
+
+import org.schabi.newpipe.database.feed.model.FeedStreamEntity;
+import org.schabi.newpipe.database.stream.model.StreamEntity;
+import org.schabi.newpipe.extractor.stream.StreamInfoItem;
+import org.schabi.newpipe.extractor.stream.StreamType;
+
+public class FeedStreamEntry {
+    @ColumnInfo(name = StreamEntity.STREAM_ID)
+    final public long uid;
+    @ColumnInfo(name = StreamEntity.STREAM_SERVICE_ID)
+    final public int serviceId;
+    @ColumnInfo(name = StreamEntity.STREAM_URL)
+    final public String url;
+    @ColumnInfo(name = StreamEntity.STREAM_TITLE)
+    final public String title;
+    @ColumnInfo(name = StreamEntity.STREAM_TYPE)
+    final public StreamType streamType;
+    @ColumnInfo(name = StreamEntity.STREAM_DURATION)
+    final public long duration;
+    @ColumnInfo(name = StreamEntity.STREAM_UPLOADER)
+    final public String uploader;
+    @ColumnInfo(name = StreamEntity.STREAM_THUMBNAIL_URL)
+    final public String thumbnailUrl;
+    @ColumnInfo(name = FeedStreamEntity.FEED_UPLOAD_DATE)
+    final public String uploadDate;
+    @ColumnInfo(name = FeedStreamEntity.FEED_UPLOAD_TIME)
+    final public Long uploadTime;
+    @ColumnInfo(name = FeedStreamEntity.FEED_VIEW_COUNT)
+    final public long viewCount;
+    @ColumnInfo(name = FeedStreamEntity.FEED_SORT_TIME)
+    final public long sortTime;
+
+    public FeedStreamEntry(long uid, int serviceId, String url, String title,
+                           StreamType streamType, long duration, String uploader,
+                           String thumbnailUrl, String uploadDate, Long uploadTime,
+                           long viewCount, long sortTime) {
+        this.uid = uid;
+        this.serviceId = serviceId;
+        this.url = url;
+        this.title = title;
+        this.streamType = streamType;
+        this.duration = duration;
+        this.uploader = uploader;
+        this.thumbnailUrl = thumbnailUrl;
+        this.uploadDate = uploadDate;
+        this.uploadTime = uploadTime;
+        this.viewCount = viewCount;
+        this.sortTime = sortTime;
+    }
+
+    public StreamInfoItem toStreamInfoItem() {
+        StreamInfoItem item = new StreamInfoItem(serviceId, url, title, streamType);
+        item.setDuration(duration);
+        item.setUploaderName(uploader);
+        item.setThumbnailUrl(thumbnailUrl);
+        // The extracted upload date may be relative to when it was extracted
+        item.setUploadDate(uploadTime != null
+                ? DateUtils.getRelativeTimeSpanString(uploadTime).toString() : uploadDate);
+        item.setViewCount(viewCount);
+        return item;
+    }
+}
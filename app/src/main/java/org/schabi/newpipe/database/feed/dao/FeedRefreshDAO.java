@@ -0,0 +1,63 @@
+package org.schabi.newpipe.database.feed.dao;
+
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.OnConflictStrategy;
+import android.arch.persistence.room.Query;
+
+import org.schabi.newpipe.database.BasicDAO;
+import org.schabi.newpipe.database.feed.model.FeedRefreshEntity;
+import org.schabi.newpipe.database.subscription.SubscriptionEntity;
+
+import java.util.List;
+
+import io.reactivex.Flowable;
+
+import static org.schabi.newpipe.database.feed.model.FeedRefreshEntity.*;
+import static org.schabi.newpipe.database.subscription.SubscriptionEntity.SUBSCRIPTION_TABLE;
+import static org.schabi.newpipe.database.subscription.SubscriptionEntity.SUBSCRIPTION_UID;
+
+@Dao
+public abstract class FeedRefreshDAO implements BasicDAO<FeedRefreshEntity> {
+    @Override
+    @Query("SELECT * FROM " + FEED_REFRESH_TABLE)
+    public abstract Flowable<List<FeedRefreshEntity>> getAll();
+
+    @Override
+    @Query("DELETE FROM " + FEED_REFRESH_TABLE)
+    public abstract int deleteAll();
+
+    @Override
+    public Flowable<List<FeedRefreshEntity>> listByService(int serviceId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Query("SELECT * FROM " + FEED_REFRESH_TABLE)
+    public abstract List<FeedRefreshEntity> getStates();
+
+    /**
+     * The subscriptions due for a check at the given time, most overdue first.
+     * Subscriptions never checked come first.
+     * */
+    @Query("SELECT " + SUBSCRIPTION_TABLE + ".* FROM " + SUBSCRIPTION_TABLE +
+            " LEFT JOIN " + FEED_REFRESH_TABLE +
+            " ON " + SUBSCRIPTION_TABLE + "." + SUBSCRIPTION_UID + " = " + JOIN_SUBSCRIPTION_ID +
+            " WHERE " + REFRESH_NEXT_CHECK_TIME + " IS NULL" +
+            " OR " + REFRESH_NEXT_CHECK_TIME + " <= :time" +
+            " ORDER BY COALESCE(" + REFRESH_NEXT_CHECK_TIME + ", 0) ASC")
+    public abstract List<SubscriptionEntity> getDueAt(final long time);
+
+    /**
+     * The subscriptions not checked since the given time, least recently checked first.
+     * */
+    @Query("SELECT " + SUBSCRIPTION_TABLE + ".* FROM " + SUBSCRIPTION_TABLE +
+            " LEFT JOIN " + FEED_REFRESH_TABLE +
+            " ON " + SUBSCRIPTION_TABLE + "." + SUBSCRIPTION_UID + " = " + JOIN_SUBSCRIPTION_ID +
+            " WHERE " + REFRESH_LAST_CHECK_TIME + " IS NULL" +
+            " OR " + REFRESH_LAST_CHECK_TIME + " < :time" +
+            " ORDER BY COALESCE(" + REFRESH_LAST_CHECK_TIME + ", 0) ASC")
+    public abstract List<SubscriptionEntity> getNotCheckedSince(final long time);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    public abstract void upsertAll(final List<FeedRefreshEntity> states);
+}
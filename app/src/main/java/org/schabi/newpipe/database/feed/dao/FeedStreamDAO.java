@@ -0,0 +1,53 @@
+package org.schabi.newpipe.database.feed.dao;
+
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.OnConflictStrategy;
+import android.arch.persistence.room.Query;
+import android.arch.persistence.room.Transaction;
+
+import org.schabi.newpipe.database.BasicDAO;
+import org.schabi.newpipe.database.feed.FeedStreamEntry;
+import org.schabi.newpipe.database.feed.model.FeedStreamEntity;
+
+import java.util.List;
+
+import io.reactivex.Flowable;
+
+import static org.schabi.newpipe.database.feed.model.FeedStreamEntity.*;
+import static org.schabi.newpipe.database.stream.model.StreamEntity.STREAM_ID;
+import static org.schabi.newpipe.database.stream.model.StreamEntity.STREAM_TABLE;
+
+@Dao
+public abstract class FeedStreamDAO implements BasicDAO<FeedStreamEntity> {
+    @Override
+    @Query("SELECT * FROM " + FEED_STREAM_TABLE)
+    public abstract Flowable<List<FeedStreamEntity>> getAll();
+
+    @Override
+    @Query("DELETE FROM " + FEED_STREAM_TABLE)
+    public abstract int deleteAll();
+
+    @Override
+    public Flowable<List<FeedStreamEntity>> listByService(int serviceId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Transaction
+    @Query("SELECT " + STREAM_TABLE + ".*, " + FEED_UPLOAD_DATE + ", " + FEED_UPLOAD_TIME + ", " +
+            FEED_VIEW_COUNT + ", " + FEED_SORT_TIME +
+            " FROM " + FEED_STREAM_TABLE + " INNER JOIN " + STREAM_TABLE +
+            " ON " + STREAM_TABLE + "." + STREAM_ID + " = " + JOIN_STREAM_ID +
+            " ORDER BY " + FEED_SORT_TIME + " DESC" +
+            " LIMIT :limit")
+    public abstract Flowable<List<FeedStreamEntry>> getLatest(final int limit);
+
+    /**
+     * Streams already in the feed keep their position in it.
+     * */
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    public abstract void silentInsertAll(final List<FeedStreamEntity> feedStreams);
+
+    @Query("DELETE FROM " + FEED_STREAM_TABLE + " WHERE " + FEED_SORT_TIME + " < :time")
+    public abstract int deleteOlderThan(final long time);
+}
@@ -0,0 +1,106 @@
+package org.schabi.newpipe.database.feed.model;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.ForeignKey;
+import android.arch.persistence.room.Index;
+
+import org.schabi.newpipe.database.subscription.SubscriptionEntity;
+
+import static android.arch.persistence.room.ForeignKey.CASCADE;
+import static org.schabi.newpipe.database.feed.model.FeedRefreshEntity.FEED_REFRESH_TABLE;
+import static org.schabi.newpipe.database.feed.model.FeedRefreshEntity.JOIN_SUBSCRIPTION_ID;
+import static org.schabi.newpipe.database.feed.model.FeedRefreshEntity.REFRESH_NEXT_CHECK_TIME;
+
+/**
+ * When the feed of a subscription was checked, and when it should be checked next.
+ * */
+@Entity(tableName = FEED_REFRESH_TABLE,
+        primaryKeys = {JOIN_SUBSCRIPTION_ID},
+        indices = {@Index(value = {REFRESH_NEXT_CHECK_TIME})},
+        foreignKeys = {
+                @ForeignKey(entity = SubscriptionEntity.class,
+                        parentColumns = SubscriptionEntity.SUBSCRIPTION_UID,
+                        childColumns = JOIN_SUBSCRIPTION_ID,
+                        onDelete = CASCADE, onUpdate = CASCADE)
+        })
+public class FeedRefreshEntity {
+
+    final public static String FEED_REFRESH_TABLE       = "feed_refresh";
+    final public static String JOIN_SUBSCRIPTION_ID     = "subscription_id";
+    final public static String REFRESH_LAST_CHECK_TIME  = "last_check_time";
+    final public static String REFRESH_NEXT_CHECK_TIME  = "next_check_time";
+    final public static String REFRESH_UPLOAD_INTERVAL  = "upload_interval";
+    final public static String REFRESH_FAILURE_COUNT    = "failure_count";
+
+    @ColumnInfo(name = JOIN_SUBSCRIPTION_ID)
+    private long subscriptionUid;
+
+    @ColumnInfo(name = REFRESH_LAST_CHECK_TIME)
+    private long lastCheckTime;
+
+    @ColumnInfo(name = REFRESH_NEXT_CHECK_TIME)
+    private long nextCheckTime;
+
+    /**
+     * The average time between uploads of the channel, or null if it is not known yet
+     * */
+    @ColumnInfo(name = REFRESH_UPLOAD_INTERVAL)
+    private Long uploadInterval;
+
+    /**
+     * How many checks in a row failed
+     * */
+    @ColumnInfo(name = REFRESH_FAILURE_COUNT)
+    private int failureCount;
+
+    public FeedRefreshEntity(final long subscriptionUid, final long lastCheckTime,
+                             final long nextCheckTime, final Long uploadInterval,
+                             final int failureCount) {
+        this.subscriptionUid = subscriptionUid;
+        this.lastCheckTime = lastCheckTime;
+        this.nextCheckTime = nextCheckTime;
+        this.uploadInterval = uploadInterval;
+        this.failureCount = failureCount;
+    }
+
+    public long getSubscriptionUid() {
+        return subscriptionUid;
+    }
+
+    public void setSubscriptionUid(long subscriptionUid) {
+        this.subscriptionUid = subscriptionUid;
+    }
+
+    public long getLastCheckTime() {
+        return lastCheckTime;
+    }
+
+    public void setLastCheckTime(long lastCheckTime) {
+        this.lastCheckTime = lastCheckTime;
+    }
+
+    public long getNextCheckTime() {
+        return nextCheckTime;
+    }
+
+    public void setNextCheckTime(long nextCheckTime) {
+        this.nextCheckTime = nextCheckTime;
+    }
+
+    public Long getUploadInterval() {
+        return uploadInterval;
+    }
+
+    public void setUploadInterval(Long uploadInterval) {
+        this.uploadInterval = uploadInterval;
+    }
+
+    public int getFailureCount() {
+        return failureCount;
+    }
+
+    public void setFailureCount(int failureCount) {
+        this.failureCount = failureCount;
+    }
+}
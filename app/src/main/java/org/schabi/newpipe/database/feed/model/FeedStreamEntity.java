@@ -0,0 +1,128 @@
+package org.schabi.newpipe.database.feed.model;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.ForeignKey;
+import android.arch.persistence.room.Index;
+
+import org.schabi.newpipe.database.stream.model.StreamEntity;
+import org.schabi.newpipe.database.subscription.SubscriptionEntity;
+
+import static android.arch.persistence.room.ForeignKey.CASCADE;
+import static org.schabi.newpipe.database.feed.model.FeedStreamEntity.FEED_SORT_TIME;
+import static org.schabi.newpipe.database.feed.model.FeedStreamEntity.FEED_STREAM_TABLE;
+import static org.schabi.newpipe.database.feed.model.FeedStreamEntity.JOIN_STREAM_ID;
+import static org.schabi.newpipe.database.feed.model.FeedStreamEntity.JOIN_SUBSCRIPTION_ID;
+
+@Entity(tableName = FEED_STREAM_TABLE,
+        primaryKeys = {JOIN_STREAM_ID},
+        indices = {
+                @Index(value = {JOIN_SUBSCRIPTION_ID}),
+                @Index(value = {FEED_SORT_TIME})
+        },
+        foreignKeys = {
+                @ForeignKey(entity = StreamEntity.class,
+                        parentColumns = StreamEntity.STREAM_ID,
+                        childColumns = JOIN_STREAM_ID,
+                        onDelete = CASCADE, onUpdate = CASCADE),
+                @ForeignKey(entity = SubscriptionEntity.class,
+                        parentColumns = SubscriptionEntity.SUBSCRIPTION_UID,
+                        childColumns = JOIN_SUBSCRIPTION_ID,
+                        onDelete = CASCADE, onUpdate = CASCADE)
+        })
+public class FeedStreamEntity {
+
+    final public static String FEED_STREAM_TABLE    = "feed_stream";
+    final public static String JOIN_STREAM_ID       = "stream_id";
+    final public static String JOIN_SUBSCRIPTION_ID = "subscription_id";
+    final public static String FEED_UPLOAD_DATE     = "upload_date";
+    final public static String FEED_UPLOAD_TIME     = "upload_time";
+    final public static String FEED_VIEW_COUNT      = "view_count";
+    final public static String FEED_SORT_TIME       = "sort_time";
+
+    @ColumnInfo(name = JOIN_STREAM_ID)
+    private long streamUid;
+
+    @ColumnInfo(name = JOIN_SUBSCRIPTION_ID)
+    private long subscriptionUid;
+
+    /**
+     * The upload date as extracted, which may be relative to the time it was extracted
+     * */
+    @ColumnInfo(name = FEED_UPLOAD_DATE)
+    private String uploadDate;
+
+    /**
+     * The upload time parsed from the upload date, or null if it could not be parsed
+     * */
+    @ColumnInfo(name = FEED_UPLOAD_TIME)
+    private Long uploadTime;
+
+    @ColumnInfo(name = FEED_VIEW_COUNT)
+    private long viewCount;
+
+    /**
+     * The upload time if known, otherwise an estimate from when the stream was first seen
+     * */
+    @ColumnInfo(name = FEED_SORT_TIME)
+    private long sortTime;
+
+    public FeedStreamEntity(final long streamUid, final long subscriptionUid,
+                            final String uploadDate, final Long uploadTime,
+                            final long viewCount, final long sortTime) {
+        this.streamUid = streamUid;
+        this.subscriptionUid = subscriptionUid;
+        this.uploadDate = uploadDate;
+        this.uploadTime = uploadTime;
+        this.viewCount = viewCount;
+        this.sortTime = sortTime;
+    }
+
+    public long getStreamUid() {
+        return streamUid;
+    }
+
+    public void setStreamUid(long streamUid) {
+        this.streamUid = streamUid;
+    }
+
+    public long getSubscriptionUid() {
+        return subscriptionUid;
+    }
+
+    public void setSubscriptionUid(long subscriptionUid) {
+        this.subscriptionUid = subscriptionUid;
+    }
+
+    public String getUploadDate() {
+        return uploadDate;
+    }
+
+    public void setUploadDate(String uploadDate) {
+        this.uploadDate = uploadDate;
+    }
+
+    public Long getUploadTime() {
+        return uploadTime;
+    }
+
+    public void setUploadTime(Long uploadTime) {
+        this.uploadTime = uploadTime;
+    }
+
+    public long getViewCount() {
+        return viewCount;
+    }
+
+    public void setViewCount(long viewCount) {
+        this.viewCount = viewCount;
+    }
+
+    public long getSortTime() {
+        return sortTime;
+    }
+
+    public void setSortTime(long sortTime) {
+        this.sortTime = sortTime;
+    }
+}
@@ -7,6 +7,7 @@ import android.arch.persistence.room.Query;
 import android.arch.persistence.room.Transaction;
 
 import org.schabi.newpipe.database.BasicDAO;
+import org.schabi.newpipe.database.feed.model.FeedStreamEntity;
 import org.schabi.newpipe.database.playlist.model.PlaylistStreamEntity;
 import org.schabi.newpipe.database.stream.model.StreamEntity;
 import org.schabi.newpipe.database.history.model.StreamHistoryEntity;
@@ -17,6 +18,7 @@ import java.util.List;
 
 import io.reactivex.Flowable;
 
+import static org.schabi.newpipe.database.feed.model.FeedStreamEntity.FEED_STREAM_TABLE;
 import static org.schabi.newpipe.database.playlist.model.PlaylistStreamEntity.PLAYLIST_STREAM_JOIN_TABLE;
 import static org.schabi.newpipe.database.stream.model.StreamEntity.STREAM_ID;
 import static org.schabi.newpipe.database.stream.model.StreamEntity.STREAM_SERVICE_ID;
@@ -95,6 +97,10 @@ public abstract class StreamDAO implements BasicDAO<StreamEntity> {
             " LEFT JOIN " + PLAYLIST_STREAM_JOIN_TABLE +
             " ON " + STREAM_ID + " = " +
             PlaylistStreamEntity.PLAYLIST_STREAM_JOIN_TABLE + "." + PlaylistStreamEntity.JOIN_STREAM_ID +
+
+            " LEFT JOIN " + FEED_STREAM_TABLE +
+            " ON " + STREAM_ID + " = " +
+            FeedStreamEntity.FEED_STREAM_TABLE + "." + FeedStreamEntity.JOIN_STREAM_ID +
             ")")
     public abstract int deleteOrphans();
 }
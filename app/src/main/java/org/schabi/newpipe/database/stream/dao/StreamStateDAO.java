@@ -45,4 +45,13 @@ public abstract class StreamStateDAO implements BasicDAO<StreamStateEntity> {
         silentInsertInternal(stream);
         return update(stream);
     }
+
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    abstract void silentInsertAllInternal(final List<StreamStateEntity> streamStates);
+
+    @Transaction
+    public int upsertAll(List<StreamStateEntity> streamStates) {
+        silentInsertAllInternal(streamStates);
+        return update(streamStates);
+    }
 }
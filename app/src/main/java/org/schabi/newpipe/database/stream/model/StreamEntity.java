@@ -5,6 +5,7 @@ import android.arch.persistence.room.Entity;
 import android.arch.persistence.room.Ignore;
 import android.arch.persistence.room.Index;
 import android.arch.persistence.room.PrimaryKey;
+import android.text.TextUtils;
 
 import org.schabi.newpipe.extractor.stream.StreamInfo;
 import org.schabi.newpipe.extractor.stream.StreamInfoItem;
@@ -150,4 +151,16 @@ public class StreamEntity implements Serializable {
     public void setThumbnailUrl(String thumbnailUrl) {
         this.thumbnailUrl = thumbnailUrl;
     }
+
+    @Ignore
+    public boolean hasEqualValues(StreamEntity otherStream) {
+        return getServiceId() == otherStream.getServiceId() &&
+                TextUtils.equals(getUrl(), otherStream.getUrl()) &&
+                TextUtils.equals(getTitle(), otherStream.getTitle()) &&
+                getStreamType() == otherStream.getStreamType() &&
+                (getDuration() == null ? otherStream.getDuration() == null :
+                        getDuration().equals(otherStream.getDuration())) &&
+                TextUtils.equals(getUploader(), otherStream.getUploader()) &&
+                TextUtils.equals(getThumbnailUrl(), otherStream.getThumbnailUrl());
+    }
 }
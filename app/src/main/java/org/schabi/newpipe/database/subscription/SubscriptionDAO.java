@@ -36,6 +36,16 @@ public abstract class SubscriptionDAO implements BasicDAO<SubscriptionEntity> {
             SUBSCRIPTION_SERVICE_ID + " = :serviceId")
     public abstract Flowable<List<SubscriptionEntity>> getSubscription(int serviceId, String url);
 
+    @Query("SELECT COUNT(*) FROM " + SUBSCRIPTION_TABLE)
+    public abstract int count();
+
+    /**
+     * The subscriptions following the one with the given id, in the order they were added.
+     * */
+    @Query("SELECT * FROM " + SUBSCRIPTION_TABLE + " WHERE " + SUBSCRIPTION_UID + " > :afterUid" +
+            " ORDER BY " + SUBSCRIPTION_UID + " ASC LIMIT :limit")
+    public abstract List<SubscriptionEntity> getPageAfter(final long afterUid, final int limit);
+
     @Query("SELECT " + SUBSCRIPTION_UID + " FROM " + SUBSCRIPTION_TABLE + " WHERE " +
             SUBSCRIPTION_URL + " LIKE :url AND " +
             SUBSCRIPTION_SERVICE_ID + " = :serviceId")
@@ -44,6 +54,28 @@ public abstract class SubscriptionDAO implements BasicDAO<SubscriptionEntity> {
     @Insert(onConflict = OnConflictStrategy.IGNORE)
     abstract Long insertInternal(final SubscriptionEntity entities);
 
+    /**
+     * @return the ids of the inserted subscriptions, -1 for those already stored
+     * */
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    public abstract List<Long> silentInsertAll(final List<SubscriptionEntity> entities);
+
+    /**
+     * Replace the data of the subscription with the given id by the given data. When its url
+     * changed to one already subscribed to, the subscription is a duplicate and is removed.
+     * */
+    @Transaction
+    public void replace(final long uid, final SubscriptionEntity entity) {
+        final Long existingUid = getSubscriptionIdInternal(entity.getServiceId(), entity.getUrl());
+        entity.setUid(uid);
+
+        if (existingUid != null && existingUid != uid) {
+            delete(entity);
+        } else {
+            update(entity);
+        }
+    }
+
     @Transaction
     public List<SubscriptionEntity> upsertAll(List<SubscriptionEntity> entities) {
         for (SubscriptionEntity entity : entities) {
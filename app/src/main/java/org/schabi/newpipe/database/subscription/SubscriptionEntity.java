@@ -9,6 +9,7 @@ import android.support.annotation.NonNull;
 
 import org.schabi.newpipe.extractor.channel.ChannelInfo;
 import org.schabi.newpipe.extractor.channel.ChannelInfoItem;
+import org.schabi.newpipe.extractor.subscription.SubscriptionItem;
 import org.schabi.newpipe.util.Constants;
 
 import static org.schabi.newpipe.database.subscription.SubscriptionEntity.SUBSCRIPTION_SERVICE_ID;
@@ -19,8 +20,8 @@ import static org.schabi.newpipe.database.subscription.SubscriptionEntity.SUBSCR
         indices = {@Index(value = {SUBSCRIPTION_SERVICE_ID, SUBSCRIPTION_URL}, unique = true)})
 public class SubscriptionEntity {
 
-    final static String SUBSCRIPTION_UID                = "uid";
-    final static String SUBSCRIPTION_TABLE              = "subscriptions";
+    final public static String SUBSCRIPTION_UID         = "uid";
+    final public static String SUBSCRIPTION_TABLE       = "subscriptions";
     final static String SUBSCRIPTION_SERVICE_ID         = "service_id";
     final static String SUBSCRIPTION_URL                = "url";
     final static String SUBSCRIPTION_NAME               = "name";
@@ -125,6 +126,19 @@ public class SubscriptionEntity {
         return item;
     }
 
+    /**
+     * A subscription with only what an import source knows about the channel,
+     * to be completed with the info of the channel later.
+     */
+    @Ignore
+    public static SubscriptionEntity from(@NonNull SubscriptionItem item) {
+        SubscriptionEntity result = new SubscriptionEntity();
+        result.setServiceId(item.getServiceId());
+        result.setUrl(item.getUrl());
+        result.setData(item.getName(), null, null, -1L);
+        return result;
+    }
+
     @Ignore
     public static SubscriptionEntity from(@NonNull ChannelInfo info) {
         SubscriptionEntity result = new SubscriptionEntity();
@@ -0,0 +1,66 @@
+package org.schabi.newpipe.database.subscription;
+
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.OnConflictStrategy;
+import android.arch.persistence.room.Query;
+
+import org.schabi.newpipe.database.BasicDAO;
+
+import java.util.List;
+
+import io.reactivex.Flowable;
+
+import static org.schabi.newpipe.database.subscription.SubscriptionEntity.SUBSCRIPTION_TABLE;
+import static org.schabi.newpipe.database.subscription.SubscriptionEntity.SUBSCRIPTION_UID;
+import static org.schabi.newpipe.database.subscription.SubscriptionImportEntity.*;
+
+@Dao
+public abstract class SubscriptionImportDAO implements BasicDAO<SubscriptionImportEntity> {
+    @Override
+    @Query("SELECT * FROM " + SUBSCRIPTION_IMPORT_TABLE)
+    public abstract Flowable<List<SubscriptionImportEntity>> getAll();
+
+    @Override
+    @Query("DELETE FROM " + SUBSCRIPTION_IMPORT_TABLE)
+    public abstract int deleteAll();
+
+    @Override
+    public Flowable<List<SubscriptionImportEntity>> listByService(int serviceId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    public abstract void silentInsertAll(final List<SubscriptionImportEntity> imports);
+
+    @Query("SELECT COUNT(*) FROM " + SUBSCRIPTION_IMPORT_TABLE +
+            " WHERE " + IMPORT_STATUS + " = " + STATUS_PENDING)
+    public abstract int countPending();
+
+    /**
+     * The pending subscriptions following the one with the given id, in the order they were
+     * imported.
+     * */
+    @Query("SELECT " + SUBSCRIPTION_TABLE + ".* FROM " + SUBSCRIPTION_TABLE +
+            " INNER JOIN " + SUBSCRIPTION_IMPORT_TABLE +
+            " ON " + SUBSCRIPTION_TABLE + "." + SUBSCRIPTION_UID + " = " + JOIN_SUBSCRIPTION_ID +
+            " WHERE " + IMPORT_STATUS + " = " + STATUS_PENDING +
+            " AND " + JOIN_SUBSCRIPTION_ID + " > :afterUid" +
+            " ORDER BY " + JOIN_SUBSCRIPTION_ID + " ASC LIMIT :limit")
+    public abstract List<SubscriptionEntity> getPendingAfter(final long afterUid, final int limit);
+
+    @Query("UPDATE " + SUBSCRIPTION_IMPORT_TABLE + " SET " + IMPORT_STATUS + " = :status" +
+            " WHERE " + JOIN_SUBSCRIPTION_ID + " IN (:subscriptionIds)")
+    public abstract void setStatus(final List<Long> subscriptionIds, final int status);
+
+    /**
+     * Count a network failure for each of the subscriptions, those which failed too often
+     * are not tried again.
+     * */
+    @Query("UPDATE " + SUBSCRIPTION_IMPORT_TABLE +
+            " SET " + IMPORT_FAILURE_COUNT + " = " + IMPORT_FAILURE_COUNT + " + 1," +
+            " " + IMPORT_STATUS + " = CASE WHEN " + IMPORT_FAILURE_COUNT + " + 1 >= :maxFailures" +
+            " THEN " + STATUS_FAILED + " ELSE " + STATUS_PENDING + " END" +
+            " WHERE " + JOIN_SUBSCRIPTION_ID + " IN (:subscriptionIds)")
+    public abstract void addFailure(final List<Long> subscriptionIds, final int maxFailures);
+}
@@ -0,0 +1,86 @@
+package org.schabi.newpipe.database.subscription;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.ForeignKey;
+import android.arch.persistence.room.Index;
+
+import static android.arch.persistence.room.ForeignKey.CASCADE;
+import static org.schabi.newpipe.database.subscription.SubscriptionImportEntity.IMPORT_STATUS;
+import static org.schabi.newpipe.database.subscription.SubscriptionImportEntity.JOIN_SUBSCRIPTION_ID;
+import static org.schabi.newpipe.database.subscription.SubscriptionImportEntity.SUBSCRIPTION_IMPORT_TABLE;
+
+/**
+ * A subscription added by an import, which still has to be completed with the info of
+ * its channel.
+ * */
+@Entity(tableName = SUBSCRIPTION_IMPORT_TABLE,
+        primaryKeys = {JOIN_SUBSCRIPTION_ID},
+        indices = {@Index(value = {IMPORT_STATUS})},
+        foreignKeys = {
+                @ForeignKey(entity = SubscriptionEntity.class,
+                        parentColumns = SubscriptionEntity.SUBSCRIPTION_UID,
+                        childColumns = JOIN_SUBSCRIPTION_ID,
+                        onDelete = CASCADE, onUpdate = CASCADE)
+        })
+public class SubscriptionImportEntity {
+
+    final public static String SUBSCRIPTION_IMPORT_TABLE    = "subscription_import";
+    final public static String JOIN_SUBSCRIPTION_ID         = "subscription_id";
+    final public static String IMPORT_STATUS                = "status";
+    final public static String IMPORT_FAILURE_COUNT         = "failure_count";
+
+    /**
+     * The info of the channel is still to be loaded
+     * */
+    public static final int STATUS_PENDING = 0;
+    public static final int STATUS_DONE = 1;
+    /**
+     * The info of the channel could not be loaded, the subscription only has the name
+     * it was imported with
+     * */
+    public static final int STATUS_FAILED = 2;
+
+    @ColumnInfo(name = JOIN_SUBSCRIPTION_ID)
+    private long subscriptionUid;
+
+    @ColumnInfo(name = IMPORT_STATUS)
+    private int status;
+
+    /**
+     * How many imports could not load the info of the channel because of network errors
+     * */
+    @ColumnInfo(name = IMPORT_FAILURE_COUNT)
+    private int failureCount;
+
+    public SubscriptionImportEntity(final long subscriptionUid, final int status,
+                                    final int failureCount) {
+        this.subscriptionUid = subscriptionUid;
+        this.status = status;
+        this.failureCount = failureCount;
+    }
+
+    public long getSubscriptionUid() {
+        return subscriptionUid;
+    }
+
+    public void setSubscriptionUid(long subscriptionUid) {
+        this.subscriptionUid = subscriptionUid;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public int getFailureCount() {
+        return failureCount;
+    }
+
+    public void setFailureCount(int failureCount) {
+        this.failureCount = failureCount;
+    }
+}
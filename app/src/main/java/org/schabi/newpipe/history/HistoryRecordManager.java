@@ -37,6 +37,7 @@ public class HistoryRecordManager {
     private final StreamHistoryDAO streamHistoryTable;
     private final SearchHistoryDAO searchHistoryTable;
     private final StreamStateDAO streamStateTable;
+    private final StreamStateBuffer streamStateBuffer;
     private final SharedPreferences sharedPreferences;
     private final String searchHistoryKey;
     private final String streamHistoryKey;
@@ -47,6 +48,7 @@ public class HistoryRecordManager {
         streamHistoryTable = database.streamHistoryDAO();
         searchHistoryTable = database.searchHistoryDAO();
         streamStateTable = database.streamStateDAO();
+        streamStateBuffer = StreamStateBuffer.getInstance(context);
         sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
         searchHistoryKey = context.getString(R.string.enable_search_history_key);
         streamHistoryKey = context.getString(R.string.enable_watch_history_key);
@@ -174,11 +176,17 @@ public class HistoryRecordManager {
                 .subscribeOn(Schedulers.io());
     }
 
-    public Maybe<Long> saveStreamState(@NonNull final StreamInfo info, final long progressTime) {
-        return Maybe.fromCallable(() -> database.runInTransaction(() -> {
-            final long streamId = streamTable.upsert(new StreamEntity(info));
-            return streamStateTable.upsert(new StreamStateEntity(streamId, progressTime));
-        })).subscribeOn(Schedulers.io());
+    /**
+     * Buffer the progress of a stream instead of writing it right away, for frequent
+     * checkpoints. Buffered progress is written in batches after a delay, or on
+     * {@link #flushStreamStates()}.
+     * */
+    public void bufferStreamState(@NonNull final StreamInfo info, final long progressTime) {
+        streamStateBuffer.put(info, progressTime);
+    }
+
+    public void flushStreamStates() {
+        streamStateBuffer.flush();
     }
 
     ///////////////////////////////////////////////////////
@@ -186,6 +194,8 @@ public class HistoryRecordManager {
     ///////////////////////////////////////////////////////
 
     public Single<Integer> removeOrphanedRecords() {
-        return Single.fromCallable(streamTable::deleteOrphans).subscribeOn(Schedulers.io());
+        return Single.fromCallable(streamTable::deleteOrphans)
+                .doOnSuccess(ignored -> streamStateBuffer.invalidate())
+                .subscribeOn(Schedulers.io());
     }
 }
@@ -0,0 +1,192 @@
+package org.schabi.newpipe.history;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import org.schabi.newpipe.MainActivity;
+import org.schabi.newpipe.NewPipeDatabase;
+import org.schabi.newpipe.database.AppDatabase;
+import org.schabi.newpipe.database.stream.dao.StreamDAO;
+import org.schabi.newpipe.database.stream.dao.StreamStateDAO;
+import org.schabi.newpipe.database.stream.model.StreamEntity;
+import org.schabi.newpipe.database.stream.model.StreamStateEntity;
+import org.schabi.newpipe.extractor.stream.StreamInfo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Write-behind buffer for the playback progress of streams. Only the latest progress of each
+ * stream is kept, and all buffered progress is written in one transaction, either after
+ * {@link #FLUSH_DELAY_MILLIS} or when {@link #flush()} is called on a lifecycle event.
+ * <br><br>
+ * The ids and metadata of the streams written before are remembered, so the stream row is only
+ * upserted when its metadata changed and otherwise only the state row is touched.
+ * */
+public final class StreamStateBuffer {
+    private static final boolean DEBUG = MainActivity.DEBUG;
+    private static final String TAG = "StreamStateBuffer";
+
+    private static final long FLUSH_DELAY_MILLIS = 10000;
+    private static final int MAX_KNOWN_STREAMS = 64;
+
+    @Nullable private static volatile StreamStateBuffer instance;
+
+    @NonNull private final AppDatabase database;
+    @NonNull private final StreamDAO streamTable;
+    @NonNull private final StreamStateDAO streamStateTable;
+
+    /**
+     * Flushes run one at a time, so an older progress never overwrites a newer one
+     * */
+    @NonNull private final Scheduler flushScheduler =
+            Schedulers.from(Executors.newSingleThreadExecutor());
+
+    /**
+     * The latest progress of each stream not written yet, guarded by this buffer
+     * */
+    @NonNull private final Map<String, PendingState> pendingStates = new LinkedHashMap<>();
+    /**
+     * The streams as last written, with their ids set, guarded by itself
+     * */
+    @NonNull private final LruCache<String, StreamEntity> knownStreams =
+            new LruCache<>(MAX_KNOWN_STREAMS);
+
+    @Nullable private Disposable scheduledFlush;
+
+    private StreamStateBuffer(@NonNull final Context context) {
+        database = NewPipeDatabase.getInstance(context);
+        streamTable = database.streamDAO();
+        streamStateTable = database.streamStateDAO();
+    }
+
+    @NonNull
+    public static StreamStateBuffer getInstance(@NonNull final Context context) {
+        StreamStateBuffer result = instance;
+        if (result == null) {
+            synchronized (StreamStateBuffer.class) {
+                result = instance;
+                if (result == null) {
+                    instance = (result = new StreamStateBuffer(context.getApplicationContext()));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Buffer the progress of a stream, replacing the progress buffered for it before.
+     * */
+    public void put(@NonNull final StreamInfo info, final long progressTime) {
+        final StreamEntity stream = new StreamEntity(info);
+        synchronized (this) {
+            pendingStates.put(keyOf(stream), new PendingState(stream, progressTime));
+            if (scheduledFlush == null) {
+                scheduledFlush = flushScheduler.scheduleDirect(this::flushPending,
+                        FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Write all buffered progress in the background, without waiting for the delay.
+     * */
+    public void flush() {
+        if (DEBUG) Log.d(TAG, "flush() called");
+        flushScheduler.scheduleDirect(this::flushPending);
+    }
+
+    /**
+     * Forget the streams written before, e.g. after streams have been removed from the database.
+     * */
+    public void invalidate() {
+        synchronized (knownStreams) {
+            knownStreams.evictAll();
+        }
+    }
+
+    private void flushPending() {
+        final List<PendingState> batch;
+        synchronized (this) {
+            if (scheduledFlush != null) scheduledFlush.dispose();
+            scheduledFlush = null;
+
+            if (pendingStates.isEmpty()) return;
+            batch = new ArrayList<>(pendingStates.values());
+            pendingStates.clear();
+        }
+        if (DEBUG) Log.d(TAG, "flushPending() writing [" + batch.size() + "] states");
+
+        try {
+            write(batch);
+        } catch (final RuntimeException error) {
+            // A known stream may have been deleted since, so write all stream rows again
+            Log.w(TAG, "Writing states of known streams failed, retrying", error);
+            invalidate();
+            try {
+                write(batch);
+            } catch (final RuntimeException retryError) {
+                Log.e(TAG, "Unable to write stream states", retryError);
+            }
+        }
+    }
+
+    private void write(@NonNull final List<PendingState> batch) {
+        final Map<String, StreamEntity> writtenStreams = new HashMap<>();
+        final List<StreamStateEntity> states = new ArrayList<>(batch.size());
+
+        database.runInTransaction(() -> {
+            for (final PendingState pending : batch) {
+                final String key = keyOf(pending.stream);
+                final StreamEntity known;
+                synchronized (knownStreams) {
+                    known = knownStreams.get(key);
+                }
+
+                final long streamId;
+                if (known != null && known.hasEqualValues(pending.stream)) {
+                    streamId = known.getUid();
+                } else {
+                    streamId = streamTable.upsert(pending.stream);
+                    pending.stream.setUid(streamId);
+                    writtenStreams.put(key, pending.stream);
+                }
+                states.add(new StreamStateEntity(streamId, pending.progressTime));
+            }
+            streamStateTable.upsertAll(states);
+        });
+
+        synchronized (knownStreams) {
+            for (final Map.Entry<String, StreamEntity> entry : writtenStreams.entrySet()) {
+                knownStreams.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @NonNull
+    private static String keyOf(@NonNull final StreamEntity stream) {
+        return stream.getServiceId() + ":" + stream.getUrl();
+    }
+
+    private static final class PendingState {
+        @NonNull private final StreamEntity stream;
+        private final long progressTime;
+
+        private PendingState(@NonNull final StreamEntity stream, final long progressTime) {
+            this.stream = stream;
+            this.progressTime = progressTime;
+        }
+    }
+}
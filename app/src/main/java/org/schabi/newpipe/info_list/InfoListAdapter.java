@@ -1,7 +1,10 @@
 package org.schabi.newpipe.info_list;
 
 import android.app.Activity;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
 import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
@@ -140,6 +143,98 @@ public class InfoListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
         }
     }
 
+    /**
+     * Replace the items with the given list, which is usually the previous list with
+     * items added or changed, e.g. when a query of the database emits again. Only the
+     * items which differ are notified, so the list doesn't flicker or lose its position.
+     */
+    public void setInfoItemList(final List<InfoItem> data) {
+        if (isPrefixOf(infoItemList, data)) {
+            addInfoItemList(new ArrayList<>(data.subList(infoItemList.size(), data.size())));
+            return;
+        }
+
+        final List<InfoItem> oldList = new ArrayList<>(infoItemList);
+        final DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldList.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return data.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return isSameItem(oldList.get(oldItemPosition), data.get(newItemPosition));
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return hasSameContents(oldList.get(oldItemPosition), data.get(newItemPosition));
+            }
+        }, false);
+
+        infoItemList.clear();
+        infoItemList.addAll(data);
+
+        final int offset = header != null ? 1 : 0;
+        diff.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                notifyItemRangeInserted(position + offset, count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                notifyItemRangeRemoved(position + offset, count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                notifyItemMoved(fromPosition + offset, toPosition + offset);
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                notifyItemRangeChanged(position + offset, count, payload);
+            }
+        });
+    }
+
+    private static boolean isPrefixOf(final List<InfoItem> prefix, final List<InfoItem> list) {
+        if (prefix.size() > list.size()) return false;
+        for (int i = 0; i < prefix.size(); i++) {
+            if (!isSameItem(prefix.get(i), list.get(i))
+                    || !hasSameContents(prefix.get(i), list.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSameItem(final InfoItem first, final InfoItem second) {
+        return first.getInfoType() == second.getInfoType()
+                && first.getServiceId() == second.getServiceId()
+                && TextUtils.equals(first.getUrl(), second.getUrl());
+    }
+
+    private static boolean hasSameContents(final InfoItem first, final InfoItem second) {
+        if (!TextUtils.equals(first.getName(), second.getName())
+                || !TextUtils.equals(first.getThumbnailUrl(), second.getThumbnailUrl())) {
+            return false;
+        }
+        if (first instanceof StreamInfoItem && second instanceof StreamInfoItem) {
+            final StreamInfoItem firstStream = (StreamInfoItem) first;
+            final StreamInfoItem secondStream = (StreamInfoItem) second;
+            return firstStream.getViewCount() == secondStream.getViewCount()
+                    && TextUtils.equals(firstStream.getUploadDate(), secondStream.getUploadDate());
+        }
+        return true;
+    }
+
     public void clearStreamItemList() {
         if (infoItemList.isEmpty()) {
             return;
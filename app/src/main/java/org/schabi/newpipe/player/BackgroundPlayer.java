@@ -44,15 +44,20 @@ import org.schabi.newpipe.BuildConfig;
 import org.schabi.newpipe.R;
 import org.schabi.newpipe.extractor.MediaFormat;
 import org.schabi.newpipe.extractor.stream.AudioStream;
+import org.schabi.newpipe.extractor.stream.Stream;
 import org.schabi.newpipe.extractor.stream.StreamInfo;
 import org.schabi.newpipe.player.event.PlayerEventListener;
 import org.schabi.newpipe.player.helper.LockManager;
+import org.schabi.newpipe.player.helper.MediaPrefetcher;
 import org.schabi.newpipe.player.helper.PlayerHelper;
 import org.schabi.newpipe.playlist.PlayQueueItem;
 import org.schabi.newpipe.util.ListHelper;
 import org.schabi.newpipe.util.NavigationHelper;
 import org.schabi.newpipe.util.ThemeHelper;
 
+import java.util.Collections;
+import java.util.Map;
+
 import static org.schabi.newpipe.player.helper.PlayerHelper.getTimeString;
 
 
@@ -279,8 +284,11 @@ public final class BackgroundPlayer extends Service {
 
     protected class BasePlayerImpl extends BasePlayer {
 
+        @NonNull private final MediaPrefetcher prefetcher;
+
         BasePlayerImpl(Context context) {
             super(context);
+            prefetcher = new MediaPrefetcher(context, this);
         }
 
         @Override
@@ -360,6 +368,7 @@ public final class BackgroundPlayer extends Service {
         @Override
         public void destroy() {
             super.destroy();
+            prefetcher.dispose();
             if (notRemoteView != null) notRemoteView.setImageViewBitmap(R.id.notificationCover, null);
             if (bigNotRemoteView != null) bigNotRemoteView.setImageViewBitmap(R.id.notificationCover, null);
         }
@@ -399,6 +408,7 @@ public final class BackgroundPlayer extends Service {
                 updateNotification(-1);
                 updateMetadata();
             }
+            if (hasPlayQueueItemChanged && playQueue != null) prefetcher.update(playQueue);
         }
 
         @Override
@@ -407,12 +417,22 @@ public final class BackgroundPlayer extends Service {
             final MediaSource liveSource = super.sourceOf(item, info);
             if (liveSource != null) return liveSource;
 
+            final Map<String, Stream> streams = selectStreams(info);
+            if (streams.isEmpty()) return null;
+
+            final Map.Entry<String, Stream> audio = streams.entrySet().iterator().next();
+            return buildMediaSource(audio.getValue().getUrl(), audio.getKey(),
+                    MediaFormat.getSuffixById(audio.getValue().getFormatId()));
+        }
+
+        @NonNull
+        @Override
+        protected Map<String, Stream> selectStreams(@NonNull final StreamInfo info) {
             final int index = ListHelper.getDefaultAudioFormat(context, info.getAudioStreams());
-            if (index < 0 || index >= info.getAudioStreams().size()) return null;
+            if (index < 0 || index >= info.getAudioStreams().size()) return Collections.emptyMap();
 
             final AudioStream audio = info.getAudioStreams().get(index);
-            return buildMediaSource(audio.getUrl(), PlayerHelper.cacheKeyOf(info, audio),
-                    MediaFormat.getSuffixById(audio.getFormatId()));
+            return Collections.<String, Stream>singletonMap(PlayerHelper.cacheKeyOf(info, audio), audio);
         }
 
         @Override
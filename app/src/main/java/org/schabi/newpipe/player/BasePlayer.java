@@ -37,7 +37,6 @@ import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.DefaultRenderersFactory;
 import com.google.android.exoplayer2.ExoPlaybackException;
 import com.google.android.exoplayer2.ExoPlayerFactory;
-import com.google.android.exoplayer2.LoadControl;
 import com.google.android.exoplayer2.PlaybackParameters;
 import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.RenderersFactory;
@@ -48,7 +47,6 @@ import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.trackselection.TrackSelection;
 import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
-import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
 import com.google.android.exoplayer2.util.Util;
 import com.nostra13.universalimageloader.core.ImageLoader;
 import com.nostra13.universalimageloader.core.assist.FailReason;
@@ -56,14 +54,19 @@ import com.nostra13.universalimageloader.core.listener.ImageLoadingListener;
 
 import org.schabi.newpipe.Downloader;
 import org.schabi.newpipe.R;
+import org.schabi.newpipe.extractor.MediaFormat;
+import org.schabi.newpipe.extractor.stream.Stream;
 import org.schabi.newpipe.extractor.stream.StreamInfo;
 import org.schabi.newpipe.extractor.stream.StreamType;
 import org.schabi.newpipe.history.HistoryRecordManager;
 import org.schabi.newpipe.player.helper.AudioReactor;
+import org.schabi.newpipe.player.helper.BandwidthEstimator;
 import org.schabi.newpipe.player.helper.LoadController;
+import org.schabi.newpipe.player.helper.LookaheadPolicy;
 import org.schabi.newpipe.player.helper.MediaSessionManager;
 import org.schabi.newpipe.player.helper.PlayerDataSource;
 import org.schabi.newpipe.player.helper.PlayerHelper;
+import org.schabi.newpipe.player.metrics.MetricsCollector;
 import org.schabi.newpipe.player.mediasource.FailedMediaSource;
 import org.schabi.newpipe.player.playback.BasePlayerMediaSession;
 import org.schabi.newpipe.player.playback.CustomTrackSelector;
@@ -76,6 +79,8 @@ import org.schabi.newpipe.util.SerializedCache;
 
 import java.io.IOException;
 import java.net.UnknownHostException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import io.reactivex.Observable;
@@ -119,6 +124,7 @@ public abstract class BasePlayer implements
     public static final String PLAY_QUEUE_KEY = "play_queue_key";
     public static final String APPEND_ONLY = "append_only";
     public static final String SELECT_ON_APPEND = "select_on_append";
+    public static final String PLAYER_ENGINE_KEY = "player_engine_key";
 
     /*//////////////////////////////////////////////////////////////////////////
     // Playback
@@ -143,10 +149,14 @@ public abstract class BasePlayer implements
     protected final static int FAST_FORWARD_REWIND_AMOUNT_MILLIS = 10000; // 10 Seconds
     protected final static int PLAY_PREV_ACTIVATION_LIMIT_MILLIS = 5000; // 5 seconds
     protected final static int PROGRESS_LOOP_INTERVAL_MILLIS = 500;
+    protected final static int PROGRESS_CHECKPOINT_INTERVAL_MILLIS = 5000; // 5 seconds
     protected final static int RECOVERY_SKIP_THRESHOLD_MILLIS = 3000; // 3 seconds
 
     protected CustomTrackSelector trackSelector;
+    protected LoadController loadController;
+    protected MetricsCollector metricsCollector;
     protected PlayerDataSource dataSource;
+    @NonNull private final LookaheadPolicy lookaheadPolicy;
 
     protected SimpleExoPlayer simpleExoPlayer;
     protected AudioReactor audioReactor;
@@ -155,6 +165,16 @@ public abstract class BasePlayer implements
     private boolean isPrepared = false;
     private boolean isSynchronizing = false;
 
+    /**
+     * The engine of another player to take over in {@link #initPlayer(boolean)}
+     * */
+    @Nullable private PlayerEngine adoptedEngine;
+    /**
+     * Whether the playback was taken over from another player and isn't synchronized yet,
+     * so the first synchronization continues the playback instead of starting the item
+     * */
+    protected boolean isAdoptingPlayback = false;
+
     protected Disposable progressUpdateReactor;
     protected CompositeDisposable databaseUpdateReactor;
 
@@ -174,6 +194,7 @@ public abstract class BasePlayer implements
         context.registerReceiver(broadcastReceiver, intentFilter);
 
         this.recordManager = new HistoryRecordManager(context);
+        this.lookaheadPolicy = new LookaheadPolicy(context);
     }
 
     public void setup() {
@@ -187,19 +208,32 @@ public abstract class BasePlayer implements
         if (databaseUpdateReactor != null) databaseUpdateReactor.dispose();
         databaseUpdateReactor = new CompositeDisposable();
 
-        final String userAgent = Downloader.USER_AGENT;
-        final DefaultBandwidthMeter bandwidthMeter = new DefaultBandwidthMeter();
-        dataSource = new PlayerDataSource(context, userAgent, bandwidthMeter);
-
-        final TrackSelection.Factory trackSelectionFactory =
-                PlayerHelper.getQualitySelector(context, bandwidthMeter);
-        trackSelector = new CustomTrackSelector(trackSelectionFactory);
-
-        final LoadControl loadControl = new LoadController(context);
-        final RenderersFactory renderFactory = new DefaultRenderersFactory(context);
-        simpleExoPlayer = ExoPlayerFactory.newSimpleInstance(renderFactory, trackSelector, loadControl);
+        if (adoptedEngine != null) {
+            simpleExoPlayer = adoptedEngine.player;
+            trackSelector = adoptedEngine.trackSelector;
+            loadController = adoptedEngine.loadController;
+            metricsCollector = adoptedEngine.metricsCollector;
+            dataSource = adoptedEngine.dataSource;
+        } else {
+            final String userAgent = Downloader.USER_AGENT;
+            final BandwidthEstimator bandwidthMeter = BandwidthEstimator.getInstance();
+            loadController = new LoadController(context);
+            metricsCollector = new MetricsCollector(loadController);
+            dataSource = new PlayerDataSource(context, userAgent, bandwidthMeter, metricsCollector);
+
+            final TrackSelection.Factory trackSelectionFactory =
+                    PlayerHelper.getQualitySelector(context, bandwidthMeter);
+            trackSelector = new CustomTrackSelector(trackSelectionFactory);
+
+            // The player may be handed off and outlive this context
+            final RenderersFactory renderFactory =
+                    new DefaultRenderersFactory(context.getApplicationContext());
+            simpleExoPlayer = ExoPlayerFactory.newSimpleInstance(renderFactory, trackSelector, loadController);
+            simpleExoPlayer.addVideoDebugListener(metricsCollector);
+            simpleExoPlayer.addAudioDebugListener(metricsCollector);
+            simpleExoPlayer.setPlayWhenReady(playOnReady);
+        }
         simpleExoPlayer.addListener(this);
-        simpleExoPlayer.setPlayWhenReady(playOnReady);
         simpleExoPlayer.setSeekParameters(PlayerHelper.getSeekParameters(context));
 
         audioReactor = new AudioReactor(context, simpleExoPlayer);
@@ -213,6 +247,16 @@ public abstract class BasePlayer implements
         if (DEBUG) Log.d(TAG, "handleIntent() called with: intent = [" + intent + "]");
         if (intent == null) return;
 
+        // Take over the playback handed off by another player, the queue is only a fallback
+        final PlayerEngine engine = PlayerEngine.take(intent.getStringExtra(PLAYER_ENGINE_KEY));
+        if (engine != null) {
+            if (intent.hasExtra(PLAY_QUEUE_KEY)) {
+                SerializedCache.getInstance().remove(intent.getStringExtra(PLAY_QUEUE_KEY));
+            }
+            initPlayback(engine);
+            return;
+        }
+
         // Resolve play queue
         if (!intent.hasExtra(PLAY_QUEUE_KEY)) return;
         final String intentCacheKey = intent.getStringExtra(PLAY_QUEUE_KEY);
@@ -221,13 +265,16 @@ public abstract class BasePlayer implements
 
         // Resolve append intents
         if (intent.getBooleanExtra(APPEND_ONLY, false) && playQueue != null) {
-            int sizeBeforeAppend = playQueue.size();
-            playQueue.append(queue.getStreams());
-
-            if (intent.getBooleanExtra(SELECT_ON_APPEND, false) &&
-                    queue.getStreams().size() > 0) {
-                playQueue.setIndex(sizeBeforeAppend);
-            }
+            final boolean selectOnAppend = intent.getBooleanExtra(SELECT_ON_APPEND, false);
+            // Update the playlist once for both changes
+            playQueue.batch(() -> {
+                int sizeBeforeAppend = playQueue.size();
+                playQueue.append(queue.getStreams());
+
+                if (selectOnAppend && queue.getStreams().size() > 0) {
+                    playQueue.setIndex(sizeBeforeAppend);
+                }
+            });
 
             return;
         }
@@ -253,16 +300,102 @@ public abstract class BasePlayer implements
         playQueue = queue;
         playQueue.init();
         if (playbackManager != null) playbackManager.dispose();
-        playbackManager = new MediaSourceManager(this, playQueue);
+        playbackManager = new MediaSourceManager(this, playQueue, lookaheadPolicy);
+
+        if (playQueueAdapter != null) playQueueAdapter.dispose();
+        playQueueAdapter = new PlayQueueAdapter(context, playQueue);
+    }
+
+    /**
+     * Take over the playback of another player, without interrupting it if the
+     * sources it loaded suit this player.
+     *
+     * @see #handOff()
+     * */
+    protected void initPlayback(@NonNull final PlayerEngine engine) {
+        if (DEBUG) Log.d(TAG, "initPlayback() called with: engine = [" + engine + "]");
+        destroyPlayer();
+
+        isAdoptingPlayback = true;
+        adoptedEngine = engine;
+        initPlayer(engine.player.getPlayWhenReady());
+        adoptedEngine = null;
+
+        playQueue = engine.playQueue;
+        playbackManager = engine.playbackManager;
+
+        // Video only loads while there is a video renderer to show it
+        setVideoRendererEnabled(hasVideoOutput());
+        // Audio only sources of the background player can't be shown by video players
+        final boolean reloadSources = hasVideoOutput() && !engine.hasVideoOutput;
+        if (reloadSources) {
+            setRecovery();
+        } else {
+            // The position set for the fallback queue must not rewind the running playback
+            playQueue.unsetRecovery(playQueue.getIndex());
+        }
+        playbackManager.rebind(this, reloadSources);
 
         if (playQueueAdapter != null) playQueueAdapter.dispose();
         playQueueAdapter = new PlayQueueAdapter(context, playQueue);
+
+        // Catch up with the state of the running playback
+        onPlayerStateChanged(simpleExoPlayer.getPlayWhenReady(), simpleExoPlayer.getPlaybackState());
+    }
+
+    /**
+     * Hand the playback over to another player, which takes it over once it receives the
+     * returned key as {@link #PLAYER_ENGINE_KEY} in its intent. The player, its buffers, the
+     * loaded sources and the play queue carry on, while this player is left without playback
+     * and can be destroyed as usual.
+     *
+     * @return the key of the engine, or null if there is no playback to hand off
+     * */
+    @Nullable
+    public String handOff() {
+        if (simpleExoPlayer == null || playQueue == null || playbackManager == null) return null;
+        if (DEBUG) Log.d(TAG, "handOff() called");
+
+        savePlaybackState();
+        recordManager.flushStreamStates();
+        detachPlayer();
+
+        final String key = PlayerEngine.handOff(new PlayerEngine(simpleExoPlayer, trackSelector,
+                loadController, metricsCollector, dataSource, playQueue, playbackManager,
+                hasVideoOutput()));
+
+        simpleExoPlayer = null;
+        trackSelector = null;
+        loadController = null;
+        metricsCollector = null;
+        dataSource = null;
+        playQueue = null;
+        playbackManager = null;
+        return key;
+    }
+
+    /**
+     * Releases everything of this player attached to the running playback, before it is
+     * handed off. The counterpart of {@link #initPlayer(boolean)}.
+     * */
+    protected void detachPlayer() {
+        simpleExoPlayer.removeListener(this);
+
+        if (audioReactor != null) audioReactor.dispose();
+        audioReactor = null;
+        if (mediaSessionManager != null) mediaSessionManager.dispose();
+        mediaSessionManager = null;
     }
 
     public void destroyPlayer() {
         if (DEBUG) Log.d(TAG, "destroyPlayer() called");
+        savePlaybackState();
+        recordManager.flushStreamStates();
+
         if (simpleExoPlayer != null) {
             simpleExoPlayer.removeListener(this);
+            simpleExoPlayer.removeVideoDebugListener(metricsCollector);
+            simpleExoPlayer.removeAudioDebugListener(metricsCollector);
             simpleExoPlayer.stop();
             simpleExoPlayer.release();
         }
@@ -271,6 +404,7 @@ public abstract class BasePlayer implements
         if (audioReactor != null) audioReactor.dispose();
         if (playbackManager != null) playbackManager.dispose();
         if (databaseUpdateReactor != null) databaseUpdateReactor.dispose();
+        if (metricsCollector != null) metricsCollector.finishItem();
 
         if (playQueueAdapter != null) {
             playQueueAdapter.unsetSelectedListener();
@@ -359,8 +493,7 @@ public abstract class BasePlayer implements
         if (dataSource == null) return null;
 
         final Uri uri = Uri.parse(sourceUrl);
-        @C.ContentType final int type = TextUtils.isEmpty(overrideExtension) ?
-                Util.inferContentType(uri) : Util.inferContentType("." + overrideExtension);
+        @C.ContentType final int type = contentTypeOf(uri, overrideExtension);
 
         switch (type) {
             case C.TYPE_SS:
@@ -376,6 +509,12 @@ public abstract class BasePlayer implements
         }
     }
 
+    @C.ContentType
+    private static int contentTypeOf(@NonNull final Uri uri, @Nullable final String overrideExtension) {
+        return TextUtils.isEmpty(overrideExtension) ?
+                Util.inferContentType(uri) : Util.inferContentType("." + overrideExtension);
+    }
+
     /*//////////////////////////////////////////////////////////////////////////
     // Broadcast Receiver
     //////////////////////////////////////////////////////////////////////////*/
@@ -428,6 +567,7 @@ public abstract class BasePlayer implements
                 onBlocked();
                 break;
             case STATE_PLAYING:
+                if (metricsCollector != null) metricsCollector.onFirstFrame();
                 onPlaying();
                 break;
             case STATE_BUFFERING:
@@ -459,6 +599,9 @@ public abstract class BasePlayer implements
 
     public void onPaused() {
         if (isProgressLoopRunning()) stopProgressLoop();
+
+        savePlaybackState();
+        recordManager.flushStreamStates();
     }
 
     public void onPausedSeek() {}
@@ -528,9 +671,15 @@ public abstract class BasePlayer implements
     }
 
     private Disposable getProgressReactor() {
+        final long checkpointTicks = PROGRESS_CHECKPOINT_INTERVAL_MILLIS /
+                PROGRESS_LOOP_INTERVAL_MILLIS;
         return Observable.interval(PROGRESS_LOOP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)
                 .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(ignored -> triggerProgressUpdate());
+                .subscribe(tick -> {
+                    triggerProgressUpdate();
+                    // Buffered, so frequent checkpoints are coalesced into batched writes
+                    if ((tick + 1) % checkpointTicks == 0) savePlaybackState();
+                });
     }
 
     /*//////////////////////////////////////////////////////////////////////////
@@ -785,11 +934,13 @@ public abstract class BasePlayer implements
     public void onPlaybackBlock() {
         if (simpleExoPlayer == null) return;
         if (DEBUG) Log.d(TAG, "Playback - onPlaybackBlock() called");
+        if (metricsCollector != null) metricsCollector.onPlaybackRequested();
 
         currentItem = null;
         currentInfo = null;
         simpleExoPlayer.stop();
         isPrepared = false;
+        isAdoptingPlayback = false;
 
         changeState(STATE_BLOCKED);
     }
@@ -832,11 +983,18 @@ public abstract class BasePlayer implements
             return;
         }
 
+        // The item of an adopted playback was already started by the previous player
+        final boolean isContinuing = isAdoptingPlayback;
+        isAdoptingPlayback = false;
+
         currentItem = item;
         currentInfo = info;
         if (hasPlayQueueItemChanged) {
+            if (metricsCollector != null && !isContinuing) {
+                metricsCollector.onItemStarted(item, getCurrentState() == STATE_PLAYING);
+            }
             // updates only to the stream info should not trigger another view count
-            registerView();
+            if (!isContinuing) registerView();
             initThumbnail(info == null ? item.getThumbnailUrl() : info.getThumbnailUrl());
         }
         onMetadataChanged(item, info, currentPlayQueueIndex, hasPlayQueueItemChanged);
@@ -857,8 +1015,8 @@ public abstract class BasePlayer implements
             // If not playing correct stream, change window position and sets flag
             // for synchronizing once window position is corrected
             // @see maybeCorrectSeekPosition()
-        } else if (currentPlaylistIndex != currentPlayQueueIndex || onPlaybackInitial ||
-                !isPlaying()) {
+        } else if (currentPlaylistIndex != currentPlayQueueIndex ||
+                (!isContinuing && (onPlaybackInitial || !isPlaying()))) {
             if (DEBUG) Log.d(TAG, "Playback - Rewinding to correct" +
                     " index=[" + currentPlayQueueIndex + "]," +
                     " from=[" + currentPlaylistIndex + "], size=[" + currentPlaylistSize + "].");
@@ -875,10 +1033,7 @@ public abstract class BasePlayer implements
     @Nullable
     @Override
     public MediaSource sourceOf(PlayQueueItem item, StreamInfo info) {
-        final StreamType streamType = info.getStreamType();
-        if (!(streamType == StreamType.AUDIO_LIVE_STREAM || streamType == StreamType.LIVE_STREAM)) {
-            return null;
-        }
+        if (!isLive(info)) return null;
 
         if (!info.getHlsUrl().isEmpty()) {
             return buildLiveMediaSource(info.getHlsUrl(), C.TYPE_HLS);
@@ -889,6 +1044,50 @@ public abstract class BasePlayer implements
         return null;
     }
 
+    /**
+     * Selects the streams the player plays for a stream which isn't live, by cache key,
+     * starting with the video stream if there is one. Only reads the info and the settings,
+     * so it may be called on any thread.
+     * */
+    @NonNull
+    protected abstract Map<String, Stream> selectStreams(@NonNull final StreamInfo info);
+
+    @Override
+    public void warmUp(@NonNull final PlayQueueItem item, @NonNull final StreamInfo info,
+                       final long bytes) throws IOException, InterruptedException {
+        final PlayerDataSource source = dataSource;
+        if (source == null) return;
+
+        final Map<String, Uri> streams = progressiveStreamsOf(info);
+        for (final Map.Entry<String, Uri> stream : streams.entrySet()) {
+            if (DEBUG) Log.d(TAG, "warmUp() called with: cacheKey = [" + stream.getKey() +
+                    "], bytes = [" + bytes + "]");
+            source.warmUp(stream.getValue(), stream.getKey(), bytes);
+        }
+    }
+
+    /**
+     * Returns the progressive streams, by cache key, the player would play for an item.
+     * Safe to call on any thread.
+     * */
+    @NonNull
+    public Map<String, Uri> progressiveStreamsOf(@NonNull final StreamInfo info) {
+        final Map<String, Uri> streams = new LinkedHashMap<>();
+        if (isLive(info)) return streams;
+
+        for (final Map.Entry<String, Stream> stream : selectStreams(info).entrySet()) {
+            final Uri uri = Uri.parse(stream.getValue().getUrl());
+            final String extension = MediaFormat.getSuffixById(stream.getValue().getFormatId());
+            if (contentTypeOf(uri, extension) == C.TYPE_OTHER) streams.put(stream.getKey(), uri);
+        }
+        return streams;
+    }
+
+    private static boolean isLive(@NonNull final StreamInfo info) {
+        final StreamType streamType = info.getStreamType();
+        return streamType == StreamType.AUDIO_LIVE_STREAM || streamType == StreamType.LIVE_STREAM;
+    }
+
     @Override
     public void onPlaybackShutdown() {
         if (DEBUG) Log.d(TAG, "Shutting down...");
@@ -1059,20 +1258,13 @@ public abstract class BasePlayer implements
         }
 
         if (playQueue != null) {
-            playbackManager = new MediaSourceManager(this, playQueue);
+            playbackManager = new MediaSourceManager(this, playQueue, lookaheadPolicy);
         }
     }
 
     protected void savePlaybackState(final StreamInfo info, final long progress) {
-        if (info == null || databaseUpdateReactor == null) return;
-        final Disposable stateSaver = recordManager.saveStreamState(info, progress)
-                .observeOn(AndroidSchedulers.mainThread())
-                .onErrorComplete()
-                .subscribe(
-                        ignored -> {/* successful */},
-                        error -> Log.e(TAG, "savePlaybackState() failure: ", error)
-                );
-        databaseUpdateReactor.add(stateSaver);
+        if (info == null) return;
+        recordManager.bufferStreamState(info, progress);
     }
 
     private void savePlaybackState() {
@@ -1180,6 +1372,29 @@ public abstract class BasePlayer implements
         return playQueue;
     }
 
+    /**
+     * Whether this player shows video, so the sources it builds include video streams.
+     * */
+    protected boolean hasVideoOutput() {
+        return false;
+    }
+
+    protected void setVideoRendererEnabled(final boolean enabled) {
+        if (simpleExoPlayer == null || trackSelector == null) return;
+        for (int index = 0; index < simpleExoPlayer.getRendererCount(); index++) {
+            if (simpleExoPlayer.getRendererType(index) == C.TRACK_TYPE_VIDEO) {
+                trackSelector.setRendererDisabled(index, !enabled);
+            }
+        }
+    }
+
+    /**
+     * Returns the load control of the player, with the buffering metrics of the session.
+     * */
+    public LoadController getLoadController() {
+        return loadController;
+    }
+
     public PlayQueueAdapter getPlayQueueAdapter() {
         return playQueueAdapter;
     }
@@ -494,6 +494,7 @@ public final class MainVideoPlayer extends AppCompatActivity
                     this.getPlaybackPitch(),
                     this.getPlaybackQuality()
             );
+            intent.putExtra(PLAYER_ENGINE_KEY, handOff());
             context.startService(intent);
 
             ((View) getControlAnimationView().getParent()).setVisibility(View.GONE);
@@ -515,6 +516,7 @@ public final class MainVideoPlayer extends AppCompatActivity
                     this.getPlaybackPitch(),
                     this.getPlaybackQuality()
             );
+            intent.putExtra(PLAYER_ENGINE_KEY, handOff());
             context.startService(intent);
 
             ((View) getControlAnimationView().getParent()).setVisibility(View.GONE);
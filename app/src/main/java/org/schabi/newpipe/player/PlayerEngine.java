@@ -0,0 +1,148 @@
+package org.schabi.newpipe.player;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.google.android.exoplayer2.SimpleExoPlayer;
+
+import org.schabi.newpipe.BuildConfig;
+import org.schabi.newpipe.player.helper.LoadController;
+import org.schabi.newpipe.player.helper.PlayerDataSource;
+import org.schabi.newpipe.player.metrics.MetricsCollector;
+import org.schabi.newpipe.player.playback.CustomTrackSelector;
+import org.schabi.newpipe.player.playback.MediaSourceManager;
+import org.schabi.newpipe.playlist.PlayQueue;
+
+import java.util.UUID;
+
+/**
+ * The live parts of a player, handed from one player to another when switching between the
+ * main, popup and background players, so the playback carries on with its buffers, loaded
+ * sources and play queue instead of being rebuilt.
+ * <br><br>
+ * Only one engine is handed off at a time. If no player takes it over within
+ * {@link #EXPIRATION_MILLIS}, e.g. because the target failed to start, it is released.
+ *
+ * @see BasePlayer#handOff()
+ * */
+public final class PlayerEngine {
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    private static final String TAG = "PlayerEngine";
+
+    /*package-private*/ static final long EXPIRATION_MILLIS = 10000;
+
+    @NonNull private static final Handler handler = new Handler(Looper.getMainLooper());
+    @NonNull private static final Runnable expiration = PlayerEngine::expire;
+
+    @Nullable private static PlayerEngine pendingEngine;
+    @Nullable private static String pendingKey;
+    private static long pendingSince;
+
+    @NonNull final SimpleExoPlayer player;
+    @NonNull final CustomTrackSelector trackSelector;
+    @NonNull final LoadController loadController;
+    @NonNull final MetricsCollector metricsCollector;
+    @NonNull final PlayerDataSource dataSource;
+    @NonNull final PlayQueue playQueue;
+    @NonNull final MediaSourceManager playbackManager;
+    /**
+     * Whether the sources in the {@link #playbackManager} were built for a video player
+     * */
+    final boolean hasVideoOutput;
+
+    /*package-private*/ PlayerEngine(@NonNull final SimpleExoPlayer player,
+                                     @NonNull final CustomTrackSelector trackSelector,
+                                     @NonNull final LoadController loadController,
+                                     @NonNull final MetricsCollector metricsCollector,
+                                     @NonNull final PlayerDataSource dataSource,
+                                     @NonNull final PlayQueue playQueue,
+                                     @NonNull final MediaSourceManager playbackManager,
+                                     final boolean hasVideoOutput) {
+        this.player = player;
+        this.trackSelector = trackSelector;
+        this.loadController = loadController;
+        this.metricsCollector = metricsCollector;
+        this.dataSource = dataSource;
+        this.playQueue = playQueue;
+        this.playbackManager = playbackManager;
+        this.hasVideoOutput = hasVideoOutput;
+    }
+
+    /**
+     * Keep the engine until a player takes it over, releasing the one pending before.
+     *
+     * @return the key to take the engine with
+     * */
+    @NonNull
+    /*package-private*/ static String handOff(@NonNull final PlayerEngine engine) {
+        return handOff(engine, SystemClock.elapsedRealtime());
+    }
+
+    @NonNull
+    /*package-private*/ static synchronized String handOff(@NonNull final PlayerEngine engine,
+                                                          final long nowMs) {
+        if (pendingEngine != null) pendingEngine.release();
+        handler.removeCallbacks(expiration);
+
+        pendingEngine = engine;
+        pendingKey = UUID.randomUUID().toString();
+        pendingSince = nowMs;
+        handler.postDelayed(expiration, EXPIRATION_MILLIS);
+
+        if (DEBUG) Log.d(TAG, "handOff() called, key = [" + pendingKey + "]");
+        return pendingKey;
+    }
+
+    /**
+     * @return the engine handed off with the given key, or null if it is gone
+     * */
+    @Nullable
+    /*package-private*/ static PlayerEngine take(@Nullable final String key) {
+        return take(key, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * An expired engine is released even if its expiration didn't run yet
+     * */
+    @Nullable
+    /*package-private*/ static synchronized PlayerEngine take(@Nullable final String key,
+                                                             final long nowMs) {
+        if (key == null || pendingEngine == null || !key.equals(pendingKey)) return null;
+        if (DEBUG) Log.d(TAG, "take() called, key = [" + key + "]");
+
+        if (nowMs - pendingSince >= EXPIRATION_MILLIS) {
+            expire();
+            return null;
+        }
+
+        final PlayerEngine engine = pendingEngine;
+        pendingEngine = null;
+        pendingKey = null;
+        handler.removeCallbacks(expiration);
+        return engine;
+    }
+
+    private static synchronized void expire() {
+        if (pendingEngine == null) return;
+        Log.w(TAG, "No player took over the engine, releasing it");
+
+        pendingEngine.release();
+        pendingEngine = null;
+        pendingKey = null;
+    }
+
+    private void release() {
+        player.removeVideoDebugListener(metricsCollector);
+        player.removeAudioDebugListener(metricsCollector);
+        player.stop();
+        player.release();
+
+        playbackManager.dispose();
+        playQueue.dispose();
+        metricsCollector.finishItem();
+    }
+}
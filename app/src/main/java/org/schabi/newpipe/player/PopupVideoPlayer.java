@@ -453,8 +453,11 @@ public final class PopupVideoPlayer extends Service {
                         this.getPlaybackPitch(),
                         this.getPlaybackQuality()
                 );
+                intent.putExtra(PLAYER_ENGINE_KEY, handOff());
                 intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
             } else {
+                // The old player streams the url with its own media player, so there is no
+                // engine to hand off and the playback starts over at the current position
                 intent = new Intent(PopupVideoPlayer.this, PlayVideoActivity.class)
                         .putExtra(PlayVideoActivity.VIDEO_TITLE, getVideoTitle())
                         .putExtra(PlayVideoActivity.STREAM_URL, getSelectedVideoStream().getUrl())
@@ -188,7 +188,8 @@ public abstract class ServicePlayerActivity extends AppCompatActivity
                 this.player.getPlaybackSpeed(),
                 this.player.getPlaybackPitch(),
                 null
-        ).addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        ).putExtra(BasePlayer.PLAYER_ENGINE_KEY, this.player.handOff())
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
     }
 
     ////////////////////////////////////////////////////////////////////////////
@@ -55,6 +55,7 @@ import com.google.android.exoplayer2.source.MergingMediaSource;
 import com.google.android.exoplayer2.source.TrackGroup;
 import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.text.CaptionStyleCompat;
+import com.google.android.exoplayer2.text.TextOutput;
 import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
 import com.google.android.exoplayer2.ui.AspectRatioFrameLayout;
 import com.google.android.exoplayer2.ui.SubtitleView;
@@ -64,6 +65,7 @@ import org.schabi.newpipe.R;
 import org.schabi.newpipe.extractor.MediaFormat;
 import org.schabi.newpipe.extractor.Subtitles;
 import org.schabi.newpipe.extractor.stream.AudioStream;
+import org.schabi.newpipe.extractor.stream.Stream;
 import org.schabi.newpipe.extractor.stream.StreamInfo;
 import org.schabi.newpipe.extractor.stream.StreamType;
 import org.schabi.newpipe.extractor.stream.VideoStream;
@@ -73,7 +75,9 @@ import org.schabi.newpipe.util.AnimationUtils;
 import org.schabi.newpipe.util.ListHelper;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.google.android.exoplayer2.C.SELECTION_FLAG_AUTOSELECT;
 import static com.google.android.exoplayer2.C.TIME_UNSET;
@@ -112,6 +116,8 @@ public abstract class VideoPlayer extends BasePlayer
 
     protected boolean wasPlaying = false;
 
+    private final TextOutput subtitleOutput = cues -> subtitleView.onCues(cues);
+
     /*//////////////////////////////////////////////////////////////////////////
     // Views
     //////////////////////////////////////////////////////////////////////////*/
@@ -237,14 +243,27 @@ public abstract class VideoPlayer extends BasePlayer
         simpleExoPlayer.addVideoListener(this);
 
         // Setup subtitle view
-        simpleExoPlayer.addTextOutput(cues -> subtitleView.onCues(cues));
+        simpleExoPlayer.addTextOutput(subtitleOutput);
 
-        // Setup audio session with onboard equalizer
-        if (Build.VERSION.SDK_INT >= 21) {
+        // Setup audio session with onboard equalizer, an adopted player already has one
+        if (Build.VERSION.SDK_INT >= 21 && !isAdoptingPlayback) {
             trackSelector.setTunnelingAudioSessionId(C.generateAudioSessionIdV21(context));
         }
     }
 
+    @Override
+    protected void detachPlayer() {
+        super.detachPlayer();
+        simpleExoPlayer.clearVideoSurfaceView(surfaceView);
+        simpleExoPlayer.removeVideoListener(this);
+        simpleExoPlayer.removeTextOutput(subtitleOutput);
+    }
+
+    @Override
+    protected boolean hasVideoOutput() {
+        return true;
+    }
+
     @Override
     public void handleIntent(final Intent intent) {
         if (intent == null) return;
@@ -388,36 +407,11 @@ public abstract class VideoPlayer extends BasePlayer
 
         List<MediaSource> mediaSources = new ArrayList<>();
 
-        // Create video stream source
-        final List<VideoStream> videos = ListHelper.getSortedStreamVideosList(context,
-                info.getVideoStreams(), info.getVideoOnlyStreams(), false);
-        final int index;
-        if (videos.isEmpty()) {
-            index = -1;
-        } else if (playbackQuality == null) {
-            index = getDefaultResolutionIndex(videos);
-        } else {
-            index = getOverrideResolutionIndex(videos, getPlaybackQuality());
-        }
-        final VideoStream video = index >= 0 && index < videos.size() ? videos.get(index) : null;
-        if (video != null) {
-            final MediaSource streamSource = buildMediaSource(video.getUrl(),
-                    PlayerHelper.cacheKeyOf(info, video),
-                    MediaFormat.getSuffixById(video.getFormatId()));
-            mediaSources.add(streamSource);
-        }
-
-        // Create optional audio stream source
-        final List<AudioStream> audioStreams = info.getAudioStreams();
-        final AudioStream audio = audioStreams.isEmpty() ? null : audioStreams.get(
-                ListHelper.getDefaultAudioFormat(context, audioStreams));
-        // Use the audio stream if there is no video stream, or
-        // Merge with audio stream in case if video does not contain audio
-        if (audio != null && ((video != null && video.isVideoOnly) || video == null)) {
-            final MediaSource audioSource = buildMediaSource(audio.getUrl(),
-                    PlayerHelper.cacheKeyOf(info, audio),
-                    MediaFormat.getSuffixById(audio.getFormatId()));
-            mediaSources.add(audioSource);
+        // Create the video and the optional audio stream source
+        for (final Map.Entry<String, Stream> stream : selectStreams(info).entrySet()) {
+            final MediaSource streamSource = buildMediaSource(stream.getValue().getUrl(),
+                    stream.getKey(), MediaFormat.getSuffixById(stream.getValue().getFormatId()));
+            if (streamSource != null) mediaSources.add(streamSource);
         }
 
         // If there is no audio or video sources, then this media source cannot be played back
@@ -444,6 +438,35 @@ public abstract class VideoPlayer extends BasePlayer
         }
     }
 
+    @NonNull
+    @Override
+    protected Map<String, Stream> selectStreams(@NonNull final StreamInfo info) {
+        final Map<String, Stream> streams = new LinkedHashMap<>();
+
+        final List<VideoStream> videos = ListHelper.getSortedStreamVideosList(context,
+                info.getVideoStreams(), info.getVideoOnlyStreams(), false);
+        final int index;
+        if (videos.isEmpty()) {
+            index = -1;
+        } else if (playbackQuality == null) {
+            index = getDefaultResolutionIndex(videos);
+        } else {
+            index = getOverrideResolutionIndex(videos, getPlaybackQuality());
+        }
+        final VideoStream video = index >= 0 && index < videos.size() ? videos.get(index) : null;
+        if (video != null) streams.put(PlayerHelper.cacheKeyOf(info, video), video);
+
+        final List<AudioStream> audioStreams = info.getAudioStreams();
+        final AudioStream audio = audioStreams.isEmpty() ? null : audioStreams.get(
+                ListHelper.getDefaultAudioFormat(context, audioStreams));
+        // Use the audio stream if there is no video stream, or
+        // Merge with audio stream in case if video does not contain audio
+        if (audio != null && (video == null || video.isVideoOnly)) {
+            streams.put(PlayerHelper.cacheKeyOf(info, audio), audio);
+        }
+        return streams;
+    }
+
     /*//////////////////////////////////////////////////////////////////////////
     // States Implementation
     //////////////////////////////////////////////////////////////////////////*/
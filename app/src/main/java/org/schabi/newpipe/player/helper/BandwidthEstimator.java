@@ -0,0 +1,277 @@
+package org.schabi.newpipe.player.helper;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.SlidingPercentile;
+
+import org.schabi.newpipe.BuildConfig;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process wide {@link BandwidthMeter}, shared by all players.
+ * <p>
+ * Works like {@link com.google.android.exoplayer2.upstream.DefaultBandwidthMeter}, but keeps
+ * a separate estimate for every kind of network, which outlives the players and is persisted,
+ * so adaptive track selection of a new video starts from the throughput seen before
+ * instead of from nothing. Besides the transfers of the players, it is fed with the
+ * throughput of the downloads.
+ */
+public final class BandwidthEstimator implements BandwidthMeter, TransferListener<Object> {
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    private static final String TAG = "BandwidthEstimator";
+
+    private static final String PREFERENCES_NAME = "bandwidth_estimator";
+    private static final String DEFAULT_NETWORK = "default";
+
+    private static final int MAX_WEIGHT = 2000;
+    private static final int ELAPSED_MILLIS_FOR_ESTIMATE = 2000;
+    private static final int BYTES_TRANSFERRED_FOR_ESTIMATE = 512 * 1024;
+
+    /**
+     * Weight of the persisted estimate, the same as a sample of 512 KiB,
+     * so it's outweighed once the network has been measured again
+     */
+    private static final int SEED_WEIGHT = (int) Math.sqrt(BYTES_TRANSFERRED_FOR_ESTIMATE);
+
+    /**
+     * The type of the active network is looked up at most this often
+     */
+    private static final long NETWORK_LOOKUP_INTERVAL_MILLIS = 1000;
+    private static final long PERSIST_INTERVAL_MILLIS = 10000;
+
+    private static BandwidthEstimator instance;
+
+    @Nullable private final ConnectivityManager connectivityManager;
+    @Nullable private final SharedPreferences preferences;
+
+    private final Map<String, Estimate> estimates = new HashMap<>();
+    private Estimate current;
+    private long lastNetworkLookup;
+
+    private int streamCount;
+    private long sampleStartTimeMs;
+    private long sampleBytesTransferred;
+
+    private static class Estimate {
+        final String network;
+        final SlidingPercentile slidingPercentile = new SlidingPercentile(MAX_WEIGHT);
+        long bitrate = NO_ESTIMATE;
+        long totalElapsedTimeMs;
+        long totalBytesTransferred;
+        long lastPersisted;
+
+        Estimate(@NonNull final String network) {
+            this.network = network;
+        }
+    }
+
+    private BandwidthEstimator(@NonNull final Context context) {
+        this((ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE),
+                context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE));
+    }
+
+    /**
+     * @param connectivityManager tells the networks apart, or null to use a single estimate
+     * @param preferences         where the estimates are persisted, or null to not persist them
+     */
+    /* package-private */ BandwidthEstimator(@Nullable final ConnectivityManager connectivityManager,
+                                             @Nullable final SharedPreferences preferences) {
+        this.connectivityManager = connectivityManager;
+        this.preferences = preferences;
+    }
+
+    /**
+     * Set up the estimator, seeding it with the estimates persisted by earlier runs
+     */
+    public static synchronized void init(@NonNull final Context context) {
+        instance = new BandwidthEstimator(context.getApplicationContext());
+    }
+
+    /**
+     * @return the estimator, which isn't persisted and doesn't tell networks apart
+     * if {@link #init(Context)} wasn't called
+     */
+    public static synchronized BandwidthEstimator getInstance() {
+        if (instance == null) instance = new BandwidthEstimator(null, null);
+        return instance;
+    }
+
+    @Override
+    public long getBitrateEstimate() {
+        return getBitrateEstimate(SystemClock.elapsedRealtime());
+    }
+
+    /* package-private */ synchronized long getBitrateEstimate(final long nowMs) {
+        return getCurrent(nowMs).bitrate;
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Transfers
+    //////////////////////////////////////////////////////////////////////////*/
+
+    @Override
+    public void onTransferStart(Object source, DataSpec dataSpec) {
+        onTransferStart();
+    }
+
+    @Override
+    public void onBytesTransferred(Object source, int bytesTransferred) {
+        onBytesTransferred(bytesTransferred);
+    }
+
+    @Override
+    public void onTransferEnd(Object source) {
+        onTransferEnd();
+    }
+
+    public void onTransferStart() {
+        onTransferStart(SystemClock.elapsedRealtime());
+    }
+
+    /* package-private */ synchronized void onTransferStart(final long nowMs) {
+        if (streamCount == 0) {
+            sampleStartTimeMs = nowMs;
+        }
+        streamCount++;
+    }
+
+    public synchronized void onBytesTransferred(final int bytesTransferred) {
+        sampleBytesTransferred += bytesTransferred;
+    }
+
+    public void onTransferEnd() {
+        onTransferEnd(SystemClock.elapsedRealtime());
+    }
+
+    /* package-private */ synchronized void onTransferEnd(final long nowMs) {
+        if (streamCount <= 0) return;
+
+        final int sampleElapsedTimeMs = (int) (nowMs - sampleStartTimeMs);
+        addSample(sampleElapsedTimeMs, sampleBytesTransferred, nowMs);
+
+        if (--streamCount > 0) {
+            sampleStartTimeMs = nowMs;
+        }
+        sampleBytesTransferred = 0;
+    }
+
+    /**
+     * Add the throughput of downloads measured outside of any transfer of the players
+     *
+     * @param elapsedTimeMs    the duration of the measurement
+     * @param bytesTransferred the bytes downloaded in that time
+     */
+    public void onDownloadSample(final long elapsedTimeMs, final long bytesTransferred) {
+        onDownloadSample(elapsedTimeMs, bytesTransferred, SystemClock.elapsedRealtime());
+    }
+
+    /* package-private */ synchronized void onDownloadSample(final long elapsedTimeMs,
+                                                           final long bytesTransferred,
+                                                           final long nowMs) {
+        if (streamCount > 0) return; // overlaps a measured transfer
+        addSample((int) elapsedTimeMs, bytesTransferred, nowMs);
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Estimates
+    //////////////////////////////////////////////////////////////////////////*/
+
+    private void addSample(final int elapsedTimeMs, final long bytesTransferred, final long nowMs) {
+        if (elapsedTimeMs <= 0) return;
+
+        final Estimate estimate = getCurrent(nowMs);
+        estimate.totalElapsedTimeMs += elapsedTimeMs;
+        estimate.totalBytesTransferred += bytesTransferred;
+
+        final float bitsPerSecond = (bytesTransferred * 8000f) / elapsedTimeMs;
+        estimate.slidingPercentile.addSample((int) Math.sqrt(bytesTransferred), bitsPerSecond);
+
+        if (estimate.totalElapsedTimeMs >= ELAPSED_MILLIS_FOR_ESTIMATE
+                || estimate.totalBytesTransferred >= BYTES_TRANSFERRED_FOR_ESTIMATE
+                || estimate.bitrate != NO_ESTIMATE) {
+            final float bitrateEstimateFloat = estimate.slidingPercentile.getPercentile(0.5f);
+            estimate.bitrate = Float.isNaN(bitrateEstimateFloat) ? NO_ESTIMATE : (long) bitrateEstimateFloat;
+            persist(estimate, nowMs);
+        }
+    }
+
+    private void persist(@NonNull final Estimate estimate, final long now) {
+        if (preferences == null || estimate.bitrate == NO_ESTIMATE
+                || now - estimate.lastPersisted < PERSIST_INTERVAL_MILLIS) return;
+
+        estimate.lastPersisted = now;
+        preferences.edit().putLong(estimate.network, estimate.bitrate).apply();
+        if (DEBUG) Log.d(TAG, "persist() called with: network = [" + estimate.network
+                + "], bitrate = [" + estimate.bitrate + "]");
+    }
+
+    @NonNull
+    private Estimate getCurrent(final long now) {
+        if (current != null && now - lastNetworkLookup < NETWORK_LOOKUP_INTERVAL_MILLIS) {
+            return current;
+        }
+        lastNetworkLookup = now;
+
+        final String network = getNetworkType();
+        if (current != null && current.network.equals(network)) return current;
+
+        Estimate estimate = estimates.get(network);
+        if (estimate == null) {
+            estimate = new Estimate(network);
+            seed(estimate);
+            estimates.put(network, estimate);
+        }
+        current = estimate;
+        return current;
+    }
+
+    private void seed(@NonNull final Estimate estimate) {
+        if (preferences == null) return;
+
+        final long bitrate = preferences.getLong(estimate.network, NO_ESTIMATE);
+        if (bitrate <= 0) return;
+
+        estimate.slidingPercentile.addSample(SEED_WEIGHT, bitrate);
+        estimate.bitrate = bitrate;
+        if (DEBUG) Log.d(TAG, "seed() called with: network = [" + estimate.network
+                + "], bitrate = [" + bitrate + "]");
+    }
+
+    /**
+     * @return a key for the kind of network used, e.g. "wifi" or "mobile_13" for LTE
+     */
+    @NonNull
+    private String getNetworkType() {
+        if (connectivityManager == null) return DEFAULT_NETWORK;
+
+        final NetworkInfo info;
+        try {
+            info = connectivityManager.getActiveNetworkInfo();
+        } catch (SecurityException e) {
+            return DEFAULT_NETWORK;
+        }
+        if (info == null) return DEFAULT_NETWORK;
+
+        switch (info.getType()) {
+            case ConnectivityManager.TYPE_WIFI:
+            case ConnectivityManager.TYPE_ETHERNET:
+                return "wifi";
+            case ConnectivityManager.TYPE_MOBILE:
+                return "mobile_" + info.getSubtype();
+            default:
+                return "other_" + info.getType();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.schabi.newpipe.player.helper;
+
+/**
+ * The buffer targets of a {@link LoadController}, adapted to the stalls of the session.
+ * <br><br>
+ * The minimum buffer starts at the preference and only grows after a rebuffer or a slow
+ * start, by {@link #GROWTH_FACTOR} up to the maximum buffer. The buffer needed to resume
+ * after a rebuffer doubles per stall. Every minute without rebuffering lowers both by
+ * {@link #DECAY_FACTOR}, back to the preferences at most.
+ * <br><br>
+ * Not thread safe, except for reading the targets.
+ * */
+/* package-private */ class BufferTargets {
+    /* package-private */ static final float GROWTH_FACTOR = 1.5f;
+    /* package-private */ static final float DECAY_FACTOR = 0.9f;
+
+    /**
+     * The targets are lowered after this long without rebuffering
+     * */
+    /* package-private */ static final long STABLE_PERIOD_MILLIS = 60000;
+    /**
+     * A start slower than this raises the targets like a rebuffer
+     * */
+    /* package-private */ static final long SLOW_STARTUP_MILLIS = 2000;
+    /* package-private */ static final long MAX_RESUME_BUFFER_US = 5000 * 1000L;
+
+    /**
+     * Share of the heap the buffer may use at most
+     * */
+    /* package-private */ static final float MEMORY_SHARE = 0.25f;
+    /* package-private */ static final int MIN_BUFFER_BYTES = 2 * 1024 * 1024;
+
+    private final long initialPlaybackBufferUs;
+    private final long minBufferUs;
+    private final long maxBufferUs;
+
+    private volatile long targetMinBufferUs;
+    private volatile long resumeBufferUs;
+    private long lastAdjustmentMillis;
+
+    /* package-private */ BufferTargets(final long initialPlaybackBufferUs,
+                                        final long minBufferUs,
+                                        final long maxBufferUs,
+                                        final long nowMillis) {
+        this.initialPlaybackBufferUs = initialPlaybackBufferUs;
+        this.minBufferUs = minBufferUs;
+        this.maxBufferUs = Math.max(minBufferUs, maxBufferUs);
+
+        this.targetMinBufferUs = minBufferUs;
+        this.resumeBufferUs = initialPlaybackBufferUs;
+        this.lastAdjustmentMillis = nowMillis;
+    }
+
+    /**
+     * Returns the buffer below which loading always continues.
+     * */
+    /* package-private */ long getMinBufferUs() {
+        return targetMinBufferUs;
+    }
+
+    /**
+     * Returns the buffer above which loading stops.
+     * */
+    /* package-private */ long getMaxBufferUs() {
+        return maxBufferUs;
+    }
+
+    /**
+     * Returns the buffer needed to resume playback after a rebuffer.
+     * */
+    /* package-private */ long getResumeBufferUs() {
+        return resumeBufferUs;
+    }
+
+    /**
+     * Returns whether the targets changed.
+     * */
+    /* package-private */ boolean onStartup(final long latencyMillis, final long nowMillis) {
+        // The network barely delivers faster than playback
+        if (latencyMillis <= SLOW_STARTUP_MILLIS) return false;
+        grow(nowMillis);
+        return true;
+    }
+
+    /* package-private */ void onRebuffer(final long nowMillis) {
+        resumeBufferUs = Math.min(resumeBufferUs * 2, MAX_RESUME_BUFFER_US);
+        grow(nowMillis);
+    }
+
+    /**
+     * Lower the targets if playback was stable for long enough.
+     *
+     * @return whether the targets changed
+     * */
+    /* package-private */ boolean maybeDecay(final long nowMillis) {
+        if (nowMillis - lastAdjustmentMillis < STABLE_PERIOD_MILLIS) return false;
+        lastAdjustmentMillis = nowMillis;
+
+        final long decayed = Math.max((long) (targetMinBufferUs * DECAY_FACTOR), minBufferUs);
+        final long decayedResume = Math.max((long) (resumeBufferUs * DECAY_FACTOR),
+                initialPlaybackBufferUs);
+        if (decayed == targetMinBufferUs && decayedResume == resumeBufferUs) return false;
+
+        targetMinBufferUs = decayed;
+        resumeBufferUs = decayedResume;
+        return true;
+    }
+
+    /**
+     * Don't decay while the player is stalled.
+     * */
+    /* package-private */ void holdDecay(final long nowMillis) {
+        lastAdjustmentMillis = nowMillis;
+    }
+
+    private void grow(final long nowMillis) {
+        targetMinBufferUs = Math.min((long) (targetMinBufferUs * GROWTH_FACTOR), maxBufferUs);
+        lastAdjustmentMillis = nowMillis;
+    }
+
+    /**
+     * Returns the bytes the buffer may take at most, given the state of the heap.
+     *
+     * @param maxMemoryBytes       the size the heap may grow to
+     * @param availableMemoryBytes the heap memory not in use, including the buffer itself
+     * */
+    /* package-private */ static int getMaxBufferBytes(final long maxMemoryBytes,
+                                                       final long availableMemoryBytes) {
+        final long budget = Math.min((long) (maxMemoryBytes * MEMORY_SHARE),
+                availableMemoryBytes / 2);
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(budget, MIN_BUFFER_BYTES));
+    }
+}
@@ -2,6 +2,7 @@ package org.schabi.newpipe.player.helper;
 
 import android.content.Context;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.google.android.exoplayer2.upstream.BandwidthMeter;
@@ -14,7 +15,6 @@ import com.google.android.exoplayer2.upstream.FileDataSource;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.upstream.cache.CacheDataSink;
 import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
-import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
 import com.google.android.exoplayer2.upstream.cache.SimpleCache;
 
 import org.schabi.newpipe.Downloader;
@@ -33,34 +33,62 @@ import java.io.File;
     // Creating cache on every instance may cause problems with multiple players when
     // sources are not ExtractorMediaSource
     // see: https://stackoverflow.com/questions/28700391/using-cache-in-exoplayer
-    // todo: make this a singleton?
     private static SimpleCache cache;
+    private static PinningCacheEvictor evictor;
+
+    private final SimpleCache sharedCache;
+    @Nullable private final CacheDataSource.EventListener eventListener;
 
     public CacheFactory(@NonNull final Context context,
                         @NonNull final String userAgent,
                         @NonNull final TransferListener<? super DataSource> transferListener) {
-        this(context, userAgent, transferListener, PlayerHelper.getPreferredCacheSize(context),
-                PlayerHelper.getPreferredFileSize(context));
+        this(context, userAgent, transferListener, null);
     }
 
-    private CacheFactory(@NonNull final Context context,
-                         @NonNull final String userAgent,
-                         @NonNull final TransferListener<? super DataSource> transferListener,
-                         final long maxCacheSize,
-                         final long maxFileSize) {
-        this.maxFileSize = maxFileSize;
+    public CacheFactory(@NonNull final Context context,
+                        @NonNull final String userAgent,
+                        @NonNull final TransferListener<? super DataSource> transferListener,
+                        @Nullable final CacheDataSource.EventListener eventListener) {
+        this.eventListener = eventListener;
+        this.maxFileSize = PlayerHelper.getPreferredFileSize(context);
 
         dataSourceFactory = new DefaultDataSourceFactory(context, userAgent, transferListener);
-        cacheDir = new File(context.getExternalCacheDir(), CACHE_FOLDER_NAME);
-        if (!cacheDir.exists()) {
-            //noinspection ResultOfMethodCallIgnored
-            cacheDir.mkdir();
-        }
+        cacheDir = getCacheDir(context);
+        sharedCache = getCache(context);
+    }
 
+    /**
+     * Returns the cache shared by all players and the prefetching.
+     * */
+    @NonNull
+    /* package-private */ static synchronized SimpleCache getCache(@NonNull final Context context) {
         if (cache == null) {
-            final LeastRecentlyUsedCacheEvictor evictor = new LeastRecentlyUsedCacheEvictor(maxCacheSize);
+            final File cacheDir = getCacheDir(context);
+            if (!cacheDir.exists()) {
+                //noinspection ResultOfMethodCallIgnored
+                cacheDir.mkdir();
+            }
+
+            evictor = new PinningCacheEvictor(context.getApplicationContext(),
+                    PlayerHelper.getPreferredCacheSize(context),
+                    PlayerHelper.getPreferredPinnedCacheSize(context));
             cache = new SimpleCache(cacheDir, evictor);
         }
+        return cache;
+    }
+
+    /**
+     * Returns the evictor of the {@link #getCache(Context) cache}, which pins content.
+     * */
+    @NonNull
+    /* package-private */ static synchronized PinningCacheEvictor getEvictor(@NonNull final Context context) {
+        getCache(context);
+        return evictor;
+    }
+
+    @NonNull
+    private static File getCacheDir(@NonNull final Context context) {
+        return new File(context.getExternalCacheDir(), CACHE_FOLDER_NAME);
     }
 
     @Override
@@ -69,9 +97,10 @@ import java.io.File;
 
         final DefaultDataSource dataSource = dataSourceFactory.createDataSource();
         final FileDataSource fileSource = new FileDataSource();
-        final CacheDataSink dataSink = new CacheDataSink(cache, maxFileSize);
+        final CacheDataSink dataSink = new CacheDataSink(sharedCache, maxFileSize);
 
-        return new CacheDataSource(cache, dataSource, fileSource, dataSink, CACHE_FLAGS, null);
+        return new CacheDataSource(sharedCache, dataSource, fileSource, dataSink, CACHE_FLAGS,
+                eventListener);
     }
 
     public void tryDeleteCacheFiles() {
@@ -0,0 +1,37 @@
+package org.schabi.newpipe.player.helper;
+
+import android.support.annotation.NonNull;
+
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+
+import us.shandian.giga.get.BandwidthLimiter;
+
+/**
+ * Reports the bytes loaded by the player to the {@link BandwidthLimiter},
+ * so background downloads make room for playback.
+ */
+/* package-private */ class ForegroundTransferListener implements TransferListener<DataSource> {
+    private final TransferListener<? super DataSource> listener;
+
+    public ForegroundTransferListener(@NonNull final TransferListener<? super DataSource> listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void onTransferStart(DataSource source, DataSpec dataSpec) {
+        listener.onTransferStart(source, dataSpec);
+    }
+
+    @Override
+    public void onBytesTransferred(DataSource source, int bytesTransferred) {
+        BandwidthLimiter.getInstance().onForegroundTransfer(bytesTransferred);
+        listener.onBytesTransferred(source, bytesTransferred);
+    }
+
+    @Override
+    public void onTransferEnd(DataSource source) {
+        listener.onTransferEnd(source);
+    }
+}
@@ -1,25 +1,55 @@
 package org.schabi.newpipe.player.helper;
 
 import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
 
 import com.google.android.exoplayer2.C;
-import com.google.android.exoplayer2.DefaultLoadControl;
 import com.google.android.exoplayer2.LoadControl;
 import com.google.android.exoplayer2.Renderer;
 import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
 import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.Util;
+
+import org.schabi.newpipe.BuildConfig;
 
 import static com.google.android.exoplayer2.DefaultLoadControl.DEFAULT_PRIORITIZE_TIME_OVER_SIZE_THRESHOLDS;
-import static com.google.android.exoplayer2.DefaultLoadControl.DEFAULT_TARGET_BUFFER_BYTES;
 
+/**
+ * Load control which buffers like a {@link com.google.android.exoplayer2.DefaultLoadControl}
+ * until the session stalls.
+ * <br><br>
+ * Without stalls the player buffers between {@link PlayerHelper#getPlaybackMinimumBufferMs(Context)}
+ * and {@link PlayerHelper#getPlaybackOptimalBufferMs(Context)}, with time prioritized over the
+ * size of the buffer. Every rebuffer and every slow start raise the minimum buffer and the
+ * buffer needed to resume, and they decay back after playback was stable for a while, see
+ * {@link BufferTargets}. The size of the buffer is capped by the memory available to the app.
+ * <br><br>
+ * The load control is called on the playback thread, the metrics may be read on any thread.
+ * */
 public class LoadController implements LoadControl {
 
     public static final String TAG = "LoadController";
+    private static final boolean DEBUG = BuildConfig.DEBUG;
 
+    private final DefaultAllocator allocator;
+    private final BufferTargets targets;
     private final long initialPlaybackBufferUs;
-    private final LoadControl internalLoadControl;
+    private final boolean prioritizeTimeOverSizeThresholds;
+
+    private volatile int targetBufferBytes;
+
+    private boolean isLoading;
+    private boolean isRebuffering;
+    private long startupTimestamp = -1;
+    private long rebufferTimestamp = -1;
+
+    private volatile int rebufferCount;
+    private volatile long rebufferMillis;
+    private volatile long startupLatencyMillis = -1;
+    private volatile long availableMemoryBytes;
 
     /*//////////////////////////////////////////////////////////////////////////
     // Default Load Control
@@ -34,17 +64,14 @@ public class LoadController implements LoadControl {
     private LoadController(final int initialPlaybackBufferMs,
                            final int minimumPlaybackbufferMs,
                            final int optimalPlaybackBufferMs) {
-        this.initialPlaybackBufferUs = initialPlaybackBufferMs * 1000;
-
-        final DefaultAllocator allocator = new DefaultAllocator(true,
-                C.DEFAULT_BUFFER_SEGMENT_SIZE);
+        this.initialPlaybackBufferUs = initialPlaybackBufferMs * 1000L;
+        this.targets = new BufferTargets(initialPlaybackBufferUs,
+                minimumPlaybackbufferMs * 1000L, optimalPlaybackBufferMs * 1000L,
+                SystemClock.elapsedRealtime());
+        this.prioritizeTimeOverSizeThresholds = DEFAULT_PRIORITIZE_TIME_OVER_SIZE_THRESHOLDS;
 
-        internalLoadControl = new DefaultLoadControl(allocator,
-                /*minBufferMs=*/minimumPlaybackbufferMs,
-                /*maxBufferMs=*/optimalPlaybackBufferMs,
-                /*bufferForPlaybackMs=*/initialPlaybackBufferMs,
-                /*bufferForPlaybackAfterRebufferMs=*/initialPlaybackBufferMs,
-                DEFAULT_TARGET_BUFFER_BYTES, DEFAULT_PRIORITIZE_TIME_OVER_SIZE_THRESHOLDS);
+        allocator = new DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+        targetBufferBytes = updateMemory();
     }
 
     /*//////////////////////////////////////////////////////////////////////////
@@ -53,52 +80,188 @@ public class LoadController implements LoadControl {
 
     @Override
     public void onPrepared() {
-        internalLoadControl.onPrepared();
+        reset(false);
+        startupTimestamp = SystemClock.elapsedRealtime();
     }
 
     @Override
     public void onTracksSelected(Renderer[] renderers, TrackGroupArray trackGroupArray,
                                  TrackSelectionArray trackSelectionArray) {
-        internalLoadControl.onTracksSelected(renderers, trackGroupArray, trackSelectionArray);
+        final int maxBufferBytes = updateMemory();
+
+        int trackBufferBytes = 0;
+        for (int i = 0; i < renderers.length; i++) {
+            if (trackSelectionArray.get(i) != null) {
+                trackBufferBytes += Util.getDefaultBufferSize(renderers[i].getTrackType());
+            }
+        }
+        targetBufferBytes = Math.min(trackBufferBytes, maxBufferBytes);
+        allocator.setTargetBufferSize(targetBufferBytes);
     }
 
     @Override
     public void onStopped() {
-        internalLoadControl.onStopped();
+        reset(true);
     }
 
     @Override
     public void onReleased() {
-        internalLoadControl.onReleased();
+        reset(true);
     }
 
     @Override
     public Allocator getAllocator() {
-        return internalLoadControl.getAllocator();
+        return allocator;
     }
 
     @Override
     public long getBackBufferDurationUs() {
-        return internalLoadControl.getBackBufferDurationUs();
+        return 0;
     }
 
     @Override
     public boolean retainBackBufferFromKeyframe() {
-        return internalLoadControl.retainBackBufferFromKeyframe();
+        return false;
     }
 
     @Override
     public boolean shouldContinueLoading(long bufferedDurationUs, float playbackSpeed) {
-        return internalLoadControl.shouldContinueLoading(bufferedDurationUs, playbackSpeed);
+        final long now = SystemClock.elapsedRealtime();
+        if (isRebuffering) {
+            targets.holdDecay(now);
+        } else if (targets.maybeDecay(now)) {
+            logTargets();
+        }
+
+        final long minBufferUs = targets.getMinBufferUs();
+        final long maxBufferUs = targets.getMaxBufferUs();
+        final boolean isSizeReached = allocator.getTotalBytesAllocated() >= targetBufferBytes;
+        if (prioritizeTimeOverSizeThresholds) {
+            isLoading = bufferedDurationUs < minBufferUs
+                    || (bufferedDurationUs <= maxBufferUs && isLoading && !isSizeReached);
+        } else {
+            isLoading = !isSizeReached && (bufferedDurationUs < minBufferUs
+                    || (bufferedDurationUs <= maxBufferUs && isLoading));
+        }
+        return isLoading;
     }
 
     @Override
     public boolean shouldStartPlayback(long bufferedDurationUs, float playbackSpeed,
                                        boolean rebuffering) {
-        final boolean isInitialPlaybackBufferFilled = bufferedDurationUs >=
-                this.initialPlaybackBufferUs * playbackSpeed;
-        final boolean isInternalStartingPlayback = internalLoadControl.shouldStartPlayback(
-                bufferedDurationUs, playbackSpeed, rebuffering);
-        return isInitialPlaybackBufferFilled || isInternalStartingPlayback;
+        if (rebuffering && !isRebuffering) onRebuffer();
+        isRebuffering = rebuffering;
+
+        final long playoutDurationUs = (long) (bufferedDurationUs / Math.max(playbackSpeed, 0.1f));
+        final long requiredUs = rebuffering ? targets.getResumeBufferUs() : initialPlaybackBufferUs;
+        final boolean shouldStart = playoutDurationUs >= requiredUs
+                || (!prioritizeTimeOverSizeThresholds
+                        && allocator.getTotalBytesAllocated() >= targetBufferBytes);
+
+        if (shouldStart) {
+            if (isRebuffering && rebufferTimestamp != -1) {
+                rebufferMillis += SystemClock.elapsedRealtime() - rebufferTimestamp;
+            }
+            rebufferTimestamp = -1;
+            isRebuffering = false;
+            if (startupTimestamp != -1) onStartup();
+        }
+        return shouldStart;
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Tuning
+    //////////////////////////////////////////////////////////////////////////*/
+
+    private void onStartup() {
+        final long now = SystemClock.elapsedRealtime();
+        final long latency = now - startupTimestamp;
+        startupTimestamp = -1;
+        startupLatencyMillis = latency;
+        if (DEBUG) Log.d(TAG, "onStartup() called with: latency = [" + latency + "ms]");
+
+        if (targets.onStartup(latency, now)) logTargets();
+    }
+
+    private void onRebuffer() {
+        rebufferCount++;
+        rebufferTimestamp = SystemClock.elapsedRealtime();
+        if (DEBUG) Log.d(TAG, "onRebuffer() called with: count = [" + rebufferCount + "]");
+
+        targets.onRebuffer(rebufferTimestamp);
+        logTargets();
+    }
+
+    /**
+     * Returns the bytes the buffer may take at most.
+     * */
+    private int updateMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+        final long maxMemory = runtime.maxMemory();
+        final long used = runtime.totalMemory() - runtime.freeMemory();
+        // The buffer itself is part of the used memory
+        availableMemoryBytes = maxMemory - used + allocator.getTotalBytesAllocated();
+        return BufferTargets.getMaxBufferBytes(maxMemory, availableMemoryBytes);
+    }
+
+    private void reset(final boolean resetAllocator) {
+        isLoading = false;
+        isRebuffering = false;
+        startupTimestamp = -1;
+        rebufferTimestamp = -1;
+        if (resetAllocator) allocator.reset();
+    }
+
+    private void logTargets() {
+        if (DEBUG) Log.d(TAG, "Targets changed: minimum = [" + targets.getMinBufferUs() / 1000 +
+                "ms], resume = [" + targets.getResumeBufferUs() / 1000 + "ms], bytes = [" +
+                targetBufferBytes + "]");
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Metrics
+    //////////////////////////////////////////////////////////////////////////*/
+
+    /**
+     * Returns the number of times playback stalled for buffering in this session.
+     * */
+    public int getRebufferCount() {
+        return rebufferCount;
+    }
+
+    /**
+     * Returns the total time playback stalled for buffering in this session.
+     * */
+    public long getRebufferMillis() {
+        return rebufferMillis;
+    }
+
+    /**
+     * Returns the time from preparing the player to starting playback,
+     * or -1 if nothing started yet.
+     * */
+    public long getStartupLatencyMillis() {
+        return startupLatencyMillis;
+    }
+
+    /**
+     * Returns the heap memory available when the latest tracks were selected.
+     * */
+    public long getAvailableMemoryBytes() {
+        return availableMemoryBytes;
+    }
+
+    /**
+     * Returns the duration below which the player always keeps buffering.
+     * */
+    public long getTargetBufferMs() {
+        return targets.getMinBufferUs() / 1000;
+    }
+
+    /**
+     * Returns the bytes the player buffers up to, unless it's below the minimum duration.
+     * */
+    public int getTargetBufferBytes() {
+        return targetBufferBytes;
     }
 }
@@ -0,0 +1,127 @@
+package org.schabi.newpipe.player.helper;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.v4.net.ConnectivityManagerCompat;
+
+/**
+ * Decides how far ahead of the current play queue item the player prepares streams.
+ * <p>
+ * The user sets the number of items to extract ahead of time. Of these, the first
+ * {@link #WARM_UP_ITEMS} also get the start of their stream cached. Both are reduced on
+ * metered networks, in power save mode and on low battery, so the lookahead never costs
+ * more than the playback itself.
+ */
+public class LookaheadPolicy {
+    /**
+     * Items after the current one whose streams are cached, not only extracted
+     */
+    public static final int WARM_UP_ITEMS = 1;
+
+    /* package-private */ static final long UNMETERED_WARM_UP_BYTES = 1024 * 1024;
+    /* package-private */ static final long METERED_WARM_UP_BYTES = 256 * 1024;
+
+    private static final int LOW_BATTERY_PERCENT = 15;
+
+    /**
+     * The state of the device is looked up at most this often
+     */
+    private static final long STATE_LOOKUP_INTERVAL_MILLIS = 30000;
+
+    @NonNull private final Context context;
+    @NonNull private final ConnectivityManager connectivityManager;
+
+    private long lastLookup = -1;
+    private int itemCount;
+    private long warmUpBytes;
+
+    public LookaheadPolicy(@NonNull final Context context) {
+        this.context = context.getApplicationContext();
+        this.connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    /**
+     * @return the number of items after the current one to extract ahead of time
+     * */
+    public synchronized int getItemCount() {
+        update();
+        return itemCount;
+    }
+
+    /**
+     * @return the bytes to cache of the streams of the first {@link #WARM_UP_ITEMS} items
+     * after the current one, 0 to not cache anything
+     * */
+    public synchronized long getWarmUpBytes() {
+        update();
+        return warmUpBytes;
+    }
+
+    private void update() {
+        final long now = SystemClock.elapsedRealtime();
+        if (lastLookup != -1 && now - lastLookup < STATE_LOOKUP_INTERVAL_MILLIS) return;
+        lastLookup = now;
+
+        final NetworkInfo network = connectivityManager.getActiveNetworkInfo();
+        final boolean isAvailable = network != null && network.isConnected() && !isBatteryLow();
+        final boolean isPowerSaveMode = isAvailable && isPowerSaveMode();
+        final boolean isMetered = isAvailable
+                && ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager);
+
+        itemCount = getItemCount(PlayerHelper.getLookaheadSize(context), isAvailable,
+                isPowerSaveMode, isMetered);
+        warmUpBytes = getWarmUpBytes(itemCount, isPowerSaveMode, isMetered);
+    }
+
+    /**
+     * @param preferredItemCount the number of items the user wants to be extracted ahead
+     * @param isAvailable        whether there is a network and enough battery to use it
+     */
+    /* package-private */ static int getItemCount(final int preferredItemCount,
+                                                  final boolean isAvailable,
+                                                  final boolean isPowerSaveMode,
+                                                  final boolean isMetered) {
+        if (!isAvailable) return 0;
+        if (isPowerSaveMode || isMetered) return Math.min(preferredItemCount, 1);
+        return preferredItemCount;
+    }
+
+    /**
+     * @param itemCount the number of items extracted ahead, see
+     *                  {@link #getItemCount(int, boolean, boolean, boolean)}
+     */
+    /* package-private */ static long getWarmUpBytes(final int itemCount,
+                                                     final boolean isPowerSaveMode,
+                                                     final boolean isMetered) {
+        if (itemCount == 0 || isPowerSaveMode) return 0;
+        return isMetered ? METERED_WARM_UP_BYTES : UNMETERED_WARM_UP_BYTES;
+    }
+
+    private boolean isBatteryLow() {
+        // Sticky broadcast, no receiver is registered
+        final Intent battery = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery == null) return false;
+
+        final int plugged = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
+        final int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        final int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        return plugged == 0 && level >= 0 && scale > 0 && level * 100 / scale < LOW_BATTERY_PERCENT;
+    }
+
+    private boolean isPowerSaveMode() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) return false;
+
+        final PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        return powerManager != null && powerManager.isPowerSaveMode();
+    }
+}
@@ -0,0 +1,257 @@
+package org.schabi.newpipe.player.helper;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.net.Uri;
+import android.os.Build;
+import android.os.PowerManager;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.util.Log;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+
+import org.schabi.newpipe.BuildConfig;
+import org.schabi.newpipe.Downloader;
+import org.schabi.newpipe.extractor.stream.StreamInfo;
+import org.schabi.newpipe.player.BasePlayer;
+import org.schabi.newpipe.playlist.PlayQueue;
+import org.schabi.newpipe.playlist.PlayQueueItem;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+
+import io.reactivex.Completable;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.SerialDisposable;
+import io.reactivex.schedulers.Schedulers;
+import us.shandian.giga.get.BandwidthLimiter;
+
+/**
+ * Downloads the streams of the upcoming items of a play queue completely into the player
+ * cache, so they play without a network, e.g. when listening in the background on the go.
+ * <p>
+ * The prefetched content is pinned in the cache. It has its own quota, so streaming doesn't
+ * evict it, and items further down the queue are evicted first. Prefetching only runs on
+ * unmetered networks outside of power save mode and pauses while the player is loading.
+ * When it wasn't allowed to run, it starts once the network or power save mode changes.
+ * The content is unpinned when the prefetcher is disposed, it then stays in the cache
+ * until it's evicted like streamed content.
+ */
+public class MediaPrefetcher {
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    private static final String TAG = "MediaPrefetcher";
+
+    /**
+     * Upcoming items to prefetch at most
+     */
+    private static final int MAX_ITEMS = 10;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Wait this long before checking again whether the player is still loading
+     */
+    private static final long FOREGROUND_BACKOFF_MILLIS = 1000;
+
+    /**
+     * All prefetchers share a thread, so only one stream is prefetched at a time
+     */
+    @NonNull private final static Scheduler PREFETCH_SCHEDULER =
+            Schedulers.from(Executors.newSingleThreadExecutor());
+
+    @NonNull private final Context context;
+    @NonNull private final BasePlayer player;
+    @NonNull private final ConnectivityManager connectivityManager;
+
+    @NonNull private final SimpleCache cache;
+    @NonNull private final PinningCacheEvictor evictor;
+    @NonNull private final DataSource.Factory dataSourceFactory;
+
+    @NonNull private final SerialDisposable prefetchReactor = new SerialDisposable();
+    @NonNull private final BroadcastReceiver conditionReceiver;
+
+    @Nullable private PlayQueue playQueue;
+    private volatile boolean isWaitingForConditions;
+
+    public MediaPrefetcher(@NonNull final Context context, @NonNull final BasePlayer player) {
+        this.context = context.getApplicationContext();
+        this.player = player;
+        this.connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+
+        this.cache = CacheFactory.getCache(context);
+        this.evictor = CacheFactory.getEvictor(context);
+        // Not a foreground transfer, so it doesn't slow down downloads
+        this.dataSourceFactory = new CacheFactory(context, Downloader.USER_AGENT,
+                BandwidthEstimator.getInstance());
+
+        this.conditionReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                onConditionsChanged();
+            }
+        };
+        final IntentFilter filter = new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+        }
+        this.context.registerReceiver(conditionReceiver, filter);
+    }
+
+    /**
+     * Prefetch the items after the current one of the play queue, replacing the
+     * prefetching of an earlier state of the queue. Must be called on the main thread.
+     * */
+    public void update(@NonNull final PlayQueue playQueue) {
+        this.playQueue = playQueue;
+        isWaitingForConditions = false;
+
+        final List<PlayQueueItem> upcoming = new ArrayList<>(MAX_ITEMS);
+        final int end = Math.min(playQueue.size(), playQueue.getIndex() + 1 + MAX_ITEMS);
+        for (int i = playQueue.getIndex() + 1; i < end; i++) {
+            upcoming.add(playQueue.getItem(i));
+        }
+
+        prefetchReactor.set(Completable.fromAction(() -> prefetch(upcoming))
+                .subscribeOn(PREFETCH_SCHEDULER)
+                .subscribe(() -> {}, error -> Log.w(TAG, "Prefetching stopped", error)));
+    }
+
+    /**
+     * Stop prefetching and unpin the prefetched content. Must be called on the main thread.
+     * */
+    public void dispose() {
+        context.unregisterReceiver(conditionReceiver);
+        playQueue = null;
+        prefetchReactor.dispose();
+
+        // Runs after the prefetching was interrupted, the scheduler has a single thread
+        Completable.fromAction(this::unpinAll)
+                .subscribeOn(PREFETCH_SCHEDULER)
+                .subscribe(() -> {}, error -> Log.w(TAG, "Unable to unpin", error));
+    }
+
+    private void onConditionsChanged() {
+        if (playQueue == null || !isWaitingForConditions || !canPrefetch()) return;
+        if (DEBUG) Log.d(TAG, "onConditionsChanged() called, resuming prefetching");
+        update(playQueue);
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Prefetching
+    //////////////////////////////////////////////////////////////////////////*/
+
+    private void prefetch(@NonNull final List<PlayQueueItem> upcoming)
+            throws IOException, InterruptedException {
+        if (!canPrefetch()) {
+            isWaitingForConditions = true;
+            return;
+        }
+
+        // Earlier items are more valuable, evict the later ones first
+        final Map<String, Uri> streams = new LinkedHashMap<>();
+        final Map<String, Integer> priorities = new LinkedHashMap<>();
+        for (int i = 0; i < upcoming.size(); i++) {
+            final PlayQueueItem item = upcoming.get(i);
+            final StreamInfo info;
+            try {
+                info = item.getStream().blockingGet();
+            } catch (Exception e) {
+                if (Thread.interrupted()) throw new InterruptedException();
+                if (DEBUG) Log.d(TAG, "Unable to extract [" + item.getUrl() + "]", e);
+                continue;
+            }
+
+            for (final Map.Entry<String, Uri> stream : player.progressiveStreamsOf(info).entrySet()) {
+                if (streams.containsKey(stream.getKey())) continue;
+                streams.put(stream.getKey(), stream.getValue());
+                priorities.put(stream.getKey(), upcoming.size() - i);
+            }
+        }
+
+        synchronized (cache) {
+            final Set<String> stale = new HashSet<>(evictor.getPinnedKeys());
+            stale.removeAll(streams.keySet());
+            for (final String key : stale) evictor.unpin(cache, key);
+
+            for (final Map.Entry<String, Integer> priority : priorities.entrySet()) {
+                evictor.pin(cache, priority.getKey(), priority.getValue());
+            }
+        }
+
+        for (final Map.Entry<String, Uri> stream : streams.entrySet()) {
+            if (!canPrefetch()) {
+                isWaitingForConditions = true;
+                return;
+            }
+            synchronized (cache) {
+                // Any further stream would only evict one that's needed sooner
+                if (evictor.getPinnedSize() >= evictor.getMaxPinnedSize()) return;
+                if (isCached(stream.getKey())) continue;
+            }
+
+            if (DEBUG) Log.d(TAG, "prefetch() called with: cacheKey = [" + stream.getKey() + "]");
+            download(stream.getValue(), stream.getKey());
+        }
+    }
+
+    private void download(@NonNull final Uri uri, @NonNull final String cacheKey)
+            throws IOException, InterruptedException {
+        final DataSource source = dataSourceFactory.createDataSource();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            source.open(new DataSpec(uri, 0, C.LENGTH_UNSET, cacheKey));
+            while (true) {
+                // Leave the network to the player while it's loading
+                while (BandwidthLimiter.getInstance().isForegroundActive()) {
+                    Thread.sleep(FOREGROUND_BACKOFF_MILLIS);
+                }
+                if (Thread.interrupted()) throw new InterruptedException();
+
+                if (source.read(buffer, 0, buffer.length) == C.RESULT_END_OF_INPUT) break;
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    private void unpinAll() {
+        synchronized (cache) {
+            for (final String key : evictor.getPinnedKeys()) evictor.unpin(cache, key);
+        }
+    }
+
+    /**
+     * Must be called holding the lock of the cache
+     * */
+    private boolean isCached(@NonNull final String cacheKey) {
+        final long length = cache.getContentLength(cacheKey);
+        return length != C.LENGTH_UNSET && cache.getCachedLength(cacheKey, 0, length) >= length;
+    }
+
+    private boolean canPrefetch() {
+        final NetworkInfo network = connectivityManager.getActiveNetworkInfo();
+        if (network == null || !network.isConnected()
+                || ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager)) {
+            return false;
+        }
+
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) return true;
+        final PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        return powerManager == null || !powerManager.isPowerSaveMode();
+    }
+}
@@ -37,4 +37,13 @@ public class MediaSessionManager {
     public KeyEvent handleMediaButtonIntent(final Intent intent) {
         return MediaButtonReceiver.handleIntent(mediaSession, intent);
     }
+
+    /**
+     * Detach the session from the player, which may live on in another player.
+     * */
+    public void dispose() {
+        sessionConnector.setPlayer(null, null);
+        mediaSession.setActive(false);
+        mediaSession.release();
+    }
 }
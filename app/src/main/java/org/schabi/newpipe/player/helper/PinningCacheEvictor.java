@@ -0,0 +1,210 @@
+package org.schabi.newpipe.player.helper;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.CacheSpan;
+
+import org.schabi.newpipe.BuildConfig;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Evicts the player cache in two pools with separate quotas.
+ * <p>
+ * Content streamed by the player is evicted least recently used first, as by
+ * {@link com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor}.
+ * Content which is pinned, i.e. prefetched for later playback, doesn't count towards that
+ * quota and is kept until its own quota is exceeded. Then the pinned content with the lowest
+ * priority is evicted first. The pins are persisted, so they survive the process.
+ * <p>
+ * The pins have to be changed while holding the lock of the cache, like all callbacks
+ * of the evictor are made, see {@link #pin(Cache, String, int)}.
+ */
+/* package-private */ class PinningCacheEvictor implements CacheEvictor {
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    private static final String TAG = "PinningCacheEvictor";
+
+    private static final String PREFERENCES_NAME = "media_cache_pins";
+
+    private final long maxBytes;
+    private final long maxPinnedBytes;
+    @NonNull private final SharedPreferences pins;
+
+    @NonNull private final TreeSet<CacheSpan> spans;
+    @NonNull private final TreeSet<CacheSpan> pinnedSpans;
+    private long currentSize;
+    private long currentPinnedSize;
+
+    /**
+     * @param maxBytes       quota of the content streamed by the player
+     * @param maxPinnedBytes quota of the pinned content
+     */
+    PinningCacheEvictor(@NonNull final Context context, final long maxBytes,
+                        final long maxPinnedBytes) {
+        this(context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE), maxBytes,
+                maxPinnedBytes);
+    }
+
+    /**
+     * @param pins where the pins are persisted
+     */
+    PinningCacheEvictor(@NonNull final SharedPreferences pins, final long maxBytes,
+                        final long maxPinnedBytes) {
+        this.maxBytes = maxBytes;
+        this.maxPinnedBytes = maxPinnedBytes;
+        this.pins = pins;
+
+        final Comparator<CacheSpan> leastRecentlyUsed = (lhs, rhs) -> {
+            if (lhs.lastAccessTimestamp != rhs.lastAccessTimestamp) {
+                return lhs.lastAccessTimestamp < rhs.lastAccessTimestamp ? -1 : 1;
+            }
+            return lhs.compareTo(rhs);
+        };
+        this.spans = new TreeSet<>(leastRecentlyUsed);
+        this.pinnedSpans = new TreeSet<>((lhs, rhs) -> {
+            final int lhsPriority = getPriority(lhs.key);
+            final int rhsPriority = getPriority(rhs.key);
+            if (lhsPriority != rhsPriority) return lhsPriority < rhsPriority ? -1 : 1;
+            return leastRecentlyUsed.compare(lhs, rhs);
+        });
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Pins
+    //////////////////////////////////////////////////////////////////////////*/
+
+    /**
+     * Pin the content with the given key, or change its priority if it's already pinned.
+     * Must be called holding the lock of the cache.
+     *
+     * @param priority pinned content with a lower priority is evicted first
+     */
+    void pin(@NonNull final Cache cache, @NonNull final String key, final int priority) {
+        if (isPinned(key) && getPriority(key) == priority) return;
+
+        final List<CacheSpan> keySpans = removeSpans(cache, key);
+        pins.edit().putInt(key, priority).apply();
+        for (final CacheSpan span : keySpans) onSpanAdded(cache, span);
+    }
+
+    /**
+     * Return the content with the given key to the pool of streamed content.
+     * Must be called holding the lock of the cache.
+     */
+    void unpin(@NonNull final Cache cache, @NonNull final String key) {
+        if (!isPinned(key)) return;
+
+        final List<CacheSpan> keySpans = removeSpans(cache, key);
+        pins.edit().remove(key).apply();
+        for (final CacheSpan span : keySpans) onSpanAdded(cache, span);
+    }
+
+    /**
+     * Returns the keys of all pinned content.
+     */
+    @NonNull
+    List<String> getPinnedKeys() {
+        return new ArrayList<>(pins.getAll().keySet());
+    }
+
+    boolean isPinned(@NonNull final String key) {
+        return pins.contains(key);
+    }
+
+    long getPinnedSize() {
+        return currentPinnedSize;
+    }
+
+    long getMaxPinnedSize() {
+        return maxPinnedBytes;
+    }
+
+    private int getPriority(@NonNull final String key) {
+        return pins.getInt(key, 0);
+    }
+
+    @NonNull
+    private List<CacheSpan> removeSpans(@NonNull final Cache cache, @NonNull final String key) {
+        final List<CacheSpan> keySpans = new ArrayList<>(cache.getCachedSpans(key));
+        for (final CacheSpan span : keySpans) onSpanRemoved(cache, span);
+        return keySpans;
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Evictor
+    //////////////////////////////////////////////////////////////////////////*/
+
+    @Override
+    public void onCacheInitialized() {
+        // Do nothing.
+    }
+
+    @Override
+    public void onStartFile(Cache cache, String key, long position, long length) {
+        if (isPinned(key)) {
+            evictPinned(cache, length);
+        } else {
+            evict(cache, length);
+        }
+    }
+
+    @Override
+    public void onSpanAdded(Cache cache, CacheSpan span) {
+        if (isPinned(span.key)) {
+            pinnedSpans.add(span);
+            currentPinnedSize += span.length;
+            evictPinned(cache, 0);
+        } else {
+            spans.add(span);
+            currentSize += span.length;
+            evict(cache, 0);
+        }
+    }
+
+    @Override
+    public void onSpanRemoved(Cache cache, CacheSpan span) {
+        if (pinnedSpans.remove(span)) {
+            currentPinnedSize -= span.length;
+        } else if (spans.remove(span)) {
+            currentSize -= span.length;
+        }
+    }
+
+    @Override
+    public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+        onSpanRemoved(cache, oldSpan);
+        onSpanAdded(cache, newSpan);
+    }
+
+    private void evict(@NonNull final Cache cache, final long requiredSpace) {
+        while (currentSize + requiredSpace > maxBytes && !spans.isEmpty()) {
+            removeSpan(cache, spans.first());
+        }
+    }
+
+    private void evictPinned(@NonNull final Cache cache, final long requiredSpace) {
+        while (currentPinnedSize + requiredSpace > maxPinnedBytes && !pinnedSpans.isEmpty()) {
+            final CacheSpan span = pinnedSpans.first();
+            if (DEBUG) Log.d(TAG, "evictPinned() called with: key = [" + span.key + "]");
+            removeSpan(cache, span);
+        }
+    }
+
+    private void removeSpan(@NonNull final Cache cache, @NonNull final CacheSpan span) {
+        try {
+            cache.removeSpan(span);
+        } catch (Cache.CacheException e) {
+            // Not removed from the cache, but don't try again
+            Log.w(TAG, "Unable to remove " + span.key, e);
+            onSpanRemoved(cache, span);
+        }
+    }
+}
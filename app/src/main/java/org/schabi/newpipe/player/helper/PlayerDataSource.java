@@ -1,8 +1,11 @@
 package org.schabi.newpipe.player.helper;
 
 import android.content.Context;
+import android.net.Uri;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.source.ExtractorMediaSource;
 import com.google.android.exoplayer2.source.SingleSampleMediaSource;
 import com.google.android.exoplayer2.source.dash.DashMediaSource;
@@ -11,22 +14,43 @@ import com.google.android.exoplayer2.source.hls.HlsMediaSource;
 import com.google.android.exoplayer2.source.smoothstreaming.DefaultSsChunkSource;
 import com.google.android.exoplayer2.source.smoothstreaming.SsMediaSource;
 import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
 import com.google.android.exoplayer2.upstream.TransferListener;
 
+import org.schabi.newpipe.player.metrics.MetricsCollector;
+
+import java.io.IOException;
+
 public class PlayerDataSource {
     private static final int MANIFEST_MINIMUM_RETRY = 5;
     private static final int EXTRACTOR_MINIMUM_RETRY = Integer.MAX_VALUE;
     private static final int LIVE_STREAM_EDGE_GAP_MILLIS = 10000;
+    private static final int WARM_UP_BUFFER_SIZE = 16 * 1024;
 
     private final DataSource.Factory cacheDataSourceFactory;
     private final DataSource.Factory cachelessDataSourceFactory;
+    private final DataSource.Factory warmUpDataSourceFactory;
 
     public PlayerDataSource(@NonNull final Context context,
                             @NonNull final String userAgent,
                             @NonNull final TransferListener<? super DataSource> transferListener) {
-        cacheDataSourceFactory = new CacheFactory(context, userAgent, transferListener);
-        cachelessDataSourceFactory = new DefaultDataSourceFactory(context, userAgent, transferListener);
+        this(context, userAgent, transferListener, null);
+    }
+
+    public PlayerDataSource(@NonNull final Context context,
+                            @NonNull final String userAgent,
+                            @NonNull final TransferListener<? super DataSource> transferListener,
+                            @Nullable final MetricsCollector metricsCollector) {
+        // Playback traffic takes precedence over downloads
+        final TransferListener<? super DataSource> foregroundListener =
+                new ForegroundTransferListener(metricsCollector == null ? transferListener :
+                        metricsCollector.observeNetwork(transferListener));
+        cacheDataSourceFactory = new CacheFactory(context, userAgent, foregroundListener,
+                metricsCollector);
+        cachelessDataSourceFactory = new DefaultDataSourceFactory(context, userAgent, foregroundListener);
+        // Reading ahead is background traffic, it must not hold back downloads
+        warmUpDataSourceFactory = new CacheFactory(context, userAgent, transferListener);
     }
 
     public SsMediaSource.Factory getLiveSsMediaSourceFactory() {
@@ -75,4 +99,28 @@ public class PlayerDataSource {
     public SingleSampleMediaSource.Factory getSampleMediaSourceFactory() {
         return new SingleSampleMediaSource.Factory(cacheDataSourceFactory);
     }
+
+    /**
+     * Read the start of a progressive stream into the cache, so an
+     * {@link ExtractorMediaSource} with the same cache key starts without loading it.
+     * Blocks until done.
+     *
+     * @param uri      the stream
+     * @param cacheKey the custom cache key of the media source
+     * @param bytes    the number of bytes to cache
+     * */
+    public void warmUp(@NonNull final Uri uri,
+                       @NonNull final String cacheKey,
+                       final long bytes) throws IOException, InterruptedException {
+        final DataSource source = warmUpDataSourceFactory.createDataSource();
+        final byte[] buffer = new byte[WARM_UP_BUFFER_SIZE];
+        try {
+            source.open(new DataSpec(uri, 0, bytes, cacheKey));
+            while (source.read(buffer, 0, buffer.length) != C.RESULT_END_OF_INPUT) {
+                if (Thread.interrupted()) throw new InterruptedException();
+            }
+        } finally {
+            source.close();
+        }
+    }
 }
@@ -178,10 +178,40 @@ public class PlayerHelper {
                 SeekParameters.CLOSEST_SYNC : SeekParameters.EXACT;
     }
 
+    /**
+     * Returns the number of play queue items after the current one which are extracted
+     * ahead of time, as set by the user.
+     * */
+    public static int getLookaheadSize(@NonNull final Context context) {
+        final String defaultValue = context.getString(R.string.player_lookahead_default_value);
+        try {
+            return Integer.parseInt(getPreferences(context).getString(
+                    context.getString(R.string.player_lookahead_key), defaultValue));
+        } catch (NumberFormatException e) {
+            return Integer.parseInt(defaultValue);
+        }
+    }
+
     public static long getPreferredCacheSize(@NonNull final Context context) {
         return 64 * 1024 * 1024L;
     }
 
+    /**
+     * Returns the size of the cache for prefetched streams, in addition to
+     * {@link #getPreferredCacheSize(Context)}, as set by the user.
+     * */
+    public static long getPreferredPinnedCacheSize(@NonNull final Context context) {
+        final String defaultValue = context.getString(R.string.prefetch_cache_size_default_value);
+        long megabytes;
+        try {
+            megabytes = Long.parseLong(getPreferences(context).getString(
+                    context.getString(R.string.prefetch_cache_size_key), defaultValue));
+        } catch (NumberFormatException e) {
+            megabytes = Long.parseLong(defaultValue);
+        }
+        return megabytes * 1024 * 1024L;
+    }
+
     public static long getPreferredFileSize(@NonNull final Context context) {
         return 512 * 1024L;
     }
@@ -4,8 +4,12 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import com.google.android.exoplayer2.source.DynamicConcatenatingMediaSource;
+import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.ShuffleOrder;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class ManagedMediaSourcePlaylist {
     @NonNull private final DynamicConcatenatingMediaSource internalSource;
 
@@ -55,6 +59,24 @@ public class ManagedMediaSourcePlaylist {
         append(new PlaceholderMediaSource());
     }
 
+    /**
+     * Expands the {@link DynamicConcatenatingMediaSource} with {@link PlaceholderMediaSource}s
+     * until it has the given size, in a single change of the timeline. Does nothing if it is
+     * that large already, so expanding for the same change twice has no effect.
+     *
+     * @see DynamicConcatenatingMediaSource#addMediaSources(java.util.Collection)
+     * */
+    public synchronized void expandTo(final int size) {
+        final int amount = size - internalSource.getSize();
+        if (amount <= 0) return;
+
+        final List<MediaSource> placeholders = new ArrayList<>(amount);
+        for (int i = 0; i < amount; i++) {
+            placeholders.add(new PlaceholderMediaSource());
+        }
+        internalSource.addMediaSources(placeholders);
+    }
+
     /**
      * Appends a {@link ManagedMediaSource} to the end of {@link DynamicConcatenatingMediaSource}.
      * @see DynamicConcatenatingMediaSource#addMediaSource
@@ -0,0 +1,125 @@
+package org.schabi.newpipe.player.metrics;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Counts recorded values in buckets with fixed upper bounds, so any number of values
+ * are kept in constant memory. Values above the last bound go into an overflow bucket.
+ * <br><br>
+ * Not thread safe.
+ * */
+public final class Histogram {
+    /**
+     * Bounds for durations, in milliseconds
+     * */
+    public static final long[] MILLIS_BOUNDS = {10, 20, 50, 100, 200, 500, 1000, 2000, 5000,
+            10000, 20000, 60000};
+    /**
+     * Bounds for small event counts
+     * */
+    public static final long[] COUNT_BOUNDS = {0, 1, 2, 3, 5, 10, 20, 50};
+    /**
+     * Bounds for data sizes, in bytes
+     * */
+    public static final long[] BYTES_BOUNDS = {0, 64 * 1024L, 256 * 1024L, 1024 * 1024L,
+            4 * 1024 * 1024L, 16 * 1024 * 1024L, 64 * 1024 * 1024L, 256 * 1024 * 1024L};
+
+    @NonNull private final long[] upperBounds;
+    @NonNull private final long[] counts;
+    private long count;
+    private long sum;
+
+    /**
+     * @param upperBounds the inclusive upper bounds of the buckets, ascending
+     * */
+    public Histogram(@NonNull final long[] upperBounds) {
+        for (int i = 1; i < upperBounds.length; i++) {
+            if (upperBounds[i] <= upperBounds[i - 1]) {
+                throw new IllegalArgumentException("Bounds are not ascending: " +
+                        Arrays.toString(upperBounds));
+            }
+        }
+        this.upperBounds = upperBounds.clone();
+        this.counts = new long[upperBounds.length + 1];
+    }
+
+    public void record(final long value) {
+        int bucket = Arrays.binarySearch(upperBounds, value);
+        if (bucket < 0) bucket = -bucket - 1;
+
+        counts[bucket]++;
+        count++;
+        sum += value;
+    }
+
+    /**
+     * Add the values recorded by another histogram with the same bounds.
+     * */
+    public void merge(@NonNull final long[] otherCounts, final long otherSum) {
+        if (otherCounts.length != counts.length) {
+            throw new IllegalArgumentException("Buckets differ: " + otherCounts.length +
+                    " instead of " + counts.length);
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += otherCounts[i];
+            count += otherCounts[i];
+        }
+        sum += otherSum;
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Getters
+    //////////////////////////////////////////////////////////////////////////*/
+
+    @NonNull
+    public long[] getUpperBounds() {
+        return upperBounds.clone();
+    }
+
+    /**
+     * Returns the number of values per bucket, the last one counting the values
+     * above all bounds.
+     * */
+    @NonNull
+    public long[] getCounts() {
+        return counts.clone();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the upper bound of the bucket containing the given percentile, or
+     * {@link Long#MAX_VALUE} if it's in the overflow bucket.
+     *
+     * @param percentile between 0 and 100
+     * */
+    public long getPercentile(final double percentile) {
+        if (count == 0) return 0;
+
+        final long rank = (long) Math.ceil(count * Math.min(Math.max(percentile, 0), 100) / 100);
+        long seen = 0;
+        for (int i = 0; i < upperBounds.length; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(rank, 1)) return upperBounds[i];
+        }
+        return Long.MAX_VALUE;
+    }
+}
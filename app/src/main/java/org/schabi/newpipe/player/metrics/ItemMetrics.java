@@ -0,0 +1,57 @@
+package org.schabi.newpipe.player.metrics;
+
+import android.support.annotation.NonNull;
+
+/**
+ * The metrics of playing a single play queue item.
+ * */
+public final class ItemMetrics {
+    /**
+     * Value of a duration which wasn't measured
+     * */
+    public static final long UNSET = -1;
+
+    public final int serviceId;
+    @NonNull public final String url;
+    /**
+     * When the item started playing, in milliseconds since the epoch
+     * */
+    public final long timestamp;
+
+    public final long extractionMillis;
+    public final long timeToFirstFrameMillis;
+    public final int rebufferCount;
+    public final long rebufferMillis;
+    public final int bitrateSwitches;
+    public final long cacheBytes;
+    public final long networkBytes;
+
+    public ItemMetrics(final int serviceId, @NonNull final String url, final long timestamp,
+                       final long extractionMillis, final long timeToFirstFrameMillis,
+                       final int rebufferCount, final long rebufferMillis,
+                       final int bitrateSwitches, final long cacheBytes,
+                       final long networkBytes) {
+        this.serviceId = serviceId;
+        this.url = url;
+        this.timestamp = timestamp;
+        this.extractionMillis = extractionMillis;
+        this.timeToFirstFrameMillis = timeToFirstFrameMillis;
+        this.rebufferCount = rebufferCount;
+        this.rebufferMillis = rebufferMillis;
+        this.bitrateSwitches = bitrateSwitches;
+        this.cacheBytes = cacheBytes;
+        this.networkBytes = networkBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "ItemMetrics{url=" + url +
+                ", extractionMillis=" + extractionMillis +
+                ", timeToFirstFrameMillis=" + timeToFirstFrameMillis +
+                ", rebufferCount=" + rebufferCount +
+                ", rebufferMillis=" + rebufferMillis +
+                ", bitrateSwitches=" + bitrateSwitches +
+                ", cacheBytes=" + cacheBytes +
+                ", networkBytes=" + networkBytes + "}";
+    }
+}
@@ -0,0 +1,231 @@
+package org.schabi.newpipe.player.metrics;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.view.Surface;
+
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.audio.AudioRendererEventListener;
+import com.google.android.exoplayer2.decoder.DecoderCounters;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.video.VideoRendererEventListener;
+
+import org.schabi.newpipe.BuildConfig;
+import org.schabi.newpipe.player.helper.LoadController;
+import org.schabi.newpipe.playlist.PlayQueueItem;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the {@link ItemMetrics} of the items played by one player and records them in
+ * the {@link MetricsStore} once the player moves on to another item.
+ * <br><br>
+ * Bytes are attributed to the item playing while they are loaded, so loading ahead into
+ * the next item counts towards the current one.
+ * */
+public class MetricsCollector implements VideoRendererEventListener, AudioRendererEventListener,
+        CacheDataSource.EventListener {
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    private static final String TAG = "MetricsCollector";
+
+    @NonNull private final LoadController loadController;
+    @NonNull private final MetricsStore store;
+
+    @Nullable private PlayQueueItem item;
+    private long itemTimestamp;
+    private long startTimestamp = ItemMetrics.UNSET;
+    private long requestTimestamp = ItemMetrics.UNSET;
+    private long timeToFirstFrameMillis;
+    private int rebufferCountAtStart;
+    private long rebufferMillisAtStart;
+    private int bitrateSwitches;
+    private int videoBitrate = Format.NO_VALUE;
+    private int audioBitrate = Format.NO_VALUE;
+
+    // Written by the loading threads
+    private final AtomicLong cacheBytes = new AtomicLong();
+    private final AtomicLong networkBytes = new AtomicLong();
+
+    public MetricsCollector(@NonNull final LoadController loadController) {
+        this(loadController, MetricsStore.getInstance());
+    }
+
+    /* package-private */ MetricsCollector(@NonNull final LoadController loadController,
+                                          @NonNull final MetricsStore store) {
+        this.loadController = loadController;
+        this.store = store;
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Items
+    //////////////////////////////////////////////////////////////////////////*/
+
+    /**
+     * Called when the player has to wait for the item it should play, the time
+     * to the first frame of the next item starts now.
+     * */
+    public void onPlaybackRequested() {
+        onPlaybackRequested(SystemClock.elapsedRealtime());
+    }
+
+    /* package-private */ void onPlaybackRequested(final long nowMs) {
+        if (requestTimestamp == ItemMetrics.UNSET) requestTimestamp = nowMs;
+    }
+
+    /**
+     * Called when an item becomes the current one, finishing the previous one.
+     *
+     * @param isPlaying whether the player already plays it, i.e. it followed seamlessly
+     * */
+    public void onItemStarted(@NonNull final PlayQueueItem item, final boolean isPlaying) {
+        onItemStarted(item, isPlaying, SystemClock.elapsedRealtime());
+    }
+
+    /* package-private */ void onItemStarted(@NonNull final PlayQueueItem item,
+                                             final boolean isPlaying, final long nowMs) {
+        finishItem();
+
+        this.item = item;
+        itemTimestamp = System.currentTimeMillis();
+        startTimestamp = requestTimestamp != ItemMetrics.UNSET ? requestTimestamp : nowMs;
+        requestTimestamp = ItemMetrics.UNSET;
+        timeToFirstFrameMillis = isPlaying ? 0 : ItemMetrics.UNSET;
+
+        rebufferCountAtStart = loadController.getRebufferCount();
+        rebufferMillisAtStart = loadController.getRebufferMillis();
+        bitrateSwitches = 0;
+        videoBitrate = Format.NO_VALUE;
+        audioBitrate = Format.NO_VALUE;
+        cacheBytes.set(0);
+        networkBytes.set(0);
+    }
+
+    /**
+     * Called when the current item shows its first frame or, without video, starts playing.
+     * */
+    public void onFirstFrame() {
+        onFirstFrame(SystemClock.elapsedRealtime());
+    }
+
+    /* package-private */ void onFirstFrame(final long nowMs) {
+        if (item == null || timeToFirstFrameMillis != ItemMetrics.UNSET) return;
+        timeToFirstFrameMillis = nowMs - startTimestamp;
+    }
+
+    /**
+     * Record the metrics of the current item.
+     * */
+    public void finishItem() {
+        if (item == null) return;
+
+        store.record(new ItemMetrics(item.getServiceId(), item.getUrl(),
+                itemTimestamp, item.getExtractionMillis(), timeToFirstFrameMillis,
+                loadController.getRebufferCount() - rebufferCountAtStart,
+                loadController.getRebufferMillis() - rebufferMillisAtStart,
+                bitrateSwitches, cacheBytes.get(), networkBytes.get()));
+        item = null;
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Bytes
+    //////////////////////////////////////////////////////////////////////////*/
+
+    /**
+     * Returns a listener counting the bytes loaded from the network before passing
+     * them on to the given one.
+     * */
+    @NonNull
+    public TransferListener<DataSource> observeNetwork(
+            @NonNull final TransferListener<? super DataSource> listener) {
+        return new TransferListener<DataSource>() {
+            @Override
+            public void onTransferStart(DataSource source, DataSpec dataSpec) {
+                listener.onTransferStart(source, dataSpec);
+            }
+
+            @Override
+            public void onBytesTransferred(DataSource source, int bytesTransferred) {
+                networkBytes.addAndGet(bytesTransferred);
+                listener.onBytesTransferred(source, bytesTransferred);
+            }
+
+            @Override
+            public void onTransferEnd(DataSource source) {
+                listener.onTransferEnd(source);
+            }
+        };
+    }
+
+    @Override
+    public void onCachedBytesRead(long cacheSizeBytes, long cachedBytesRead) {
+        cacheBytes.addAndGet(cachedBytesRead);
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Bitrate switches
+    //////////////////////////////////////////////////////////////////////////*/
+
+    @Override
+    public void onVideoInputFormatChanged(Format format) {
+        if (isSwitch(videoBitrate, format)) bitrateSwitches++;
+        videoBitrate = format.bitrate;
+    }
+
+    @Override
+    public void onAudioInputFormatChanged(Format format) {
+        if (isSwitch(audioBitrate, format)) bitrateSwitches++;
+        audioBitrate = format.bitrate;
+    }
+
+    private boolean isSwitch(final int bitrate, @NonNull final Format format) {
+        final boolean isSwitch = bitrate != Format.NO_VALUE && format.bitrate != Format.NO_VALUE
+                && bitrate != format.bitrate;
+        if (DEBUG && isSwitch) Log.d(TAG, "Bitrate switch from [" + bitrate + "] to [" +
+                format.bitrate + "]");
+        return isSwitch;
+    }
+
+    @Override
+    public void onRenderedFirstFrame(Surface surface) {
+        onFirstFrame();
+    }
+
+    @Override
+    public void onVideoEnabled(DecoderCounters counters) {}
+
+    @Override
+    public void onVideoDecoderInitialized(String decoderName, long initializedTimestampMs,
+                                          long initializationDurationMs) {}
+
+    @Override
+    public void onDroppedFrames(int count, long elapsedMs) {}
+
+    @Override
+    public void onVideoSizeChanged(int width, int height, int unappliedRotationDegrees,
+                                   float pixelWidthHeightRatio) {}
+
+    @Override
+    public void onVideoDisabled(DecoderCounters counters) {}
+
+    @Override
+    public void onAudioEnabled(DecoderCounters counters) {}
+
+    @Override
+    public void onAudioSessionId(int audioSessionId) {}
+
+    @Override
+    public void onAudioDecoderInitialized(String decoderName, long initializedTimestampMs,
+                                          long initializationDurationMs) {}
+
+    @Override
+    public void onAudioSinkUnderrun(int bufferSize, long bufferSizeMs,
+                                    long elapsedSinceLastFeedMs) {}
+
+    @Override
+    public void onAudioDisabled(DecoderCounters counters) {}
+}
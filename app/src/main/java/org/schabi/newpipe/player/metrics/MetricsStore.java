@@ -0,0 +1,332 @@
+package org.schabi.newpipe.player.metrics;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.grack.nanojson.JsonAppendableWriter;
+import com.grack.nanojson.JsonArray;
+import com.grack.nanojson.JsonObject;
+import com.grack.nanojson.JsonParser;
+import com.grack.nanojson.JsonWriter;
+
+import org.schabi.newpipe.BuildConfig;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process wide store of the {@link ItemMetrics} of all players.
+ * <br><br>
+ * Every metric is aggregated into a {@link Histogram}, and the latest items are kept as they
+ * are. Both are persisted as a JSON file, which is also the format of {@link #export(OutputStream)}.
+ * Recording and persisting happen on a background thread. The file is written at most once
+ * per {@link #PERSIST_DELAY_MILLIS}, so the items recorded last may be lost with the process.
+ * */
+public final class MetricsStore {
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+    private static final String TAG = "MetricsStore";
+
+    private static final String FILE_NAME = "player_metrics.json";
+    private static final int VERSION = 1;
+    private static final int MAX_RECENT_ITEMS = 100;
+    /**
+     * Recordings within this time after the first unpersisted one are written together
+     * */
+    private static final long PERSIST_DELAY_MILLIS = 30000;
+
+    public static final String EXTRACTION_MILLIS = "extraction_millis";
+    public static final String TIME_TO_FIRST_FRAME_MILLIS = "time_to_first_frame_millis";
+    public static final String REBUFFER_COUNT = "rebuffer_count";
+    public static final String REBUFFER_MILLIS = "rebuffer_millis";
+    public static final String BITRATE_SWITCHES = "bitrate_switches";
+    public static final String CACHE_BYTES = "cache_bytes";
+    public static final String NETWORK_BYTES = "network_bytes";
+
+    private static final String JSON_VERSION_KEY = "version";
+    private static final String JSON_HISTOGRAMS_KEY = "histograms";
+    private static final String JSON_ITEMS_KEY = "items";
+    private static final String JSON_BOUNDS_KEY = "bounds";
+    private static final String JSON_COUNTS_KEY = "counts";
+    private static final String JSON_SUM_KEY = "sum";
+    private static final String JSON_SERVICE_ID_KEY = "service_id";
+    private static final String JSON_URL_KEY = "url";
+    private static final String JSON_TIMESTAMP_KEY = "timestamp";
+
+    private static MetricsStore instance;
+
+    @Nullable private final File file;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    private final Map<String, Histogram> histograms = new LinkedHashMap<>();
+    private final ArrayDeque<ItemMetrics> recentItems = new ArrayDeque<>();
+    private boolean isLoaded;
+    private boolean isPersistScheduled;
+
+    /**
+     * @param file where the metrics are persisted, null to only keep them in memory
+     * */
+    /* package-private */ MetricsStore(@Nullable final File file) {
+        this.file = file;
+
+        histograms.put(EXTRACTION_MILLIS, new Histogram(Histogram.MILLIS_BOUNDS));
+        histograms.put(TIME_TO_FIRST_FRAME_MILLIS, new Histogram(Histogram.MILLIS_BOUNDS));
+        histograms.put(REBUFFER_COUNT, new Histogram(Histogram.COUNT_BOUNDS));
+        histograms.put(REBUFFER_MILLIS, new Histogram(Histogram.MILLIS_BOUNDS));
+        histograms.put(BITRATE_SWITCHES, new Histogram(Histogram.COUNT_BOUNDS));
+        histograms.put(CACHE_BYTES, new Histogram(Histogram.BYTES_BOUNDS));
+        histograms.put(NETWORK_BYTES, new Histogram(Histogram.BYTES_BOUNDS));
+    }
+
+    /**
+     * Set up the store, persisting to the files of the app
+     * */
+    public static synchronized void init(@NonNull final Context context) {
+        instance = new MetricsStore(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    /**
+     * @return the store, which only keeps the metrics in memory
+     * if {@link #init(Context)} wasn't called
+     * */
+    @NonNull
+    public static synchronized MetricsStore getInstance() {
+        if (instance == null) instance = new MetricsStore(null);
+        return instance;
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Recording
+    //////////////////////////////////////////////////////////////////////////*/
+
+    public void record(@NonNull final ItemMetrics item) {
+        if (DEBUG) Log.d(TAG, "record() called with: item = [" + item + "]");
+
+        executor.execute(() -> {
+            synchronized (this) {
+                ensureLoaded();
+                aggregate(item);
+                recentItems.addLast(item);
+                while (recentItems.size() > MAX_RECENT_ITEMS) recentItems.removeFirst();
+                schedulePersist();
+            }
+        });
+    }
+
+    public void clear() {
+        executor.execute(() -> {
+            synchronized (this) {
+                ensureLoaded();
+                for (final Histogram histogram : histograms.values()) histogram.clear();
+                recentItems.clear();
+                persist();
+            }
+        });
+    }
+
+    /**
+     * Wait for everything recorded so far and persist it right away
+     * */
+    /* package-private */ void flush() throws InterruptedException, ExecutionException {
+        executor.submit(() -> {
+            synchronized (this) {
+                persist();
+            }
+        }).get();
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Reading
+    //////////////////////////////////////////////////////////////////////////*/
+
+    /**
+     * Returns the summary of a metric, e.g. {@link #TIME_TO_FIRST_FRAME_MILLIS}, as
+     * mean and percentiles. Blocks on disk I/O the first time.
+     * */
+    @NonNull
+    public synchronized String getSummary(@NonNull final String metric) {
+        ensureLoaded();
+        final Histogram histogram = histograms.get(metric);
+        if (histogram == null) return metric + ": unknown";
+
+        return metric + ": count=" + histogram.getCount() +
+                ", mean=" + Math.round(histogram.getMean()) +
+                ", p50<=" + histogram.getPercentile(50) +
+                ", p90<=" + histogram.getPercentile(90) +
+                ", p99<=" + histogram.getPercentile(99);
+    }
+
+    /**
+     * Returns the latest recorded items, oldest first. Blocks on disk I/O the first time.
+     * */
+    @NonNull
+    public synchronized List<ItemMetrics> getRecentItems() {
+        ensureLoaded();
+        return Collections.unmodifiableList(new ArrayList<>(recentItems));
+    }
+
+    /**
+     * Write all metrics as JSON. Blocks on disk I/O the first time.
+     * */
+    public synchronized void export(@NonNull final OutputStream out) {
+        ensureLoaded();
+
+        final JsonAppendableWriter writer = JsonWriter.on(out);
+        writer.object();
+        writer.value(JSON_VERSION_KEY, VERSION);
+
+        writer.object(JSON_HISTOGRAMS_KEY);
+        for (final Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            final Histogram histogram = entry.getValue();
+            writer.object(entry.getKey());
+            writer.array(JSON_BOUNDS_KEY);
+            for (final long bound : histogram.getUpperBounds()) writer.value(bound);
+            writer.end();
+            writer.array(JSON_COUNTS_KEY);
+            for (final long count : histogram.getCounts()) writer.value(count);
+            writer.end();
+            writer.value(JSON_SUM_KEY, histogram.getSum());
+            writer.end();
+        }
+        writer.end();
+
+        writer.array(JSON_ITEMS_KEY);
+        for (final ItemMetrics item : recentItems) {
+            writer.object();
+            writer.value(JSON_SERVICE_ID_KEY, item.serviceId);
+            writer.value(JSON_URL_KEY, item.url);
+            writer.value(JSON_TIMESTAMP_KEY, item.timestamp);
+            writer.value(EXTRACTION_MILLIS, item.extractionMillis);
+            writer.value(TIME_TO_FIRST_FRAME_MILLIS, item.timeToFirstFrameMillis);
+            writer.value(REBUFFER_COUNT, item.rebufferCount);
+            writer.value(REBUFFER_MILLIS, item.rebufferMillis);
+            writer.value(BITRATE_SWITCHES, item.bitrateSwitches);
+            writer.value(CACHE_BYTES, item.cacheBytes);
+            writer.value(NETWORK_BYTES, item.networkBytes);
+            writer.end();
+        }
+        writer.end();
+
+        writer.end();
+        writer.done();
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Persistence
+    //////////////////////////////////////////////////////////////////////////*/
+
+    private void aggregate(@NonNull final ItemMetrics item) {
+        recordIfSet(EXTRACTION_MILLIS, item.extractionMillis);
+        recordIfSet(TIME_TO_FIRST_FRAME_MILLIS, item.timeToFirstFrameMillis);
+        recordIfSet(REBUFFER_COUNT, item.rebufferCount);
+        recordIfSet(REBUFFER_MILLIS, item.rebufferMillis);
+        recordIfSet(BITRATE_SWITCHES, item.bitrateSwitches);
+        recordIfSet(CACHE_BYTES, item.cacheBytes);
+        recordIfSet(NETWORK_BYTES, item.networkBytes);
+    }
+
+    private void recordIfSet(@NonNull final String metric, final long value) {
+        if (value != ItemMetrics.UNSET) histograms.get(metric).record(value);
+    }
+
+    private void schedulePersist() {
+        if (file == null || isPersistScheduled) return;
+        isPersistScheduled = true;
+
+        executor.schedule(() -> {
+            synchronized (this) {
+                isPersistScheduled = false;
+                persist();
+            }
+        }, PERSIST_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void persist() {
+        if (file == null) return;
+
+        final File temp = new File(file.getPath() + ".tmp");
+        try {
+            final OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+            try {
+                export(out);
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) throw new IOException("Unable to rename " + temp);
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to persist metrics to " + file, e);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        }
+    }
+
+    private void ensureLoaded() {
+        if (isLoaded) return;
+        isLoaded = true;
+        if (file == null || !file.isFile()) return;
+
+        try {
+            final InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try {
+                load(JsonParser.object().from(in));
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
+            // Start over, the metrics are not worth failing for
+            Log.w(TAG, "Dropping unreadable metrics " + file, e);
+            for (final Histogram histogram : histograms.values()) histogram.clear();
+            recentItems.clear();
+        }
+    }
+
+    private void load(@NonNull final JsonObject json) {
+        if (json.getInt(JSON_VERSION_KEY, 0) != VERSION) return;
+
+        final JsonObject histogramsObject = json.getObject(JSON_HISTOGRAMS_KEY);
+        for (final Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            final JsonObject histogramObject = histogramsObject.getObject(entry.getKey());
+            if (histogramObject == null) continue;
+
+            final JsonArray countsArray = histogramObject.getArray(JSON_COUNTS_KEY);
+            final long[] counts = new long[countsArray.size()];
+            for (int i = 0; i < counts.length; i++) counts[i] = countsArray.getLong(i);
+            // Buckets of a different layout are dropped
+            if (counts.length != entry.getValue().getCounts().length) continue;
+            entry.getValue().merge(counts, histogramObject.getLong(JSON_SUM_KEY));
+        }
+
+        for (final Object element : json.getArray(JSON_ITEMS_KEY)) {
+            if (!(element instanceof JsonObject)) continue;
+            final JsonObject item = (JsonObject) element;
+            recentItems.addLast(new ItemMetrics(
+                    item.getInt(JSON_SERVICE_ID_KEY),
+                    item.getString(JSON_URL_KEY, ""),
+                    item.getLong(JSON_TIMESTAMP_KEY),
+                    item.getLong(EXTRACTION_MILLIS, ItemMetrics.UNSET),
+                    item.getLong(TIME_TO_FIRST_FRAME_MILLIS, ItemMetrics.UNSET),
+                    item.getInt(REBUFFER_COUNT),
+                    item.getLong(REBUFFER_MILLIS),
+                    item.getInt(BITRATE_SWITCHES),
+                    item.getLong(CACHE_BYTES),
+                    item.getLong(NETWORK_BYTES)));
+        }
+    }
+}
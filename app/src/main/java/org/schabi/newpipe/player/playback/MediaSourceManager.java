@@ -11,6 +11,7 @@ import com.google.android.exoplayer2.source.MediaSource;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 import org.schabi.newpipe.extractor.stream.StreamInfo;
+import org.schabi.newpipe.player.helper.LookaheadPolicy;
 import org.schabi.newpipe.player.mediasource.FailedMediaSource;
 import org.schabi.newpipe.player.mediasource.LoadedMediaSource;
 import org.schabi.newpipe.player.mediasource.ManagedMediaSource;
@@ -18,8 +19,11 @@ import org.schabi.newpipe.player.mediasource.ManagedMediaSourcePlaylist;
 import org.schabi.newpipe.player.mediasource.PlaceholderMediaSource;
 import org.schabi.newpipe.playlist.PlayQueue;
 import org.schabi.newpipe.playlist.PlayQueueItem;
+import org.schabi.newpipe.playlist.events.AppendEvent;
+import org.schabi.newpipe.playlist.events.BatchEvent;
 import org.schabi.newpipe.playlist.events.MoveEvent;
 import org.schabi.newpipe.playlist.events.PlayQueueEvent;
+import org.schabi.newpipe.playlist.events.PlayQueueEventType;
 import org.schabi.newpipe.playlist.events.RemoveEvent;
 import org.schabi.newpipe.playlist.events.ReorderEvent;
 import org.schabi.newpipe.util.ServiceHelper;
@@ -27,12 +31,18 @@ import org.schabi.newpipe.util.ServiceHelper;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.reactivex.Observable;
+import io.reactivex.Scheduler;
 import io.reactivex.Single;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.CompositeDisposable;
@@ -61,7 +71,7 @@ public class MediaSourceManager {
      * */
     private final static int WINDOW_SIZE = 1;
 
-    @NonNull private final PlaybackListener playbackListener;
+    @NonNull private PlaybackListener playbackListener;
     @NonNull private final PlayQueue playQueue;
 
     /**
@@ -110,15 +120,42 @@ public class MediaSourceManager {
 
     @NonNull private ManagedMediaSourcePlaylist playlist;
 
+    /**
+     * Determines how many items after the current are extracted ahead of time, beyond the
+     * {@link #WINDOW_SIZE}, and how much of their streams is cached.
+     * No lookahead is done if null.
+     *
+     * @see #maybeLookahead()
+     * */
+    @Nullable private final LookaheadPolicy lookaheadPolicy;
+    /**
+     * Lookahead tasks of the upcoming items, kept after completion so they only run once.
+     * Only accessed on the main thread.
+     * */
+    @NonNull private final Map<PlayQueueItem, Disposable> lookaheadTasks;
+    /**
+     * Shared by all managers, so the lookahead never competes with the loaders
+     * for more than this many threads. Its threads exit once idle.
+     * */
+    @NonNull private final static Scheduler LOOKAHEAD_SCHEDULER =
+            Schedulers.from(newLookaheadExecutor(/*threads=*/2));
+
     public MediaSourceManager(@NonNull final PlaybackListener listener,
                               @NonNull final PlayQueue playQueue) {
-        this(listener, playQueue, /*loadDebounceMillis=*/400L,
+        this(listener, playQueue, /*lookaheadPolicy=*/null);
+    }
+
+    public MediaSourceManager(@NonNull final PlaybackListener listener,
+                              @NonNull final PlayQueue playQueue,
+                              @Nullable final LookaheadPolicy lookaheadPolicy) {
+        this(listener, playQueue, lookaheadPolicy, /*loadDebounceMillis=*/400L,
                 /*playbackNearEndGapMillis=*/TimeUnit.MILLISECONDS.convert(30, TimeUnit.SECONDS),
                 /*progressUpdateIntervalMillis*/TimeUnit.MILLISECONDS.convert(2, TimeUnit.SECONDS));
     }
 
     private MediaSourceManager(@NonNull final PlaybackListener listener,
                                @NonNull final PlayQueue playQueue,
+                               @Nullable final LookaheadPolicy lookaheadPolicy,
                                final long loadDebounceMillis,
                                final long playbackNearEndGapMillis,
                                final long progressUpdateIntervalMillis) {
@@ -152,6 +189,9 @@ public class MediaSourceManager {
 
         this.loadingItems = Collections.synchronizedSet(new ArraySet<>());
 
+        this.lookaheadPolicy = lookaheadPolicy;
+        this.lookaheadTasks = new HashMap<>();
+
         playQueue.getBroadcastReceiver()
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(getReactor());
@@ -173,6 +213,38 @@ public class MediaSourceManager {
         loaderReactor.dispose();
         syncReactor.dispose();
         playlist.dispose();
+
+        for (final Disposable task : lookaheadTasks.values()) task.dispose();
+        lookaheadTasks.clear();
+    }
+
+    /**
+     * Moves the manager over to another listener, e.g. a player taking over the playback
+     * of another one, keeping the sources loaded so far.
+     * <br><br>
+     * If the sources were built for a different kind of player, e.g. audio only sources
+     * for a video player, they are invalidated and reloaded from the new listener, starting
+     * with the current one. Otherwise, the new listener is synchronized right away.
+     * */
+    public void rebind(@NonNull final PlaybackListener listener, final boolean reloadSources) {
+        if (DEBUG) Log.d(TAG, "rebind() called with: reloadSources = [" + reloadSources + "]");
+        playbackListener = listener;
+
+        if (!reloadSources) {
+            maybeSync();
+            return;
+        }
+
+        // Sources in flight would still be built for the previous listener
+        loaderReactor.clear();
+        loadingItems.clear();
+        for (final Disposable task : lookaheadTasks.values()) task.dispose();
+        lookaheadTasks.clear();
+
+        for (int index = 0; index < playlist.size(); index++) {
+            playlist.invalidate(index, /*doNothing=*/null);
+        }
+        loadImmediate();
     }
 
     /*//////////////////////////////////////////////////////////////////////////
@@ -208,15 +280,57 @@ public class MediaSourceManager {
         }
 
         // Event specific action
+        if (event.type() == PlayQueueEventType.BATCH) {
+            boolean isSelected = false;
+            for (final PlayQueueEvent batchedEvent : ((BatchEvent) event).getEvents()) {
+                onPlaylistChanged(batchedEvent, /*isBatched=*/true);
+                isSelected |= batchedEvent.type() == PlayQueueEventType.SELECT;
+            }
+            // The index is only valid once the playlist reflects all changes
+            if (isSelected) maybeRenewCurrentIndex();
+        } else {
+            onPlaylistChanged(event, /*isBatched=*/false);
+        }
+
+        // Loading and Syncing
+        if (isCriticalEvent(event)) {
+            loadImmediate(); // low frequency, critical events
+        } else {
+            loadDebounced(); // high frequency or noncritical events
+        }
+
+        if (!isPlayQueueReady()) {
+            maybeBlock();
+            playQueue.fetch();
+        }
+        playQueueReactor.request(1);
+    }
+
+    /**
+     * Applies the change of the play queue to the playlist.
+     * <br><br>
+     * Appends within a batch expand the playlist to the size the play queue had right after
+     * them, as the current size already includes the changes made after them. Since the
+     * playlist is never expanded beyond that, an append already covered by an earlier
+     * expansion changes nothing. Selections within a batch are handled after the whole batch
+     * was applied.
+     * */
+    private void onPlaylistChanged(@NonNull final PlayQueueEvent event, final boolean isBatched) {
         switch (event.type()) {
             case INIT:
             case ERROR:
                 maybeBlock();
-            case APPEND:
                 populateSources();
                 break;
+            case APPEND:
+                if (isBatched) {
+                    playlist.expandTo(((AppendEvent) event).getQueueSize());
+                } else {
+                    populateSources();
+                }
+                break;
             case SELECT:
-                maybeRenewCurrentIndex();
+                if (!isBatched) maybeRenewCurrentIndex();
                 break;
             case REMOVE:
                 final RemoveEvent removeEvent = (RemoveEvent) event;
@@ -237,29 +351,27 @@ public class MediaSourceManager {
             default:
                 break;
         }
+    }
 
-        // Loading and Syncing
+    private static boolean isCriticalEvent(@NonNull final PlayQueueEvent event) {
         switch (event.type()) {
             case INIT:
             case REORDER:
             case ERROR:
             case SELECT:
-                loadImmediate(); // low frequency, critical events
-                break;
+                return true;
+            case BATCH:
+                for (final PlayQueueEvent batchedEvent : ((BatchEvent) event).getEvents()) {
+                    if (isCriticalEvent(batchedEvent)) return true;
+                }
+                return false;
             case APPEND:
             case REMOVE:
             case MOVE:
             case RECOVERY:
             default:
-                loadDebounced(); // high frequency or noncritical events
-                break;
-        }
-
-        if (!isPlayQueueReady()) {
-            maybeBlock();
-            playQueue.fetch();
+                return false;
         }
-        playQueueReactor.request(1);
     }
 
     /*//////////////////////////////////////////////////////////////////////////
@@ -369,6 +481,8 @@ public class MediaSourceManager {
         for (final PlayQueueItem item : itemsToLoad.neighbors) {
             maybeLoadItem(item);
         }
+
+        maybeLookahead();
     }
 
     private void maybeLoadItem(@NonNull final PlayQueueItem item) {
@@ -421,6 +535,8 @@ public class MediaSourceManager {
                     "title=[" + item.getTitle() + "] at url=[" + item.getUrl() + "]");
             playlist.update(itemIndex, mediaSource, this::maybeSynchronizePlayer);
         }
+
+        maybeLookahead();
     }
 
     /**
@@ -475,6 +591,81 @@ public class MediaSourceManager {
             loadingItems.clear();
         }
     }
+    /*//////////////////////////////////////////////////////////////////////////
+    // Lookahead
+    //////////////////////////////////////////////////////////////////////////*/
+
+    /**
+     * Extracts the stream info of the items after the current one ahead of time, so it's
+     * in the cache once they are loaded, and warms up the start of the streams of the
+     * nearest ones, so they start instantly, e.g. when skipping to them.
+     * <br><br>
+     * Items within the {@link #WINDOW_SIZE} are extracted by the loaders, so they are only
+     * warmed up after their media source was loaded.
+     * */
+    private void maybeLookahead() {
+        if (lookaheadPolicy == null) return;
+
+        final int itemCount = Math.max(lookaheadPolicy.getItemCount(), 0);
+        final int currentIndex = playQueue.getIndex();
+        final List<PlayQueueItem> upcoming = new ArrayList<>(itemCount);
+        for (int offset = 1; offset <= itemCount; offset++) {
+            final PlayQueueItem item = playQueue.getItem(currentIndex + offset);
+            if (item == null) break;
+            upcoming.add(item);
+        }
+
+        // Cancel the tasks of items no longer ahead, e.g. after jumping in the queue
+        final Iterator<Map.Entry<PlayQueueItem, Disposable>> tasks =
+                lookaheadTasks.entrySet().iterator();
+        while (tasks.hasNext()) {
+            final Map.Entry<PlayQueueItem, Disposable> task = tasks.next();
+            if (!upcoming.contains(task.getKey())) {
+                task.getValue().dispose();
+                tasks.remove();
+            }
+        }
+
+        final long warmUpBytes = lookaheadPolicy.getWarmUpBytes();
+        for (int offset = 1; offset <= upcoming.size(); offset++) {
+            final PlayQueueItem item = upcoming.get(offset - 1);
+            if (lookaheadTasks.containsKey(item)) continue;
+            if (offset <= WINDOW_SIZE && !isLoaded(item)) continue;
+
+            final long bytes = offset <= LookaheadPolicy.WARM_UP_ITEMS ? warmUpBytes : 0;
+            lookaheadTasks.put(item, lookahead(item, bytes));
+        }
+    }
+
+    private Disposable lookahead(@NonNull final PlayQueueItem item, final long warmUpBytes) {
+        if (DEBUG) Log.d(TAG, "Lookahead - item=[" + item.getTitle() + "], " +
+                "warmUpBytes=[" + warmUpBytes + "]");
+
+        return item.getStream()
+                .observeOn(LOOKAHEAD_SCHEDULER)
+                .doOnSuccess(info -> {
+                    if (warmUpBytes > 0) playbackListener.warmUp(item, info, warmUpBytes);
+                })
+                .subscribe(
+                        info -> {/* in the cache now */},
+                        throwable -> {
+                            if (DEBUG) Log.d(TAG, "Lookahead - failed=[" + item.getTitle() +
+                                    "]", throwable);
+                        });
+    }
+
+    @NonNull
+    private static ThreadPoolExecutor newLookaheadExecutor(final int threads) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                /*keepAliveTime=*/30, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private boolean isLoaded(@NonNull final PlayQueueItem item) {
+        return playlist.get(playQueue.indexOf(item)) instanceof LoadedMediaSource;
+    }
+
     /*//////////////////////////////////////////////////////////////////////////
     // MediaSource Playlist Helpers
     //////////////////////////////////////////////////////////////////////////*/
@@ -488,9 +679,7 @@ public class MediaSourceManager {
 
     private void populateSources() {
         if (DEBUG) Log.d(TAG, "populateSources() called.");
-        while (playlist.size() < playQueue.size()) {
-            playlist.expand();
-        }
+        playlist.expandTo(playQueue.size());
     }
 
     /*//////////////////////////////////////////////////////////////////////////
@@ -8,6 +8,7 @@ import com.google.android.exoplayer2.source.MediaSource;
 import org.schabi.newpipe.extractor.stream.StreamInfo;
 import org.schabi.newpipe.playlist.PlayQueueItem;
 
+import java.io.IOException;
 import java.util.List;
 
 public interface PlaybackListener {
@@ -56,6 +57,15 @@ public interface PlaybackListener {
     @Nullable
     MediaSource sourceOf(final PlayQueueItem item, final StreamInfo info);
 
+    /**
+     * Requests the listener to cache the start of the streams it would play for
+     * a stream info, so the item starts instantly once it is reached.
+     *
+     * May be called at any time on a background thread, and blocks until done.
+     * */
+    void warmUp(@NonNull final PlayQueueItem item, @NonNull final StreamInfo info,
+                final long bytes) throws IOException, InterruptedException;
+
     /**
      * Called when the play queue can no longer to played or used.
      * Currently, this means the play queue is empty and complete.
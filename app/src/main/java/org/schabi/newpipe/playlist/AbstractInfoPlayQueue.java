@@ -44,6 +44,16 @@ abstract class AbstractInfoPlayQueue<T extends ListInfo, U extends InfoItem> ext
         this.isComplete = !isInitial && (nextPageUrl == null || nextPageUrl.isEmpty());
     }
 
+    AbstractInfoPlayQueue(final AbstractInfoPlayQueue<T, U> other) {
+        super(other);
+
+        this.isInitial = other.isInitial;
+        this.isComplete = other.isComplete;
+        this.serviceId = other.serviceId;
+        this.baseUrl = other.baseUrl;
+        this.nextUrl = other.nextUrl;
+    }
+
     abstract protected String getTag();
 
     @Override
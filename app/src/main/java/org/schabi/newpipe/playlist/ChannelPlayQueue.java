@@ -28,6 +28,15 @@ public final class ChannelPlayQueue extends AbstractInfoPlayQueue<ChannelInfo, C
         super(serviceId, url, nextPageUrl, streams, index);
     }
 
+    private ChannelPlayQueue(final ChannelPlayQueue other) {
+        super(other);
+    }
+
+    @Override
+    public ChannelPlayQueue copy() {
+        return new ChannelPlayQueue(this);
+    }
+
     @Override
     protected String getTag() {
         return "ChannelPlayQueue@" + Integer.toHexString(hashCode());
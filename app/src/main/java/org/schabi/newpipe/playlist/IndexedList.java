@@ -0,0 +1,151 @@
+package org.schabi.newpipe.playlist;
+
+import android.support.annotation.NonNull;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A list which finds the index of an element by referential equality in amortized
+ * constant time, instead of scanning the list.
+ * <br><br>
+ * The indices are kept in an identity map. It's only correct for a prefix of the list:
+ * a modification at some index invalidates the indices from there on, and they are
+ * indexed again lazily, only as far as a lookup needs. So lookups after appending or near
+ * the modified index stay cheap, and a modification never costs more than the list shift
+ * it causes anyway.
+ * <br><br>
+ * Like {@link List#indexOf(Object)}, the index of the first occurrence is returned.
+ * */
+/*package-private*/ final class IndexedList<E> implements Serializable {
+    @NonNull private final ArrayList<E> elements;
+
+    private transient Map<E, Integer> indices;
+    /**
+     * The indices in the map are correct for elements before this index
+     * */
+    private transient int indexedSize;
+
+    /*package-private*/ IndexedList() {
+        elements = new ArrayList<>();
+    }
+
+    /*package-private*/ IndexedList(@NonNull final Collection<? extends E> elements) {
+        this.elements = new ArrayList<>(elements);
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Readonly ops
+    //////////////////////////////////////////////////////////////////////////*/
+
+    /*package-private*/ E get(final int index) {
+        return elements.get(index);
+    }
+
+    /*package-private*/ int size() {
+        return elements.size();
+    }
+
+    /*package-private*/ boolean isEmpty() {
+        return elements.isEmpty();
+    }
+
+    /**
+     * Returns the index of the first occurrence of the element, using referential equality,
+     * or -1 if the list doesn't contain it.
+     * */
+    /*package-private*/ int indexOf(@NonNull final E element) {
+        final Map<E, Integer> map = getIndices();
+
+        final Integer index = map.get(element);
+        if (isIndexed(element, index)) return index;
+
+        while (indexedSize < elements.size()) {
+            final int current = indexedSize;
+            final E next = elements.get(current);
+
+            // Keep the index of an earlier occurrence
+            if (!isIndexed(next, map.get(next))) map.put(next, current);
+            indexedSize++;
+
+            if (next == element) return map.get(next);
+        }
+        return -1;
+    }
+
+    /**
+     * Returns an immutable view of the list.
+     * */
+    @NonNull
+    /*package-private*/ List<E> asList() {
+        return Collections.unmodifiableList(elements);
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Write ops
+    //////////////////////////////////////////////////////////////////////////*/
+
+    /*package-private*/ void add(final int index, final E element) {
+        elements.add(index, element);
+        invalidateFrom(index);
+    }
+
+    /*package-private*/ void addAll(@NonNull final Collection<? extends E> collection) {
+        // Nothing to invalidate, appended elements are indexed on demand
+        elements.addAll(collection);
+    }
+
+    /*package-private*/ E remove(final int index) {
+        final E removed = elements.remove(index);
+        invalidateFrom(index);
+
+        final Map<E, Integer> map = getIndices();
+        if (!isIndexed(removed, map.get(removed))) {
+            // Drop the invalid entry, so the map doesn't hold on to the element
+            map.remove(removed);
+        }
+        return removed;
+    }
+
+    /*package-private*/ void move(final int source, final int target) {
+        elements.add(target, elements.remove(source));
+        invalidateFrom(Math.min(source, target));
+    }
+
+    /*package-private*/ void shuffle() {
+        Collections.shuffle(elements);
+        getIndices().clear();
+        indexedSize = 0;
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Utils
+    //////////////////////////////////////////////////////////////////////////*/
+
+    /**
+     * Entries of the map may be stale, they are only correct when pointing
+     * to the element in the indexed prefix
+     * */
+    private boolean isIndexed(@NonNull final E element, final Integer index) {
+        return index != null && index < indexedSize && elements.get(index) == element;
+    }
+
+    private void invalidateFrom(final int index) {
+        indexedSize = Math.min(indexedSize, index);
+    }
+
+    @NonNull
+    private Map<E, Integer> getIndices() {
+        // Transient, so it's missing after deserialization
+        if (indices == null) {
+            indices = new IdentityHashMap<>();
+            indexedSize = 0;
+        }
+        return indices;
+    }
+}
@@ -7,6 +7,7 @@ import android.util.Log;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 import org.schabi.newpipe.playlist.events.AppendEvent;
+import org.schabi.newpipe.playlist.events.BatchEvent;
 import org.schabi.newpipe.playlist.events.ErrorEvent;
 import org.schabi.newpipe.playlist.events.InitEvent;
 import org.schabi.newpipe.playlist.events.MoveEvent;
@@ -20,7 +21,9 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import io.reactivex.BackpressureStrategy;
@@ -36,28 +39,50 @@ import io.reactivex.subjects.BehaviorSubject;
  * message bus, providing all listeners with new updates to the play queue.
  *
  * This class can be serialized for passing intents, but in order to start the
- * message bus, it must be initialized.
+ * message bus, it must be initialized. Passing a {@link #copy()} is much cheaper
+ * than a serialized copy for large queues.
  * */
 public abstract class PlayQueue implements Serializable {
     private final String TAG = "PlayQueue@" + Integer.toHexString(hashCode());
 
     public static final boolean DEBUG = true;
 
-    private ArrayList<PlayQueueItem> backup;
-    private ArrayList<PlayQueueItem> streams;
+    private IndexedList<PlayQueueItem> backup;
+    private IndexedList<PlayQueueItem> streams;
     @NonNull private final AtomicInteger queueIndex;
 
     private transient BehaviorSubject<PlayQueueEvent> eventBroadcast;
     private transient Flowable<PlayQueueEvent> broadcastReceiver;
     private transient Subscription reportingReactor;
 
+    /**
+     * Collects the events of the changes made in {@link #batch(Runnable)}, null otherwise.
+     * */
+    private transient List<PlayQueueEvent> pendingEvents;
+
     PlayQueue(final int index, final List<PlayQueueItem> startWith) {
-        streams = new ArrayList<>();
-        streams.addAll(startWith);
+        streams = new IndexedList<>(startWith);
 
         queueIndex = new AtomicInteger(index);
     }
 
+    /**
+     * Copies the items and the index of the given play queue, but not its message buses.
+     * Items are copied, so both queues can change independently, while their
+     * immutable properties are shared.
+     * */
+    PlayQueue(@NonNull final PlayQueue other) {
+        synchronized (other) {
+            // Keep items in both the streams and the backup identical, just like serialization
+            final Map<PlayQueueItem, PlayQueueItem> copies =
+                    new IdentityHashMap<>(other.streams.size());
+            streams = copyOf(other.streams, copies);
+            backup = other.backup == null ? null : copyOf(other.backup, copies);
+
+            queueIndex = new AtomicInteger(other.getIndex());
+        }
+    }
+
     /*//////////////////////////////////////////////////////////////////////////
     // Playlist actions
     //////////////////////////////////////////////////////////////////////////*/
@@ -102,6 +127,12 @@ public abstract class PlayQueue implements Serializable {
      * */
     public abstract void fetch();
 
+    /**
+     * Returns an uninitialized copy of the play queue, e.g. to pass to a player.
+     * */
+    @NonNull
+    public abstract PlayQueue copy();
+
     /*//////////////////////////////////////////////////////////////////////////
     // Readonly ops
     //////////////////////////////////////////////////////////////////////////*/
@@ -131,11 +162,10 @@ public abstract class PlayQueue implements Serializable {
 
     /**
      * Returns the index of the given item using referential equality.
-     * May be null despite play queue contains identical item.
+     * May be -1 despite play queue contains identical item.
+     * Runs in amortized constant time, see {@link IndexedList}.
      * */
     public int indexOf(@NonNull final PlayQueueItem item) {
-        // referential equality, can't think of a better way to do this
-        // todo: better than this
         return streams.indexOf(item);
     }
 
@@ -165,7 +195,7 @@ public abstract class PlayQueue implements Serializable {
      * */
     @NonNull
     public List<PlayQueueItem> getStreams() {
-        return Collections.unmodifiableList(streams);
+        return streams.asList();
     }
 
     /**
@@ -234,7 +264,7 @@ public abstract class PlayQueue implements Serializable {
         }
         streams.addAll(itemList);
 
-        broadcast(new AppendEvent(itemList.size()));
+        broadcast(new AppendEvent(itemList.size(), streams.size()));
     }
 
     /**
@@ -286,7 +316,7 @@ public abstract class PlayQueue implements Serializable {
 
         if (backup != null) {
             final int backupIndex = backup.indexOf(getItem(removeIndex));
-            backup.remove(backupIndex);
+            if (backupIndex != -1) backup.remove(backupIndex);
         }
         streams.remove(removeIndex);
     }
@@ -313,10 +343,40 @@ public abstract class PlayQueue implements Serializable {
             queueIndex.incrementAndGet();
         }
 
-        streams.add(target, streams.remove(source));
+        streams.move(source, target);
         broadcast(new MoveEvent(source, target));
     }
 
+    /**
+     * Makes all changes to the play queue done by the given action in one transaction.
+     *
+     * Instead of an event per change, a single {@link BatchEvent} is emitted after the action,
+     * with consecutive appends merged into one {@link AppendEvent}, so listeners can apply
+     * all changes at once. A single remaining event is emitted as is.
+     * Nested batches are part of the outermost one.
+     * */
+    public synchronized void batch(@NonNull final Runnable changes) {
+        if (pendingEvents != null) {
+            changes.run();
+            return;
+        }
+
+        final List<PlayQueueEvent> events = new ArrayList<>();
+        pendingEvents = events;
+        try {
+            changes.run();
+        } finally {
+            pendingEvents = null;
+        }
+
+        final List<PlayQueueEvent> coalesced = coalesce(events);
+        if (coalesced.size() == 1) {
+            broadcast(coalesced.get(0));
+        } else if (!coalesced.isEmpty()) {
+            broadcast(new BatchEvent(coalesced));
+        }
+    }
+
     /**
      * Sets the recovery record of the item at the index.
      *
@@ -349,15 +409,15 @@ public abstract class PlayQueue implements Serializable {
      * */
     public synchronized void shuffle() {
         if (backup == null) {
-            backup = new ArrayList<>(streams);
+            backup = new IndexedList<>(streams.asList());
         }
         final int originIndex = getIndex();
         final PlayQueueItem current = getItem();
-        Collections.shuffle(streams);
+        streams.shuffle();
 
-        final int newIndex = streams.indexOf(current);
+        final int newIndex = current == null ? -1 : streams.indexOf(current);
         if (newIndex != -1) {
-            streams.add(0, streams.remove(newIndex));
+            streams.move(newIndex, 0);
         }
         queueIndex.set(0);
 
@@ -377,11 +437,10 @@ public abstract class PlayQueue implements Serializable {
         final int originIndex = getIndex();
         final PlayQueueItem current = getItem();
 
-        streams.clear();
         streams = backup;
         backup = null;
 
-        final int newIndex = streams.indexOf(current);
+        final int newIndex = current == null ? -1 : streams.indexOf(current);
         if (newIndex != -1) {
             queueIndex.set(newIndex);
         } else {
@@ -391,16 +450,52 @@ public abstract class PlayQueue implements Serializable {
         broadcast(new ReorderEvent(originIndex, queueIndex.get()));
     }
 
+    @NonNull
+    private static IndexedList<PlayQueueItem> copyOf(
+            @NonNull final IndexedList<PlayQueueItem> items,
+            @NonNull final Map<PlayQueueItem, PlayQueueItem> copies) {
+        final List<PlayQueueItem> list = new ArrayList<>(items.size());
+        for (final PlayQueueItem item : items.asList()) {
+            PlayQueueItem copy = copies.get(item);
+            if (copy == null) {
+                copy = new PlayQueueItem(item);
+                copies.put(item, copy);
+            }
+            list.add(copy);
+        }
+        return new IndexedList<>(list);
+    }
+
     /*//////////////////////////////////////////////////////////////////////////
     // Rx Broadcast
     //////////////////////////////////////////////////////////////////////////*/
 
     private void broadcast(@NonNull final PlayQueueEvent event) {
-        if (eventBroadcast != null) {
+        if (pendingEvents != null) {
+            pendingEvents.add(event);
+        } else if (eventBroadcast != null) {
             eventBroadcast.onNext(event);
         }
     }
 
+    @NonNull
+    private static List<PlayQueueEvent> coalesce(@NonNull final List<PlayQueueEvent> events) {
+        final List<PlayQueueEvent> coalesced = new ArrayList<>(events.size());
+        for (final PlayQueueEvent event : events) {
+            final int last = coalesced.size() - 1;
+            if (last >= 0 && event instanceof AppendEvent &&
+                    coalesced.get(last) instanceof AppendEvent) {
+                final AppendEvent append = (AppendEvent) event;
+                final int amount = ((AppendEvent) coalesced.get(last)).getAmount() +
+                        append.getAmount();
+                coalesced.set(last, new AppendEvent(amount, append.getQueueSize()));
+            } else {
+                coalesced.add(event);
+            }
+        }
+        return coalesced;
+    }
+
     private Subscriber<PlayQueueEvent> getSelfReporter() {
         return new Subscriber<PlayQueueEvent>() {
             @Override
@@ -130,6 +130,7 @@ public class PlayQueueAdapter extends RecyclerView.Adapter<RecyclerView.ViewHold
                 break;
             case INIT:
             case REORDER:
+            case BATCH:
             default:
                 notifyDataSetChanged();
                 break;
@@ -1,5 +1,6 @@
 package org.schabi.newpipe.playlist;
 
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
@@ -10,11 +11,13 @@ import org.schabi.newpipe.util.ExtractorHelper;
 
 import java.io.Serializable;
 
+import io.reactivex.Maybe;
 import io.reactivex.Single;
 import io.reactivex.schedulers.Schedulers;
 
 public class PlayQueueItem implements Serializable {
     public final static long RECOVERY_UNSET = Long.MIN_VALUE;
+    public final static long EXTRACTION_UNSET = -1;
     private final static String EMPTY_STRING = "";
 
     @NonNull final private String title;
@@ -27,6 +30,7 @@ public class PlayQueueItem implements Serializable {
 
     private long recoveryPosition;
     private Throwable error;
+    private volatile long extractionMillis = EXTRACTION_UNSET;
 
     PlayQueueItem(@NonNull final StreamInfo info) {
         this(info.getName(), info.getUrl(), info.getServiceId(), info.getDuration(),
@@ -41,6 +45,18 @@ public class PlayQueueItem implements Serializable {
                 item.getThumbnailUrl(), item.getUploaderName(), item.getStreamType());
     }
 
+    /**
+     * Copies the item along with its state, sharing the immutable properties.
+     * */
+    PlayQueueItem(@NonNull final PlayQueueItem item) {
+        this(item.title, item.url, item.serviceId, item.duration, item.thumbnailUrl,
+                item.uploader, item.streamType);
+
+        this.recoveryPosition = item.recoveryPosition;
+        this.error = item.error;
+        this.extractionMillis = item.extractionMillis;
+    }
+
     private PlayQueueItem(@Nullable final String name, @Nullable final String url,
                           final int serviceId, final long duration,
                           @Nullable final String thumbnailUrl, @Nullable final String uploader,
@@ -98,9 +114,31 @@ public class PlayQueueItem implements Serializable {
         return error;
     }
 
+    /**
+     * Returns how long the first extraction of {@link #getStream()} from the network took,
+     * or {@link #EXTRACTION_UNSET} if there was none yet, e.g. as the stream was cached.
+     * */
+    public long getExtractionMillis() {
+        return extractionMillis;
+    }
+
     @NonNull
     public Single<StreamInfo> getStream() {
-        return ExtractorHelper.getStreamInfo(this.serviceId, this.url, false)
+        // Only loads which miss the cache are timed, cache hits would skew the metric
+        final Single<StreamInfo> loadFromNetwork = Single.defer(() -> {
+            final long startTimestamp = SystemClock.elapsedRealtime();
+            return ExtractorHelper.getStreamInfo(this.serviceId, this.url, true)
+                    .doOnSuccess(info -> {
+                        if (extractionMillis == EXTRACTION_UNSET) {
+                            extractionMillis = SystemClock.elapsedRealtime() - startTimestamp;
+                        }
+                    });
+        });
+
+        return Maybe.concat(ExtractorHelper.<StreamInfo>loadFromCache(this.serviceId, this.url),
+                loadFromNetwork.toMaybe())
+                .firstElement()
+                .toSingle()
                 .subscribeOn(Schedulers.io())
                 .doOnError(throwable -> error = throwable);
     }
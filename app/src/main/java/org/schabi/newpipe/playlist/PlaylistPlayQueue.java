@@ -28,6 +28,15 @@ public final class PlaylistPlayQueue extends AbstractInfoPlayQueue<PlaylistInfo,
         super(serviceId, url, nextPageUrl, streams, index);
     }
 
+    private PlaylistPlayQueue(final PlaylistPlayQueue other) {
+        super(other);
+    }
+
+    @Override
+    public PlaylistPlayQueue copy() {
+        return new PlaylistPlayQueue(this);
+    }
+
     @Override
     protected String getTag() {
         return "PlaylistPlayQueue@" + Integer.toHexString(hashCode());
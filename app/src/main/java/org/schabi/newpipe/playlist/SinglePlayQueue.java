@@ -20,6 +20,10 @@ public final class SinglePlayQueue extends PlayQueue {
         super(index, playQueueItemsOf(items));
     }
 
+    private SinglePlayQueue(final SinglePlayQueue other) {
+        super(other);
+    }
+
     private static List<PlayQueueItem> playQueueItemsOf(List<StreamInfoItem> items) {
         List<PlayQueueItem> playQueueItems = new ArrayList<>(items.size());
         for (final StreamInfoItem item : items) {
@@ -35,4 +39,9 @@ public final class SinglePlayQueue extends PlayQueue {
 
     @Override
     public void fetch() {}
+
+    @Override
+    public SinglePlayQueue copy() {
+        return new SinglePlayQueue(this);
+    }
 }
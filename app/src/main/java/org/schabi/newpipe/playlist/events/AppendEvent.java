@@ -3,17 +3,27 @@ package org.schabi.newpipe.playlist.events;
 
 public class AppendEvent implements PlayQueueEvent {
     final private int amount;
+    final private int queueSize;
 
     @Override
     public PlayQueueEventType type() {
         return PlayQueueEventType.APPEND;
     }
 
-    public AppendEvent(final int amount) {
+    /**
+     * @param amount    the number of items appended
+     * @param queueSize the size of the play queue right after the append
+     * */
+    public AppendEvent(final int amount, final int queueSize) {
         this.amount = amount;
+        this.queueSize = queueSize;
     }
 
     public int getAmount() {
         return amount;
     }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
 }
@@ -0,0 +1,24 @@
+package org.schabi.newpipe.playlist.events;
+
+import java.util.Collections;
+import java.util.List;
+
+public class BatchEvent implements PlayQueueEvent {
+    final private List<PlayQueueEvent> events;
+
+    @Override
+    public PlayQueueEventType type() {
+        return PlayQueueEventType.BATCH;
+    }
+
+    public BatchEvent(final List<PlayQueueEvent> events) {
+        this.events = Collections.unmodifiableList(events);
+    }
+
+    /**
+     * Returns the events of the batch, in the order the changes were made.
+     * */
+    public List<PlayQueueEvent> getEvents() {
+        return events;
+    }
+}
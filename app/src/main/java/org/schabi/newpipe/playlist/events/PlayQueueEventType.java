@@ -22,6 +22,9 @@ public enum PlayQueueEventType {
     RECOVERY,
 
     // sent when the item at index has caused an exception
-    ERROR
+    ERROR,
+
+    // sent when several changes are made at once
+    BATCH
 }
 
@@ -1,12 +1,57 @@
 package org.schabi.newpipe.settings;
 
+import android.content.Intent;
 import android.os.Bundle;
+import android.support.v7.preference.Preference;
+import android.util.Log;
 
 import org.schabi.newpipe.R;
+import org.schabi.newpipe.player.metrics.MetricsStore;
+
+import java.io.ByteArrayOutputStream;
+
+import io.reactivex.Single;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
 
 public class DebugSettingsFragment extends BasePreferenceFragment {
+    private Disposable exportDisposable;
+
     @Override
     public void onCreatePreferences(Bundle savedInstanceState, String rootKey) {
         addPreferencesFromResource(R.xml.debug_settings);
     }
+
+    @Override
+    public boolean onPreferenceTreeClick(Preference preference) {
+        if (preference.getKey().equals(getString(R.string.export_player_metrics_key))) {
+            exportPlayerMetrics();
+        }
+
+        return super.onPreferenceTreeClick(preference);
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (exportDisposable != null) exportDisposable.dispose();
+    }
+
+    private void exportPlayerMetrics() {
+        if (exportDisposable != null) exportDisposable.dispose();
+        exportDisposable = Single.fromCallable(() -> {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            MetricsStore.getInstance().export(out);
+            return out.toString("UTF-8");
+        })
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(json -> {
+                    final Intent intent = new Intent(Intent.ACTION_SEND);
+                    intent.putExtra(Intent.EXTRA_TEXT, json);
+                    intent.setType("text/plain");
+                    startActivity(Intent.createChooser(intent, getString(R.string.share_dialog_title)));
+                }, throwable -> Log.e(TAG, "Unable to export player metrics", throwable));
+    }
 }
@@ -0,0 +1,171 @@
+package org.schabi.newpipe.subscription;
+
+import android.support.annotation.NonNull;
+
+import org.schabi.newpipe.database.AppDatabase;
+import org.schabi.newpipe.database.feed.FeedStreamEntry;
+import org.schabi.newpipe.database.feed.dao.FeedRefreshDAO;
+import org.schabi.newpipe.database.feed.dao.FeedStreamDAO;
+import org.schabi.newpipe.database.feed.model.FeedRefreshEntity;
+import org.schabi.newpipe.database.feed.model.FeedStreamEntity;
+import org.schabi.newpipe.database.stream.dao.StreamDAO;
+import org.schabi.newpipe.database.stream.model.StreamEntity;
+import org.schabi.newpipe.database.subscription.SubscriptionEntity;
+import org.schabi.newpipe.extractor.stream.StreamInfoItem;
+import org.schabi.newpipe.subscription.FeedMerger.MergedStream;
+import org.schabi.newpipe.util.UploadDateParser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.reactivex.Flowable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Access to the feed, the latest streams of all subscriptions, as stored in the database.
+ * The feed is kept up to date by the {@link FeedRefresher}.
+ */
+public class FeedManager {
+    /**
+     * How many streams are written to the database at once
+     * */
+    private static final int WRITE_PAGE_SIZE = 100;
+
+    private final AppDatabase database;
+    private final StreamDAO streamTable;
+    private final FeedStreamDAO feedTable;
+    private final FeedRefreshDAO feedRefreshTable;
+
+    public FeedManager(final AppDatabase db) {
+        database = db;
+        streamTable = db.streamDAO();
+        feedTable = db.feedStreamDAO();
+        feedRefreshTable = db.feedRefreshDAO();
+    }
+
+    /**
+     * The latest streams of the feed, updated whenever the feed changes.
+     */
+    public Flowable<List<FeedStreamEntry>> getFeed(final int limit) {
+        return feedTable.getLatest(limit).subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * Add the streams of the channels to the feed and store the refresh states of their
+     * subscriptions, in a single transaction. Streams already in the feed keep their
+     * position, only their metadata is updated.
+     */
+    public void saveRefresh(@NonNull final List<ChannelFeed> channels,
+                            @NonNull final List<FeedRefreshEntity> states) {
+        final FeedMerger merger = new FeedMerger(channels);
+        database.runInTransaction(() -> {
+            while (merger.hasNext()) insertStreams(merger.nextPage(WRITE_PAGE_SIZE));
+            feedRefreshTable.upsertAll(states);
+        });
+    }
+
+    /**
+     * The refresh states of all subscriptions checked before, by subscription id.
+     * Blocks until they are read.
+     */
+    @NonNull
+    public Map<Long, FeedRefreshEntity> getRefreshStates() {
+        final Map<Long, FeedRefreshEntity> states = new HashMap<>();
+        for (final FeedRefreshEntity state : feedRefreshTable.getStates()) {
+            states.put(state.getSubscriptionUid(), state);
+        }
+        return states;
+    }
+
+    /**
+     * The subscriptions due for a check at the given time, most overdue first.
+     * Blocks until they are read.
+     */
+    @NonNull
+    public List<SubscriptionEntity> getSubscriptionsDueAt(final long time) {
+        return feedRefreshTable.getDueAt(time);
+    }
+
+    /**
+     * The subscriptions not checked since the given time, least recently checked first.
+     * Blocks until they are read.
+     */
+    @NonNull
+    public List<SubscriptionEntity> getSubscriptionsNotCheckedSince(final long time) {
+        return feedRefreshTable.getNotCheckedSince(time);
+    }
+
+    /**
+     * Remove the streams from the feed that were uploaded before the given time.
+     */
+    public int removeStreamsOlderThan(final long time) {
+        return feedTable.deleteOlderThan(time);
+    }
+
+    private void insertStreams(@NonNull final List<MergedStream> mergedStreams) {
+        if (mergedStreams.isEmpty()) return;
+
+        final List<StreamEntity> streams = new ArrayList<>(mergedStreams.size());
+        for (final MergedStream stream : mergedStreams) streams.add(new StreamEntity(stream.item));
+        final List<Long> streamIds = streamTable.upsertAll(streams);
+
+        final List<FeedStreamEntity> feedStreams = new ArrayList<>(streamIds.size());
+        for (int index = 0; index < streamIds.size(); index++) {
+            final MergedStream stream = mergedStreams.get(index);
+            feedStreams.add(new FeedStreamEntity(streamIds.get(index), stream.subscriptionId,
+                    stream.item.getUploadDate(), stream.uploadTime, stream.item.getViewCount(),
+                    stream.sortTime));
+        }
+        feedTable.silentInsertAll(feedStreams);
+    }
+
+    /**
+     * The streams listed by a subscribed channel at the time it was fetched.
+     */
+    public static final class ChannelFeed {
+        private final long subscriptionId;
+        @NonNull private final List<StreamInfoItem> streams;
+        /**
+         * The upload times parsed from the streams, null where they are not understood
+         * */
+        @NonNull private final List<Long> uploadTimes;
+        private final long fetchTime;
+
+        public ChannelFeed(final long subscriptionId, @NonNull final List<StreamInfoItem> streams,
+                           final long fetchTime) {
+            this.subscriptionId = subscriptionId;
+            this.streams = streams;
+            this.fetchTime = fetchTime;
+
+            this.uploadTimes = new ArrayList<>(streams.size());
+            for (final StreamInfoItem item : streams) {
+                uploadTimes.add(UploadDateParser.parse(item.getUploadDate(), fetchTime));
+            }
+        }
+
+        /*package-private*/ long getSubscriptionId() {
+            return subscriptionId;
+        }
+
+        @NonNull
+        /*package-private*/ List<StreamInfoItem> getStreams() {
+            return streams;
+        }
+
+        @NonNull
+        public List<Long> getUploadTimes() {
+            return uploadTimes;
+        }
+
+        /**
+         * The time the stream at the given index is ordered by in the feed
+         * */
+        /*package-private*/ long getSortTime(final int index) {
+            final Long uploadTime = uploadTimes.get(index);
+            // Without an upload time, keep the order of the channel, newest first
+            return uploadTime != null ? uploadTime : fetchTime - index;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.schabi.newpipe.subscription;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.schabi.newpipe.extractor.stream.StreamInfoItem;
+import org.schabi.newpipe.subscription.FeedManager.ChannelFeed;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Merges the streams of several channels into a single list, newest first, a page at a time.
+ * <br><br>
+ * The streams of each channel are ordered once, then merged by always taking the newest
+ * stream among the heads of the channels, so merging n streams from k channels takes
+ * O(n log k). A stream listed by several channels is only kept the first time it is seen.
+ * */
+/*package-private*/ final class FeedMerger {
+    @NonNull private final PriorityQueue<ChannelCursor> heads;
+    @NonNull private final Set<StreamKey> seen = new HashSet<>();
+
+    /*package-private*/ FeedMerger(@NonNull final List<ChannelFeed> channels) {
+        heads = new PriorityQueue<>(Math.max(channels.size(), 1));
+        for (final ChannelFeed channel : channels) {
+            final ChannelCursor cursor = new ChannelCursor(channel);
+            if (cursor.hasNext()) heads.add(cursor);
+        }
+    }
+
+    /*package-private*/ boolean hasNext() {
+        return !heads.isEmpty();
+    }
+
+    /**
+     * @return up to the given number of the next streams, newest first,
+     * or an empty list once all streams are merged
+     * */
+    @NonNull
+    /*package-private*/ List<MergedStream> nextPage(final int pageSize) {
+        final List<MergedStream> page = new ArrayList<>(pageSize);
+        while (page.size() < pageSize && !heads.isEmpty()) {
+            final ChannelCursor cursor = heads.poll();
+            final MergedStream stream = cursor.next();
+            if (cursor.hasNext()) heads.add(cursor);
+
+            if (seen.add(new StreamKey(stream.item))) page.add(stream);
+        }
+        return page;
+    }
+
+    /**
+     * A stream of the feed, with the subscription it was found through.
+     * */
+    /*package-private*/ static final class MergedStream {
+        /*package-private*/ final long subscriptionId;
+        @NonNull /*package-private*/ final StreamInfoItem item;
+        @Nullable /*package-private*/ final Long uploadTime;
+        /*package-private*/ final long sortTime;
+
+        private MergedStream(final long subscriptionId, @NonNull final StreamInfoItem item,
+                             @Nullable final Long uploadTime, final long sortTime) {
+            this.subscriptionId = subscriptionId;
+            this.item = item;
+            this.uploadTime = uploadTime;
+            this.sortTime = sortTime;
+        }
+    }
+
+    /**
+     * The streams of a channel, newest first, and the position of the next one to merge.
+     * */
+    private static final class ChannelCursor implements Comparable<ChannelCursor> {
+        @NonNull private final List<MergedStream> streams;
+        private int position;
+
+        private ChannelCursor(@NonNull final ChannelFeed channel) {
+            final List<StreamInfoItem> items = channel.getStreams();
+            streams = new ArrayList<>(items.size());
+            for (int index = 0; index < items.size(); index++) {
+                streams.add(new MergedStream(channel.getSubscriptionId(), items.get(index),
+                        channel.getUploadTimes().get(index), channel.getSortTime(index)));
+            }
+            // Channels mostly list their streams newest first already, which sorts in O(n)
+            Collections.sort(streams, (first, second) ->
+                    compareNewestFirst(first.sortTime, second.sortTime));
+        }
+
+        private boolean hasNext() {
+            return position < streams.size();
+        }
+
+        @NonNull
+        private MergedStream next() {
+            return streams.get(position++);
+        }
+
+        @Override
+        public int compareTo(@NonNull final ChannelCursor other) {
+            return compareNewestFirst(streams.get(position).sortTime,
+                    other.streams.get(other.position).sortTime);
+        }
+
+        private static int compareNewestFirst(final long first, final long second) {
+            return first > second ? -1 : (first == second ? 0 : 1);
+        }
+    }
+
+    /**
+     * Identifies a stream across channels.
+     * */
+    private static final class StreamKey {
+        private final int serviceId;
+        @NonNull private final String url;
+
+        private StreamKey(@NonNull final StreamInfoItem item) {
+            this.serviceId = item.getServiceId();
+            this.url = item.getUrl();
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof StreamKey)) return false;
+
+            final StreamKey other = (StreamKey) obj;
+            return serviceId == other.serviceId && url.equals(other.url);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * serviceId + url.hashCode();
+        }
+    }
+}
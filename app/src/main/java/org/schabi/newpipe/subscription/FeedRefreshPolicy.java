@@ -0,0 +1,106 @@
+package org.schabi.newpipe.subscription;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.schabi.newpipe.database.feed.model.FeedRefreshEntity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when the feed of a subscription is checked next.
+ * <br><br>
+ * Channels are checked about twice per upload, based on the average time between their
+ * latest uploads. Channels which have not uploaded for longer than usual are checked less
+ * and less often, and channels failing to load are backed off exponentially.
+ * */
+public final class FeedRefreshPolicy {
+    /*package-private*/ static final long MIN_CHECK_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    /*package-private*/ static final long MAX_CHECK_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(7);
+    /**
+     * Used while the upload cadence of a channel is not known
+     * */
+    /*package-private*/ static final long DEFAULT_CHECK_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(6);
+
+    private static final int CHECKS_PER_UPLOAD = 2;
+    private static final int CADENCE_SAMPLE_SIZE = 10;
+
+    private FeedRefreshPolicy() {
+        //no instance
+    }
+
+    /**
+     * @param previous the state before the check, or null if never checked
+     * @param uploadTimes the upload times of the streams found, unknown ones are null
+     * @return the state after a successful check at the given time
+     * */
+    @NonNull
+    public static FeedRefreshEntity onChecked(final long subscriptionId,
+                                              @Nullable final FeedRefreshEntity previous,
+                                              @NonNull final List<Long> uploadTimes,
+                                              final long now) {
+        final List<Long> knownTimes = new ArrayList<>(uploadTimes.size());
+        for (final Long uploadTime : uploadTimes) {
+            if (uploadTime != null) knownTimes.add(uploadTime);
+        }
+        Collections.sort(knownTimes, Collections.reverseOrder());
+
+        final Long uploadInterval = estimateUploadInterval(knownTimes,
+                previous == null ? null : previous.getUploadInterval());
+        final Long newestUpload = knownTimes.isEmpty() ? null : knownTimes.get(0);
+
+        return new FeedRefreshEntity(subscriptionId, now,
+                now + checkInterval(uploadInterval, newestUpload, now), uploadInterval, 0);
+    }
+
+    /**
+     * @param previous the state before the check, or null if never checked
+     * @return the state after a failed check at the given time
+     * */
+    @NonNull
+    public static FeedRefreshEntity onFailed(final long subscriptionId,
+                                             @Nullable final FeedRefreshEntity previous,
+                                             final long now) {
+        final int failureCount = previous == null ? 1 : previous.getFailureCount() + 1;
+        return new FeedRefreshEntity(subscriptionId, now, now + backoffInterval(failureCount),
+                previous == null ? null : previous.getUploadInterval(), failureCount);
+    }
+
+    /**
+     * @param uploadTimes known upload times, newest first
+     * @return the average time between the latest uploads, smoothed with the previous
+     * estimate, or the previous estimate if there are too few uploads
+     * */
+    @Nullable
+    /*package-private*/ static Long estimateUploadInterval(@NonNull final List<Long> uploadTimes,
+                                                           @Nullable final Long previous) {
+        final int samples = Math.min(uploadTimes.size(), CADENCE_SAMPLE_SIZE);
+        if (samples < 2) return previous;
+
+        final long estimate = (uploadTimes.get(0) - uploadTimes.get(samples - 1)) / (samples - 1);
+        return previous == null ? estimate : (previous + estimate) / 2;
+    }
+
+    /*package-private*/ static long checkInterval(@Nullable final Long uploadInterval,
+                                                  @Nullable final Long newestUpload,
+                                                  final long now) {
+        if (uploadInterval == null) return DEFAULT_CHECK_INTERVAL_MILLIS;
+
+        // A channel silent for longer than usual is not expected to upload soon
+        final long sinceNewest = newestUpload == null ? 0 : Math.max(0, now - newestUpload);
+        final long expectedWait = Math.max(uploadInterval, sinceNewest / 2);
+        return clamp(expectedWait / CHECKS_PER_UPLOAD);
+    }
+
+    /*package-private*/ static long backoffInterval(final int failureCount) {
+        final int doublings = Math.min(Math.max(failureCount - 1, 0), 30);
+        return clamp(MIN_CHECK_INTERVAL_MILLIS << doublings);
+    }
+
+    private static long clamp(final long interval) {
+        return Math.max(MIN_CHECK_INTERVAL_MILLIS, Math.min(MAX_CHECK_INTERVAL_MILLIS, interval));
+    }
+}
@@ -0,0 +1,291 @@
+package org.schabi.newpipe.subscription;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.StringRes;
+import android.util.Log;
+
+import org.schabi.newpipe.MainActivity;
+import org.schabi.newpipe.NewPipeDatabase;
+import org.schabi.newpipe.R;
+import org.schabi.newpipe.database.feed.model.FeedRefreshEntity;
+import org.schabi.newpipe.database.subscription.SubscriptionEntity;
+import org.schabi.newpipe.extractor.channel.ChannelInfo;
+import org.schabi.newpipe.extractor.exceptions.ReCaptchaException;
+import org.schabi.newpipe.subscription.FeedManager.ChannelFeed;
+import org.schabi.newpipe.util.ExtractorHelper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.BehaviorSubject;
+
+/**
+ * Refreshes the feed in the background: checks the channels of the subscriptions due for it
+ * and stores their streams through the {@link FeedManager}, which the feed is then read from.
+ * <br><br>
+ * When a channel is due is decided by the {@link FeedRefreshPolicy}, so channels uploading
+ * often are checked more often than dormant or failing ones. Checks run within a budget of
+ * parallel requests and requests per minute, set in the content settings. When a service
+ * asks for a captcha, refreshing pauses for a while.
+ * <br><br>
+ * A refresh is not bound to the screen that started it, and only one runs at a time.
+ */
+public final class FeedRefresher {
+    private static final boolean DEBUG = MainActivity.DEBUG;
+    private static final String TAG = "FeedRefresher";
+
+    private static final String PREFERENCES_NAME = "feed_refresher";
+    private static final String LAST_REFRESH_KEY = "last_refresh";
+    private static final String PAUSED_UNTIL_KEY = "paused_until";
+
+    /**
+     * Opening the feed looks for due channels at most this often
+     * */
+    private static final long REFRESH_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    /**
+     * A forced refresh skips channels checked more recently than this
+     * */
+    private static final long FORCED_CHECK_AGE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    /**
+     * How long refreshing pauses after a service asked for a captcha
+     * */
+    private static final long RATE_LIMIT_PAUSE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    /**
+     * Streams uploaded before this are removed from the feed
+     * */
+    private static final long MAX_STREAM_AGE_MILLIS = TimeUnit.DAYS.toMillis(90);
+
+    private static final int BATCH_SIZE = 25;
+    private static final long BATCH_TIMEOUT_MILLIS = 2000;
+
+    private static volatile FeedRefresher instance;
+
+    @NonNull private final Context context;
+    @NonNull private final FeedManager feedManager;
+    @NonNull private final SubscriptionImportQueue importQueue;
+    @NonNull private final SharedPreferences preferences;
+    @NonNull private final SharedPreferences settings;
+
+    /**
+     * Feed writes run one at a time, off the extraction threads
+     * */
+    @NonNull private final Scheduler writeScheduler =
+            Schedulers.from(Executors.newSingleThreadExecutor());
+    @NonNull private final BehaviorSubject<Boolean> refreshing =
+            BehaviorSubject.createDefault(false);
+
+    @Nullable private Disposable refreshReactor;
+
+    private FeedRefresher(@NonNull final Context context) {
+        this.context = context;
+        feedManager = new FeedManager(NewPipeDatabase.getInstance(context));
+        importQueue = new SubscriptionImportQueue(NewPipeDatabase.getInstance(context));
+        preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        settings = PreferenceManager.getDefaultSharedPreferences(context);
+    }
+
+    @NonNull
+    public static FeedRefresher getInstance(@NonNull final Context context) {
+        FeedRefresher result = instance;
+        if (result == null) {
+            synchronized (FeedRefresher.class) {
+                result = instance;
+                if (result == null) {
+                    instance = (result = new FeedRefresher(context.getApplicationContext()));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Whether a refresh is running, starting with the current state.
+     * */
+    @NonNull
+    public Observable<Boolean> observeRefreshing() {
+        return refreshing.distinctUntilChanged();
+    }
+
+    /**
+     * Check the channels due for it, unless that was done recently or refreshing is paused.
+     * */
+    public void refreshIfStale() {
+        final long now = System.currentTimeMillis();
+        if (now < preferences.getLong(PAUSED_UNTIL_KEY, 0)) return;
+        if (now - preferences.getLong(LAST_REFRESH_KEY, 0) < REFRESH_INTERVAL_MILLIS) return;
+        refresh(false);
+    }
+
+    /**
+     * Check all channels not checked for a few minutes, even if they are not due yet.
+     * Resumes refreshing if it was paused.
+     * */
+    public void refresh() {
+        preferences.edit().remove(PAUSED_UNTIL_KEY).apply();
+        refresh(true);
+    }
+
+    private synchronized void refresh(final boolean force) {
+        if (refreshReactor != null && !refreshReactor.isDisposed()) return;
+        if (DEBUG) Log.d(TAG, "refresh() called with: force = [" + force + "]");
+
+        final int parallelRequests = getSetting(R.string.feed_refresh_parallel_requests_key,
+                R.string.feed_refresh_parallel_requests_default_value);
+        final RequestRateLimiter rateLimiter = new RequestRateLimiter(getSetting(
+                R.string.feed_refresh_rate_limit_key, R.string.feed_refresh_rate_limit_default_value));
+
+        refreshing.onNext(true);
+        refreshReactor = Single.fromCallable(feedManager::getRefreshStates)
+                .subscribeOn(Schedulers.io())
+                .flatMapPublisher(states -> Flowable.fromIterable(getSubscriptionsToCheck(force))
+                        .flatMapMaybe(subscription -> check(subscription,
+                                states.get(subscription.getUid()), rateLimiter),
+                                false, Math.max(parallelRequests, 1)))
+                .buffer(BATCH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS, BATCH_SIZE)
+                .filter(batch -> !batch.isEmpty())
+                .observeOn(writeScheduler)
+                .doOnNext(this::save)
+                .ignoreElements()
+                .doOnComplete(() -> {
+                    final long now = System.currentTimeMillis();
+                    feedManager.removeStreamsOlderThan(now - MAX_STREAM_AGE_MILLIS);
+                    preferences.edit().putLong(LAST_REFRESH_KEY, now).apply();
+                })
+                .subscribe(this::onRefreshed, error -> {
+                    Log.e(TAG, "Unable to refresh the feed", error);
+                    onRefreshed();
+                });
+    }
+
+    private synchronized void onRefreshed() {
+        if (DEBUG) Log.d(TAG, "onRefreshed() called");
+        refreshReactor = null;
+        refreshing.onNext(false);
+    }
+
+    @NonNull
+    private List<SubscriptionEntity> getSubscriptionsToCheck(final boolean force) {
+        final long now = System.currentTimeMillis();
+        final List<SubscriptionEntity> subscriptions = force
+                ? feedManager.getSubscriptionsNotCheckedSince(now - FORCED_CHECK_AGE_MILLIS)
+                : feedManager.getSubscriptionsDueAt(now);
+
+        if (DEBUG) Log.d(TAG, "Checking [" + subscriptions.size() + "] subscriptions");
+        return subscriptions;
+    }
+
+    /**
+     * Check a channel once the rate limit allows it.
+     *
+     * @return the result of the check, or nothing if the check was called off
+     * */
+    private Maybe<CheckResult> check(@NonNull final SubscriptionEntity subscription,
+                                     @Nullable final FeedRefreshEntity previous,
+                                     @NonNull final RequestRateLimiter rateLimiter) {
+        return Maybe.defer(() -> {
+            if (isPaused()) return Maybe.empty();
+
+            final long delay = rateLimiter.reserve(System.currentTimeMillis());
+            return Maybe.timer(delay, TimeUnit.MILLISECONDS)
+                    .flatMap(ignored -> isPaused() ? Maybe.<CheckResult>empty() :
+                            loadChannel(subscription).map(info -> {
+                                final long now = System.currentTimeMillis();
+                                final ChannelFeed feed = new ChannelFeed(subscription.getUid(),
+                                        info.getRelatedItems(), now);
+                                return new CheckResult(feed, FeedRefreshPolicy.onChecked(
+                                        subscription.getUid(), previous, feed.getUploadTimes(), now),
+                                        // Imports which couldn't load the channel left it incomplete
+                                        SubscriptionImportQueue.isIncomplete(subscription) ? info : null);
+                            }))
+                    .onErrorResumeNext(error -> {
+                        if (error instanceof ReCaptchaException) {
+                            // Not the channel's fault, pause instead of backing it off
+                            Log.w(TAG, "Rate limited, pausing refreshes", error);
+                            pause();
+                            return Maybe.empty();
+                        }
+
+                        Log.w(TAG, "Unable to check channel: " + subscription.getUrl(), error);
+                        return Maybe.just(new CheckResult(null, FeedRefreshPolicy.onFailed(
+                                subscription.getUid(), previous, System.currentTimeMillis()), null));
+                    });
+        });
+    }
+
+    /**
+     * Load on the io scheduler, which is not bounded, so the parallel requests setting is the
+     * only limit. The shared subscription scheduler would cap it at its pool size.
+     * */
+    private static Maybe<ChannelInfo> loadChannel(@NonNull final SubscriptionEntity subscription) {
+        return ExtractorHelper.getChannelInfo(subscription.getServiceId(),
+                subscription.getUrl(), true)
+                .toMaybe()
+                .subscribeOn(Schedulers.io());
+    }
+
+    private void save(@NonNull final List<CheckResult> results) {
+        final List<ChannelFeed> channels = new ArrayList<>(results.size());
+        final List<FeedRefreshEntity> states = new ArrayList<>(results.size());
+        final Map<Long, ChannelInfo> incompleteSubscriptions = new HashMap<>();
+        for (final CheckResult result : results) {
+            if (result.feed != null) channels.add(result.feed);
+            states.add(result.state);
+            if (result.info != null) {
+                incompleteSubscriptions.put(result.state.getSubscriptionUid(), result.info);
+            }
+        }
+        feedManager.saveRefresh(channels, states);
+        importQueue.completeFromFeed(incompleteSubscriptions);
+    }
+
+    private boolean isPaused() {
+        return System.currentTimeMillis() < preferences.getLong(PAUSED_UNTIL_KEY, 0);
+    }
+
+    private void pause() {
+        preferences.edit().putLong(PAUSED_UNTIL_KEY,
+                System.currentTimeMillis() + RATE_LIMIT_PAUSE_MILLIS).apply();
+    }
+
+    private int getSetting(@StringRes final int key, @StringRes final int defaultValue) {
+        final String value = settings.getString(context.getString(key),
+                context.getString(defaultValue));
+        try {
+            return Integer.parseInt(value);
+        } catch (final NumberFormatException error) {
+            return Integer.parseInt(context.getString(defaultValue));
+        }
+    }
+
+    private static final class CheckResult {
+        @Nullable private final ChannelFeed feed;
+        @NonNull private final FeedRefreshEntity state;
+        /**
+         * The info of the channel, if its subscription is to be completed with it
+         * */
+        @Nullable private final ChannelInfo info;
+
+        private CheckResult(@Nullable final ChannelFeed feed,
+                            @NonNull final FeedRefreshEntity state,
+                            @Nullable final ChannelInfo info) {
+            this.feed = feed;
+            this.state = state;
+            this.info = info;
+        }
+    }
+}
@@ -22,9 +22,8 @@ package org.schabi.newpipe.subscription;
 import android.support.annotation.Nullable;
 
 import com.grack.nanojson.JsonAppendableWriter;
-import com.grack.nanojson.JsonArray;
-import com.grack.nanojson.JsonObject;
-import com.grack.nanojson.JsonParser;
+import com.grack.nanojson.JsonParserException;
+import com.grack.nanojson.JsonReader;
 import com.grack.nanojson.JsonSink;
 import com.grack.nanojson.JsonWriter;
 
@@ -32,6 +31,8 @@ import org.schabi.newpipe.BuildConfig;
 import org.schabi.newpipe.extractor.subscription.SubscriptionExtractor.InvalidSourceException;
 import org.schabi.newpipe.extractor.subscription.SubscriptionItem;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
@@ -61,47 +62,39 @@ public class ImportExportJsonHelper {
      *
      * @param in            the input stream (e.g. a file)
      * @param eventListener listener for the events generated
+     * @see #openReader(InputStream)
      */
     public static List<SubscriptionItem> readFrom(InputStream in, @Nullable ImportExportEventListener eventListener) throws InvalidSourceException {
-        if (in == null) throw new InvalidSourceException("input is null");
-
         final List<SubscriptionItem> channels = new ArrayList<>();
 
-        try {
-            JsonObject parentObject = JsonParser.object().from(in);
-            JsonArray channelsArray = parentObject.getArray(JSON_SUBSCRIPTIONS_ARRAY_KEY);
-            if (eventListener != null) eventListener.onSizeReceived(channelsArray.size());
-
-            if (channelsArray == null) {
-                throw new InvalidSourceException("Channels array is null");
-            }
-
-            for (Object o : channelsArray) {
-                if (o instanceof JsonObject) {
-                    JsonObject itemObject = (JsonObject) o;
-                    int serviceId = itemObject.getInt(JSON_SERVICE_ID_KEY, 0);
-                    String url = itemObject.getString(JSON_URL_KEY);
-                    String name = itemObject.getString(JSON_NAME_KEY);
-
-                    if (url != null && name != null && !url.isEmpty() && !name.isEmpty()) {
-                        channels.add(new SubscriptionItem(serviceId, url, name));
-                        if (eventListener != null) eventListener.onItemCompleted(name);
-                    }
-                }
-            }
-        } catch (Throwable e) {
-            throw new InvalidSourceException("Couldn't parse json", e);
+        final ItemReader reader = openReader(in);
+        SubscriptionItem item;
+        while ((item = reader.next()) != null) {
+            channels.add(item);
+            if (eventListener != null) eventListener.onItemCompleted(item.getName());
         }
 
         return channels;
     }
 
+    /**
+     * Start reading a JSON source through the input stream, the subscription items are then
+     * parsed one at a time, as they are read from the {@link ItemReader}.
+     *
+     * @param in the input stream (e.g. a file), closed by {@link ItemReader#close()}
+     */
+    public static ItemReader openReader(InputStream in) throws InvalidSourceException {
+        if (in == null) throw new InvalidSourceException("input is null");
+        return new ItemReader(in);
+    }
+
     /**
      * Write the subscriptions items list as JSON to the output.
      *
      * @param items         the list of subscriptions items
      * @param out           the output stream (e.g. a file)
      * @param eventListener listener for the events generated
+     * @see #openWriter(OutputStream)
      */
     public static void writeTo(List<SubscriptionItem> items, OutputStream out, @Nullable ImportExportEventListener eventListener) {
         JsonAppendableWriter writer = JsonWriter.on(out);
@@ -115,24 +108,193 @@ public class ImportExportJsonHelper {
     public static void writeTo(List<SubscriptionItem> items, JsonSink writer, @Nullable ImportExportEventListener eventListener) {
         if (eventListener != null) eventListener.onSizeReceived(items.size());
 
+        writeStart(writer);
+        for (SubscriptionItem item : items) {
+            writeItem(writer, item);
+            if (eventListener != null) eventListener.onItemCompleted(item.getName());
+        }
+        writeEnd(writer);
+    }
+
+    /**
+     * Start writing JSON to the output, the subscription items are then written one at a time
+     * through the {@link ItemWriter}, without the need to have all of them in memory.
+     *
+     * @param out the output stream (e.g. a file)
+     */
+    public static ItemWriter openWriter(OutputStream out) {
+        return new ItemWriter(out);
+    }
+
+    private static void writeStart(JsonSink writer) {
         writer.object();
 
         writer.value(JSON_APP_VERSION_KEY, BuildConfig.VERSION_NAME);
         writer.value(JSON_APP_VERSION_INT_KEY, BuildConfig.VERSION_CODE);
 
         writer.array(JSON_SUBSCRIPTIONS_ARRAY_KEY);
-        for (SubscriptionItem item : items) {
-            writer.object();
-            writer.value(JSON_SERVICE_ID_KEY, item.getServiceId());
-            writer.value(JSON_URL_KEY, item.getUrl());
-            writer.value(JSON_NAME_KEY, item.getName());
-            writer.end();
+    }
 
-            if (eventListener != null) eventListener.onItemCompleted(item.getName());
-        }
+    private static void writeItem(JsonSink writer, SubscriptionItem item) {
+        writer.object();
+        writer.value(JSON_SERVICE_ID_KEY, item.getServiceId());
+        writer.value(JSON_URL_KEY, item.getUrl());
+        writer.value(JSON_NAME_KEY, item.getName());
         writer.end();
+    }
 
+    private static void writeEnd(JsonSink writer) {
         writer.end();
+
+        writer.end();
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Streaming
+    //////////////////////////////////////////////////////////////////////////*/
+
+    /**
+     * Pulls the subscription items from a JSON source one at a time, so only the item being
+     * read is held in memory.
+     */
+    public static final class ItemReader implements Closeable {
+        private final InputStream in;
+        private final JsonReader reader;
+        private boolean isFinished;
+
+        private ItemReader(InputStream in) throws InvalidSourceException {
+            this.in = in;
+
+            try {
+                reader = JsonReader.from(in);
+                reader.object();
+                if (!seekToSubscriptions()) {
+                    throw new InvalidSourceException("Channels array is null");
+                }
+            } catch (InvalidSourceException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw parseError(e);
+            }
+        }
+
+        /**
+         * @return the next valid subscription item, or null when there are no more
+         */
+        @Nullable
+        public SubscriptionItem next() throws InvalidSourceException {
+            try {
+                while (!isFinished) {
+                    if (!reader.next()) {
+                        isFinished = true;
+                        break;
+                    }
+
+                    if (reader.current() != JsonReader.Type.OBJECT) {
+                        skipValue();
+                        continue;
+                    }
+
+                    final SubscriptionItem item = readItem();
+                    if (item != null) return item;
+                }
+            } catch (Throwable e) {
+                throw parseError(e);
+            }
+
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        /**
+         * Keeps the message of the cause, which tells the line and position for broken json.
+         */
+        private static InvalidSourceException parseError(Throwable e) {
+            return new InvalidSourceException("Couldn't parse json: " + e.getMessage(), e);
+        }
+
+        private boolean seekToSubscriptions() throws JsonParserException {
+            while (reader.next()) {
+                if (JSON_SUBSCRIPTIONS_ARRAY_KEY.equals(reader.key()) &&
+                        reader.current() == JsonReader.Type.ARRAY) {
+                    reader.array();
+                    return true;
+                }
+                skipValue();
+            }
+            return false;
+        }
+
+        @Nullable
+        private SubscriptionItem readItem() throws JsonParserException {
+            int serviceId = 0;
+            String url = null;
+            String name = null;
+
+            reader.object();
+            while (reader.next()) {
+                final String key = reader.key();
+                final JsonReader.Type type = reader.current();
+
+                if (JSON_SERVICE_ID_KEY.equals(key) && type == JsonReader.Type.NUMBER) {
+                    serviceId = reader.intVal();
+                } else if (JSON_URL_KEY.equals(key) && type == JsonReader.Type.STRING) {
+                    url = reader.string();
+                } else if (JSON_NAME_KEY.equals(key) && type == JsonReader.Type.STRING) {
+                    name = reader.string();
+                } else {
+                    skipValue();
+                }
+            }
+
+            if (url == null || name == null || url.isEmpty() || name.isEmpty()) return null;
+            return new SubscriptionItem(serviceId, url, name);
+        }
+
+        /**
+         * Read past the current value, including everything nested in it.
+         */
+        private void skipValue() throws JsonParserException {
+            switch (reader.current()) {
+                case OBJECT:
+                    reader.object();
+                    while (reader.next()) skipValue();
+                    break;
+                case ARRAY:
+                    reader.array();
+                    while (reader.next()) skipValue();
+                    break;
+                default:
+                    reader.value();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Writes the subscription items as JSON one at a time, as they are received.
+     * The output is only complete once {@link #finish()} is called.
+     */
+    public static final class ItemWriter {
+        private final JsonAppendableWriter writer;
+
+        private ItemWriter(OutputStream out) {
+            writer = JsonWriter.on(out);
+            writeStart(writer);
+        }
+
+        public void write(SubscriptionItem item) {
+            writeItem(writer, item);
+        }
+
+        public void finish() {
+            writeEnd(writer);
+            writer.done();
+        }
     }
 
 }
@@ -0,0 +1,36 @@
+package org.schabi.newpipe.subscription;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces requests out evenly, so no more than a given number of them start per minute.
+ * */
+public final class RequestRateLimiter {
+    public static final int UNLIMITED = 0;
+
+    private final long intervalMillis;
+    private long nextSlot;
+
+    /**
+     * @param requestsPerMinute the rate, or {@link #UNLIMITED}
+     * */
+    public RequestRateLimiter(final int requestsPerMinute) {
+        if (requestsPerMinute < 0) throw new IllegalArgumentException("rate is negative");
+        this.intervalMillis = requestsPerMinute == UNLIMITED
+                ? 0 : TimeUnit.MINUTES.toMillis(1) / requestsPerMinute;
+    }
+
+    /**
+     * Reserve the next free slot for a request.
+     *
+     * @param now the current time in milliseconds
+     * @return the milliseconds to wait before the request may start
+     * */
+    public synchronized long reserve(final long now) {
+        if (intervalMillis == 0) return 0;
+
+        final long slot = Math.max(now, nextSlot);
+        nextSlot = slot + intervalMillis;
+        return slot - now;
+    }
+}
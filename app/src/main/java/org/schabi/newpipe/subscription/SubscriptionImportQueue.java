@@ -0,0 +1,133 @@
+package org.schabi.newpipe.subscription;
+
+import android.support.annotation.NonNull;
+
+import org.schabi.newpipe.database.AppDatabase;
+import org.schabi.newpipe.database.subscription.SubscriptionDAO;
+import org.schabi.newpipe.database.subscription.SubscriptionEntity;
+import org.schabi.newpipe.database.subscription.SubscriptionImportDAO;
+import org.schabi.newpipe.database.subscription.SubscriptionImportEntity;
+import org.schabi.newpipe.extractor.channel.ChannelInfo;
+import org.schabi.newpipe.extractor.subscription.SubscriptionItem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.schabi.newpipe.database.subscription.SubscriptionImportEntity.STATUS_DONE;
+import static org.schabi.newpipe.database.subscription.SubscriptionImportEntity.STATUS_FAILED;
+import static org.schabi.newpipe.database.subscription.SubscriptionImportEntity.STATUS_PENDING;
+
+/**
+ * The progress of subscription imports, as stored in the database.
+ * <br><br>
+ * Imported channels are subscribed to right away, with the name given by the import source,
+ * and queued to be completed with the info of the channel. As the progress is saved along
+ * the way, an interrupted import resumes with the channels which were not loaded yet.
+ * Channels which could not be loaded by the import are completed by the feed refresh later.
+ * <br><br>
+ * All methods block until the database is updated.
+ */
+public class SubscriptionImportQueue {
+
+    private final AppDatabase database;
+    private final SubscriptionDAO subscriptionTable;
+    private final SubscriptionImportDAO importTable;
+
+    public SubscriptionImportQueue(final AppDatabase db) {
+        database = db;
+        subscriptionTable = db.subscriptionDAO();
+        importTable = db.subscriptionImportDAO();
+    }
+
+    /**
+     * Subscribe to the channels not subscribed to yet and queue them to be loaded.
+     * Channels already subscribed to are skipped.
+     */
+    public void enqueue(@NonNull final List<SubscriptionItem> items) {
+        final List<SubscriptionEntity> subscriptions = new ArrayList<>(items.size());
+        for (final SubscriptionItem item : items) subscriptions.add(SubscriptionEntity.from(item));
+
+        database.runInTransaction(() -> {
+            final List<Long> subscriptionIds = subscriptionTable.silentInsertAll(subscriptions);
+
+            final List<SubscriptionImportEntity> imports = new ArrayList<>(subscriptionIds.size());
+            for (final Long subscriptionId : subscriptionIds) {
+                if (subscriptionId == -1) continue;
+                imports.add(new SubscriptionImportEntity(subscriptionId, STATUS_PENDING, 0));
+            }
+            importTable.silentInsertAll(imports);
+        });
+    }
+
+    public int countPending() {
+        return importTable.countPending();
+    }
+
+    /**
+     * The subscriptions waiting to be loaded which follow the one with the given id.
+     */
+    @NonNull
+    public List<SubscriptionEntity> getPendingAfter(final long afterUid, final int limit) {
+        return importTable.getPendingAfter(afterUid, limit);
+    }
+
+    /**
+     * Save the results of loading queued channels, in a single transaction.
+     *
+     * @param loaded          the info loaded for the channels, by subscription id
+     * @param failedIds       the subscriptions whose channel can not be loaded
+     * @param interruptedIds  the subscriptions whose channel could not be loaded because of
+     *                        network errors, they stay queued unless this happened too often
+     * @param maxInterruptions how often a channel may fail to load because of network errors
+     */
+    public void saveProgress(@NonNull final Map<Long, ChannelInfo> loaded,
+                             @NonNull final List<Long> failedIds,
+                             @NonNull final List<Long> interruptedIds,
+                             final int maxInterruptions) {
+        database.runInTransaction(() -> {
+            for (final Map.Entry<Long, ChannelInfo> entry : loaded.entrySet()) {
+                subscriptionTable.replace(entry.getKey(), SubscriptionEntity.from(entry.getValue()));
+            }
+            if (!loaded.isEmpty()) importTable.setStatus(new ArrayList<>(loaded.keySet()), STATUS_DONE);
+            if (!failedIds.isEmpty()) importTable.setStatus(failedIds, STATUS_FAILED);
+            if (!interruptedIds.isEmpty()) importTable.addFailure(interruptedIds, maxInterruptions);
+        });
+    }
+
+    /**
+     * Returns whether the subscription only has the name it was imported with, because
+     * the info of its channel was not loaded yet or could not be loaded.
+     */
+    public static boolean isIncomplete(@NonNull final SubscriptionEntity subscription) {
+        return subscription.getAvatarUrl() == null && subscription.getSubscriberCount() != null
+                && subscription.getSubscriberCount() == -1;
+    }
+
+    /**
+     * Complete subscriptions with the info of their channels loaded elsewhere, e.g. by the
+     * feed refresh, in a single transaction. Their channels don't have to be loaded by an
+     * import anymore, whether the import was still pending or had failed.
+     *
+     * @param loaded the info loaded for the channels, by subscription id
+     */
+    public void completeFromFeed(@NonNull final Map<Long, ChannelInfo> loaded) {
+        if (loaded.isEmpty()) return;
+
+        database.runInTransaction(() -> {
+            for (final Map.Entry<Long, ChannelInfo> entry : loaded.entrySet()) {
+                subscriptionTable.replace(entry.getKey(), SubscriptionEntity.from(entry.getValue()));
+            }
+            importTable.setStatus(new ArrayList<>(loaded.keySet()), STATUS_DONE);
+        });
+    }
+
+    /**
+     * Forget the queue once no channel is waiting to be loaded anymore.
+     */
+    public void clearIfDone() {
+        database.runInTransaction(() -> {
+            if (importTable.countPending() == 0) importTable.deleteAll();
+        });
+    }
+}
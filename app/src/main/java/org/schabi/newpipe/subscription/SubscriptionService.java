@@ -99,10 +99,15 @@ public class SubscriptionService {
     }
 
     public Maybe<ChannelInfo> getChannelInfo(final SubscriptionEntity subscriptionEntity) {
-        if (DEBUG) Log.d(TAG, "getChannelInfo() called with: subscriptionEntity = [" + subscriptionEntity + "]");
+        return getChannelInfo(subscriptionEntity, false);
+    }
+
+    public Maybe<ChannelInfo> getChannelInfo(final SubscriptionEntity subscriptionEntity,
+                                             final boolean forceLoad) {
+        if (DEBUG) Log.d(TAG, "getChannelInfo() called with: subscriptionEntity = [" + subscriptionEntity + "], forceLoad = [" + forceLoad + "]");
 
         return Maybe.fromSingle(ExtractorHelper
-                .getChannelInfo(subscriptionEntity.getServiceId(), subscriptionEntity.getUrl(), false))
+                .getChannelInfo(subscriptionEntity.getServiceId(), subscriptionEntity.getUrl(), forceLoad))
                 .subscribeOn(subscriptionScheduler);
     }
 
@@ -27,18 +27,19 @@ import android.util.Log;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 import org.schabi.newpipe.R;
+import org.schabi.newpipe.database.subscription.SubscriptionDAO;
 import org.schabi.newpipe.database.subscription.SubscriptionEntity;
 import org.schabi.newpipe.extractor.subscription.SubscriptionItem;
 import org.schabi.newpipe.subscription.ImportExportJsonHelper;
+import org.schabi.newpipe.subscription.ImportExportJsonHelper.ItemWriter;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.util.ArrayList;
 import java.util.List;
 
+import io.reactivex.Flowable;
 import io.reactivex.android.schedulers.AndroidSchedulers;
-import io.reactivex.functions.Function;
 import io.reactivex.schedulers.Schedulers;
 
 import static org.schabi.newpipe.MainActivity.DEBUG;
@@ -51,6 +52,11 @@ public class SubscriptionsExportService extends BaseImportExportService {
      */
     public static final String EXPORT_COMPLETE_ACTION = "org.schabi.newpipe.subscription.services.SubscriptionsExportService.EXPORT_COMPLETE";
 
+    /**
+     * How many subscriptions are read from the database at once.
+     */
+    private static final int EXPORT_PAGE_SIZE = 500;
+
     private Subscription subscription;
     private File outFile;
     private FileOutputStream outputStream;
@@ -96,17 +102,7 @@ public class SubscriptionsExportService extends BaseImportExportService {
     private void startExport() {
         showToast(R.string.export_ongoing);
 
-        subscriptionService.subscriptionTable()
-                .getAll()
-                .take(1)
-                .map(subscriptionEntities -> {
-                    final List<SubscriptionItem> result = new ArrayList<>(subscriptionEntities.size());
-                    for (SubscriptionEntity entity : subscriptionEntities) {
-                        result.add(new SubscriptionItem(entity.getServiceId(), entity.getUrl(), entity.getName()));
-                    }
-                    return result;
-                })
-                .map(exportToFile())
+        Flowable.fromCallable(this::exportToFile)
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(getSubscriber());
@@ -140,11 +136,26 @@ public class SubscriptionsExportService extends BaseImportExportService {
         };
     }
 
-    private Function<List<SubscriptionItem>, File> exportToFile() {
-        return subscriptionItems -> {
-            ImportExportJsonHelper.writeTo(subscriptionItems, outputStream, eventListener);
-            return outFile;
-        };
+    /**
+     * Write the subscriptions to the file a page at a time, so they never all are in memory.
+     */
+    private File exportToFile() {
+        final SubscriptionDAO subscriptionTable = subscriptionService.subscriptionTable();
+        eventListener.onSizeReceived(subscriptionTable.count());
+
+        final ItemWriter writer = ImportExportJsonHelper.openWriter(outputStream);
+        long lastUid = -1;
+        List<SubscriptionEntity> page;
+        while (!(page = subscriptionTable.getPageAfter(lastUid, EXPORT_PAGE_SIZE)).isEmpty()) {
+            for (SubscriptionEntity entity : page) {
+                writer.write(new SubscriptionItem(entity.getServiceId(), entity.getUrl(), entity.getName()));
+                eventListener.onItemCompleted(entity.getName());
+            }
+            lastUid = page.get(page.size() - 1).getUid();
+        }
+        writer.finish();
+
+        return outFile;
     }
 
     protected void handleError(Throwable error) {
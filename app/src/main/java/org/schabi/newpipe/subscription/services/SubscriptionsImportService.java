@@ -20,20 +20,27 @@
 package org.schabi.newpipe.subscription.services;
 
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.content.LocalBroadcastManager;
 import android.text.TextUtils;
 import android.util.Log;
+import android.widget.Toast;
 
+import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
+import org.schabi.newpipe.NewPipeDatabase;
 import org.schabi.newpipe.R;
 import org.schabi.newpipe.database.subscription.SubscriptionEntity;
 import org.schabi.newpipe.extractor.NewPipe;
 import org.schabi.newpipe.extractor.channel.ChannelInfo;
+import org.schabi.newpipe.extractor.exceptions.ReCaptchaException;
 import org.schabi.newpipe.extractor.subscription.SubscriptionItem;
 import org.schabi.newpipe.subscription.ImportExportJsonHelper;
+import org.schabi.newpipe.subscription.ImportExportJsonHelper.ItemReader;
+import org.schabi.newpipe.subscription.SubscriptionImportQueue;
 import org.schabi.newpipe.util.Constants;
 import org.schabi.newpipe.util.ExtractorHelper;
 
@@ -43,10 +50,15 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
+import io.reactivex.Completable;
+import io.reactivex.Emitter;
 import io.reactivex.Flowable;
-import io.reactivex.Notification;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.functions.Consumer;
 import io.reactivex.functions.Function;
@@ -58,6 +70,11 @@ public class SubscriptionsImportService extends BaseImportExportService {
     public static final int CHANNEL_URL_MODE = 0;
     public static final int INPUT_STREAM_MODE = 1;
     public static final int PREVIOUS_EXPORT_MODE = 2;
+    /**
+     * Only load the channels left over by imports which were interrupted. The source of an
+     * import interrupted while it was read is gone, the user is told to import it again.
+     */
+    public static final int RESUME_MODE = 3;
     public static final String KEY_MODE = "key_mode";
     public static final String KEY_VALUE = "key_value";
 
@@ -66,25 +83,46 @@ public class SubscriptionsImportService extends BaseImportExportService {
      */
     public static final String IMPORT_COMPLETE_ACTION = "org.schabi.newpipe.subscription.services.SubscriptionsImportService.IMPORT_COMPLETE";
 
+    private static final String PREFERENCES_NAME = "subscriptions_import";
+    /**
+     * Set while the items of the source are queued, so a resumed import knows they were not all read.
+     */
+    private static final String READING_SOURCE_KEY = "reading_source";
+
+    private SubscriptionImportQueue importQueue;
+    private SharedPreferences preferences;
     private Subscription subscription;
     private int currentMode;
     private int currentServiceId;
+    /**
+     * Whether this import finishes one which was interrupted before its source was read completely.
+     */
+    private boolean isSourceLost;
 
     @Nullable
     private String channelUrl;
     @Nullable
     private InputStream inputStream;
 
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        importQueue = new SubscriptionImportQueue(NewPipeDatabase.getInstance(this));
+        preferences = getSharedPreferences(PREFERENCES_NAME, MODE_PRIVATE);
+    }
+
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        if (intent == null || subscription != null) return START_NOT_STICKY;
+        if (subscription != null) return START_STICKY;
 
-        currentMode = intent.getIntExtra(KEY_MODE, -1);
-        currentServiceId = intent.getIntExtra(Constants.KEY_SERVICE_ID, Constants.NO_SERVICE_ID);
+        // Restarted by the system after the process was killed during an import
+        currentMode = intent == null ? RESUME_MODE : intent.getIntExtra(KEY_MODE, -1);
+        currentServiceId = intent == null ? Constants.NO_SERVICE_ID
+                : intent.getIntExtra(Constants.KEY_SERVICE_ID, Constants.NO_SERVICE_ID);
 
         if (currentMode == CHANNEL_URL_MODE) {
             channelUrl = intent.getStringExtra(KEY_VALUE);
-        } else {
+        } else if (currentMode != RESUME_MODE) {
             final String filePath = intent.getStringExtra(KEY_VALUE);
             if (TextUtils.isEmpty(filePath)) {
                 stopAndReportError(new IllegalStateException("Importing from input stream, but file path is empty or null"), "Importing subscriptions");
@@ -106,7 +144,8 @@ public class SubscriptionsImportService extends BaseImportExportService {
         }
 
         startImport();
-        return START_NOT_STICKY;
+        // Resume the import if the process gets killed
+        return START_STICKY;
     }
 
     @Override
@@ -140,16 +179,38 @@ public class SubscriptionsImportService extends BaseImportExportService {
      */
     public static final int BUFFER_COUNT_BEFORE_INSERT = 50;
 
+    /**
+     * The loaded channels are saved at least this often, so little is lost when an import
+     * is interrupted.
+     */
+    private static final long CHECKPOINT_INTERVAL_MILLIS = 5000;
+
+    /**
+     * How often loading a channel is retried after a network error, waiting twice as long
+     * before each retry.
+     */
+    private static final int MAX_RETRIES = 3;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    /**
+     * Channels failing to load because of network errors in this many imports are given up on,
+     * they stay subscribed to with the name they were imported with until the feed refresh
+     * loads their channel, see {@link SubscriptionImportQueue#completeFromFeed(Map)}.
+     */
+    private static final int MAX_INTERRUPTIONS = 3;
+
     private void startImport() {
         showToast(R.string.import_ongoing);
 
-        Flowable<List<SubscriptionItem>> flowable = null;
+        Flowable<SubscriptionItem> flowable = null;
         if (currentMode == CHANNEL_URL_MODE) {
             flowable = importFromChannelUrl();
         } else if (currentMode == INPUT_STREAM_MODE) {
             flowable = importFromInputStream();
         } else if (currentMode == PREVIOUS_EXPORT_MODE) {
             flowable = importFromPreviousExport();
+        } else if (currentMode == RESUME_MODE) {
+            flowable = Flowable.empty();
         }
 
         if (flowable == null) {
@@ -158,34 +219,93 @@ public class SubscriptionsImportService extends BaseImportExportService {
             return;
         }
 
-        flowable.doOnNext(subscriptionItems -> eventListener.onSizeReceived(subscriptionItems.size()))
-                .flatMap(Flowable::fromIterable)
+        // Queue everything first, the channels of previous imports may still be queued as well,
+        // including those of one interrupted before its source was read completely
+        isSourceLost = preferences.getBoolean(READING_SOURCE_KEY, false);
+        final Completable readSource;
+        if (currentMode == RESUME_MODE) {
+            readSource = Completable.complete();
+        } else {
+            readSource = Completable.fromAction(() -> setReadingSource(true))
+                    .andThen(flowable.buffer(BUFFER_COUNT_BEFORE_INSERT)
+                            .doOnNext(importQueue::enqueue)
+                            .ignoreElements())
+                    .doOnComplete(() -> setReadingSource(false));
+        }
+
+        readSource
+                .andThen(loadQueuedChannels())
+                .doOnComplete(importQueue::clearIfDone)
+
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(getSubscriber());
+    }
+
+    /**
+     * Written before anything is queued, as the process may be killed right after.
+     */
+    private void setReadingSource(final boolean isReadingSource) {
+        //noinspection ApplySharedPref
+        preferences.edit().putBoolean(READING_SOURCE_KEY, isReadingSource).commit();
+    }
+
+    /**
+     * Load the info of the queued channels and save it, a batch at a time.
+     */
+    private Flowable<List<ImportResult>> loadQueuedChannels() {
+        return Flowable.defer(() -> {
+            eventListener.onSizeReceived(importQueue.countPending());
+
+            // Pages are read as the extractions request more channels
+            return Flowable.generate(() -> -1L, (Long lastUid, Emitter<List<SubscriptionEntity>> emitter) -> {
+                final List<SubscriptionEntity> page = importQueue.getPendingAfter(lastUid, BUFFER_COUNT_BEFORE_INSERT);
+                if (page.isEmpty()) {
+                    emitter.onComplete();
+                    return lastUid;
+                }
+
+                emitter.onNext(page);
+                return page.get(page.size() - 1).getUid();
+            });
+        })
+                .flatMapIterable(page -> page)
 
                 .parallel(PARALLEL_EXTRACTIONS)
                 .runOn(Schedulers.io())
-                .map((Function<SubscriptionItem, Notification<ChannelInfo>>) subscriptionItem -> {
-                    try {
-                        return Notification.createOnNext(ExtractorHelper
-                                .getChannelInfo(subscriptionItem.getServiceId(), subscriptionItem.getUrl(), true)
-                                .blockingGet());
-                    } catch (Throwable e) {
-                        return Notification.createOnError(e);
-                    }
-                })
+                .map(this::loadChannel)
                 .sequential()
 
                 .observeOn(Schedulers.io())
                 .doOnNext(getNotificationsConsumer())
-                .buffer(BUFFER_COUNT_BEFORE_INSERT)
-                .map(upsertBatch())
+                .buffer(CHECKPOINT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS, Schedulers.io(), BUFFER_COUNT_BEFORE_INSERT)
+                .filter(results -> !results.isEmpty())
+                .map(saveProgress());
+    }
 
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(getSubscriber());
+    private ImportResult loadChannel(final SubscriptionEntity subscription) {
+        try {
+            final ChannelInfo info = ExtractorHelper
+                    .getChannelInfo(subscription.getServiceId(), subscription.getUrl(), true)
+                    .retryWhen(retryOnNetworkError())
+                    .blockingGet();
+            return new ImportResult(subscription.getUid(), info, null);
+        } catch (Throwable e) {
+            return new ImportResult(subscription.getUid(), null, e);
+        }
+    }
+
+    private static Function<Flowable<Throwable>, Publisher<Long>> retryOnNetworkError() {
+        return errors -> errors
+                .zipWith(Flowable.range(1, MAX_RETRIES + 1), (error, attempt) ->
+                        attempt <= MAX_RETRIES && getNetworkError(error) != null
+                                ? Flowable.timer(RETRY_DELAY_MILLIS << (attempt - 1), TimeUnit.MILLISECONDS)
+                                : Flowable.<Long>error(error))
+                .flatMap(retry -> retry);
     }
 
-    private Subscriber<List<SubscriptionEntity>> getSubscriber() {
-        return new Subscriber<List<SubscriptionEntity>>() {
+    private Subscriber<List<ImportResult>> getSubscriber() {
+        return new Subscriber<List<ImportResult>>() {
 
             @Override
             public void onSubscribe(Subscription s) {
@@ -194,8 +314,8 @@ public class SubscriptionsImportService extends BaseImportExportService {
             }
 
             @Override
-            public void onNext(List<SubscriptionEntity> successfulInserted) {
-                if (DEBUG) Log.d(TAG, "startImport() " + successfulInserted.size() + " items successfully inserted into the database");
+            public void onNext(List<ImportResult> savedResults) {
+                if (DEBUG) Log.d(TAG, "startImport() " + savedResults.size() + " items saved into the database");
             }
 
             @Override
@@ -206,59 +326,134 @@ public class SubscriptionsImportService extends BaseImportExportService {
             @Override
             public void onComplete() {
                 LocalBroadcastManager.getInstance(SubscriptionsImportService.this).sendBroadcast(new Intent(IMPORT_COMPLETE_ACTION));
-                showToast(R.string.import_complete_toast);
+                if (isSourceLost) {
+                    // Only the channels read before the interruption were imported
+                    preferences.edit().remove(READING_SOURCE_KEY).apply();
+                    showToast(getString(R.string.import_interrupted_toast), Toast.LENGTH_LONG);
+                } else {
+                    showToast(R.string.import_complete_toast);
+                }
                 stopService();
             }
         };
     }
 
-    private Consumer<Notification<ChannelInfo>> getNotificationsConsumer() {
-        return notification -> {
-            if (notification.isOnNext()) {
-                String name = notification.getValue().getName();
-                eventListener.onItemCompleted(!TextUtils.isEmpty(name) ? name : "");
-            } else if (notification.isOnError()) {
-                final Throwable error = notification.getError();
-                final Throwable cause = error.getCause();
-                if (error instanceof IOException) {
-                    throw (IOException) error;
-                } else if (cause != null && cause instanceof IOException) {
-                    throw (IOException) cause;
-                }
-
-                eventListener.onItemCompleted("");
-            }
+    private Consumer<ImportResult> getNotificationsConsumer() {
+        return result -> {
+            final String name = result.info != null ? result.info.getName() : null;
+            eventListener.onItemCompleted(!TextUtils.isEmpty(name) ? name : "");
         };
     }
 
-    private Function<List<Notification<ChannelInfo>>, List<SubscriptionEntity>> upsertBatch() {
-        return notificationList -> {
-            final List<ChannelInfo> infoList = new ArrayList<>(notificationList.size());
-            for (Notification<ChannelInfo> n : notificationList) {
-                if (n.isOnNext()) infoList.add(n.getValue());
+    private Function<List<ImportResult>, List<ImportResult>> saveProgress() {
+        return results -> {
+            final Map<Long, ChannelInfo> loaded = new HashMap<>(results.size());
+            final List<Long> failedIds = new ArrayList<>();
+            final List<Long> interruptedIds = new ArrayList<>();
+            IOException networkError = null;
+            ReCaptchaException reCaptcha = null;
+
+            for (ImportResult result : results) {
+                if (result.info != null) {
+                    loaded.put(result.subscriptionId, result.info);
+                } else if (getReCaptcha(result.error) != null) {
+                    // Not the channel's fault, it stays queued as it is
+                    reCaptcha = getReCaptcha(result.error);
+                } else if (getNetworkError(result.error) != null) {
+                    interruptedIds.add(result.subscriptionId);
+                    networkError = getNetworkError(result.error);
+                } else {
+                    failedIds.add(result.subscriptionId);
+                }
             }
 
-            return subscriptionService.upsertAll(infoList);
+            importQueue.saveProgress(loaded, failedIds, interruptedIds, MAX_INTERRUPTIONS);
+
+            // The service won't answer until the captcha is solved, resume with the next import
+            if (reCaptcha != null) throw reCaptcha;
+            // The network is most likely down, stop here and resume with the next import
+            if (loaded.isEmpty() && networkError != null) throw networkError;
+            return results;
         };
     }
 
-    private Flowable<List<SubscriptionItem>> importFromChannelUrl() {
-        return Flowable.fromCallable(() -> NewPipe.getService(currentServiceId)
+    @Nullable
+    private static ReCaptchaException getReCaptcha(@Nullable Throwable error) {
+        if (error instanceof ReCaptchaException) return (ReCaptchaException) error;
+
+        final Throwable cause = error != null ? error.getCause() : null;
+        return cause instanceof ReCaptchaException ? (ReCaptchaException) cause : null;
+    }
+
+    @Nullable
+    private static IOException getNetworkError(@Nullable Throwable error) {
+        if (error instanceof IOException) return (IOException) error;
+
+        final Throwable cause = error != null ? error.getCause() : null;
+        return cause instanceof IOException ? (IOException) cause : null;
+    }
+
+    private Flowable<SubscriptionItem> importFromChannelUrl() {
+        return importFromList(() -> NewPipe.getService(currentServiceId)
                 .getSubscriptionExtractor()
                 .fromChannelUrl(channelUrl));
     }
 
-    private Flowable<List<SubscriptionItem>> importFromInputStream() {
-        return Flowable.fromCallable(() -> NewPipe.getService(currentServiceId)
+    private Flowable<SubscriptionItem> importFromInputStream() {
+        return importFromList(() -> NewPipe.getService(currentServiceId)
                 .getSubscriptionExtractor()
                 .fromInputStream(inputStream));
     }
 
-    private Flowable<List<SubscriptionItem>> importFromPreviousExport() {
-        return Flowable.fromCallable(() -> ImportExportJsonHelper.readFrom(inputStream, null));
+    /**
+     * The items are read from the file as they are requested downstream, so only the
+     * ones being extracted or waiting to be inserted are held in memory.
+     */
+    private Flowable<SubscriptionItem> importFromPreviousExport() {
+        return Flowable.generate(() -> {
+            // The size is not known until the whole file is read
+            eventListener.onSizeReceived(-1);
+            return ImportExportJsonHelper.openReader(inputStream);
+        }, (ItemReader reader, Emitter<SubscriptionItem> emitter) -> {
+            final SubscriptionItem item = reader.next();
+            if (item != null) {
+                emitter.onNext(item);
+            } else {
+                emitter.onComplete();
+            }
+        }, ItemReader::close);
+    }
+
+    /**
+     * Unlike {@link #importFromPreviousExport()}, the whole list is loaded at once. The channel
+     * url and the service exports, e.g. the YouTube takeout, are parsed by the extractor, whose
+     * {@link org.schabi.newpipe.extractor.subscription.SubscriptionExtractor} only returns
+     * complete lists. These lists hold names and urls only and are small compared to the
+     * channel infos loaded later, which are not held in memory at once.
+     */
+    private Flowable<SubscriptionItem> importFromList(final Callable<List<SubscriptionItem>> itemsLoader) {
+        return Flowable.fromCallable(itemsLoader)
+                .doOnNext(subscriptionItems -> eventListener.onSizeReceived(subscriptionItems.size()))
+                .flatMapIterable(subscriptionItems -> subscriptionItems);
     }
 
     protected void handleError(@NonNull Throwable error) {
         super.handleError(R.string.subscriptions_import_unsuccessful, error);
     }
+
+    /**
+     * The outcome of loading a queued channel, either its info or the error preventing it.
+     */
+    private static final class ImportResult {
+        private final long subscriptionId;
+        @Nullable private final ChannelInfo info;
+        @Nullable private final Throwable error;
+
+        private ImportResult(final long subscriptionId, @Nullable final ChannelInfo info,
+                             @Nullable final Throwable error) {
+            this.subscriptionId = subscriptionId;
+            this.info = info;
+            this.error = error;
+        }
+    }
 }
\ No newline at end of file
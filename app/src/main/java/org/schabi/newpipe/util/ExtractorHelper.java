@@ -51,6 +51,7 @@ import java.util.List;
 import io.reactivex.Maybe;
 import io.reactivex.Single;
 import io.reactivex.annotations.NonNull;
+import io.reactivex.schedulers.Schedulers;
 
 public final class ExtractorHelper {
     private static final String TAG = ExtractorHelper.class.getSimpleName();
@@ -189,7 +190,8 @@ public final class ExtractorHelper {
     }
 
     /**
-     * Default implementation uses the {@link InfoCache} to get cached results
+     * Default implementation uses the {@link InfoCache} to get cached results,
+     * looking into its disk tier on the io scheduler when they aren't in memory
      */
     public static <I extends Info> Maybe<I> loadFromCache(final int serviceId, final String url) {
         checkServiceId(serviceId);
@@ -203,7 +205,9 @@ public final class ExtractorHelper {
                     return Maybe.just(info);
                 }
 
-                return Maybe.empty();
+                //noinspection unchecked
+                return Maybe.fromCallable(() -> (I) cache.getFromDisk(serviceId, url))
+                        .subscribeOn(Schedulers.io());
             });
     }
 
@@ -19,6 +19,7 @@
 
 package org.schabi.newpipe.util;
 
+import android.content.Context;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.util.LruCache;
@@ -27,24 +28,58 @@ import android.util.Log;
 import org.schabi.newpipe.MainActivity;
 import org.schabi.newpipe.extractor.Info;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
-
-import static org.schabi.newpipe.extractor.ServiceList.SoundCloud;
-
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Two tier cache of extracted {@link Info} objects.
+ * <p>
+ * The memory tier is bounded by the approximate size of its entries in bytes, measured
+ * by serializing them. The disk tier keeps compressed copies which survive the death of
+ * the process, so a cold start can show recently opened streams and channels without
+ * extracting them again. Both tiers expire entries after
+ * {@link ServiceHelper#getCacheExpirationMillis(int)}.
+ */
 public final class InfoCache {
     private static final boolean DEBUG = MainActivity.DEBUG;
     private final String TAG = getClass().getSimpleName();
 
-    private static final InfoCache instance = new InfoCache();
-    private static final int MAX_ITEMS_ON_CACHE = 60;
+    private static final int MAX_SIZE_BYTES =
+            (int) Math.min(Runtime.getRuntime().maxMemory() / 32, 8 * 1024 * 1024);
     /**
      * Trim the cache to this size
      */
-    private static final int TRIM_CACHE_TO = 30;
+    private static final int TRIM_SIZE_BYTES = MAX_SIZE_BYTES / 2;
+    /**
+     * Size assumed for an entry until it has been serialized
+     */
+    private static final int ESTIMATED_SIZE_BYTES = 32 * 1024;
 
-    private static final LruCache<String, CacheData> lruCache = new LruCache<>(MAX_ITEMS_ON_CACHE);
+    private static final String DISK_CACHE_DIRECTORY = "info_cache";
+
+    // Declared after the sizes, which have to be initialized first
+    private static final InfoCache instance = new InfoCache();
+
+    private final LruCache<String, CacheData> lruCache = new LruCache<String, CacheData>(MAX_SIZE_BYTES) {
+        @Override
+        protected int sizeOf(String key, CacheData value) {
+            return value.size;
+        }
+    };
+
+    /**
+     * Runs the serialization and all disk operations in order, off the calling thread
+     */
+    private final Executor diskExecutor = Executors.newSingleThreadExecutor();
+    private volatile InfoDiskCache diskCache;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
 
     private InfoCache() {
         //no instance
@@ -54,50 +89,138 @@ public final class InfoCache {
         return instance;
     }
 
+    /**
+     * Enable the disk tier, located in the cache directory of the app
+     */
+    public static void init(@NonNull final Context context) {
+        instance.diskCache = new InfoDiskCache(new File(context.getCacheDir(), DISK_CACHE_DIRECTORY));
+    }
+
+    /**
+     * Get an info cached in memory. Doesn't block, see {@link #getFromDisk(int, String)}
+     * for the entries which are only on disk.
+     */
     @Nullable
     public Info getFromKey(int serviceId, @NonNull String url) {
         if (DEBUG) Log.d(TAG, "getFromKey() called with: serviceId = [" + serviceId + "], url = [" + url + "]");
-        synchronized (lruCache) {
-            return getInfo(lruCache, keyOf(serviceId, url));
+
+        final Info info = getInfo(lruCache, keyOf(serviceId, url));
+        if (info != null) memoryHits.incrementAndGet();
+        return info;
+    }
+
+    /**
+     * Get an info from the disk tier and keep it in memory. This blocks on disk I/O,
+     * so it must not be called on the main thread.
+     */
+    @Nullable
+    public Info getFromDisk(int serviceId, @NonNull String url) {
+        if (DEBUG) Log.d(TAG, "getFromDisk() called with: serviceId = [" + serviceId + "], url = [" + url + "]");
+        final String key = keyOf(serviceId, url);
+
+        final InfoDiskCache disk = diskCache;
+        final CacheData data = disk != null ? disk.get(key) : null;
+        if (data == null) {
+            misses.incrementAndGet();
+            return null;
         }
+
+        diskHits.incrementAndGet();
+        lruCache.put(key, data);
+        return data.info;
     }
 
-    public void putInfo(int serviceId, @NonNull String url, @NonNull Info info) {
+    public void putInfo(int serviceId, @NonNull String url, @NonNull final Info info) {
         if (DEBUG) Log.d(TAG, "putInfo() called with: info = [" + info + "]");
 
         final long expirationMillis = ServiceHelper.getCacheExpirationMillis(info.getServiceId());
-        synchronized (lruCache) {
-            final CacheData data = new CacheData(info, expirationMillis);
-            lruCache.put(keyOf(serviceId, url), data);
-        }
+        final long expireTimestamp = System.currentTimeMillis() + expirationMillis;
+        final String key = keyOf(serviceId, url);
+        lruCache.put(key, new CacheData(info, expireTimestamp, ESTIMATED_SIZE_BYTES));
+
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final byte[] serialized;
+                try {
+                    serialized = InfoDiskCache.serialize(info);
+                } catch (IOException e) {
+                    Log.w(TAG, "Unable to serialize " + info, e);
+                    return;
+                }
+
+                // Account the measured size, unless the entry was replaced or removed meanwhile
+                final CacheData current = lruCache.get(key);
+                if (current != null && current.info == info) {
+                    lruCache.put(key, new CacheData(info, expireTimestamp, serialized.length));
+                }
+
+                final InfoDiskCache disk = diskCache;
+                if (disk != null) disk.put(key, serialized, expireTimestamp);
+            }
+        });
     }
 
     public void removeInfo(int serviceId, @NonNull String url) {
         if (DEBUG) Log.d(TAG, "removeInfo() called with: serviceId = [" + serviceId + "], url = [" + url + "]");
-        synchronized (lruCache) {
-            lruCache.remove(keyOf(serviceId, url));
-        }
+        final String key = keyOf(serviceId, url);
+        lruCache.remove(key);
+
+        runOnDisk(new Runnable() {
+            @Override
+            public void run() {
+                diskCache.remove(key);
+            }
+        });
     }
 
     public void clearCache() {
         if (DEBUG) Log.d(TAG, "clearCache() called");
-        synchronized (lruCache) {
-            lruCache.evictAll();
-        }
+        lruCache.evictAll();
+
+        runOnDisk(new Runnable() {
+            @Override
+            public void run() {
+                diskCache.clear();
+            }
+        });
     }
 
     public void trimCache() {
-        if (DEBUG) Log.d(TAG, "trimCache() called");
-        synchronized (lruCache) {
-            removeStaleCache(lruCache);
-            lruCache.trimToSize(TRIM_CACHE_TO);
-        }
+        if (DEBUG) Log.d(TAG, "trimCache() called, hits = [" + getMemoryHitCount() + "/" + getDiskHitCount()
+                + "], misses = [" + getMissCount() + "], size = [" + getSize() + "]");
+        removeStaleCache(lruCache);
+        lruCache.trimToSize(TRIM_SIZE_BYTES);
+
+        runOnDisk(new Runnable() {
+            @Override
+            public void run() {
+                diskCache.removeStale();
+            }
+        });
     }
 
+    /**
+     * @return the approximate size of the memory tier in bytes
+     */
     public long getSize() {
-        synchronized (lruCache) {
-            return lruCache.size();
-        }
+        return lruCache.size();
+    }
+
+    public long getMemoryHitCount() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHitCount() {
+        return diskHits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private void runOnDisk(@NonNull final Runnable runnable) {
+        if (diskCache != null) diskExecutor.execute(runnable);
     }
 
     @NonNull
@@ -128,13 +251,20 @@ public final class InfoCache {
         return data.info;
     }
 
-    final private static class CacheData {
+    /*package-private*/ final static class CacheData {
         final private long expireTimestamp;
         final private Info info;
+        final private int size;
 
-        private CacheData(@NonNull final Info info, final long timeoutMillis) {
-            this.expireTimestamp = System.currentTimeMillis() + timeoutMillis;
+        /*package-private*/ CacheData(@NonNull final Info info, final long expireTimestamp, final int size) {
+            this.expireTimestamp = expireTimestamp;
             this.info = info;
+            this.size = Math.max(1, size);
+        }
+
+        @NonNull
+        /*package-private*/ Info getInfo() {
+            return info;
         }
 
         private boolean isExpired() {
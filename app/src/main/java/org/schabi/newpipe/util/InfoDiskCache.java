@@ -0,0 +1,282 @@
+package org.schabi.newpipe.util;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import org.schabi.newpipe.MainActivity;
+import org.schabi.newpipe.extractor.Info;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Second tier of the {@link InfoCache}: serialized and compressed {@link Info} objects,
+ * one file per entry, which survive the death of the process.
+ * <p>
+ * Every file starts with the time it expires, so stale entries are dropped without
+ * deserializing them. Once the files exceed the maximum size the least recently
+ * used ones are deleted. All methods do blocking I/O.
+ */
+/* package-private */ final class InfoDiskCache {
+    private static final boolean DEBUG = MainActivity.DEBUG;
+    private static final String TAG = InfoDiskCache.class.getSimpleName();
+
+    private static final int MAGIC = 0x494E4643; // "INFC"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".info";
+
+    /*package-private*/ static final long MAX_SIZE_BYTES = 16 * 1024 * 1024;
+
+    private final File directory;
+    private final long maxSizeBytes;
+    /**
+     * Trim to this size, so not every write has to trim
+     */
+    private final long trimSizeBytes;
+    private long sizeBytes = -1;
+
+    /*package-private*/ InfoDiskCache(@NonNull final File directory) {
+        this(directory, MAX_SIZE_BYTES);
+    }
+
+    /*package-private*/ InfoDiskCache(@NonNull final File directory, final long maxSizeBytes) {
+        this.directory = directory;
+        this.maxSizeBytes = maxSizeBytes;
+        this.trimSizeBytes = maxSizeBytes * 3 / 4;
+    }
+
+    /**
+     * Serialize an info
+     */
+    @NonNull
+    /*package-private*/ static byte[] serialize(@NonNull final Info info) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream objects = new ObjectOutputStream(bytes);
+        objects.writeObject(info);
+        objects.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Store an entry, replacing an older one
+     *
+     * @param key             the key of the entry
+     * @param serialized      the info, {@link #serialize(Info) serialized}
+     * @param expireTimestamp when the entry expires
+     */
+    /*package-private*/ synchronized void put(@NonNull final String key,
+                                             @NonNull final byte[] serialized,
+                                             final long expireTimestamp) {
+        if (!ensureDirectory()) return;
+
+        final File file = fileOf(key);
+        final File temp = new File(directory, file.getName() + ".tmp");
+        final long previous = file.length();
+
+        try {
+            final DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeLong(expireTimestamp);
+                output.writeUTF(key);
+                output.writeInt(serialized.length);
+
+                final GZIPOutputStream compressed = new GZIPOutputStream(output);
+                compressed.write(serialized);
+                compressed.finish();
+            } finally {
+                output.close();
+            }
+
+            if (!temp.renameTo(file)) {
+                throw new IOException("Unable to rename " + temp);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write " + file, e);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return;
+        }
+
+        sizeBytes += file.length() - previous;
+        if (sizeBytes > maxSizeBytes) {
+            trimToSize(trimSizeBytes);
+        }
+    }
+
+    /**
+     * @return the entry or null if it's missing, expired or unreadable
+     */
+    @Nullable
+    /*package-private*/ synchronized InfoCache.CacheData get(@NonNull final String key) {
+        if (!ensureDirectory()) return null;
+
+        final File file = fileOf(key);
+        if (!file.isFile()) return null;
+
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Unknown format");
+            }
+
+            final long expireTimestamp = input.readLong();
+            if (!key.equals(input.readUTF())) {
+                // Hash collision, the entry belongs to another key
+                return null;
+            }
+            if (System.currentTimeMillis() > expireTimestamp) {
+                deleteFile(file);
+                return null;
+            }
+            final int serializedLength = input.readInt();
+
+            final ObjectInputStream objects = new ObjectInputStream(new GZIPInputStream(input));
+            final Info info = (Info) objects.readObject();
+
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            return new InfoCache.CacheData(info, expireTimestamp, serializedLength);
+        } catch (Exception e) {
+            Log.w(TAG, "Dropping unreadable " + file, e);
+            deleteFile(file);
+            return null;
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /*package-private*/ synchronized void remove(@NonNull final String key) {
+        if (!ensureDirectory()) return;
+        deleteFile(fileOf(key));
+    }
+
+    /*package-private*/ synchronized void clear() {
+        if (!ensureDirectory()) return;
+        for (File file : listFiles()) {
+            deleteFile(file);
+        }
+    }
+
+    /**
+     * Delete the expired entries and trim the files to the maximum size
+     */
+    /*package-private*/ synchronized void removeStale() {
+        if (!ensureDirectory()) return;
+
+        final long now = System.currentTimeMillis();
+        for (File file : listFiles()) {
+            try {
+                final DataInputStream input = new DataInputStream(new FileInputStream(file));
+                try {
+                    input.readInt();
+                    input.readInt();
+                    if (now > input.readLong()) {
+                        deleteFile(file);
+                    }
+                } finally {
+                    input.close();
+                }
+            } catch (IOException e) {
+                deleteFile(file);
+            }
+        }
+
+        trimToSize(maxSizeBytes);
+    }
+
+    /*package-private*/ synchronized long getSizeBytes() {
+        if (!ensureDirectory()) return 0;
+        return sizeBytes;
+    }
+
+    private void trimToSize(final long maxBytes) {
+        if (sizeBytes <= maxBytes) return;
+
+        final List<File> files = listFiles();
+        Collections.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                final long m1 = o1.lastModified();
+                final long m2 = o2.lastModified();
+                return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+            }
+        });
+
+        for (File file : files) {
+            if (sizeBytes <= maxBytes) break;
+            deleteFile(file);
+        }
+
+        if (DEBUG) Log.d(TAG, "trimToSize() done, size = [" + sizeBytes + "]");
+    }
+
+    private boolean ensureDirectory() {
+        if (sizeBytes >= 0) return true;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Unable to create " + directory);
+            return false;
+        }
+
+        sizeBytes = 0;
+        for (File file : listFiles()) {
+            sizeBytes += file.length();
+        }
+        return true;
+    }
+
+    @NonNull
+    private List<File> listFiles() {
+        final File[] files = directory.listFiles();
+        final List<File> result = new ArrayList<>();
+        if (files == null) return result;
+
+        for (File file : files) {
+            if (file.getName().endsWith(SUFFIX)) {
+                result.add(file);
+            } else if (file.getName().endsWith(".tmp")) {
+                // Left over by a crash while writing
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        return result;
+    }
+
+    private void deleteFile(@NonNull final File file) {
+        final long length = file.length();
+        if (file.delete()) {
+            sizeBytes -= length;
+        }
+    }
+
+    @NonNull
+    private File fileOf(@NonNull final String key) {
+        return new File(directory, Integer.toHexString(key.hashCode()) + SUFFIX);
+    }
+}
@@ -71,7 +71,9 @@ public class NavigationHelper {
                                          @Nullable final String quality) {
         Intent intent = new Intent(context, targetClazz);
 
-        final String cacheKey = SerializedCache.getInstance().put(playQueue, PlayQueue.class);
+        // A serialization round trip of a large play queue is slow and allocates a lot
+        final String cacheKey = SerializedCache.getInstance()
+                .putWithoutCopy(playQueue.copy(), PlayQueue.class);
         if (cacheKey != null) intent.putExtra(VideoPlayer.PLAY_QUEUE_KEY, cacheKey);
         if (quality != null) intent.putExtra(VideoPlayer.PLAYBACK_QUALITY, quality);
 
@@ -69,6 +69,28 @@ public class SerializedCache {
         return false;
     }
 
+    /**
+     * Puts the item itself instead of a serialized copy, so the caller must not change it
+     * afterwards, e.g. by passing a copy it made in a cheaper way.
+     * */
+    @Nullable
+    public <T extends Serializable> String putWithoutCopy(@NonNull T item,
+                                                           @NonNull final Class<T> type) {
+        if (DEBUG) Log.d(TAG, "putWithoutCopy() called with: item = [" + item + "]");
+        final String key = UUID.randomUUID().toString();
+        synchronized (lruCache) {
+            lruCache.put(key, new CacheData<>(item, type));
+        }
+        return key;
+    }
+
+    public void remove(@NonNull final String key) {
+        if (DEBUG) Log.d(TAG, "remove() called with: key = [" + key + "]");
+        synchronized (lruCache) {
+            lruCache.remove(key);
+        }
+    }
+
     public void clear() {
         if (DEBUG) Log.d(TAG, "clear() called");
         synchronized (lruCache) {
@@ -0,0 +1,83 @@
+package org.schabi.newpipe.util;
+
+import android.support.annotation.Nullable;
+
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Turns the upload dates extracted from services into points in time, so streams from
+ * different channels can be ordered by when they were uploaded.
+ * <br><br>
+ * Services give either an absolute date, e.g. "2018-03-25", or a date relative to the time
+ * of extraction, e.g. "3 weeks ago". Relative dates are only as precise as their unit.
+ * <br><br>
+ * Only English relative dates are understood. The extractor doesn't request channels in a
+ * given language, so services usually answer in English, but where they don't, e.g. based
+ * on the region of the user, dates are not understood and the feed orders those streams by
+ * the time they were fetched instead.
+ * */
+public final class UploadDateParser {
+
+    private static final Pattern ABSOLUTE_DATE =
+            Pattern.compile("(\\d{4})-(\\d{2})-(\\d{2})");
+    private static final Pattern RELATIVE_DATE = Pattern.compile(
+            "(\\d+)\\s+(second|minute|hour|day|week|month|year)s?\\s+ago",
+            Pattern.CASE_INSENSITIVE);
+
+    private UploadDateParser() {
+        //no instance
+    }
+
+    /**
+     * @param uploadDate the upload date as extracted
+     * @param extractionTime the time the upload date was extracted at, in milliseconds
+     * @return the upload time in milliseconds, or null if the date is not understood
+     * */
+    @Nullable
+    public static Long parse(@Nullable final String uploadDate, final long extractionTime) {
+        if (uploadDate == null || uploadDate.isEmpty()) return null;
+
+        final Matcher absolute = ABSOLUTE_DATE.matcher(uploadDate);
+        if (absolute.find()) {
+            final Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+            calendar.clear();
+            calendar.set(Integer.parseInt(absolute.group(1)),
+                    Integer.parseInt(absolute.group(2)) - 1,
+                    Integer.parseInt(absolute.group(3)));
+            return calendar.getTimeInMillis();
+        }
+
+        final Matcher relative = RELATIVE_DATE.matcher(uploadDate);
+        if (relative.find()) {
+            final long amount = Long.parseLong(relative.group(1));
+            return extractionTime - amount * unitMillis(relative.group(2));
+        }
+
+        return null;
+    }
+
+    private static long unitMillis(final String unit) {
+        switch (unit.toLowerCase(Locale.ENGLISH)) {
+            case "second":
+                return TimeUnit.SECONDS.toMillis(1);
+            case "minute":
+                return TimeUnit.MINUTES.toMillis(1);
+            case "hour":
+                return TimeUnit.HOURS.toMillis(1);
+            case "day":
+                return TimeUnit.DAYS.toMillis(1);
+            case "week":
+                return TimeUnit.DAYS.toMillis(7);
+            case "month":
+                return TimeUnit.DAYS.toMillis(30);
+            case "year":
+            default:
+                return TimeUnit.DAYS.toMillis(365);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package us.shandian.giga.get;
+
+import android.util.Log;
+
+import org.schabi.newpipe.player.helper.BandwidthEstimator;
+
+import java.util.concurrent.TimeUnit;
+
+import us.shandian.giga.util.TokenBucket;
+
+import static org.schabi.newpipe.BuildConfig.DEBUG;
+
+/**
+ * Limits the throughput of all downloads.
+ * <p>
+ * Every chunk read by a download thread passes the {@link TokenBucket} of its mission,
+ * if it has a {@link DownloadMission#bandwidthLimit}, and the global bucket shared by
+ * all missions. Foreground traffic, i.e. the player loading media, is only measured.
+ * While it is active the downloads are held below the bandwidth the link was seen to
+ * deliver, leaving the player {@link #FOREGROUND_SHARE} of it, so playback doesn't
+ * rebuffer because of background downloads.
+ */
+public class BandwidthLimiter {
+    private static final String TAG = BandwidthLimiter.class.getSimpleName();
+
+    /**
+     * Length of the windows the throughput is measured in
+     */
+    static final long WINDOW_MILLIS = 1000;
+
+    /**
+     * Foreground traffic counts as active until it has been idle this long
+     */
+    static final long FOREGROUND_IDLE_MILLIS = 3000;
+
+    /**
+     * Share of the link capacity reserved for foreground traffic while it is active
+     */
+    static final float FOREGROUND_SHARE = 0.75f;
+
+    /**
+     * Downloads are never throttled below this rate in favor of foreground traffic
+     */
+    static final long MIN_BACKGROUND_RATE = 32 * 1024;
+
+    /**
+     * Fraction of the peak throughput kept per window, so the capacity estimate
+     * follows the link when it gets slower
+     */
+    private static final float CAPACITY_DECAY = 0.95f;
+
+    /**
+     * Windows with fewer downloaded bytes aren't reported to the {@link BandwidthEstimator}
+     */
+    private static final long MIN_ESTIMATOR_SAMPLE_BYTES = 64 * 1024;
+
+    private static BandwidthLimiter sInstance;
+
+    private final TokenBucket mBackground = new TokenBucket();
+    private long mGlobalLimit = TokenBucket.UNLIMITED;
+
+    private final Meter mDownloads = new Meter();
+    private final Meter mForeground = new Meter();
+    private long mLastForeground = -1;
+    private long mWindowStart = -1;
+    private float mCapacity;
+
+    /**
+     * Throughput of a kind of traffic in the last completed window
+     */
+    private static class Meter {
+        long bytes;
+        long rate;
+    }
+
+    public static synchronized BandwidthLimiter getInstance() {
+        if (sInstance == null) {
+            sInstance = new BandwidthLimiter();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Limit the throughput of all downloads together
+     *
+     * @param bytesPerSecond the limit or {@link TokenBucket#UNLIMITED}
+     */
+    public synchronized void setGlobalLimit(long bytesPerSecond) {
+        if (bytesPerSecond < 0) throw new IllegalArgumentException("limit is negative");
+        mGlobalLimit = bytesPerSecond;
+        updateBackgroundRate(System.currentTimeMillis());
+    }
+
+    public synchronized long getGlobalLimit() {
+        return mGlobalLimit;
+    }
+
+    /**
+     * @return the bytes per second downloaded by all missions in the last measured window
+     */
+    public synchronized long getDownloadRate() {
+        return mDownloads.rate;
+    }
+
+    /**
+     * @return the bytes per second loaded by the player in the last measured window
+     */
+    public synchronized long getForegroundRate() {
+        return mForeground.rate;
+    }
+
+    /**
+     * @return the bytes per second downloads may currently use or {@link TokenBucket#UNLIMITED}
+     */
+    public long getBackgroundRate() {
+        return mBackground.getRate();
+    }
+
+    /**
+     * @return whether the player transferred something recently
+     */
+    public synchronized boolean isForegroundActive() {
+        return isForegroundActive(System.currentTimeMillis());
+    }
+
+    /**
+     * Account foreground traffic. Doesn't block.
+     *
+     * @param bytes the number of bytes transferred
+     */
+    public void onForegroundTransfer(long bytes) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            mForeground.bytes += bytes;
+            mLastForeground = now;
+            roll(now);
+        }
+    }
+
+    /**
+     * Called by a download thread after reading a chunk, waits until the chunk
+     * fits into the limits of the mission and the global limit
+     *
+     * @param mission the mission the chunk belongs to
+     * @param bytes   the size of the chunk
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    void acquire(DownloadMission mission, int bytes) throws InterruptedException {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            mDownloads.bytes += bytes;
+            roll(now);
+        }
+
+        TokenBucket bucket = mission.getBandwidthBucket();
+        if (bucket != null) {
+            bucket.acquire(bytes);
+        }
+        mBackground.acquire(bytes);
+    }
+
+    /**
+     * Close the measuring window if it elapsed and adapt the download rate
+     */
+    private void roll(long now) {
+        if (mWindowStart == -1) {
+            mWindowStart = now;
+            return;
+        }
+
+        long elapsed = now - mWindowStart;
+        if (elapsed < WINDOW_MILLIS) {
+            return;
+        }
+
+        // Throttled or idle windows tell nothing about the link
+        if (mBackground.getRate() == TokenBucket.UNLIMITED && mForeground.bytes == 0
+                && elapsed < 2 * WINDOW_MILLIS
+                && mDownloads.bytes >= MIN_ESTIMATOR_SAMPLE_BYTES) {
+            BandwidthEstimator.getInstance().onDownloadSample(elapsed, mDownloads.bytes);
+        }
+
+        mDownloads.rate = mDownloads.bytes * TimeUnit.SECONDS.toMillis(1) / elapsed;
+        mForeground.rate = mForeground.bytes * TimeUnit.SECONDS.toMillis(1) / elapsed;
+        mDownloads.bytes = 0;
+        mForeground.bytes = 0;
+        mWindowStart = now;
+
+        mCapacity = Math.max(mCapacity * CAPACITY_DECAY, mDownloads.rate + mForeground.rate);
+
+        updateBackgroundRate(now);
+    }
+
+    private boolean isForegroundActive(long now) {
+        return mLastForeground != -1 && now - mLastForeground < FOREGROUND_IDLE_MILLIS;
+    }
+
+    private void updateBackgroundRate(long now) {
+        long rate = mGlobalLimit;
+
+        if (isForegroundActive(now) && mCapacity > 0) {
+            long reserved = (long) Math.max(mForeground.rate, mCapacity * FOREGROUND_SHARE);
+            long available = Math.max(MIN_BACKGROUND_RATE, (long) mCapacity - reserved);
+            rate = rate == TokenBucket.UNLIMITED ? available : Math.min(rate, available);
+        }
+
+        if (rate != mBackground.getRate()) {
+            if (DEBUG) {
+                Log.d(TAG, "download rate " + rate + " B/s, foreground " + mForeground.rate
+                        + " B/s, capacity " + (long) mCapacity + " B/s");
+            }
+            mBackground.setRate(rate);
+        }
+    }
+}
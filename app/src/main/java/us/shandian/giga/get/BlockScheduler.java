@@ -0,0 +1,160 @@
+package us.shandian.giga.get;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import us.shandian.giga.util.BlockBitmap;
+
+/**
+ * Hands out the blocks of a {@link DownloadMission} to its download threads.
+ * <p>
+ * Each thread takes a {@link Segment} of contiguous free blocks which it requests
+ * with a single range request. Blocks of a segment are claimed one by one while
+ * they are written, so once no free block is left an idle thread can steal the
+ * back half of the largest unfinished segment.
+ * <p>
+ * Claiming a block is a compare-and-set on a {@link BlockBitmap} and needs no lock,
+ * only reserving and stealing segments is synchronized. A thread whose next block
+ * has been claimed by a thief ends its segment there.
+ */
+class BlockScheduler {
+
+    /**
+     * A range of blocks reserved by one download thread
+     */
+    static class Segment {
+        /**
+         * The next block of this segment to download, only touched by the owning thread
+         */
+        volatile long next;
+
+        /**
+         * The end of this segment (exclusive), lowered when the segment is stolen from
+         */
+        volatile long end;
+
+        Segment(long next, long end) {
+            this.next = next;
+            this.end = end;
+        }
+    }
+
+    private final long mBlocks;
+    private final BlockBitmap mClaimed;
+    private final List<Segment> mSegments = new ArrayList<>();
+    private volatile long mCursor;
+
+    BlockScheduler(DownloadMission mission) {
+        mBlocks = mission.blocks;
+        mClaimed = mission.blockState.resize(mBlocks);
+    }
+
+    /**
+     * Reserve a new segment
+     *
+     * @param blocksPerSegment the maximum number of blocks of the segment
+     * @return the segment or null if no work is left
+     */
+    synchronized Segment nextSegment(int blocksPerSegment) {
+        Segment segment;
+        long block = findFreeBlock();
+
+        if (block >= 0) {
+            long end = block + 1;
+            while (end < block + blocksPerSegment && end < mBlocks
+                    && !mClaimed.get(end) && findOwner(end) == null) {
+                end++;
+            }
+            segment = new Segment(block, end);
+        } else {
+            segment = steal();
+            if (segment == null) return null;
+        }
+
+        mSegments.add(segment);
+        return segment;
+    }
+
+    /**
+     * Claim the next block of a segment
+     *
+     * @param segment the segment
+     * @return the block or -1 if the segment has no block left
+     */
+    long claim(Segment segment) {
+        long block = segment.next;
+
+        if (block >= segment.end || !mClaimed.trySet(block)) {
+            return -1;
+        }
+
+        segment.next = block + 1;
+        return block;
+    }
+
+    /**
+     * Give back a claimed block which could not be downloaded
+     *
+     * @param block the block
+     */
+    synchronized void release(long block) {
+        mClaimed.tryClear(block);
+        if (block < mCursor) {
+            mCursor = block;
+        }
+    }
+
+    /**
+     * Called when a thread stops working on a segment, blocks not claimed yet become free again
+     *
+     * @param segment the segment
+     */
+    synchronized void finish(Segment segment) {
+        mSegments.remove(segment);
+    }
+
+    private long findFreeBlock() {
+        mCursor = mClaimed.nextClearBit(mCursor);
+
+        long block = mCursor;
+        while (block < mBlocks) {
+            Segment owner = findOwner(block);
+            if (owner == null) {
+                return block;
+            }
+            block = mClaimed.nextClearBit(owner.end);
+        }
+
+        return -1;
+    }
+
+    private Segment findOwner(long block) {
+        for (Segment segment : mSegments) {
+            if (block >= segment.next && block < segment.end) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    private Segment steal() {
+        Segment victim = null;
+        long remaining = 1;
+
+        for (Segment segment : mSegments) {
+            if (segment.end - segment.next > remaining) {
+                victim = segment;
+                remaining = segment.end - segment.next;
+            }
+        }
+
+        if (victim == null) {
+            return null;
+        }
+
+        long split = victim.next + remaining / 2;
+        Segment segment = new Segment(split, victim.end);
+        victim.end = split;
+        return segment;
+    }
+}
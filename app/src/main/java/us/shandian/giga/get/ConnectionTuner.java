@@ -0,0 +1,113 @@
+package us.shandian.giga.get;
+
+/**
+ * Adapts the number of connections of a mission and the size of the ranges
+ * requested per connection to the measured throughput.
+ * <p>
+ * Every {@link #SAMPLE_WINDOW_MILLIS} the throughput of the last window is compared
+ * to the one measured before the last connection was added. Another connection is
+ * only kept if it raised the bandwidth by at least {@link #MIN_GAIN}, otherwise the
+ * mission falls back to the previous count and waits {@link #HOLD_WINDOWS} windows
+ * before probing again.
+ */
+class ConnectionTuner {
+    static final long SAMPLE_WINDOW_MILLIS = 3000;
+    static final float MIN_GAIN = 0.1f;
+    static final int HOLD_WINDOWS = 5;
+    static final int INITIAL_CONNECTIONS = 2;
+
+    /**
+     * Time a connection should spend on one range request at the measured throughput
+     */
+    static final long TARGET_SEGMENT_MILLIS = 4000;
+    static final int INITIAL_BLOCKS_PER_SEGMENT = 2;
+    static final int MAX_BLOCKS_PER_SEGMENT = 32;
+
+    private final int mMaxConnections;
+    private int mTarget;
+
+    private int mBaselineConnections;
+    private float mBaselineThroughput;
+    private int mHold;
+
+    /**
+     * Measured throughput in bytes per millisecond, negative until the first window elapsed
+     */
+    private float mThroughput = -1;
+    private long mWindowStart = -1;
+    private long mWindowBytes;
+
+    ConnectionTuner(int maxConnections) {
+        mMaxConnections = Math.max(1, maxConnections);
+        mTarget = Math.min(INITIAL_CONNECTIONS, mMaxConnections);
+    }
+
+    /**
+     * Account transferred bytes
+     *
+     * @param bytes the number of bytes
+     * @param now   the current time in milliseconds
+     * @return true if the number of connections to use has changed
+     */
+    synchronized boolean onTransferred(long bytes, long now) {
+        if (mWindowStart == -1) {
+            mWindowStart = now;
+        }
+
+        mWindowBytes += bytes;
+
+        long elapsed = now - mWindowStart;
+        if (elapsed < SAMPLE_WINDOW_MILLIS) {
+            return false;
+        }
+
+        mThroughput = (float) mWindowBytes / elapsed;
+        mWindowStart = now;
+        mWindowBytes = 0;
+
+        int previous = mTarget;
+
+        if (mTarget > mBaselineConnections && mBaselineConnections > 0) {
+            // A connection was added in the last window, check whether it paid off
+            if (mThroughput < mBaselineThroughput * (1 + MIN_GAIN)) {
+                mTarget = mBaselineConnections;
+                mHold = HOLD_WINDOWS;
+                return true;
+            }
+        } else if (mHold > 0) {
+            mHold--;
+            mBaselineConnections = mTarget;
+            mBaselineThroughput = mThroughput;
+            return false;
+        }
+
+        mBaselineConnections = mTarget;
+        mBaselineThroughput = mThroughput;
+
+        if (mTarget < mMaxConnections) {
+            mTarget++;
+        }
+
+        return mTarget != previous;
+    }
+
+    /**
+     * @return the number of connections the mission should use
+     */
+    synchronized int getTargetConnections() {
+        return mTarget;
+    }
+
+    /**
+     * @return the number of blocks a connection should request at once
+     */
+    synchronized int getBlocksPerSegment() {
+        if (mThroughput < 0) {
+            return INITIAL_BLOCKS_PER_SEGMENT;
+        }
+
+        float perConnection = mThroughput / mTarget;
+        long blocks = (long) (perConnection * TARGET_SEGMENT_MILLIS / DownloadManager.BLOCK_SIZE);
+        return (int) Math.max(1, Math.min(MAX_BLOCKS_PER_SEGMENT, blocks));
+    }
+}
@@ -0,0 +1,51 @@
+package us.shandian.giga.get;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide pool running the download threads of all missions.
+ * <p>
+ * The number of threads is bounded no matter how many missions are started,
+ * connections exceeding the limit wait in the queue until a thread becomes free.
+ */
+public final class DownloadExecutor {
+    /**
+     * Maximum number of download threads shared by all missions
+     */
+    public static final int MAX_THREADS = 16;
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static ThreadPoolExecutor sExecutor;
+
+    private DownloadExecutor() {
+    }
+
+    public static synchronized ExecutorService getInstance() {
+        if (sExecutor == null) {
+            sExecutor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new DownloadThreadFactory());
+            sExecutor.allowCoreThreadTimeOut(true);
+        }
+        return sExecutor;
+    }
+
+    private static class DownloadThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "DownloadThread-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package us.shandian.giga.get;
+
+import org.schabi.newpipe.Downloader;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Holds the HTTP client shared by all download threads.
+ * <p>
+ * It is derived from the client of {@link Downloader} but has its own connection pool,
+ * large enough to keep a connection alive for every {@link DownloadExecutor} thread,
+ * so consecutive range requests of a mission skip the TCP and TLS handshakes.
+ * HTTP/2 is negotiated when the server supports it, multiplexing the ranges
+ * of a mission over a single connection. Its dispatcher allows every thread to have
+ * a range in progress and the next one requested ahead on the same host.
+ */
+final class DownloadHttpClient {
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final long TIMEOUT_SECONDS = 30;
+
+    /**
+     * Requests in flight per thread: the range being read and the one requested ahead
+     */
+    private static final int REQUESTS_PER_THREAD = 2;
+
+    private static OkHttpClient sClient;
+
+    private DownloadHttpClient() {
+    }
+
+    static synchronized OkHttpClient getInstance() {
+        if (sClient == null) {
+            Downloader downloader = Downloader.getInstance();
+            OkHttpClient.Builder builder = downloader != null
+                    ? downloader.getClient().newBuilder()
+                    : new OkHttpClient.Builder();
+
+            Dispatcher dispatcher = new Dispatcher();
+            dispatcher.setMaxRequests(DownloadExecutor.MAX_THREADS * REQUESTS_PER_THREAD);
+            dispatcher.setMaxRequestsPerHost(DownloadExecutor.MAX_THREADS * REQUESTS_PER_THREAD);
+
+            sClient = builder
+                    .dispatcher(dispatcher)
+                    .connectionPool(new ConnectionPool(DownloadExecutor.MAX_THREADS,
+                            KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                    .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                    .connectTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .readTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .retryOnConnectionFailure(true)
+                    .build();
+        }
+        return sClient;
+    }
+
+    /**
+     * Request a range of a file
+     *
+     * @param url   the url of the file
+     * @param start the first byte
+     * @param end   the last byte (inclusive) or -1 for the rest of the file
+     * @return the response, to be closed by the caller
+     */
+    static Response requestRange(String url, long start, long end) throws IOException {
+        return newRangeCall(url, start, end).execute();
+    }
+
+    /**
+     * Read the size of the whole file from a Content-Range header
+     *
+     * @param contentRange the header value, e.g. "bytes 0-0/1234"
+     * @return the size or -1 if the header is missing or the size is unknown
+     */
+    static long parseTotalLength(String contentRange) {
+        if (contentRange == null) {
+            return -1;
+        }
+
+        int slash = contentRange.lastIndexOf('/');
+        if (slash < 0) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Read the first byte of the served range from a Content-Range header
+     *
+     * @param contentRange the header value, e.g. "bytes 0-0/1234"
+     * @return the first byte or -1 if the header is missing or malformed
+     */
+    static long parseRangeStart(String contentRange) {
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            return -1;
+        }
+
+        int dash = contentRange.indexOf('-');
+        if (dash < 0) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(contentRange.substring("bytes ".length(), dash).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static Call newRangeCall(String url, long start, long end) {
+        Request request = new Request.Builder()
+                .url(url)
+                .header("User-Agent", Downloader.USER_AGENT)
+                .header("Range", "bytes=" + start + "-" + (end >= 0 ? end : ""))
+                .build();
+        return getInstance().newCall(request);
+    }
+
+    /**
+     * A range request sent ahead of time, so its response is ready
+     * when the previous range of the same thread has been read.
+     */
+    static class PendingRange implements Callback {
+        final long start;
+        final long end;
+        private final Call mCall;
+        private final CountDownLatch mDone = new CountDownLatch(1);
+        private Response mResponse;
+        private IOException mError;
+        private boolean mCancelled;
+
+        PendingRange(String url, long start, long end) {
+            this.start = start;
+            this.end = end;
+            mCall = newRangeCall(url, start, end);
+            mCall.enqueue(this);
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            mError = e;
+            mDone.countDown();
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) {
+            synchronized (this) {
+                if (mCancelled) {
+                    response.close();
+                } else {
+                    mResponse = response;
+                }
+            }
+            mDone.countDown();
+        }
+
+        /**
+         * Wait for the response
+         *
+         * @return the response, to be closed by the caller
+         */
+        Response await() throws IOException {
+            try {
+                mDone.await();
+            } catch (InterruptedException e) {
+                cancel();
+                throw new IOException("Interrupted while waiting for " + mCall.request().url(), e);
+            }
+
+            synchronized (this) {
+                if (mError != null) {
+                    throw mError;
+                }
+                if (mResponse == null) {
+                    throw new IOException("Canceled");
+                }
+                return mResponse;
+            }
+        }
+
+        /**
+         * Abort the request, closing the response if it already arrived
+         */
+        void cancel() {
+            mCall.cancel();
+            synchronized (this) {
+                mCancelled = true;
+                if (mResponse != null) {
+                    mResponse.close();
+                    mResponse = null;
+                }
+            }
+        }
+    }
+}
@@ -35,6 +35,24 @@ public interface DownloadManager {
      */
     void deleteMission(int id);
 
+    /**
+     * Change the priority of a download mission. Waiting missions with a higher priority
+     * are started before the others.
+     *
+     * @param id       the identifier of the mission
+     * @param priority the new priority, 0 by default
+     */
+    void setMissionPriority(int id, int priority);
+
+    /**
+     * Limit the throughput of a download mission, in addition to the global limit
+     * of the {@link BandwidthLimiter}.
+     *
+     * @param id             the identifier of the mission
+     * @param bytesPerSecond the limit or 0 for no limit
+     */
+    void setMissionBandwidthLimit(int id, long bytesPerSecond);
+
     /**
      * Get the download mission by its identifier
      *
@@ -8,15 +8,16 @@ import com.google.gson.Gson;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.RandomAccessFile;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 
+import okhttp3.Response;
+import us.shandian.giga.util.BlockBitmap;
 import us.shandian.giga.util.Utility;
 
 import static org.schabi.newpipe.BuildConfig.DEBUG;
@@ -24,9 +25,21 @@ import static org.schabi.newpipe.BuildConfig.DEBUG;
 public class DownloadManagerImpl implements DownloadManager {
     private static final String TAG = DownloadManagerImpl.class.getSimpleName();
     private final DownloadDataSource mDownloadDataSource;
+    private final MissionJournal mJournal;
+    private final DownloadQueue mQueue = new DownloadQueue();
+    private volatile boolean mVerifyChecksums;
 
+    /**
+     * The missions in reverse order: indices passed to the public methods count from
+     * the end of the list, this way adding a mission on top doesn't shift the list.
+     */
     private final ArrayList<DownloadMission> mMissions = new ArrayList<DownloadMission>();
 
+    /**
+     * The missions by {@link #getKey(String, String) location and name}
+     */
+    private final HashMap<String, DownloadMission> mMissionsByLocation = new HashMap<>();
+
     /**
      * Create a new instance
      *
@@ -34,7 +47,21 @@ public class DownloadManagerImpl implements DownloadManager {
      * @param downloadDataSource the data source for finished downloads
      */
     public DownloadManagerImpl(Collection<String> searchLocations, DownloadDataSource downloadDataSource) {
+        this(searchLocations, downloadDataSource, null);
+    }
+
+    /**
+     * Create a new instance
+     *
+     * @param searchLocations    the directories to search for .giga files of older versions,
+     *                           only scanned if the journal doesn't exist yet
+     * @param downloadDataSource the data source for finished downloads
+     * @param journal            the journal of unfinished downloads or null to use .giga files
+     */
+    public DownloadManagerImpl(Collection<String> searchLocations, DownloadDataSource downloadDataSource,
+                               @Nullable MissionJournal journal) {
         mDownloadDataSource = downloadDataSource;
+        mJournal = journal;
         loadMissions(searchLocations);
     }
 
@@ -45,7 +72,7 @@ public class DownloadManagerImpl implements DownloadManager {
             // Already downloaded or downloading
             if (existingMission.finished) {
                 // Overwrite mission
-                deleteMission(mMissions.indexOf(existingMission));
+                deleteMission(getIndex(existingMission));
             } else {
                 // Rename file (?)
                 try {
@@ -61,16 +88,23 @@ public class DownloadManagerImpl implements DownloadManager {
         DownloadMission mission = new DownloadMission(name, url, location);
         mission.timestamp = System.currentTimeMillis();
         mission.threadCount = threads;
+        mission.setJournal(mJournal);
+        mission.setQueue(mQueue);
         mission.addListener(new MissionListener(mission));
-        new Initializer(mission).start();
-        return insertMission(mission);
+        int index = insertMission(mission);
+        enqueue(mission);
+        return index;
     }
 
     @Override
     public void resumeMission(int i) {
         DownloadMission d = getMission(i);
+        if (!d.running && d.errCode == DownloadMission.ERROR_CONNECTION_FAILED) {
+            // Recorded by older versions when the retries ran out, the network may be back
+            d.errCode = -1;
+        }
         if (!d.running && d.errCode == -1) {
-            d.start();
+            enqueue(d);
         }
     }
 
@@ -79,7 +113,46 @@ public class DownloadManagerImpl implements DownloadManager {
         DownloadMission d = getMission(i);
         if (d.running) {
             d.pause();
+        } else if (mQueue.remove(d)) {
+            d.writeThisToFile();
+        }
+    }
+
+    /**
+     * Pause all missions, e.g. because the service is destroyed. Unlike
+     * {@link #pauseMission(int)} missions waiting in the queue stay queued in the journal,
+     * so they are queued again when the missions are loaded.
+     */
+    public void pauseAllMissions() {
+        // Dequeue first, otherwise pausing a mission would activate the next one
+        for (DownloadMission mission : mMissions) {
+            mQueue.remove(mission);
+        }
+        for (DownloadMission mission : mMissions) {
+            if (mission.running) {
+                mission.pause();
+            }
+        }
+    }
+
+    /**
+     * Queue a mission and record it, so it survives the process even if it waits
+     * for a long time. It is initialized first if it has never been started.
+     *
+     * @param mission the mission
+     */
+    private void enqueue(final DownloadMission mission) {
+        if (mission.isInitialized()) {
+            mQueue.enqueue(mission, new Runnable() {
+                @Override
+                public void run() {
+                    mission.start();
+                }
+            });
+        } else {
+            mQueue.enqueue(mission, new Initializer(mission));
         }
+        mission.writeThisToFile();
     }
 
     @Override
@@ -88,17 +161,81 @@ public class DownloadManagerImpl implements DownloadManager {
         if (mission.finished) {
             mDownloadDataSource.deleteMission(mission);
         }
+        if (!mQueue.remove(mission)) {
+            mQueue.onMissionStopped(mission);
+        }
         mission.delete();
-        mMissions.remove(i);
+        mMissions.remove(mMissions.size() - 1 - i);
+        mMissionsByLocation.remove(getKey(mission.location, mission.name));
+    }
+
+    @Override
+    public void setMissionPriority(int i, int priority) {
+        DownloadMission mission = getMission(i);
+        mQueue.setPriority(mission, priority);
+        if (!mission.finished) {
+            mission.writeThisToFile();
+        }
+    }
+
+    @Override
+    public void setMissionBandwidthLimit(int i, long bytesPerSecond) {
+        DownloadMission mission = getMission(i);
+        mission.setBandwidthLimit(bytesPerSecond);
+        if (!mission.finished) {
+            mission.writeThisToFile();
+        }
+    }
+
+    /**
+     * Compute checksums of the blocks of new missions while downloading them,
+     * to detect blocks corrupted on disk when the mission is resumed
+     *
+     * @param verifyChecksums true to verify new missions
+     */
+    public void setVerifyChecksums(boolean verifyChecksums) {
+        mVerifyChecksums = verifyChecksums;
+    }
+
+    /**
+     * @return the queue deciding which missions download
+     */
+    public DownloadQueue getQueue() {
+        return mQueue;
     }
 
     private void loadMissions(Iterable<String> searchLocations) {
         mMissions.clear();
         loadFinishedMissions();
+
+        if (mJournal != null && mJournal.exists()) {
+            loadJournal();
+            return;
+        }
+
+        boolean migrate = mJournal != null;
+        if (migrate) {
+            loadJournal();
+        }
+
         for (String location : searchLocations) {
-            loadMissions(location);
+            loadMissions(location, migrate);
         }
+    }
 
+    /**
+     * Loads unfinished missions from the journal
+     */
+    private void loadJournal() {
+        for (DownloadMission mission : mJournal.load()) {
+            mission.setJournal(mJournal);
+            mission.setQueue(mQueue);
+            insertMission(mission);
+            if (mission.queued) {
+                mission.queued = false;
+                enqueue(mission);
+            }
+        }
     }
 
     /**
@@ -126,6 +263,8 @@ public class DownloadManagerImpl implements DownloadManager {
         sortByTimestamp(finishedMissions);
 
         mMissions.ensureCapacity(mMissions.size() + finishedMissions.size());
+        // Oldest on top
+        Collections.reverse(finishedMissions);
         for (DownloadMission mission : finishedMissions) {
             File downloadedFile = mission.getDownloadedFile();
             if (!downloadedFile.isFile()) {
@@ -138,11 +277,18 @@ public class DownloadManagerImpl implements DownloadManager {
                 mission.finished = true;
                 mission.running = false;
                 mMissions.add(mission);
+                mMissionsByLocation.put(getKey(mission.location, mission.name), mission);
             }
         }
     }
 
-    private void loadMissions(String location) {
+    /**
+     * Loads unfinished missions from the .giga files in a directory
+     *
+     * @param location the directory
+     * @param migrate  true to move the missions into the journal and delete the files
+     */
+    private void loadMissions(String location, boolean migrate) {
 
         File f = new File(location);
 
@@ -175,6 +321,17 @@ public class DownloadManagerImpl implements DownloadManager {
 
                         mis.running = false;
                         mis.recovered = true;
+                        mis.setQueue(mQueue);
+
+                        if (migrate) {
+                            mis.recoverBlockState();
+                            mis.setJournal(mJournal);
+                            mJournal.checkpoint(mis);
+                            if (!sub.delete()) {
+                                Log.w(TAG, "Unable to delete .giga file: " + sub.getPath());
+                            }
+                        }
+
                         insertMission(mis);
                     }
                 }
@@ -184,7 +341,7 @@ public class DownloadManagerImpl implements DownloadManager {
 
     @Override
     public DownloadMission getMission(int i) {
-        return mMissions.get(i);
+        return mMissions.get(mMissions.size() - 1 - i);
     }
 
     @Override
@@ -192,24 +349,40 @@ public class DownloadManagerImpl implements DownloadManager {
         return mMissions.size();
     }
 
+    /**
+     * Insert a mission on top, below unfinished missions which are newer
+     *
+     * @param mission the mission
+     * @return the index of the mission
+     */
     private int insertMission(DownloadMission mission) {
-        int i = -1;
-
-        DownloadMission m = null;
-
-        if (mMissions.size() > 0) {
-            do {
-                m = mMissions.get(++i);
-            } while (m.timestamp > mission.timestamp && i < mMissions.size() - 1);
-
-            //if (i > 0) i--;
-        } else {
-            i = 0;
+        // New missions are the newest, so this is usually an append
+        int i = mMissions.size();
+        while (i > 0) {
+            DownloadMission m = mMissions.get(i - 1);
+            if (m.finished || m.timestamp <= mission.timestamp) {
+                break;
+            }
+            i--;
         }
 
         mMissions.add(i, mission);
+        mMissionsByLocation.put(getKey(mission.location, mission.name), mission);
+
+        return mMissions.size() - 1 - i;
+    }
 
-        return i;
+    /**
+     * @param mission the mission
+     * @return the index of the mission or -1 if it isn't managed
+     */
+    private int getIndex(DownloadMission mission) {
+        int i = mMissions.lastIndexOf(mission);
+        return i < 0 ? -1 : mMissions.size() - 1 - i;
+    }
+
+    private static String getKey(String location, String name) {
+        return location + "/" + name;
     }
 
     /**
@@ -222,12 +395,7 @@ public class DownloadManagerImpl implements DownloadManager {
     private
     @Nullable
     DownloadMission getMissionByLocation(String location, String name) {
-        for (DownloadMission mission : mMissions) {
-            if (location.equals(mission.location) && name.equals(mission.name)) {
-                return mission;
-            }
-        }
-        return null;
+        return mMissionsByLocation.get(getKey(location, name));
     }
 
     /**
@@ -286,7 +454,7 @@ public class DownloadManagerImpl implements DownloadManager {
         return newName;
     }
 
-    private class Initializer extends Thread {
+    private class Initializer implements Runnable {
         private DownloadMission mission;
 
         public Initializer(DownloadMission mission) {
@@ -296,31 +464,33 @@ public class DownloadManagerImpl implements DownloadManager {
         @Override
         public void run() {
             try {
-                URL url = new URL(mission.url);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                mission.length = conn.getContentLength();
-
-                if (mission.length <= 0) {
-                    mission.errCode = DownloadMission.ERROR_SERVER_UNSUPPORTED;
-                    //mission.notifyError(DownloadMission.ERROR_SERVER_UNSUPPORTED);
-                    return;
-                }
-
-                // Open again
-                conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestProperty("Range", "bytes=" + (mission.length - 10) + "-" + mission.length);
+                // A single byte range tells both the length and whether ranges are supported
+                Response response = DownloadHttpClient.requestRange(mission.url, 0, 0);
+                try {
+                    if (response.code() == 206) {
+                        mission.length = DownloadHttpClient.parseTotalLength(response.header("Content-Range"));
+                    } else {
+                        // Fallback to single thread if no partial content support
+                        mission.fallback = true;
+                        mission.length = response.body() != null ? response.body().contentLength() : -1;
 
-                if (conn.getResponseCode() != 206) {
-                    // Fallback to single thread if no partial content support
-                    mission.fallback = true;
+                        if (DEBUG) {
+                            Log.d(TAG, "falling back");
+                        }
+                    }
 
                     if (DEBUG) {
-                        Log.d(TAG, "falling back");
+                        Log.d(TAG, "response = " + response.code() + " " + response.protocol());
                     }
+                } finally {
+                    response.close();
                 }
 
-                if (DEBUG) {
-                    Log.d(TAG, "response = " + conn.getResponseCode());
+                if (mission.length <= 0) {
+                    mission.errCode = DownloadMission.ERROR_SERVER_UNSUPPORTED;
+                    //mission.notifyError(DownloadMission.ERROR_SERVER_UNSUPPORTED);
+                    mQueue.onMissionStopped(mission);
+                    return;
                 }
 
                 mission.blocks = mission.length / BLOCK_SIZE;
@@ -337,6 +507,11 @@ public class DownloadManagerImpl implements DownloadManager {
                     mission.blocks++;
                 }
 
+                mission.blockState = new BlockBitmap(mission.blocks);
+                if (mVerifyChecksums && !mission.fallback) {
+                    mission.checksums = new int[(int) mission.blocks];
+                }
+
 
                 new File(mission.location).mkdirs();
                 new File(mission.location + "/" + mission.name).createNewFile();
@@ -347,6 +522,7 @@ public class DownloadManagerImpl implements DownloadManager {
                 mission.start();
             } catch (Exception e) {
                 // TODO Notify
+                mQueue.onMissionStopped(mission);
                 throw new RuntimeException(e);
             }
         }
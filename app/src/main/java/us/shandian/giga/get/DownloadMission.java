@@ -7,13 +7,21 @@ import android.util.Log;
 import com.google.gson.Gson;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.lang.ref.WeakReference;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
 
+import us.shandian.giga.util.BlockBitmap;
+import us.shandian.giga.util.TokenBucket;
 import us.shandian.giga.util.Utility;
 
 import static org.schabi.newpipe.BuildConfig.DEBUG;
@@ -33,6 +41,7 @@ public class DownloadMission {
 
     public static final int ERROR_SERVER_UNSUPPORTED = 206;
     public static final int ERROR_UNKNOWN = 233;
+    public static final int ERROR_CONNECTION_FAILED = 234;
 
     /**
      * The filename
@@ -63,20 +72,65 @@ public class DownloadMission {
      * Number of bytes downloaded
      */
     public long done;
+
+    /**
+     * Maximum number of connections used to download the mission
+     */
     public int threadCount = 3;
-    public int finishCount;
+
+    /**
+     * Positions of the download threads, only read from missions stored by older versions
+     * which marked blocks as preserved before downloading them.
+     */
     private List<Long> threadPositions = new ArrayList<Long>();
-    public final Map<Long, Boolean> blockState = new HashMap<Long, Boolean>();
+
+    /**
+     * Blocks which have been downloaded completely
+     */
+    public BlockBitmap blockState = new BlockBitmap(0);
+
+    /**
+     * CRC32 of every downloaded block, computed while streaming and verified against
+     * the file when the mission is resumed. Null if the mission isn't verified.
+     */
+    public int[] checksums;
     public boolean running;
     public boolean finished;
     public boolean fallback;
     public int errCode = -1;
     public long timestamp;
 
+    /**
+     * Missions with a higher priority are started first by the {@link DownloadQueue}
+     */
+    public int priority;
+
+    /**
+     * Maximum bytes per second this mission may download or 0 for no limit
+     */
+    public long bandwidthLimit;
+
     public transient boolean recovered;
 
+    /**
+     * True while the mission waits in the {@link DownloadQueue}, recorded by the
+     * {@link MissionJournal} so waiting missions are queued again after a restart
+     */
+    public transient volatile boolean queued;
+
     private transient ArrayList<WeakReference<MissionListener>> mListeners = new ArrayList<WeakReference<MissionListener>>();
-    private transient boolean mWritingToFile;
+    private transient volatile boolean mWritingToFile;
+    private transient BlockScheduler mScheduler;
+    private transient ConnectionTuner mTuner;
+    private transient int mConnections;
+    private transient int mNextConnectionId;
+    private transient FileChannel mChannel;
+    private transient ProgressAggregator mProgress = new ProgressAggregator();
+    private transient ScheduledFuture<?> mPublishTask;
+    private transient MissionJournal mJournal;
+    private transient DownloadQueue mQueue;
+    private transient TokenBucket mBandwidthBucket;
+    private transient boolean mVerified;
 
     private static final int NO_IDENTIFIER = -1;
     private long db_identifier = NO_IDENTIFIER;
@@ -104,58 +158,165 @@ public class DownloadMission {
     }
 
     /**
-     * Check if a block is reserved
+     * Check if a block has been downloaded
      *
      * @param block the block identifier
-     * @return true if the block is reserved and false if otherwise
+     * @return true if the block is downloaded and false if otherwise
      */
     public boolean isBlockPreserved(long block) {
         checkBlock(block);
-        return blockState.containsKey(block) ? blockState.get(block) : false;
+        return blockState.get(block);
     }
 
-    public void preserveBlock(long block) {
+    /**
+     * Mark a block as downloaded
+     *
+     * @param block the block identifier
+     * @return true if the block was not marked before
+     */
+    public boolean preserveBlock(long block) {
         checkBlock(block);
-        synchronized (blockState) {
-            blockState.put(block, true);
+        return blockState.trySet(block);
+    }
+
+    /**
+     * Record the checksum of a block before it is marked as downloaded
+     *
+     * @param block    the block identifier
+     * @param checksum the CRC32 of the block
+     */
+    void setChecksum(long block, int checksum) {
+        checkBlock(block);
+        checksums[(int) block] = checksum;
+    }
+
+    BlockScheduler getScheduler() {
+        return mScheduler;
+    }
+
+    /**
+     * @return the number of blocks a download thread should request at once
+     */
+    int getBlocksPerSegment() {
+        return mTuner.getBlocksPerSegment();
+    }
+
+    /**
+     * Called by a download thread before reserving a new segment.
+     *
+     * @return true if the mission uses more connections than needed and the thread should stop
+     */
+    synchronized boolean shouldRetire() {
+        if (mConnections > mTuner.getTargetConnections()) {
+            onConnectionClosed();
+            return true;
         }
+        return false;
     }
 
     /**
-     * Set the download position of the file
+     * Get the channel shared by all download threads to write the file.
+     * It is opened on first use and closed once the last thread exited.
      *
-     * @param threadId the identifier of the thread
-     * @param position the download position of the thread
+     * @return the channel
+     * @throws IOException if the file can't be opened
      */
-    public void setPosition(int threadId, long position) {
-        threadPositions.set(threadId, position);
+    synchronized FileChannel getChannel() throws IOException {
+        if (mChannel == null || !mChannel.isOpen()) {
+            mChannel = new RandomAccessFile(getDownloadedFile(), "rw").getChannel();
+        }
+        return mChannel;
     }
 
     /**
-     * Get the position of a thread
+     * Flush the data written so far to the storage device, if the file is open
      *
-     * @param threadId the identifier of the thread
-     * @return the position for the thread
+     * @throws IOException if the data can't be synced
+     */
+    void syncData() throws IOException {
+        FileChannel channel;
+        synchronized (this) {
+            channel = mChannel;
+        }
+
+        if (channel != null && channel.isOpen()) {
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // Closed by the last connection, which synced it before
+            }
+        }
+    }
+
+    private void onConnectionClosed() {
+        mConnections--;
+
+        if (mQueue != null) {
+            mQueue.releaseConnection(mConnections);
+        }
+
+        if (mConnections <= 0 && mChannel != null) {
+            try {
+                mChannel.force(false);
+                mChannel.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to close " + name, e);
+            }
+            mChannel = null;
+        }
+    }
+
+    /**
+     * Start download threads until the connection count wanted by the tuner is reached
+     * or the {@link DownloadQueue} has no connections left
      */
-    public long getPosition(int threadId) {
-        return threadPositions.get(threadId);
+    private synchronized void ensureConnections() {
+        while (running && mConnections < mTuner.getTargetConnections()
+                && (mQueue == null || mQueue.acquireConnection(mConnections))) {
+            mConnections++;
+            DownloadExecutor.getInstance().execute(new DownloadRunnable(this, mNextConnectionId++));
+        }
     }
 
-    public synchronized void notifyProgress(long deltaLen) {
+    /**
+     * Called by a download thread after writing data. Doesn't lock, the progress
+     * is published to the listeners by {@link #publishProgress()}.
+     *
+     * @param deltaLen the number of bytes written, negative if bytes have to be downloaded again
+     */
+    public void notifyProgress(long deltaLen) {
         if (!running) return;
 
+        mProgress.add(deltaLen);
+    }
+
+    /**
+     * Apply the progress accumulated since the last call, notify the listeners
+     * and checkpoint the meta file if needed.
+     */
+    private synchronized void publishProgress() {
+        long deltaLen = mProgress.drain();
+
+        if (deltaLen == 0) return;
+
         if (recovered) {
             recovered = false;
         }
 
+        long now = System.currentTimeMillis();
+
         done += deltaLen;
 
+        if (mTuner != null && deltaLen > 0 && running && mTuner.onTransferred(deltaLen, now)) {
+            ensureConnections();
+        }
+
         if (done > length) {
             done = length;
         }
 
-        if (done != length) {
-            writeThisToFile();
+        if (done != length && !finished && mProgress.shouldCheckpoint(deltaLen, now)) {
+            doWriteThisToFile();
         }
 
         for (WeakReference<MissionListener> ref : mListeners) {
@@ -171,19 +332,57 @@ public class DownloadMission {
         }
     }
 
+    private void startPublishing() {
+        mPublishTask = ProgressAggregator.getPublisher().scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                publishProgress();
+            }
+        }, ProgressAggregator.PUBLISH_INTERVAL_MILLIS, ProgressAggregator.PUBLISH_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelPublishing() {
+        if (mPublishTask != null) {
+            mPublishTask.cancel(false);
+            mPublishTask = null;
+        }
+    }
+
     /**
-     * Called by a download thread when it finished.
+     * Stop the periodic progress updates, the remaining progress is published asynchronously
+     */
+    private void stopPublishing() {
+        cancelPublishing();
+
+        ProgressAggregator.getPublisher().execute(new Runnable() {
+            @Override
+            public void run() {
+                publishProgress();
+            }
+        });
+    }
+
+    /**
+     * Called by a download thread when it found no work left.
      */
     public synchronized void notifyFinished() {
-        if (errCode > 0) return;
+        onConnectionClosed();
 
-        finishCount++;
+        if (errCode > 0) return;
 
-        if (finishCount == threadCount) {
+        if (mConnections <= 0) {
             onFinish();
         }
     }
 
+    /**
+     * Called by a download thread when it exits because the mission was paused or failed.
+     */
+    synchronized void notifyStopped() {
+        onConnectionClosed();
+    }
+
     /**
      * Called when all parts are downloaded
      */
@@ -194,10 +393,14 @@ public class DownloadMission {
             Log.d(TAG, "onFinish");
         }
 
+        cancelPublishing();
+        publishProgress();
+
         running = false;
         finished = true;
 
         deleteThisFromFile();
+        onStopped();
 
         for (WeakReference<MissionListener> ref : mListeners) {
             final MissionListener listener = ref.get();
@@ -215,7 +418,10 @@ public class DownloadMission {
     public synchronized void notifyError(int err) {
         errCode = err;
 
+        cancelPublishing();
+        publishProgress();
         writeThisToFile();
+        onStopped();
 
         for (WeakReference<MissionListener> ref : mListeners) {
             final MissionListener listener = ref.get();
@@ -244,27 +450,123 @@ public class DownloadMission {
         }
     }
 
+    /**
+     * @return true once the length of the download is known and its blocks are laid out,
+     * before that the mission has to be initialized instead of started
+     */
+    public boolean isInitialized() {
+        return length > 0;
+    }
+
     /**
      * Start downloading with multiple threads.
      */
     public void start() {
         if (!running && !finished) {
             running = true;
+            startPublishing();
 
             if (!fallback) {
-                for (int i = 0; i < threadCount; i++) {
-                    if (threadPositions.size() <= i && !recovered) {
-                        threadPositions.add((long) i);
-                    }
-                    new Thread(new DownloadRunnable(this, i)).start();
-                }
+                recoverBlockState();
+                mScheduler = new BlockScheduler(this);
+                mTuner = new ConnectionTuner(threadCount);
+                ensureConnections();
             } else {
                 // In fallback mode, resuming is not supported.
                 threadCount = 1;
                 done = 0;
                 blocks = 0;
-                new Thread(new DownloadRunnableFallback(this)).start();
+                mConnections = 1;
+                DownloadExecutor.getInstance().execute(new DownloadRunnableFallback(this));
+            }
+        }
+    }
+
+    /**
+     * Drop blocks which were preserved but not downloaded by older versions
+     * and count the bytes of the downloaded blocks.
+     */
+    void recoverBlockState() {
+        if (blockState == null) {
+            blockState = new BlockBitmap(blocks);
+        } else if (blockState.size() != blocks) {
+            blockState = blockState.resize(blocks);
+        }
+
+        for (Long position : threadPositions) {
+            if (position < blocks) {
+                blockState.tryClear(position);
+            }
+        }
+        threadPositions.clear();
+
+        if (checksums != null) {
+            if (checksums.length != blocks) {
+                int[] resized = new int[(int) blocks];
+                System.arraycopy(checksums, 0, resized, 0, Math.min(checksums.length, resized.length));
+                checksums = resized;
+            }
+            if (!mVerified) {
+                verifyBlocks();
+                mVerified = true;
+            }
+        }
+
+        done = 0;
+        for (long block = 0; block < blocks; block++) {
+            if (isBlockPreserved(block)) {
+                done += Math.min(DownloadManager.BLOCK_SIZE, length - block * DownloadManager.BLOCK_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Compare the downloaded blocks in the file with their checksums, blocks which
+     * don't match, e.g. because they didn't reach the disk before a crash, are downloaded again.
+     */
+    private void verifyBlocks() {
+        byte[] buffer = new byte[DownloadRunnable.BUFFER_SIZE];
+        CRC32 crc = new CRC32();
+        int corrupt = 0;
+
+        try {
+            RandomAccessFile file = new RandomAccessFile(getDownloadedFile(), "r");
+            try {
+                for (long block = 0; block < blocks; block++) {
+                    if (!isBlockPreserved(block)) {
+                        continue;
+                    }
+
+                    long position = block * DownloadManager.BLOCK_SIZE;
+                    long end = Math.min(position + DownloadManager.BLOCK_SIZE, length);
+                    file.seek(position);
+                    crc.reset();
+
+                    while (position < end) {
+                        int len = file.read(buffer, 0, (int) Math.min(buffer.length, end - position));
+                        if (len == -1) {
+                            break;
+                        }
+                        crc.update(buffer, 0, len);
+                        position += len;
+                    }
+
+                    if (position < end || (int) crc.getValue() != checksums[(int) block]) {
+                        blockState.tryClear(block);
+                        corrupt++;
+                    }
+                }
+            } finally {
+                file.close();
             }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to verify " + name + ", downloading it again", e);
+            blockState = new BlockBitmap(blocks);
+            return;
+        }
+
+        if (corrupt > 0) {
+            Log.w(TAG, corrupt + " blocks of " + name + " are corrupt, downloading them again");
         }
     }
 
@@ -273,8 +575,18 @@ public class DownloadMission {
             running = false;
             recovered = true;
 
-            // TODO: Notify & Write state to info file
-            // if (err)
+            stopPublishing();
+            writeThisToFile();
+            onStopped();
+        }
+    }
+
+    /**
+     * Give the slot of this mission in the {@link DownloadQueue} to the next one
+     */
+    private void onStopped() {
+        if (mQueue != null) {
+            mQueue.onMissionStopped(this);
         }
     }
 
@@ -287,35 +599,83 @@ public class DownloadMission {
     }
 
     /**
-     * Write this {@link DownloadMission} to the meta file asynchronously
-     * if no thread is already running.
+     * Write this {@link DownloadMission} to the meta file asynchronously on the
+     * progress publisher thread if no write is already pending.
      */
     public void writeThisToFile() {
         if (!mWritingToFile) {
             mWritingToFile = true;
-            new Thread() {
+            ProgressAggregator.getPublisher().execute(new Runnable() {
                 @Override
                 public void run() {
                     doWriteThisToFile();
                     mWritingToFile = false;
                 }
-            }.start();
+            });
         }
     }
 
     /**
-     * Write this {@link DownloadMission} to the meta file.
+     * Write this {@link DownloadMission} to the journal, or to the meta file if it has none.
      */
     private void doWriteThisToFile() {
-        synchronized (blockState) {
+        if (mJournal != null) {
+            mJournal.checkpoint(this);
+        } else {
             Utility.writeToFile(getMetaFilename(), new Gson().toJson(this));
         }
     }
 
     private void deleteThisFromFile() {
+        if (mJournal != null) {
+            mJournal.remove(this);
+        }
         new File(getMetaFilename()).delete();
     }
 
+    /**
+     * Set the journal this mission records its state to instead of a meta file
+     *
+     * @param journal the journal
+     */
+    void setJournal(MissionJournal journal) {
+        mJournal = journal;
+    }
+
+    /**
+     * Limit the throughput of this mission
+     *
+     * @param bytesPerSecond the limit or {@link TokenBucket#UNLIMITED}
+     */
+    public synchronized void setBandwidthLimit(long bytesPerSecond) {
+        bandwidthLimit = bytesPerSecond;
+        if (mBandwidthBucket != null) {
+            mBandwidthBucket.setRate(bytesPerSecond);
+        }
+    }
+
+    /**
+     * @return the bucket all threads of this mission take their bytes from or null if unlimited
+     */
+    synchronized TokenBucket getBandwidthBucket() {
+        if (bandwidthLimit == TokenBucket.UNLIMITED) {
+            return null;
+        }
+        if (mBandwidthBucket == null) {
+            mBandwidthBucket = new TokenBucket(bandwidthLimit);
+        }
+        return mBandwidthBucket;
+    }
+
+    /**
+     * Set the queue which limits the connections of this mission
+     *
+     * @param queue the queue
+     */
+    void setQueue(DownloadQueue queue) {
+        mQueue = queue;
+    }
+
     /**
      * Get the path of the meta file
      *
@@ -0,0 +1,257 @@
+package us.shandian.giga.get;
+
+import android.util.Log;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import static org.schabi.newpipe.BuildConfig.DEBUG;
+
+/**
+ * Decides which missions may download and how many connections they may open.
+ * <p>
+ * At most {@link #getMaxActiveMissions()} missions are active at a time, the others wait
+ * ordered by their {@link DownloadMission#priority} and, among equal priorities, by the
+ * {@link Policy}. All active missions share a budget of {@link #getMaxConnections()}
+ * connections: every active mission is guaranteed one, further connections requested
+ * by the {@link ConnectionTuner} are only granted while the budget isn't exhausted.
+ */
+public class DownloadQueue {
+    private static final String TAG = DownloadQueue.class.getSimpleName();
+
+    public static final int DEFAULT_MAX_ACTIVE_MISSIONS = 3;
+
+    public enum Policy {
+        /**
+         * Start the missions in the order they were queued
+         */
+        FIFO,
+        /**
+         * Start the most recently queued mission first
+         */
+        LIFO
+    }
+
+    private final int mMaxActiveMissions;
+    private final int mMaxConnections;
+    private Policy mPolicy = Policy.FIFO;
+
+    private final PriorityQueue<Entry> mPending = new PriorityQueue<>(16, new EntryComparator());
+    private final Map<DownloadMission, Entry> mEntries = new HashMap<>();
+    private final Set<DownloadMission> mActive = new HashSet<>();
+    private long mNextSequence;
+
+    /**
+     * Connections in use beyond the one reserved for every active mission
+     */
+    private int mExtraConnections;
+
+    private static class Entry {
+        final DownloadMission mission;
+        final Runnable activation;
+        final long sequence;
+
+        Entry(DownloadMission mission, Runnable activation, long sequence) {
+            this.mission = mission;
+            this.activation = activation;
+            this.sequence = sequence;
+        }
+    }
+
+    private class EntryComparator implements Comparator<Entry> {
+        @Override
+        public int compare(Entry o1, Entry o2) {
+            if (o1.mission.priority != o2.mission.priority) {
+                return o1.mission.priority > o2.mission.priority ? -1 : 1;
+            }
+            int order = o1.sequence < o2.sequence ? -1 : (o1.sequence == o2.sequence ? 0 : 1);
+            return mPolicy == Policy.FIFO ? order : -order;
+        }
+    }
+
+    public DownloadQueue() {
+        this(DEFAULT_MAX_ACTIVE_MISSIONS, DownloadExecutor.MAX_THREADS);
+    }
+
+    /**
+     * Create a new queue
+     *
+     * @param maxActiveMissions the number of missions downloading at the same time
+     * @param maxConnections    the number of connections shared by all active missions,
+     *                          at least {@code maxActiveMissions}
+     */
+    public DownloadQueue(int maxActiveMissions, int maxConnections) {
+        if (maxActiveMissions < 1) {
+            throw new IllegalArgumentException("maxActiveMissions must be at least 1");
+        }
+        if (maxConnections < maxActiveMissions) {
+            throw new IllegalArgumentException("maxConnections is less than maxActiveMissions");
+        }
+        mMaxActiveMissions = maxActiveMissions;
+        mMaxConnections = maxConnections;
+    }
+
+    public int getMaxActiveMissions() {
+        return mMaxActiveMissions;
+    }
+
+    public int getMaxConnections() {
+        return mMaxConnections;
+    }
+
+    public synchronized Policy getPolicy() {
+        return mPolicy;
+    }
+
+    /**
+     * Change the order in which waiting missions with the same priority are started
+     *
+     * @param policy the policy
+     */
+    public synchronized void setPolicy(Policy policy) {
+        if (policy == null) throw new NullPointerException("policy is null");
+        if (policy == mPolicy) return;
+        mPolicy = policy;
+        reorder();
+    }
+
+    /**
+     * Change the priority of a mission, missions with a higher priority are started first
+     *
+     * @param mission  the mission
+     * @param priority the new priority
+     */
+    public synchronized void setPriority(DownloadMission mission, int priority) {
+        mission.priority = priority;
+        if (mEntries.containsKey(mission)) {
+            reorder();
+        }
+    }
+
+    /**
+     * Queue a mission, it is activated once a slot is free
+     *
+     * @param mission    the mission
+     * @param activation started on the {@link DownloadExecutor} when the mission is activated
+     */
+    public void enqueue(DownloadMission mission, Runnable activation) {
+        synchronized (this) {
+            if (mActive.contains(mission) || mEntries.containsKey(mission)) {
+                return;
+            }
+
+            Entry entry = new Entry(mission, activation, mNextSequence++);
+            mEntries.put(mission, entry);
+            mPending.add(entry);
+            mission.queued = true;
+
+            if (DEBUG) {
+                Log.d(TAG, "queued " + mission.name + ", " + mPending.size() + " waiting");
+            }
+        }
+        promote();
+    }
+
+    /**
+     * Remove a mission which didn't start yet from the queue
+     *
+     * @param mission the mission
+     * @return true if the mission was waiting
+     */
+    public synchronized boolean remove(DownloadMission mission) {
+        Entry entry = mEntries.remove(mission);
+        if (entry == null) {
+            return false;
+        }
+        mPending.remove(entry);
+        mission.queued = false;
+        return true;
+    }
+
+    /**
+     * @param mission the mission
+     * @return true if the mission waits for a slot
+     */
+    public synchronized boolean isQueued(DownloadMission mission) {
+        return mEntries.containsKey(mission);
+    }
+
+    /**
+     * Called when an active mission finished, failed or was paused
+     *
+     * @param mission the mission
+     */
+    void onMissionStopped(DownloadMission mission) {
+        synchronized (this) {
+            if (!mActive.remove(mission)) {
+                return;
+            }
+        }
+        promote();
+    }
+
+    /**
+     * Ask for another connection of an active mission
+     *
+     * @param current the number of connections the mission has open
+     * @return true if the connection may be opened
+     */
+    synchronized boolean acquireConnection(int current) {
+        if (current == 0) {
+            // Reserved when the mission was activated
+            return true;
+        }
+        if (mActive.size() + mExtraConnections < mMaxConnections) {
+            mExtraConnections++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Give back a connection
+     *
+     * @param remaining the number of connections the mission still has open
+     */
+    synchronized void releaseConnection(int remaining) {
+        if (remaining > 0 && mExtraConnections > 0) {
+            mExtraConnections--;
+        }
+    }
+
+    private void promote() {
+        while (true) {
+            Entry entry;
+            synchronized (this) {
+                if (mActive.size() >= mMaxActiveMissions || mPending.isEmpty()) {
+                    return;
+                }
+                entry = mPending.poll();
+                mEntries.remove(entry.mission);
+                mActive.add(entry.mission);
+                entry.mission.queued = false;
+            }
+
+            if (DEBUG) {
+                Log.d(TAG, "activating " + entry.mission.name);
+            }
+
+            DownloadExecutor.getInstance().execute(entry.activation);
+        }
+    }
+
+    /**
+     * Rebuild the heap after the ordering changed
+     */
+    private void reorder() {
+        Entry[] entries = mPending.toArray(new Entry[mPending.size()]);
+        mPending.clear();
+        for (Entry entry : entries) {
+            mPending.add(entry);
+        }
+    }
+}
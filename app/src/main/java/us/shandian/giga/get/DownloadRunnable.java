@@ -2,10 +2,15 @@ package us.shandian.giga.get;
 
 import android.util.Log;
 
-import java.io.BufferedInputStream;
-import java.io.RandomAccessFile;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.CRC32;
+
+import okhttp3.Response;
+import okhttp3.ResponseBody;
 
 import static org.schabi.newpipe.BuildConfig.DEBUG;
 
@@ -16,9 +21,51 @@ import static org.schabi.newpipe.BuildConfig.DEBUG;
 public class DownloadRunnable implements Runnable {
     private static final String TAG = DownloadRunnable.class.getSimpleName();
 
+    /**
+     * Size of the buffer data is read into before it is written to the file
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Direct buffers reused by all missions running on the same {@link DownloadExecutor} thread
+     */
+    private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    };
+
+    /**
+     * Heap buffers used instead when checksums are computed, their bytes can be passed to {@link CRC32}
+     */
+    private static final ThreadLocal<ByteBuffer> HEAP_BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(BUFFER_SIZE);
+        }
+    };
+
     private final DownloadMission mMission;
     private final int mId;
 
+    /**
+     * The segment to download next and its request, sent while the last block
+     * of the current segment is being read
+     */
+    private BlockScheduler.Segment mNextSegment;
+    private DownloadHttpClient.PendingRange mNextRange;
+
+    /**
+     * Set once {@link DownloadMission#shouldRetire()} told this thread to stop after its segment
+     */
+    private boolean mRetiring;
+
+    /**
+     * Failures of this thread since it last completed a block
+     */
+    private final RetryBudget mRetries = new RetryBudget();
+
     public DownloadRunnable(DownloadMission mission, int id) {
         if (mission == null) throw new NullPointerException("mission is null");
         mMission = mission;
@@ -27,139 +74,317 @@ public class DownloadRunnable implements Runnable {
 
     @Override
     public void run() {
-        boolean retry = mMission.recovered;
-        long position = mMission.getPosition(mId);
+        BlockScheduler scheduler = mMission.getScheduler();
 
         if (DEBUG) {
-            Log.d(TAG, mId + ":default pos " + position);
-            Log.d(TAG, mId + ":recovered: " + mMission.recovered);
+            Log.d(TAG, mId + ":started");
         }
 
-        while (mMission.errCode == -1 && mMission.running && position < mMission.blocks) {
+        while (mMission.errCode == -1 && mMission.running) {
 
             if (Thread.currentThread().isInterrupted()) {
                 mMission.pause();
-                return;
+                break;
             }
 
-            if (DEBUG && retry) {
-                Log.d(TAG, mId + ":retry is true. Resuming at " + position);
+            BlockScheduler.Segment segment = mNextSegment;
+            DownloadHttpClient.PendingRange range = mNextRange;
+            mNextSegment = null;
+            mNextRange = null;
+
+            if (segment == null) {
+                if (mRetiring || mMission.shouldRetire()) {
+                    if (DEBUG) {
+                        Log.d(TAG, mId + ":connection no longer needed, retiring");
+                    }
+                    return;
+                }
+
+                segment = scheduler.nextSegment(mMission.getBlocksPerSegment());
             }
 
-            // Wait for an unblocked position
-            while (!retry && position < mMission.blocks && mMission.isBlockPreserved(position)) {
+            if (segment == null) {
+                break;
+            }
 
-                if (DEBUG) {
-                    Log.d(TAG, mId + ":position " + position + " preserved, passing");
+            try {
+                if (!downloadSegment(scheduler, segment, range)) {
+                    break;
                 }
+            } finally {
+                scheduler.finish(segment);
+            }
+        }
 
-                position++;
+        cancelNextSegment(scheduler);
+
+        if (DEBUG) {
+            Log.d(TAG, "thread " + mId + " exited main loop");
+        }
+
+        if (mMission.errCode == -1 && mMission.running) {
+            if (DEBUG) {
+                Log.d(TAG, "no error has happened, notifying");
             }
+            notifyFinished();
+        } else {
+            mMission.notifyStopped();
+        }
 
-            retry = false;
+        if (DEBUG && !mMission.running) {
+            Log.d(TAG, "The mission has been paused. Passing.");
+        }
+    }
 
-            if (position >= mMission.blocks) {
-                break;
+    /**
+     * Download the blocks of a segment with a single range request.
+     *
+     * @param scheduler the scheduler of the mission
+     * @param segment   the segment to download
+     * @param range     the request sent ahead for this segment or null
+     * @return false if the server doesn't support range requests or the mission ran out of retries
+     */
+    private boolean downloadSegment(BlockScheduler scheduler, BlockScheduler.Segment segment,
+                                    DownloadHttpClient.PendingRange range) {
+        long block = scheduler.claim(segment);
+        long start = block * DownloadManager.BLOCK_SIZE;
+
+        if (block < 0 || (range != null && range.start != start)) {
+            // The beginning of the segment has been stolen
+            if (range != null) {
+                range.cancel();
+            }
+            if (block >= 0) {
+                scheduler.release(block);
             }
+            return true;
+        }
+
+        long end = range != null
+                ? range.end
+                : Math.min(segment.end * DownloadManager.BLOCK_SIZE, mMission.length) - 1;
+        long blockEnd = getBlockEnd(block);
+
+        Response response = null;
+        CRC32 checksum = mMission.checksums != null ? new CRC32() : null;
+
+        int total = 0;
+        boolean failed = false;
+
+        try {
+            response = range != null
+                    ? range.await()
+                    : DownloadHttpClient.requestRange(mMission.url, start, end);
 
             if (DEBUG) {
-                Log.d(TAG, mId + ":preserving position " + position);
+                Log.d(TAG, mId + ":" + response.request().header("Range"));
+                Log.d(TAG, mId + ":Content-Length=" + response.header("Content-Length")
+                        + " Code:" + response.code() + " " + response.protocol());
+            }
+
+            ResponseBody body = response.body();
+
+            if (response.code() >= 500 || response.code() == 429) {
+                throw new IOException("Server error " + response.code());
             }
 
-            mMission.preserveBlock(position);
-            mMission.setPosition(mId, position);
+            // A server may be ignoring the range request
+            if (response.code() != 206 || body == null) {
+                mMission.errCode = DownloadMission.ERROR_SERVER_UNSUPPORTED;
+                notifyError(DownloadMission.ERROR_SERVER_UNSUPPORTED);
+
+                if (DEBUG) {
+                    Log.e(TAG, mId + ":Unsupported " + response.code());
+                }
 
-            long start = position * DownloadManager.BLOCK_SIZE;
-            long end = start + DownloadManager.BLOCK_SIZE - 1;
+                scheduler.release(block);
+                return false;
+            }
 
-            if (end >= mMission.length) {
-                end = mMission.length - 1;
+            // Only write data if it is exactly the requested range
+            String contentRange = response.header("Content-Range");
+            long contentLength = body.contentLength();
+            if (DownloadHttpClient.parseRangeStart(contentRange) != start
+                    || (contentLength >= 0 && contentLength != end - start + 1)) {
+                throw new IOException("Got " + contentRange + " with " + contentLength
+                        + " bytes for range " + start + "-" + end);
             }
 
-            HttpURLConnection conn = null;
+            FileChannel output = mMission.getChannel();
+            ReadableByteChannel input = Channels.newChannel(body.byteStream());
+            ByteBuffer buffer = checksum != null ? HEAP_BUFFER.get() : BUFFER.get();
 
-            int total = 0;
+            while (mMission.running) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), blockEnd - start));
 
-            try {
-                URL url = new URL(mMission.url);
-                conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestProperty("Range", "bytes=" + start + "-" + end);
+                int len = fill(input, buffer);
 
-                if (DEBUG) {
-                    Log.d(TAG, mId + ":" + conn.getRequestProperty("Range"));
-                    Log.d(TAG, mId + ":Content-Length=" + conn.getContentLength() + " Code:" + conn.getResponseCode());
+                if (len == -1) {
+                    throw new IOException("Stream ended at " + start + " before " + end);
+                }
+
+                if (checksum != null) {
+                    checksum.update(buffer.array(), buffer.arrayOffset(), len);
+                }
+
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    output.write(buffer, start + buffer.position());
                 }
 
-                // A server may be ignoring the range request
-                if (conn.getResponseCode() != 206) {
-                    mMission.errCode = DownloadMission.ERROR_SERVER_UNSUPPORTED;
-                    notifyError(DownloadMission.ERROR_SERVER_UNSUPPORTED);
+                start += len;
+                total += len;
+                notifyProgress(len);
+
+                BandwidthLimiter.getInstance().acquire(mMission, len);
 
+                if (start == blockEnd) {
                     if (DEBUG) {
-                        Log.e(TAG, mId + ":Unsupported " + conn.getResponseCode());
+                        Log.d(TAG, mId + ":position " + block + " finished, total length " + total);
                     }
 
-                    break;
-                }
-
-                RandomAccessFile f = new RandomAccessFile(mMission.location + "/" + mMission.name, "rw");
-                f.seek(start);
-                BufferedInputStream ipt = new BufferedInputStream(conn.getInputStream());
-                byte[] buf = new byte[512];
+                    if (checksum != null) {
+                        mMission.setChecksum(block, (int) checksum.getValue());
+                        checksum.reset();
+                    }
 
-                while (start < end && mMission.running) {
-                    int len = ipt.read(buf, 0, 512);
+                    mMission.preserveBlock(block);
+                    mRetries.onSuccess();
+                    total = 0;
 
-                    if (len == -1) {
+                    // Stop reading when the rest of the segment was stolen by another thread
+                    block = scheduler.claim(segment);
+                    if (block < 0) {
                         break;
-                    } else {
-                        start += len;
-                        total += len;
-                        f.write(buf, 0, len);
-                        notifyProgress(len);
                     }
-                }
+                    blockEnd = getBlockEnd(block);
 
-                if (DEBUG && mMission.running) {
-                    Log.d(TAG, mId + ":position " + position + " finished, total length " + total);
+                    if (segment.next >= segment.end) {
+                        requestNextSegment(scheduler);
+                    }
                 }
+            }
 
-                f.close();
-                ipt.close();
+            if (block >= 0) {
+                // Paused in the middle of a block
+                scheduler.release(block);
+            }
+        } catch (Exception e) {
+            if (block >= 0) {
+                scheduler.release(block);
+            }
 
-                // TODO We should save progress for each thread
-            } catch (Exception e) {
-                // TODO Retry count limit & notify error
-                retry = true;
+            notifyProgress(-total);
 
-                notifyProgress(-total);
+            if (e instanceof InterruptedException) {
+                // Interrupted while throttled, the main loop pauses the mission
+                Thread.currentThread().interrupt();
+            } else if (mMission.running) {
+                failed = true;
+            }
 
-                if (DEBUG) {
-                    Log.d(TAG, mId + ":position " + position + " retrying", e);
-                }
+            if (DEBUG) {
+                Log.d(TAG, mId + ":position " + block + " failed", e);
+            }
+        } finally {
+            if (response != null) {
+                response.close();
             }
         }
 
+        return !failed || backOff();
+    }
+
+    /**
+     * Wait before the next request after a failed one
+     *
+     * @return false if this thread ran out of retries and paused the mission
+     */
+    private boolean backOff() {
+        long delay = mRetries.onFailure();
+
+        if (delay < 0) {
+            // Paused rather than failed, so the mission can be resumed once the network is back
+            Log.e(TAG, mId + ":giving up after " + mRetries.getFailures() + " failures");
+            mMission.pause();
+            return false;
+        }
+
         if (DEBUG) {
-            Log.d(TAG, "thread " + mId + " exited main loop");
+            Log.d(TAG, mId + ":retrying in " + delay + "ms");
         }
 
-        if (mMission.errCode == -1 && mMission.running) {
-            if (DEBUG) {
-                Log.d(TAG, "no error has happened, notifying");
-            }
-            notifyFinished();
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        return true;
+    }
 
-        if (DEBUG && !mMission.running) {
-            Log.d(TAG, "The mission has been paused. Passing.");
+    /**
+     * Reserve the next segment and send its request, so the response is already
+     * on its way when the last block of the current segment has been read.
+     */
+    private void requestNextSegment(BlockScheduler scheduler) {
+        if (mNextSegment != null || mRetiring || !mMission.running) {
+            return;
         }
+
+        if (mMission.shouldRetire()) {
+            mRetiring = true;
+            return;
+        }
+
+        BlockScheduler.Segment next = scheduler.nextSegment(mMission.getBlocksPerSegment());
+        if (next == null) {
+            return;
+        }
+
+        long start = next.next * DownloadManager.BLOCK_SIZE;
+        long end = Math.min(next.end * DownloadManager.BLOCK_SIZE, mMission.length) - 1;
+
+        mNextSegment = next;
+        mNextRange = new DownloadHttpClient.PendingRange(mMission.url, start, end);
     }
 
-    private void notifyProgress(final long len) {
-        synchronized (mMission) {
-            mMission.notifyProgress(len);
+    private void cancelNextSegment(BlockScheduler scheduler) {
+        if (mNextSegment != null) {
+            scheduler.finish(mNextSegment);
+            mNextSegment = null;
+        }
+        if (mNextRange != null) {
+            mNextRange.cancel();
+            mNextRange = null;
+        }
+    }
+
+    /**
+     * Read from a channel until the buffer is full or the end of the stream is reached.
+     *
+     * @return the number of bytes read or -1 if the stream ended before anything was read
+     */
+    private static int fill(ReadableByteChannel input, ByteBuffer buffer) throws IOException {
+        int read = 0;
+
+        while (buffer.hasRemaining()) {
+            int len = input.read(buffer);
+            if (len == -1) {
+                return read == 0 ? -1 : read;
+            }
+            read += len;
         }
+
+        return read;
+    }
+
+    private long getBlockEnd(long block) {
+        return Math.min((block + 1) * DownloadManager.BLOCK_SIZE, mMission.length);
+    }
+
+    private void notifyProgress(final long len) {
+        mMission.notifyProgress(len);
     }
 
     private void notifyError(final int err) {
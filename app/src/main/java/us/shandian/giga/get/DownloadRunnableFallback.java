@@ -1,9 +1,10 @@
 package us.shandian.giga.get;
 
 import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.net.HttpURLConnection;
-import java.net.URL;
+
+import okhttp3.Response;
 
 // Single-threaded fallback mode
 public class DownloadRunnableFallback implements Runnable {
@@ -18,24 +19,41 @@ public class DownloadRunnableFallback implements Runnable {
 
     @Override
     public void run() {
+        Response response = null;
+
         try {
-            URL url = new URL(mMission.url);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            response = DownloadHttpClient.requestRange(mMission.url, 0, -1);
 
-            if (conn.getResponseCode() != 200 && conn.getResponseCode() != 206) {
+            if ((response.code() != 200 && response.code() != 206) || response.body() == null) {
                 notifyError(DownloadMission.ERROR_SERVER_UNSUPPORTED);
             } else {
+                // Only write data if it is the whole file this mission expects
+                long contentLength = response.body().contentLength();
+                if (contentLength >= 0 && mMission.length > 0 && contentLength != mMission.length) {
+                    throw new IOException("Got " + contentLength + " bytes, expected " + mMission.length);
+                }
+
                 RandomAccessFile f = new RandomAccessFile(mMission.location + "/" + mMission.name, "rw");
                 f.seek(0);
-                BufferedInputStream ipt = new BufferedInputStream(conn.getInputStream());
+                BufferedInputStream ipt = new BufferedInputStream(response.body().byteStream());
                 byte[] buf = new byte[512];
                 int len = 0;
+                long total = 0;
 
                 while ((len = ipt.read(buf, 0, 512)) != -1 && mMission.running) {
                     f.write(buf, 0, len);
+                    total += len;
                     notifyProgress(len);
 
+                    try {
+                        BandwidthLimiter.getInstance().acquire(mMission, len);
+                    } catch (InterruptedException e) {
+                        mMission.pause();
+                        break;
+                    }
+
                     if (Thread.interrupted()) {
+                        mMission.pause();
                         break;
                     }
 
@@ -43,20 +61,30 @@ public class DownloadRunnableFallback implements Runnable {
 
                 f.close();
                 ipt.close();
+
+                if (len == -1 && mMission.length > 0 && total != mMission.length) {
+                    throw new IOException("Stream ended at " + total + " before " + mMission.length);
+                }
             }
         } catch (Exception e) {
-            notifyError(DownloadMission.ERROR_UNKNOWN);
+            if (mMission.running) {
+                notifyError(DownloadMission.ERROR_UNKNOWN);
+            }
+        } finally {
+            if (response != null) {
+                response.close();
+            }
         }
 
         if (mMission.errCode == -1 && mMission.running) {
             notifyFinished();
+        } else {
+            mMission.notifyStopped();
         }
     }
 
     private void notifyProgress(final long len) {
-        synchronized (mMission) {
-            mMission.notifyProgress(len);
-        }
+        mMission.notifyProgress(len);
     }
 
     private void notifyError(final int err) {
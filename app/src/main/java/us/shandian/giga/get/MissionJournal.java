@@ -0,0 +1,598 @@
+package us.shandian.giga.get;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import us.shandian.giga.util.BlockBitmap;
+
+import static org.schabi.newpipe.BuildConfig.DEBUG;
+
+/**
+ * Append-only binary journal holding the state of all unfinished missions.
+ * <p>
+ * A checkpoint only appends the blocks finished since the previous one, so its cost
+ * doesn't grow with the size of the mission. Every record carries its length and a
+ * CRC32; replay stops at the first torn or corrupt record. Once the journal grew
+ * large compared to the live state it is compacted into a snapshot which is synced
+ * to disk and atomically renamed over the journal.
+ */
+public class MissionJournal {
+    private static final String TAG = MissionJournal.class.getSimpleName();
+
+    private static final int MAGIC = 0x47494741; // "GIGA"
+    private static final int VERSION = 1;
+
+    private static final byte RECORD_MISSION = 1;
+    private static final byte RECORD_BLOCKS = 2;
+    private static final byte RECORD_BITMAP = 3;
+    private static final byte RECORD_REMOVE = 4;
+    private static final byte RECORD_CHECKSUMS = 5;
+
+    private static final int MAX_RECORD_LENGTH = 64 * 1024 * 1024;
+    private static final long MIN_COMPACTION_BYTES = 64 * 1024;
+
+    private final File mFile;
+    private final Map<DownloadMission, Entry> mEntries = new LinkedHashMap<>();
+    private RandomAccessFile mOutput;
+    private int mNextId;
+    private long mSnapshotBytes;
+
+    /**
+     * True after a failed write, which may have left a partial record behind
+     */
+    private boolean mBroken;
+
+    /**
+     * What has been written to the journal about a mission
+     */
+    private static class Entry {
+        final int id;
+        long[] words = new long[0];
+        int errCode;
+        long length;
+        long blocks;
+        int priority;
+        long bandwidthLimit;
+        boolean queued;
+
+        /**
+         * Checksums of the recorded blocks or null if the mission isn't verified
+         */
+        int[] checksums;
+
+        Entry(int id) {
+            this.id = id;
+        }
+
+        /**
+         * @return a copy whose state can be changed without changing this entry
+         */
+        Entry copy() {
+            Entry copy = new Entry(id);
+            copy.words = words.clone();
+            copy.errCode = errCode;
+            copy.length = length;
+            copy.blocks = blocks;
+            copy.priority = priority;
+            copy.bandwidthLimit = bandwidthLimit;
+            copy.queued = queued;
+            copy.checksums = checksums != null ? checksums.clone() : null;
+            return copy;
+        }
+    }
+
+    public MissionJournal(File file) {
+        if (file == null) throw new NullPointerException("file is null");
+        mFile = file;
+    }
+
+    /**
+     * @return true if the journal exists on disk
+     */
+    public boolean exists() {
+        return mFile.isFile();
+    }
+
+    /**
+     * Replay the journal and compact it.
+     *
+     * @return the unfinished missions, in the order they were first recorded. Those which
+     * waited in a {@link DownloadQueue} come with {@link DownloadMission#queued} set
+     * and have to be queued again.
+     */
+    public synchronized List<DownloadMission> load() {
+        Map<Integer, DownloadMission> missions = new LinkedHashMap<>();
+        Map<Integer, Entry> entries = new HashMap<>();
+
+        if (mFile.isFile()) {
+            try {
+                replay(missions, entries);
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to read " + mFile, e);
+            }
+        }
+
+        mEntries.clear();
+        for (Map.Entry<Integer, DownloadMission> item : missions.entrySet()) {
+            DownloadMission mission = item.getValue();
+            Entry entry = entries.get(item.getKey());
+            mission.blockState = new BlockBitmap(mission.blocks, entry.words);
+            if (entry.checksums != null) {
+                mission.checksums = entry.checksums.clone();
+            }
+            mission.running = false;
+            mission.recovered = true;
+            mEntries.put(mission, entry);
+            mNextId = Math.max(mNextId, entry.id + 1);
+        }
+
+        try {
+            compact();
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to compact " + mFile, e);
+        }
+
+        return new ArrayList<>(missions.values());
+    }
+
+    /**
+     * Record the current state of a mission: its description if it changed and the blocks
+     * finished since the last checkpoint.
+     * <p>
+     * The records are built from a copy of what has been recorded about the mission, which
+     * replaces it only once the records are on disk. After a failed write the next
+     * checkpoint records the same changes again.
+     *
+     * @param mission the mission
+     */
+    public synchronized void checkpoint(DownloadMission mission) {
+        try {
+            Entry recorded = mEntries.get(mission);
+            Entry entry = recorded != null ? recorded.copy() : new Entry(mNextId);
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+
+            if (recorded == null || entry.errCode != mission.errCode || entry.length != mission.length
+                    || entry.blocks != mission.blocks || entry.priority != mission.priority
+                    || entry.bandwidthLimit != mission.bandwidthLimit
+                    || entry.queued != mission.queued
+                    || (entry.checksums != null) != (mission.checksums != null)) {
+                appendRecord(records, missionRecord(entry, mission));
+            }
+
+            long[] words = mission.blockState.toWords();
+
+            // Before the blocks, so a replayed block always comes with its checksum
+            if (mission.checksums != null) {
+                byte[] checksums = checksumsRecord(entry, words, entry.words, mission.checksums);
+                if (checksums != null) {
+                    appendRecord(records, checksums);
+                }
+            }
+
+            byte[] blocks;
+            if (hasClearedBlocks(entry.words, words)) {
+                // Blocks records can only add blocks, record the whole bitmap instead
+                entry.words = words.clone();
+                blocks = bitmapRecord(entry);
+            } else {
+                blocks = blocksRecord(entry, words);
+            }
+
+            if (blocks != null) {
+                // The data of a block must be on disk before the block is recorded as done
+                mission.syncData();
+                appendRecord(records, blocks);
+            }
+
+            if (records.size() > 0) {
+                write(records.toByteArray());
+                if (recorded == null) {
+                    mNextId++;
+                }
+                mEntries.put(mission, entry);
+                compactIfLarge();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write checkpoint of " + mission.name, e);
+        }
+    }
+
+    /**
+     * Remove a finished or deleted mission from the journal
+     *
+     * @param mission the mission
+     */
+    public synchronized void remove(DownloadMission mission) {
+        Entry entry = mEntries.remove(mission);
+        if (entry == null) return;
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(RECORD_REMOVE);
+            out.writeInt(entry.id);
+
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            appendRecord(records, bytes.toByteArray());
+            write(records.toByteArray());
+            compactIfLarge();
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to remove " + mission.name, e);
+        }
+    }
+
+    /**
+     * Append records to the journal, the state they describe must not be in
+     * {@link #mEntries} yet as the journal may be rewritten from it first.
+     */
+    private void write(byte[] records) throws IOException {
+        if (!mFile.isFile() || mBroken) {
+            // Replay would stop at a partial record, so rewrite the journal without it
+            compact();
+        }
+
+        if (mOutput == null) {
+            mOutput = new RandomAccessFile(mFile, "rw");
+            mOutput.seek(mOutput.length());
+        }
+
+        try {
+            mOutput.write(records);
+            mOutput.getFD().sync();
+        } catch (IOException e) {
+            mBroken = true;
+            throw e;
+        }
+    }
+
+    private void compactIfLarge() throws IOException {
+        if (mOutput != null && mOutput.length() > Math.max(MIN_COMPACTION_BYTES, 4 * mSnapshotBytes)) {
+            compact();
+        }
+    }
+
+    /**
+     * Write the live state into a new file and atomically replace the journal with it
+     */
+    private void compact() throws IOException {
+        if (mOutput != null) {
+            mOutput.close();
+            mOutput = null;
+        }
+
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        Map<DownloadMission, Entry> compacted = new LinkedHashMap<>();
+        for (Map.Entry<DownloadMission, Entry> item : mEntries.entrySet()) {
+            Entry entry = item.getValue().copy();
+            compacted.put(item.getKey(), entry);
+            appendRecord(records, missionRecord(entry, item.getKey()));
+            appendRecord(records, bitmapRecord(entry));
+            if (entry.checksums != null) {
+                byte[] checksums = checksumsRecord(entry, entry.words, new long[0], entry.checksums);
+                if (checksums != null) {
+                    appendRecord(records, checksums);
+                }
+            }
+        }
+
+        File temp = new File(mFile.getPath() + ".tmp");
+        FileOutputStream output = new FileOutputStream(temp);
+        try {
+            DataOutputStream out = new DataOutputStream(output);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            records.writeTo(out);
+            out.flush();
+            output.getFD().sync();
+        } finally {
+            output.close();
+        }
+
+        if (!temp.renameTo(mFile)) {
+            throw new IOException("Unable to replace " + mFile);
+        }
+
+        mEntries.putAll(compacted);
+        mSnapshotBytes = mFile.length();
+        mBroken = false;
+
+        if (DEBUG) {
+            Log.d(TAG, "compacted journal, " + mEntries.size() + " missions, " + mSnapshotBytes + " bytes");
+        }
+    }
+
+    private void replay(Map<Integer, DownloadMission> missions, Map<Integer, Entry> entries)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(mFile));
+        CRC32 crc = new CRC32();
+
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.w(TAG, "Ignoring journal with unknown format: " + mFile);
+                return;
+            }
+
+            while (true) {
+                byte[] record;
+                try {
+                    int length = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                        Log.w(TAG, "Corrupt record length, dropping the rest of the journal");
+                        return;
+                    }
+                    record = new byte[length];
+                    in.readFully(record);
+                    crc.reset();
+                    crc.update(record, 0, length);
+                    if ((int) crc.getValue() != in.readInt()) {
+                        Log.w(TAG, "Checksum mismatch, dropping the rest of the journal");
+                        return;
+                    }
+                } catch (EOFException e) {
+                    // End of the journal or a record torn by a crash
+                    return;
+                }
+
+                applyRecord(new DataInputStream(new ByteArrayInputStream(record)),
+                        missions, entries);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void applyRecord(DataInputStream in, Map<Integer, DownloadMission> missions,
+                                    Map<Integer, Entry> entries) throws IOException {
+        byte type = in.readByte();
+        int id = in.readInt();
+        Entry entry = entries.get(id);
+
+        switch (type) {
+            case RECORD_MISSION: {
+                DownloadMission mission = missions.get(id);
+                if (mission == null) {
+                    mission = new DownloadMission();
+                    missions.put(id, mission);
+                    entry = new Entry(id);
+                    entries.put(id, entry);
+                }
+                mission.name = in.readUTF();
+                mission.url = in.readUTF();
+                mission.location = in.readUTF();
+                mission.length = in.readLong();
+                mission.blocks = in.readLong();
+                mission.threadCount = in.readInt();
+                mission.fallback = in.readBoolean();
+                mission.errCode = in.readInt();
+                mission.timestamp = in.readLong();
+                if (in.available() > 0) {
+                    // Not written by the first version of the record
+                    mission.priority = in.readInt();
+                    mission.bandwidthLimit = in.readLong();
+                }
+                boolean verified = in.available() > 0 && in.readBoolean();
+                mission.queued = in.available() > 0 && in.readBoolean();
+
+                entry.errCode = mission.errCode;
+                entry.length = mission.length;
+                entry.blocks = mission.blocks;
+                entry.priority = mission.priority;
+                entry.bandwidthLimit = mission.bandwidthLimit;
+                entry.queued = mission.queued;
+                entry.checksums = verified ? resize(entry.checksums, mission.blocks) : null;
+                break;
+            }
+            case RECORD_BLOCKS: {
+                if (entry == null) return;
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    int word = in.readInt();
+                    long bits = in.readLong();
+                    entry.words = ensureWords(entry.words, word + 1);
+                    entry.words[word] |= bits;
+                }
+                break;
+            }
+            case RECORD_BITMAP: {
+                if (entry == null) return;
+                long[] words = new long[in.readInt()];
+                for (int i = 0; i < words.length; i++) {
+                    words[i] = in.readLong();
+                }
+                entry.words = words;
+                break;
+            }
+            case RECORD_CHECKSUMS: {
+                if (entry == null || entry.checksums == null) return;
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    long block = in.readLong();
+                    int checksum = in.readInt();
+                    if (block >= 0 && block < entry.checksums.length) {
+                        entry.checksums[(int) block] = checksum;
+                    }
+                }
+                break;
+            }
+            case RECORD_REMOVE:
+                missions.remove(id);
+                entries.remove(id);
+                break;
+            default:
+                Log.w(TAG, "Skipping unknown record type " + type);
+        }
+    }
+
+    private static byte[] missionRecord(Entry entry, DownloadMission mission) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(RECORD_MISSION);
+        out.writeInt(entry.id);
+        out.writeUTF(mission.name);
+        out.writeUTF(mission.url);
+        out.writeUTF(mission.location);
+        out.writeLong(mission.length);
+        out.writeLong(mission.blocks);
+        out.writeInt(mission.threadCount);
+        out.writeBoolean(mission.fallback);
+        out.writeInt(mission.errCode);
+        out.writeLong(mission.timestamp);
+        out.writeInt(mission.priority);
+        out.writeLong(mission.bandwidthLimit);
+        out.writeBoolean(mission.checksums != null);
+        out.writeBoolean(mission.queued);
+
+        entry.errCode = mission.errCode;
+        entry.length = mission.length;
+        entry.blocks = mission.blocks;
+        entry.priority = mission.priority;
+        entry.bandwidthLimit = mission.bandwidthLimit;
+        entry.queued = mission.queued;
+        entry.checksums = mission.checksums != null ? resize(entry.checksums, mission.blocks) : null;
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Encode the bits set in {@code words} but not yet recorded in the entry
+     *
+     * @return the record or null if nothing changed
+     */
+    private static byte[] blocksRecord(Entry entry, long[] words) throws IOException {
+        ByteArrayOutputStream changes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(changes);
+        int count = 0;
+
+        entry.words = ensureWords(entry.words, words.length);
+        for (int i = 0; i < words.length; i++) {
+            long added = words[i] & ~entry.words[i];
+            if (added != 0) {
+                out.writeInt(i);
+                out.writeLong(added);
+                entry.words[i] |= added;
+                count++;
+            }
+        }
+
+        if (count == 0) {
+            return null;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeByte(RECORD_BLOCKS);
+        header.writeInt(entry.id);
+        header.writeInt(count);
+        changes.writeTo(bytes);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return true if a block recorded in {@code recorded} is not set in {@code words} anymore
+     */
+    private static boolean hasClearedBlocks(long[] recorded, long[] words) {
+        for (int i = 0; i < recorded.length; i++) {
+            if ((recorded[i] & ~(i < words.length ? words[i] : 0)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Encode the checksums of the blocks set in {@code words} but not in {@code known}
+     * and copy them into the entry
+     *
+     * @return the record or null if there are none
+     */
+    private static byte[] checksumsRecord(Entry entry, long[] words, long[] known, int[] checksums)
+            throws IOException {
+        ByteArrayOutputStream changes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(changes);
+        int count = 0;
+
+        for (int i = 0; i < words.length; i++) {
+            long added = words[i] & ~(i < known.length ? known[i] : 0);
+            while (added != 0) {
+                long block = i * 64L + Long.numberOfTrailingZeros(added);
+                added &= added - 1;
+                if (block >= checksums.length || block >= entry.checksums.length) {
+                    continue;
+                }
+                out.writeLong(block);
+                out.writeInt(checksums[(int) block]);
+                entry.checksums[(int) block] = checksums[(int) block];
+                count++;
+            }
+        }
+
+        if (count == 0) {
+            return null;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeByte(RECORD_CHECKSUMS);
+        header.writeInt(entry.id);
+        header.writeInt(count);
+        changes.writeTo(bytes);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] bitmapRecord(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(RECORD_BITMAP);
+        out.writeInt(entry.id);
+        out.writeInt(entry.words.length);
+        for (long word : entry.words) {
+            out.writeLong(word);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void appendRecord(ByteArrayOutputStream records, byte[] record) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+
+        DataOutputStream out = new DataOutputStream(records);
+        out.writeInt(record.length);
+        out.write(record);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static int[] resize(int[] checksums, long blocks) {
+        if (checksums != null && checksums.length == blocks) {
+            return checksums;
+        }
+        int[] resized = new int[(int) blocks];
+        if (checksums != null) {
+            System.arraycopy(checksums, 0, resized, 0, Math.min(checksums.length, resized.length));
+        }
+        return resized;
+    }
+
+    private static long[] ensureWords(long[] words, int length) {
+        if (words.length >= length) {
+            return words;
+        }
+        long[] grown = new long[length];
+        System.arraycopy(words, 0, grown, 0, words.length);
+        return grown;
+    }
+}
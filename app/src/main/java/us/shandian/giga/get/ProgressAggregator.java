@@ -0,0 +1,96 @@
+package us.shandian.giga.get;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Accumulates the bytes written by the download threads of a mission.
+ * <p>
+ * Threads add to striped counters without taking a lock. The mission drains them every
+ * {@link #PUBLISH_INTERVAL_MILLIS} on the shared {@link #getPublisher() publisher} thread,
+ * which then notifies listeners once and writes the meta file when
+ * {@link #CHECKPOINT_BYTES} or {@link #CHECKPOINT_INTERVAL_MILLIS} have passed.
+ */
+class ProgressAggregator {
+    static final long PUBLISH_INTERVAL_MILLIS = 250;
+    static final long CHECKPOINT_INTERVAL_MILLIS = 5000;
+    static final long CHECKPOINT_BYTES = 8 * 1024 * 1024;
+
+    private static final int STRIPES = 8;
+
+    /**
+     * Counters are spread over separate cache lines to avoid false sharing
+     */
+    private static final int PADDING = 8;
+
+    private static ScheduledExecutorService sPublisher;
+
+    private final AtomicLongArray mCounters = new AtomicLongArray(STRIPES * PADDING);
+    private long mPendingBytes;
+    private long mLastCheckpoint = -1;
+
+    /**
+     * @return the single thread publishing the progress of all missions
+     */
+    static synchronized ScheduledExecutorService getPublisher() {
+        if (sPublisher == null) {
+            sPublisher = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, "DownloadProgress");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sPublisher;
+    }
+
+    /**
+     * Account bytes written by the calling thread
+     *
+     * @param delta the number of bytes, negative to take back bytes which have to be downloaded again
+     */
+    void add(long delta) {
+        int stripe = (int) (Thread.currentThread().getId() % STRIPES);
+        mCounters.addAndGet(stripe * PADDING, delta);
+    }
+
+    /**
+     * @return the bytes accounted since the last call
+     */
+    long drain() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += mCounters.getAndSet(i * PADDING, 0);
+        }
+        return sum;
+    }
+
+    /**
+     * Check whether the mission state should be written to disk
+     *
+     * @param delta the bytes published since the last call
+     * @param now   the current time in milliseconds
+     * @return true if enough bytes or time passed since the last checkpoint
+     */
+    boolean shouldCheckpoint(long delta, long now) {
+        if (mLastCheckpoint == -1) {
+            mLastCheckpoint = now;
+        }
+
+        mPendingBytes += delta;
+
+        if (mPendingBytes >= CHECKPOINT_BYTES || now - mLastCheckpoint >= CHECKPOINT_INTERVAL_MILLIS) {
+            mPendingBytes = 0;
+            mLastCheckpoint = now;
+            return true;
+        }
+
+        return false;
+    }
+}
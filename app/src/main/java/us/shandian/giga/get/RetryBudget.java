@@ -0,0 +1,76 @@
+package us.shandian.giga.get;
+
+import java.util.Random;
+
+/**
+ * Counts the consecutive failed requests of a download thread and tells it how long
+ * to back off before retrying.
+ * <p>
+ * The delay doubles with every failure, starting at {@link #BASE_DELAY_MILLIS} and capped at
+ * {@link #MAX_DELAY_MILLIS}. Half of it is random, so threads failing together don't retry
+ * in lockstep. Once the thread failed at least {@link #MIN_FAILURES} times and for at least
+ * {@link #MAX_FAILING_MILLIS} without completing a block in between, it gives up.
+ */
+class RetryBudget {
+    static final int MIN_FAILURES = 5;
+    static final long MAX_FAILING_MILLIS = 2 * 60 * 1000;
+    static final long BASE_DELAY_MILLIS = 1000;
+    static final long MAX_DELAY_MILLIS = 30000;
+
+    private final Random mRandom = new Random();
+    private int mFailures;
+    private long mFirstFailure = -1;
+
+    /**
+     * Called after a failed request
+     *
+     * @return the milliseconds to wait before retrying or -1 if the budget is exhausted
+     */
+    long onFailure() {
+        return onFailure(System.currentTimeMillis());
+    }
+
+    /**
+     * Called after a failed request
+     *
+     * @param now the current time in milliseconds
+     * @return the milliseconds to wait before retrying or -1 if the budget is exhausted
+     */
+    synchronized long onFailure(long now) {
+        if (mFirstFailure == -1) {
+            mFirstFailure = now;
+        }
+
+        mFailures++;
+        if (mFailures >= MIN_FAILURES && now - mFirstFailure >= MAX_FAILING_MILLIS) {
+            return -1;
+        }
+        return getDelay(mFailures, mRandom.nextDouble());
+    }
+
+    /**
+     * Called after a block was downloaded completely
+     */
+    synchronized void onSuccess() {
+        mFailures = 0;
+        mFirstFailure = -1;
+    }
+
+    synchronized int getFailures() {
+        return mFailures;
+    }
+
+    /**
+     * @param failures the number of consecutive failures, at least 1
+     * @param random   a random value in [0, 1)
+     * @return the delay before the next attempt in milliseconds
+     */
+    static long getDelay(int failures, double random) {
+        long delay = MAX_DELAY_MILLIS;
+        // Avoid overflowing the shift
+        if (failures <= 16) {
+            delay = Math.min(MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << (failures - 1));
+        }
+        return delay / 2 + (long) (random * (delay / 2));
+    }
+}
@@ -1,11 +1,11 @@
 package us.shandian.giga.service;
 
 import android.Manifest;
-import android.app.Notification;
 import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
@@ -14,6 +14,7 @@ import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Message;
+import android.preference.PreferenceManager;
 import android.support.v4.app.NotificationCompat.Builder;
 import android.support.v4.content.PermissionChecker;
 import android.util.Log;
@@ -23,13 +24,18 @@ import org.schabi.newpipe.R;
 import org.schabi.newpipe.download.DownloadActivity;
 import org.schabi.newpipe.settings.NewPipeSettings;
 
+import java.io.File;
 import java.util.ArrayList;
 
+import us.shandian.giga.get.BandwidthLimiter;
 import us.shandian.giga.get.DownloadDataSource;
 import us.shandian.giga.get.DownloadManager;
 import us.shandian.giga.get.DownloadManagerImpl;
 import us.shandian.giga.get.DownloadMission;
+import us.shandian.giga.get.DownloadQueue;
+import us.shandian.giga.get.MissionJournal;
 import us.shandian.giga.get.sqlite.SQLiteDownloadDataSource;
+import us.shandian.giga.util.Utility;
 
 import static org.schabi.newpipe.BuildConfig.DEBUG;
 
@@ -46,11 +52,12 @@ public class DownloadManagerService extends Service {
     private static final String EXTRA_LOCATION = "DownloadManagerService.extra.location";
     private static final String EXTRA_IS_AUDIO = "DownloadManagerService.extra.is_audio";
     private static final String EXTRA_THREADS = "DownloadManagerService.extra.threads";
+    private static final String MISSION_JOURNAL = "missions.journal";
 
 
     private DMBinder mBinder;
-    private DownloadManager mManager;
-    private Notification mNotification;
+    private DownloadManagerImpl mManager;
+    private Builder mNotificationBuilder;
     private Handler mHandler;
     private long mLastTimeStamp = System.currentTimeMillis();
     private DownloadDataSource mDataSource;
@@ -58,6 +65,21 @@ public class DownloadManagerService extends Service {
 
     private MissionListener missionListener = new MissionListener();
 
+    private SharedPreferences mPrefs;
+    private final SharedPreferences.OnSharedPreferenceChangeListener mPrefsListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                    if (getString(R.string.download_bandwidth_limit_key).equals(key)) {
+                        updateBandwidthLimit();
+                    } else if (getString(R.string.download_verify_checksums_key).equals(key)) {
+                        updateVerifyChecksums();
+                    } else if (getString(R.string.download_queue_policy_key).equals(key)) {
+                        updateQueuePolicy();
+                    }
+                }
+            };
+
 
     private void notifyMediaScanner(DownloadMission mission) {
         Uri uri = Uri.parse("file://" + mission.location + "/" + mission.name);
@@ -74,6 +96,11 @@ public class DownloadManagerService extends Service {
         }
 
         mBinder = new DMBinder();
+
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(this);
+        mPrefs.registerOnSharedPreferenceChangeListener(mPrefsListener);
+        updateBandwidthLimit();
+
         if (mDataSource == null) {
             mDataSource = new SQLiteDownloadDataSource(this);
         }
@@ -81,7 +108,10 @@ public class DownloadManagerService extends Service {
             ArrayList<String> paths = new ArrayList<>(2);
             paths.add(NewPipeSettings.getVideoDownloadPath(this));
             paths.add(NewPipeSettings.getAudioDownloadPath(this));
-            mManager = new DownloadManagerImpl(paths, mDataSource);
+            MissionJournal journal = new MissionJournal(new File(getFilesDir(), MISSION_JOURNAL));
+            mManager = new DownloadManagerImpl(paths, mDataSource, journal);
+            updateVerifyChecksums();
+            updateQueuePolicy();
             if (DEBUG) {
                 Log.d(TAG, "mManager == null");
                 Log.d(TAG, "Download directory: " + paths);
@@ -97,15 +127,13 @@ public class DownloadManagerService extends Service {
 
         Bitmap iconBitmap = BitmapFactory.decodeResource(this.getResources(), R.mipmap.ic_launcher);
 
-        Builder builder = new Builder(this, getString(R.string.notification_channel_id))
+        mNotificationBuilder = new Builder(this, getString(R.string.notification_channel_id))
                 .setContentIntent(pendingIntent)
                 .setSmallIcon(android.R.drawable.stat_sys_download)
                 .setLargeIcon(iconBitmap)
                 .setContentTitle(getString(R.string.msg_running))
                 .setContentText(getString(R.string.msg_running_detail));
 
-        mNotification = builder.build();
-
         HandlerThread thread = new HandlerThread("ServiceMessenger");
         thread.start();
 
@@ -167,13 +195,50 @@ public class DownloadManagerService extends Service {
             Log.d(TAG, "Destroying");
         }
 
-        for (int i = 0; i < mManager.getCount(); i++) {
-            mManager.pauseMission(i);
-        }
+        mManager.pauseAllMissions();
+
+        mPrefs.unregisterOnSharedPreferenceChangeListener(mPrefsListener);
 
         stopForeground(true);
     }
 
+    /**
+     * Apply the download speed limit from the settings
+     */
+    private void updateBandwidthLimit() {
+        String value = mPrefs.getString(getString(R.string.download_bandwidth_limit_key),
+                getString(R.string.download_bandwidth_limit_default_value));
+        long limit;
+        try {
+            limit = Long.parseLong(value) * 1024;
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Invalid download bandwidth limit: " + value);
+            limit = 0;
+        }
+        BandwidthLimiter.getInstance().setGlobalLimit(limit);
+    }
+
+    private void updateVerifyChecksums() {
+        mManager.setVerifyChecksums(mPrefs.getBoolean(
+                getString(R.string.download_verify_checksums_key), false));
+    }
+
+    /**
+     * Apply the order of queued downloads from the settings
+     */
+    private void updateQueuePolicy() {
+        String value = mPrefs.getString(getString(R.string.download_queue_policy_key),
+                getString(R.string.download_queue_policy_default_value));
+        DownloadQueue.Policy policy;
+        try {
+            policy = DownloadQueue.Policy.valueOf(value);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Invalid download queue policy: " + value);
+            policy = DownloadQueue.Policy.FIFO;
+        }
+        mManager.getQueue().setPolicy(policy);
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         int permissionCheck;
@@ -200,8 +265,22 @@ public class DownloadManagerService extends Service {
         if (runningCount == 0) {
             stopForeground(true);
         } else {
-            startForeground(NOTIFICATION_ID, mNotification);
+            mNotificationBuilder.setContentText(getRateText());
+            startForeground(NOTIFICATION_ID, mNotificationBuilder.build());
+        }
+    }
+
+    /**
+     * @return the current download speed of all missions, for the notification
+     */
+    private String getRateText() {
+        BandwidthLimiter limiter = BandwidthLimiter.getInstance();
+        String rate = Utility.formatSpeed(limiter.getDownloadRate());
+        if (limiter.isForegroundActive()) {
+            return getString(R.string.msg_running_rate_playback, rate,
+                    Utility.formatSpeed(limiter.getForegroundRate()));
         }
+        return getString(R.string.msg_running_rate, rate);
     }
 
     public static void startMission(Context context, String url, String location, String name, boolean isAudio, int threads) {
@@ -2,12 +2,14 @@ package us.shandian.giga.ui.adapter;
 
 import android.app.ProgressDialog;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Build;
 import android.support.v4.content.FileProvider;
 import android.support.v4.view.ViewCompat;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -150,8 +152,11 @@ public class MissionAdapter extends RecyclerView.Adapter<MissionAdapter.ViewHold
         if (deltaTime == 0 || deltaTime > 1000 || finished) {
             if (h.mission.errCode > 0) {
                 h.status.setText(R.string.msg_error);
+            } else if (h.mission.queued && !h.mission.running) {
+                h.status.setText(R.string.msg_queued);
             } else {
-                float progress = (float) h.mission.done / h.mission.length;
+                // The length is unknown until the mission is initialized
+                float progress = h.mission.length > 0 ? (float) h.mission.done / h.mission.length : 0;
                 h.status.setText(String.format(Locale.US, "%.2f%%", progress * 100));
                 h.progress.setProgress(progress);
             }
@@ -180,6 +185,7 @@ public class MissionAdapter extends RecyclerView.Adapter<MissionAdapter.ViewHold
         MenuItem view = menu.findItem(R.id.view);
         MenuItem delete = menu.findItem(R.id.delete);
         MenuItem checksum = menu.findItem(R.id.checksum);
+        MenuItem speedLimit = menu.findItem(R.id.speed_limit);
 
         // Set to false first
         start.setVisible(false);
@@ -187,10 +193,18 @@ public class MissionAdapter extends RecyclerView.Adapter<MissionAdapter.ViewHold
         view.setVisible(false);
         delete.setVisible(false);
         checksum.setVisible(false);
+        speedLimit.setVisible(false);
 
         if (!h.mission.finished) {
-            if (!h.mission.running) {
-                if (h.mission.errCode == -1) {
+            speedLimit.setVisible(true);
+
+            if (h.mission.queued) {
+                // Pausing takes it out of the queue
+                pause.setVisible(true);
+                delete.setVisible(true);
+            } else if (!h.mission.running) {
+                if (h.mission.errCode == -1
+                        || h.mission.errCode == DownloadMission.ERROR_CONNECTION_FAILED) {
                     start.setVisible(true);
                 }
 
@@ -212,12 +226,14 @@ public class MissionAdapter extends RecyclerView.Adapter<MissionAdapter.ViewHold
                     case R.id.start:
                         mManager.resumeMission(h.position);
                         mBinder.onMissionAdded(mManager.getMission(h.position));
+                        updateProgress(h, true);
                         return true;
                     case R.id.pause:
                         mManager.pauseMission(h.position);
                         mBinder.onMissionRemoved(mManager.getMission(h.position));
                         h.lastTimeStamp = -1;
                         h.lastDone = -1;
+                        updateProgress(h, true);
                         return true;
                     case R.id.view:
                         File f = new File(h.mission.location, h.mission.name);
@@ -244,6 +260,9 @@ public class MissionAdapter extends RecyclerView.Adapter<MissionAdapter.ViewHold
                         mManager.deleteMission(h.position);
                         notifyDataSetChanged();
                         return true;
+                    case R.id.speed_limit:
+                        showBandwidthLimitDialog(h.position);
+                        return true;
                     case R.id.md5:
                     case R.id.sha1:
                         DownloadMission mission = mManager.getMission(h.position);
@@ -258,6 +277,34 @@ public class MissionAdapter extends RecyclerView.Adapter<MissionAdapter.ViewHold
         popup.show();
     }
 
+    /**
+     * Let the user pick a speed limit for a single mission, from the values of the global limit
+     */
+    private void showBandwidthLimitDialog(final int position) {
+        final String[] values = mContext.getResources().getStringArray(R.array.download_bandwidth_limit_values);
+        long current = mManager.getMission(position).bandwidthLimit / 1024;
+
+        int checked = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (Long.parseLong(values[i]) == current) {
+                checked = i;
+            }
+        }
+
+        new AlertDialog.Builder(mContext)
+                .setTitle(R.string.download_mission_bandwidth_limit_title)
+                .setSingleChoiceItems(R.array.download_bandwidth_limit_description, checked,
+                        new DialogInterface.OnClickListener() {
+                            @Override
+                            public void onClick(DialogInterface dialog, int which) {
+                                mManager.setMissionBandwidthLimit(position, Long.parseLong(values[which]) * 1024);
+                                dialog.dismiss();
+                            }
+                        })
+                .setNegativeButton(R.string.cancel, null)
+                .show();
+    }
+
     private void viewFile(File file, String mimetype) {
         Intent intent = new Intent();
         intent.setAction(Intent.ACTION_VIEW);
@@ -0,0 +1,233 @@
+package us.shandian.giga.util;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size bitset which can be read and modified from multiple threads without locking.
+ * <p>
+ * Bits are set with compare-and-set so exactly one of several threads racing for a bit
+ * wins it. Serialized by Gson as a compact array: the size followed by the 64 bit words.
+ */
+@JsonAdapter(BlockBitmap.GsonAdapter.class)
+public class BlockBitmap {
+    private static final int WORD_BITS = 64;
+
+    private final long mSize;
+    private final AtomicLongArray mWords;
+
+    public BlockBitmap(long size) {
+        this(size, new long[wordCount(size)]);
+    }
+
+    public BlockBitmap(long size, long[] words) {
+        if (size < 0) throw new IllegalArgumentException("size is negative");
+        mSize = size;
+        long[] copy = new long[wordCount(size)];
+        System.arraycopy(words, 0, copy, 0, Math.min(words.length, copy.length));
+        mWords = new AtomicLongArray(copy);
+    }
+
+    private static int wordCount(long size) {
+        return (int) ((size + WORD_BITS - 1) / WORD_BITS);
+    }
+
+    private static long mask(long index) {
+        return 1L << (index % WORD_BITS);
+    }
+
+    /**
+     * @return the number of bits
+     */
+    public long size() {
+        return mSize;
+    }
+
+    /**
+     * @param index the bit
+     * @return true if the bit is set, bits beyond the size are never set
+     */
+    public boolean get(long index) {
+        if (index < 0 || index >= mSize) {
+            return false;
+        }
+        return (mWords.get((int) (index / WORD_BITS)) & mask(index)) != 0;
+    }
+
+    /**
+     * Set a bit unless it is already set
+     *
+     * @param index the bit
+     * @return true if this call changed the bit
+     */
+    public boolean trySet(long index) {
+        checkIndex(index);
+        int word = (int) (index / WORD_BITS);
+        long mask = mask(index);
+
+        long current;
+        do {
+            current = mWords.get(word);
+            if ((current & mask) != 0) {
+                return false;
+            }
+        } while (!mWords.compareAndSet(word, current, current | mask));
+
+        return true;
+    }
+
+    /**
+     * Clear a bit unless it is already cleared
+     *
+     * @param index the bit
+     * @return true if this call changed the bit
+     */
+    public boolean tryClear(long index) {
+        checkIndex(index);
+        int word = (int) (index / WORD_BITS);
+        long mask = mask(index);
+
+        long current;
+        do {
+            current = mWords.get(word);
+            if ((current & mask) == 0) {
+                return false;
+            }
+        } while (!mWords.compareAndSet(word, current, current & ~mask));
+
+        return true;
+    }
+
+    /**
+     * @param from the bit to start searching from
+     * @return the first cleared bit at or after {@code from}, or {@link #size()} if there is none
+     */
+    public long nextClearBit(long from) {
+        if (from < 0) from = 0;
+
+        for (long index = from; index < mSize; ) {
+            long word = ~mWords.get((int) (index / WORD_BITS)) & (-1L << (index % WORD_BITS));
+            if (word != 0) {
+                return Math.min(mSize, (index / WORD_BITS) * WORD_BITS + Long.numberOfTrailingZeros(word));
+            }
+            index = (index / WORD_BITS + 1) * WORD_BITS;
+        }
+
+        return mSize;
+    }
+
+    /**
+     * @return the number of set bits
+     */
+    public long cardinality() {
+        long count = 0;
+        for (int i = 0; i < mWords.length(); i++) {
+            count += Long.bitCount(mWords.get(i));
+        }
+        return count;
+    }
+
+    /**
+     * Copy this bitmap into one of another size. Must not be used while other threads modify it.
+     *
+     * @param size the new size
+     * @return the copy
+     */
+    public BlockBitmap resize(long size) {
+        return new BlockBitmap(size, toWords());
+    }
+
+    /**
+     * @return a snapshot of the words backing this bitmap
+     */
+    public long[] toWords() {
+        long[] words = new long[mWords.length()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = mWords.get(i);
+        }
+        return words;
+    }
+
+    private void checkIndex(long index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("index " + index + " out of [0, " + mSize + ")");
+        }
+    }
+
+    /**
+     * Writes the bitmap as {@code [size, word0, word1, ...]}. Also reads the
+     * {@code {"block": true}} maps written by older versions.
+     */
+    public static class GsonAdapter extends TypeAdapter<BlockBitmap> {
+        @Override
+        public void write(JsonWriter out, BlockBitmap value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginArray();
+            out.value(value.size());
+            for (long word : value.toWords()) {
+                out.value(word);
+            }
+            out.endArray();
+        }
+
+        @Override
+        public BlockBitmap read(JsonReader in) throws IOException {
+            JsonToken token = in.peek();
+
+            if (token == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            if (token == JsonToken.BEGIN_OBJECT) {
+                return readLegacyMap(in);
+            }
+
+            in.beginArray();
+            long size = in.nextLong();
+            long[] words = new long[wordCount(size)];
+            for (int i = 0; in.hasNext(); i++) {
+                long word = in.nextLong();
+                if (i < words.length) {
+                    words[i] = word;
+                }
+            }
+            in.endArray();
+
+            return new BlockBitmap(size, words);
+        }
+
+        private static BlockBitmap readLegacyMap(JsonReader in) throws IOException {
+            List<Long> blocks = new ArrayList<>();
+            long size = 0;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                long block = Long.parseLong(in.nextName());
+                if (in.nextBoolean()) {
+                    blocks.add(block);
+                    size = Math.max(size, block + 1);
+                }
+            }
+            in.endObject();
+
+            BlockBitmap bitmap = new BlockBitmap(size);
+            for (long block : blocks) {
+                bitmap.trySet(block);
+            }
+            return bitmap;
+        }
+    }
+}
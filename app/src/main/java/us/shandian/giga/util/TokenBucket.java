@@ -0,0 +1,106 @@
+package us.shandian.giga.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket limiting the rate at which bytes are consumed.
+ * <p>
+ * Tokens are refilled continuously up to a burst of {@link #BURST_MILLIS} worth of the rate.
+ * A caller may take more tokens than available, the bucket then goes into debt and the
+ * caller has to wait until the debt is paid off. This way chunks of any size can pass
+ * while the long-term rate is kept. A rate of 0 disables the limit.
+ */
+public class TokenBucket {
+    public static final long UNLIMITED = 0;
+
+    /**
+     * How long the bucket may save up tokens while nobody consumes them
+     */
+    static final long BURST_MILLIS = 250;
+
+    private long mRate = UNLIMITED;
+    private double mTokens;
+    private long mLastRefill = -1;
+
+    public TokenBucket() {
+    }
+
+    public TokenBucket(long bytesPerSecond) {
+        setRate(bytesPerSecond);
+    }
+
+    /**
+     * @return the rate in bytes per second or {@link #UNLIMITED}
+     */
+    public synchronized long getRate() {
+        return mRate;
+    }
+
+    /**
+     * Change the rate, tokens saved up or owed are kept
+     *
+     * @param bytesPerSecond the rate in bytes per second or {@link #UNLIMITED}
+     */
+    public synchronized void setRate(long bytesPerSecond) {
+        if (bytesPerSecond < 0) throw new IllegalArgumentException("rate is negative");
+        if (mRate != UNLIMITED) {
+            refill(System.nanoTime());
+        }
+        mRate = bytesPerSecond;
+        if (mRate == UNLIMITED) {
+            mTokens = 0;
+            mLastRefill = -1;
+        }
+    }
+
+    /**
+     * Take tokens without waiting
+     *
+     * @param bytes the number of bytes to consume
+     * @param now   the current time of {@link System#nanoTime()}
+     * @return the nanoseconds the caller has to wait before consuming them, 0 if it may go on
+     */
+    public synchronized long reserve(long bytes, long now) {
+        if (mRate == UNLIMITED) {
+            return 0;
+        }
+
+        refill(now);
+        mTokens -= bytes;
+
+        if (mTokens >= 0) {
+            return 0;
+        }
+
+        return (long) (-mTokens * TimeUnit.SECONDS.toNanos(1) / mRate);
+    }
+
+    /**
+     * Take tokens and wait until they are paid off
+     *
+     * @param bytes the number of bytes to consume
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public void acquire(long bytes) throws InterruptedException {
+        long wait = reserve(bytes, System.nanoTime());
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    private void refill(long now) {
+        if (mLastRefill == -1) {
+            mLastRefill = now;
+            mTokens = getBurst();
+            return;
+        }
+
+        double elapsed = (double) (now - mLastRefill) / TimeUnit.SECONDS.toNanos(1);
+        mTokens = Math.min(getBurst(), mTokens + elapsed * mRate);
+        mLastRefill = now;
+    }
+
+    private double getBurst() {
+        return (double) mRate * BURST_MILLIS / 1000;
+    }
+}
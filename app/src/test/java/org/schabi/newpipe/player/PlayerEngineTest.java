@@ -0,0 +1,80 @@
+package org.schabi.newpipe.player;
+
+import com.google.android.exoplayer2.SimpleExoPlayer;
+
+import org.junit.Test;
+import org.schabi.newpipe.player.helper.LoadController;
+import org.schabi.newpipe.player.helper.PlayerDataSource;
+import org.schabi.newpipe.player.metrics.MetricsCollector;
+import org.schabi.newpipe.player.playback.CustomTrackSelector;
+import org.schabi.newpipe.player.playback.MediaSourceManager;
+import org.schabi.newpipe.playlist.PlayQueue;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.schabi.newpipe.player.PlayerEngine.EXPIRATION_MILLIS;
+
+public class PlayerEngineTest {
+
+    private static PlayerEngine engine() {
+        return new PlayerEngine(mock(SimpleExoPlayer.class), mock(CustomTrackSelector.class),
+                mock(LoadController.class), mock(MetricsCollector.class),
+                mock(PlayerDataSource.class), mock(PlayQueue.class),
+                mock(MediaSourceManager.class), true);
+    }
+
+    private static void verifyReleased(final PlayerEngine engine) {
+        verify(engine.player).release();
+        verify(engine.playbackManager).dispose();
+        verify(engine.playQueue).dispose();
+        verify(engine.metricsCollector).finishItem();
+    }
+
+    @Test
+    public void handedOffEngineIsTakenOver() {
+        final PlayerEngine engine = engine();
+        final String key = PlayerEngine.handOff(engine, 1000);
+
+        assertSame(engine, PlayerEngine.take(key, 1000 + EXPIRATION_MILLIS - 1));
+        // Only once
+        assertNull(PlayerEngine.take(key, 1000));
+        verify(engine.player, never()).release();
+        verify(engine.playQueue, never()).dispose();
+    }
+
+    @Test
+    public void otherKeysTakeNothing() {
+        final PlayerEngine engine = engine();
+        final String key = PlayerEngine.handOff(engine, 0);
+
+        assertNull(PlayerEngine.take(null, 0));
+        assertNull(PlayerEngine.take("not " + key, 0));
+        assertSame(engine, PlayerEngine.take(key, 0));
+    }
+
+    @Test
+    public void expiredEngineIsReleased() {
+        final PlayerEngine engine = engine();
+        final String key = PlayerEngine.handOff(engine, 1000);
+
+        assertNull(PlayerEngine.take(key, 1000 + EXPIRATION_MILLIS));
+        verifyReleased(engine);
+        assertNull(PlayerEngine.take(key, 1000));
+    }
+
+    @Test
+    public void newHandOffReleasesPendingEngine() {
+        final PlayerEngine first = engine();
+        final PlayerEngine second = engine();
+        final String firstKey = PlayerEngine.handOff(first, 0);
+        final String secondKey = PlayerEngine.handOff(second, 0);
+
+        verifyReleased(first);
+        assertNull(PlayerEngine.take(firstKey, 0));
+        assertSame(second, PlayerEngine.take(secondKey, 0));
+        verify(second.player, never()).release();
+    }
+}
@@ -0,0 +1,136 @@
+package org.schabi.newpipe.player.helper;
+
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import org.junit.Test;
+
+import static com.google.android.exoplayer2.upstream.BandwidthMeter.NO_ESTIMATE;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BandwidthEstimatorTest {
+    private static final int MEGABYTE = 1024 * 1024;
+    /**
+     * A megabyte per second in bits per second
+     */
+    private static final long MEGABYTE_RATE = 8L * MEGABYTE;
+
+    /**
+     * Transfer a megabyte in the given time, ending at {@code endMs}
+     */
+    private static void transfer(final BandwidthEstimator estimator, final long endMs,
+                                 final long elapsedMs) {
+        transfer(estimator, endMs, elapsedMs, MEGABYTE);
+    }
+
+    private static void transfer(final BandwidthEstimator estimator, final long endMs,
+                                 final long elapsedMs, final int bytes) {
+        estimator.onTransferStart(endMs - elapsedMs);
+        estimator.onBytesTransferred(bytes);
+        estimator.onTransferEnd(endMs);
+    }
+
+    private static NetworkInfo network(final int type, final int subtype) {
+        final NetworkInfo info = mock(NetworkInfo.class);
+        when(info.getType()).thenReturn(type);
+        when(info.getSubtype()).thenReturn(subtype);
+        return info;
+    }
+
+    @Test
+    public void noEstimateBeforeEnoughData() {
+        final BandwidthEstimator estimator = new BandwidthEstimator(null, null);
+        estimator.onTransferStart(0);
+        estimator.onBytesTransferred(1024);
+        estimator.onTransferEnd(100);
+
+        assertEquals(NO_ESTIMATE, estimator.getBitrateEstimate(100));
+    }
+
+    @Test
+    public void estimateIsMedianOfSamples() {
+        final BandwidthEstimator estimator = new BandwidthEstimator(null, null);
+        transfer(estimator, 1000, 1000, MEGABYTE / 4);
+        assertEquals(NO_ESTIMATE, estimator.getBitrateEstimate(1000));
+
+        transfer(estimator, 2000, 500, MEGABYTE / 4);
+        assertEquals(MEGABYTE_RATE / 4, estimator.getBitrateEstimate(2000));
+
+        transfer(estimator, 3000, 250, MEGABYTE / 4);
+        assertEquals(MEGABYTE_RATE / 2, estimator.getBitrateEstimate(3000));
+
+        // Samples weigh the square root of their bytes and the oldest leave
+        // once the total weight exceeds 2000
+        transfer(estimator, 4000, 250, MEGABYTE / 4);
+        assertEquals(MEGABYTE_RATE, estimator.getBitrateEstimate(4000));
+    }
+
+    @Test
+    public void seededFromPersistedEstimate() {
+        final InMemoryPreferences preferences = new InMemoryPreferences();
+        preferences.edit().putLong("default", 5000000L).apply();
+
+        final BandwidthEstimator estimator = new BandwidthEstimator(null, preferences);
+        assertEquals(5000000L, estimator.getBitrateEstimate(0));
+
+        // Weighs as much as 512 KiB, so a measured megabyte outweighs it
+        transfer(estimator, 1000, 1000);
+        assertEquals(MEGABYTE_RATE, estimator.getBitrateEstimate(1000));
+    }
+
+    @Test
+    public void estimateIsPersisted() {
+        final InMemoryPreferences preferences = new InMemoryPreferences();
+        final BandwidthEstimator estimator = new BandwidthEstimator(null, preferences);
+        transfer(estimator, 20000, 1000);
+        assertEquals(MEGABYTE_RATE, preferences.getLong("default", NO_ESTIMATE));
+
+        // At most every ten seconds
+        transfer(estimator, 21000, 250);
+        assertEquals(MEGABYTE_RATE, preferences.getLong("default", NO_ESTIMATE));
+
+        final BandwidthEstimator restarted = new BandwidthEstimator(null, preferences);
+        assertEquals(MEGABYTE_RATE, restarted.getBitrateEstimate(0));
+    }
+
+    @Test
+    public void networksHaveSeparateEstimates() {
+        final ConnectivityManager connectivityManager = mock(ConnectivityManager.class);
+        final NetworkInfo wifi = network(ConnectivityManager.TYPE_WIFI, 0);
+        final NetworkInfo lte = network(ConnectivityManager.TYPE_MOBILE, 13);
+        final InMemoryPreferences preferences = new InMemoryPreferences();
+        final BandwidthEstimator estimator = new BandwidthEstimator(connectivityManager, preferences);
+
+        when(connectivityManager.getActiveNetworkInfo()).thenReturn(wifi);
+        transfer(estimator, 20000, 250);
+        assertEquals(4 * MEGABYTE_RATE, estimator.getBitrateEstimate(20000));
+
+        // The network is looked up again after a second
+        when(connectivityManager.getActiveNetworkInfo()).thenReturn(lte);
+        assertEquals(4 * MEGABYTE_RATE, estimator.getBitrateEstimate(20500));
+        assertEquals(NO_ESTIMATE, estimator.getBitrateEstimate(21500));
+        transfer(estimator, 23000, 1000);
+        assertEquals(MEGABYTE_RATE, estimator.getBitrateEstimate(23000));
+
+        when(connectivityManager.getActiveNetworkInfo()).thenReturn(wifi);
+        assertEquals(4 * MEGABYTE_RATE, estimator.getBitrateEstimate(25000));
+
+        assertEquals(4 * MEGABYTE_RATE, preferences.getLong("wifi", NO_ESTIMATE));
+        assertEquals(MEGABYTE_RATE, preferences.getLong("mobile_13", NO_ESTIMATE));
+    }
+
+    @Test
+    public void downloadSamplesOverlappingPlayerAreDropped() {
+        final BandwidthEstimator estimator = new BandwidthEstimator(null, null);
+
+        estimator.onTransferStart(0);
+        estimator.onDownloadSample(1000, MEGABYTE, 500);
+        estimator.onTransferEnd(600);
+        assertEquals(NO_ESTIMATE, estimator.getBitrateEstimate(600));
+
+        estimator.onDownloadSample(1000, MEGABYTE, 2000);
+        assertEquals(MEGABYTE_RATE, estimator.getBitrateEstimate(2000));
+    }
+}
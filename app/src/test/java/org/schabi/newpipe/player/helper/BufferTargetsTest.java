@@ -0,0 +1,111 @@
+package org.schabi.newpipe.player.helper;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.schabi.newpipe.player.helper.BufferTargets.MAX_RESUME_BUFFER_US;
+import static org.schabi.newpipe.player.helper.BufferTargets.MIN_BUFFER_BYTES;
+import static org.schabi.newpipe.player.helper.BufferTargets.STABLE_PERIOD_MILLIS;
+
+public class BufferTargetsTest {
+    private static final long START_US = 500 * 1000L;
+    private static final long MIN_US = 20000 * 1000L;
+    private static final long MAX_US = 60000 * 1000L;
+
+    private BufferTargets create() {
+        return new BufferTargets(START_US, MIN_US, MAX_US, 0);
+    }
+
+    @Test
+    public void startsAtPreferences() {
+        final BufferTargets targets = create();
+        assertEquals(MIN_US, targets.getMinBufferUs());
+        assertEquals(MAX_US, targets.getMaxBufferUs());
+        assertEquals(START_US, targets.getResumeBufferUs());
+    }
+
+    @Test
+    public void rebufferGrowsMinimumUpToMaximum() {
+        final BufferTargets targets = create();
+        targets.onRebuffer(0);
+        assertEquals(30000 * 1000L, targets.getMinBufferUs());
+        targets.onRebuffer(0);
+        assertEquals(45000 * 1000L, targets.getMinBufferUs());
+        targets.onRebuffer(0);
+        assertEquals(MAX_US, targets.getMinBufferUs());
+        assertEquals(MAX_US, targets.getMaxBufferUs());
+    }
+
+    @Test
+    public void rebufferDoublesResumeBufferUpToCap() {
+        final BufferTargets targets = create();
+        targets.onRebuffer(0);
+        assertEquals(2 * START_US, targets.getResumeBufferUs());
+        targets.onRebuffer(0);
+        assertEquals(4 * START_US, targets.getResumeBufferUs());
+        targets.onRebuffer(0);
+        targets.onRebuffer(0);
+        assertEquals(MAX_RESUME_BUFFER_US, targets.getResumeBufferUs());
+    }
+
+    @Test
+    public void onlySlowStartupGrows() {
+        final BufferTargets targets = create();
+        assertFalse(targets.onStartup(BufferTargets.SLOW_STARTUP_MILLIS, 0));
+        assertEquals(MIN_US, targets.getMinBufferUs());
+
+        assertTrue(targets.onStartup(BufferTargets.SLOW_STARTUP_MILLIS + 1, 0));
+        assertEquals(30000 * 1000L, targets.getMinBufferUs());
+        assertEquals(START_US, targets.getResumeBufferUs());
+    }
+
+    @Test
+    public void decaysAfterStablePeriodDownToPreferences() {
+        final BufferTargets targets = create();
+        targets.onRebuffer(0);
+        targets.onRebuffer(0);
+
+        assertFalse(targets.maybeDecay(STABLE_PERIOD_MILLIS - 1));
+        assertEquals(45000 * 1000L, targets.getMinBufferUs());
+
+        assertTrue(targets.maybeDecay(STABLE_PERIOD_MILLIS));
+        assertEquals(40500 * 1000L, targets.getMinBufferUs());
+        assertEquals(1800 * 1000L, targets.getResumeBufferUs());
+
+        // The next decay needs another stable period
+        assertFalse(targets.maybeDecay(STABLE_PERIOD_MILLIS + 1));
+
+        long now = STABLE_PERIOD_MILLIS;
+        for (int i = 0; i < 50; i++) {
+            now += STABLE_PERIOD_MILLIS;
+            targets.maybeDecay(now);
+        }
+        assertEquals(MIN_US, targets.getMinBufferUs());
+        assertEquals(START_US, targets.getResumeBufferUs());
+        assertFalse(targets.maybeDecay(now + STABLE_PERIOD_MILLIS));
+    }
+
+    @Test
+    public void growingRestartsStablePeriod() {
+        final BufferTargets targets = create();
+        targets.onRebuffer(0);
+        targets.onRebuffer(STABLE_PERIOD_MILLIS - 1);
+        assertFalse(targets.maybeDecay(STABLE_PERIOD_MILLIS));
+
+        targets.holdDecay(2 * STABLE_PERIOD_MILLIS - 1);
+        assertFalse(targets.maybeDecay(2 * STABLE_PERIOD_MILLIS));
+        assertTrue(targets.maybeDecay(3 * STABLE_PERIOD_MILLIS - 1));
+    }
+
+    @Test
+    public void bufferBytesCappedByQuarterOfHeap() {
+        final long heap = 256 * 1024 * 1024L;
+        assertEquals(heap / 4, BufferTargets.getMaxBufferBytes(heap, heap));
+        // Half of what's left if the heap is mostly in use
+        assertEquals(20 * 1024 * 1024, BufferTargets.getMaxBufferBytes(heap, 40 * 1024 * 1024));
+        assertEquals(MIN_BUFFER_BYTES, BufferTargets.getMaxBufferBytes(heap, 1024));
+        assertEquals(Integer.MAX_VALUE, BufferTargets.getMaxBufferBytes(Long.MAX_VALUE, Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,44 @@
+package org.schabi.newpipe.player.helper;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.schabi.newpipe.player.helper.LookaheadPolicy.METERED_WARM_UP_BYTES;
+import static org.schabi.newpipe.player.helper.LookaheadPolicy.UNMETERED_WARM_UP_BYTES;
+import static org.schabi.newpipe.player.helper.LookaheadPolicy.getItemCount;
+import static org.schabi.newpipe.player.helper.LookaheadPolicy.getWarmUpBytes;
+
+public class LookaheadPolicyTest {
+
+    @Test
+    public void preferenceAppliesWhenUnrestricted() {
+        assertEquals(3, getItemCount(3, true, false, false));
+        assertEquals(UNMETERED_WARM_UP_BYTES, getWarmUpBytes(3, false, false));
+    }
+
+    @Test
+    public void nothingAheadWithoutNetworkOrBattery() {
+        assertEquals(0, getItemCount(3, false, false, false));
+        assertEquals(0, getWarmUpBytes(0, false, false));
+    }
+
+    @Test
+    public void powerSaveModeOnlyExtracts() {
+        assertEquals(1, getItemCount(3, true, true, false));
+        assertEquals(0, getWarmUpBytes(1, true, false));
+        assertEquals(0, getWarmUpBytes(1, true, true));
+    }
+
+    @Test
+    public void meteredNetworkWarmsUpLess() {
+        assertEquals(1, getItemCount(3, true, false, true));
+        assertEquals(METERED_WARM_UP_BYTES, getWarmUpBytes(1, false, true));
+    }
+
+    @Test
+    public void disabledLookaheadDoesNotWarmUp() {
+        assertEquals(0, getItemCount(0, true, false, false));
+        assertEquals(0, getItemCount(0, true, false, true));
+        assertEquals(0, getWarmUpBytes(0, false, false));
+    }
+}
@@ -0,0 +1,149 @@
+package org.schabi.newpipe.player.helper;
+
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheSpan;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PinningCacheEvictorTest {
+    private static final long MAX_BYTES = 100;
+    private static final long MAX_PINNED_BYTES = 100;
+
+    private InMemoryPreferences pins;
+    private PinningCacheEvictor evictor;
+    private Cache cache;
+    private List<CacheSpan> cached;
+
+    @Before
+    public void setUp() throws Exception {
+        pins = new InMemoryPreferences();
+        evictor = new PinningCacheEvictor(pins, MAX_BYTES, MAX_PINNED_BYTES);
+        cached = new ArrayList<>();
+
+        cache = mock(Cache.class);
+        when(cache.getCachedSpans(anyString())).thenAnswer(invocation -> {
+            final TreeSet<CacheSpan> keySpans = new TreeSet<>();
+            for (final CacheSpan span : cached) {
+                if (span.key.equals(invocation.getArguments()[0])) keySpans.add(span);
+            }
+            return keySpans;
+        });
+        doAnswer(invocation -> {
+            final CacheSpan span = (CacheSpan) invocation.getArguments()[0];
+            cached.remove(span);
+            evictor.onSpanRemoved(cache, span);
+            return null;
+        }).when(cache).removeSpan(any(CacheSpan.class));
+    }
+
+    private CacheSpan add(final String key, final long length, final long lastAccessTimestamp) {
+        final CacheSpan span = new CacheSpan(key, 0, length, lastAccessTimestamp, null);
+        cached.add(span);
+        evictor.onSpanAdded(cache, span);
+        return span;
+    }
+
+    @Test
+    public void streamedSpansAreEvictedLeastRecentlyUsedFirst() {
+        final CacheSpan first = add("a", 60, 1);
+        final CacheSpan second = add("b", 30, 3);
+        final CacheSpan third = add("c", 30, 2);
+
+        assertFalse(cached.contains(first));
+        assertTrue(cached.contains(second));
+        assertTrue(cached.contains(third));
+    }
+
+    @Test
+    public void touchedSpansAreKept() {
+        final CacheSpan first = add("a", 60, 1);
+        final CacheSpan second = add("b", 30, 2);
+        final CacheSpan touched = new CacheSpan("a", 0, 60, 3, null);
+        cached.set(cached.indexOf(first), touched);
+        evictor.onSpanTouched(cache, first, touched);
+
+        add("c", 30, 4);
+        assertTrue(cached.contains(touched));
+        assertFalse(cached.contains(second));
+    }
+
+    @Test
+    public void pinnedSpansHaveTheirOwnQuota() {
+        evictor.pin(cache, "pinned", 0);
+        add("pinned", 80, 1);
+        add("a", 60, 2);
+        add("b", 30, 3);
+
+        assertEquals(3, cached.size());
+        assertEquals(80, evictor.getPinnedSize());
+    }
+
+    @Test
+    public void lowestPriorityPinIsEvictedFirst() {
+        evictor.pin(cache, "high", 1);
+        evictor.pin(cache, "low", 0);
+        final CacheSpan high = add("high", 60, 1);
+        final CacheSpan low = add("low", 30, 2);
+        final CacheSpan newer = new CacheSpan("high", 60, 30, 3, null);
+        cached.add(newer);
+        evictor.onSpanAdded(cache, newer);
+
+        assertFalse(cached.contains(low));
+        assertTrue(cached.contains(high));
+        assertTrue(cached.contains(newer));
+        assertEquals(90, evictor.getPinnedSize());
+    }
+
+    @Test
+    public void pinMovesSpansBetweenPools() {
+        final CacheSpan first = add("a", 60, 1);
+        evictor.pin(cache, "a", 0);
+        assertEquals(60, evictor.getPinnedSize());
+
+        final CacheSpan second = add("b", 60, 2);
+        assertEquals(2, cached.size());
+
+        evictor.unpin(cache, "a");
+        assertEquals(0, evictor.getPinnedSize());
+        assertFalse(cached.contains(first));
+        assertTrue(cached.contains(second));
+    }
+
+    @Test
+    public void startingPinnedFileMakesRoom() {
+        evictor.pin(cache, "a", 0);
+        add("a", 90, 1);
+
+        evictor.onStartFile(cache, "a", 90, 20);
+        assertTrue(cached.isEmpty());
+        assertEquals(0, evictor.getPinnedSize());
+    }
+
+    @Test
+    public void pinsArePersisted() {
+        evictor.pin(cache, "a", 2);
+        evictor.pin(cache, "b", 1);
+        evictor.unpin(cache, "b");
+
+        final PinningCacheEvictor restarted =
+                new PinningCacheEvictor(pins, MAX_BYTES, MAX_PINNED_BYTES);
+        assertTrue(restarted.isPinned("a"));
+        assertFalse(restarted.isPinned("b"));
+        assertEquals(Collections.singletonList("a"), restarted.getPinnedKeys());
+    }
+}
@@ -0,0 +1,59 @@
+package org.schabi.newpipe.player.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class HistogramTest {
+
+    @Test
+    public void recordCountsIntoInclusiveBuckets() {
+        final Histogram histogram = new Histogram(new long[]{10, 100});
+        histogram.record(5);
+        histogram.record(10);
+        histogram.record(11);
+        histogram.record(1000);
+
+        assertArrayEquals(new long[]{2, 1, 1}, histogram.getCounts());
+        assertEquals(4, histogram.getCount());
+        assertEquals(1026, histogram.getSum());
+    }
+
+    @Test
+    public void percentileIsUpperBoundOfBucket() {
+        final Histogram histogram = new Histogram(new long[]{10, 100});
+        assertEquals(0, histogram.getPercentile(50));
+
+        for (int i = 0; i < 9; i++) histogram.record(1);
+        histogram.record(50);
+
+        assertEquals(10, histogram.getPercentile(0));
+        assertEquals(10, histogram.getPercentile(90));
+        assertEquals(100, histogram.getPercentile(95));
+
+        histogram.record(500);
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void mergeAddsCounts() {
+        final Histogram histogram = new Histogram(Histogram.COUNT_BOUNDS);
+        histogram.record(1);
+
+        final Histogram other = new Histogram(Histogram.COUNT_BOUNDS);
+        other.record(1);
+        other.record(3);
+        histogram.merge(other.getCounts(), other.getSum());
+
+        assertEquals(3, histogram.getCount());
+        assertEquals(5, histogram.getSum());
+        assertEquals(2, histogram.getCounts()[1]);
+        assertEquals(1, histogram.getCounts()[3]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void boundsMustAscend() {
+        new Histogram(new long[]{10, 10});
+    }
+}
@@ -0,0 +1,130 @@
+package org.schabi.newpipe.player.metrics;
+
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.TransferListener;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.schabi.newpipe.extractor.stream.StreamInfoItem;
+import org.schabi.newpipe.extractor.stream.StreamType;
+import org.schabi.newpipe.player.helper.LoadController;
+import org.schabi.newpipe.playlist.PlayQueueItem;
+import org.schabi.newpipe.playlist.SinglePlayQueue;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.schabi.newpipe.player.metrics.ItemMetrics.UNSET;
+
+public class MetricsCollectorTest {
+    private LoadController loadController;
+    private MetricsStore store;
+    private MetricsCollector collector;
+
+    @Before
+    public void setUp() {
+        loadController = mock(LoadController.class);
+        store = new MetricsStore(null);
+        collector = new MetricsCollector(loadController, store);
+    }
+
+    private static PlayQueueItem item(final String name) {
+        return new SinglePlayQueue(new StreamInfoItem(0, "https://example.com/" + name, name,
+                StreamType.VIDEO_STREAM)).getItem();
+    }
+
+    private static Format format(final int bitrate) {
+        return Format.createSampleFormat(null, null, null, bitrate, null);
+    }
+
+    private List<ItemMetrics> finish() throws Exception {
+        collector.finishItem();
+        store.flush();
+        return store.getRecentItems();
+    }
+
+    @Test
+    public void timeToFirstFrameStartsAtRequest() throws Exception {
+        collector.onPlaybackRequested(1000);
+        collector.onPlaybackRequested(1200);
+        collector.onItemStarted(item("a"), false, 1500);
+        collector.onFirstFrame(1800);
+        collector.onFirstFrame(2000);
+
+        final ItemMetrics metrics = finish().get(0);
+        assertEquals("https://example.com/a", metrics.url);
+        assertEquals(800, metrics.timeToFirstFrameMillis);
+        assertEquals(UNSET, metrics.extractionMillis);
+    }
+
+    @Test
+    public void timeToFirstFrameOfSeamlessItemIsZero() throws Exception {
+        collector.onItemStarted(item("a"), false, 0);
+        collector.onItemStarted(item("b"), true, 5000);
+        collector.onFirstFrame(6000);
+
+        final List<ItemMetrics> items = finish();
+        assertEquals(2, items.size());
+        assertEquals(UNSET, items.get(0).timeToFirstFrameMillis);
+        assertEquals(0, items.get(1).timeToFirstFrameMillis);
+    }
+
+    @Test
+    public void rebuffersAreCountedPerItem() throws Exception {
+        when(loadController.getRebufferCount()).thenReturn(2, 5);
+        when(loadController.getRebufferMillis()).thenReturn(1000L, 4000L);
+        collector.onItemStarted(item("a"), true, 0);
+
+        final ItemMetrics metrics = finish().get(0);
+        assertEquals(3, metrics.rebufferCount);
+        assertEquals(3000, metrics.rebufferMillis);
+    }
+
+    @Test
+    public void onlySwitchesBetweenKnownBitratesAreCounted() throws Exception {
+        collector.onItemStarted(item("a"), true, 0);
+        collector.onVideoInputFormatChanged(format(1000000));
+        collector.onVideoInputFormatChanged(format(2000000));
+        collector.onVideoInputFormatChanged(format(2000000));
+        collector.onAudioInputFormatChanged(format(Format.NO_VALUE));
+        collector.onAudioInputFormatChanged(format(128000));
+        collector.onAudioInputFormatChanged(format(64000));
+
+        assertEquals(2, finish().get(0).bitrateSwitches);
+    }
+
+    @Test
+    public void bytesAreCountedPerItem() throws Exception {
+        @SuppressWarnings("unchecked")
+        final TransferListener<DataSource> listener = mock(TransferListener.class);
+        final TransferListener<DataSource> network = collector.observeNetwork(listener);
+
+        collector.onItemStarted(item("a"), true, 0);
+        network.onBytesTransferred(null, 1000);
+        network.onBytesTransferred(null, 2000);
+        collector.onCachedBytesRead(0, 500);
+        verify(listener).onBytesTransferred(null, 2000);
+
+        collector.onItemStarted(item("b"), true, 0);
+        network.onBytesTransferred(null, 100);
+
+        final List<ItemMetrics> items = finish();
+        assertEquals(3000, items.get(0).networkBytes);
+        assertEquals(500, items.get(0).cacheBytes);
+        assertEquals(100, items.get(1).networkBytes);
+        assertEquals(0, items.get(1).cacheBytes);
+    }
+
+    @Test
+    public void itemIsRecordedOnce() throws Exception {
+        collector.onItemStarted(item("a"), true, 0);
+        collector.finishItem();
+        collector.onFirstFrame(1000);
+
+        assertEquals(1, finish().size());
+    }
+}
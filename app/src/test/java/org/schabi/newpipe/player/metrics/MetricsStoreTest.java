@@ -0,0 +1,139 @@
+package org.schabi.newpipe.player.metrics;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.schabi.newpipe.player.metrics.ItemMetrics.UNSET;
+import static org.schabi.newpipe.player.metrics.MetricsStore.EXTRACTION_MILLIS;
+import static org.schabi.newpipe.player.metrics.MetricsStore.NETWORK_BYTES;
+import static org.schabi.newpipe.player.metrics.MetricsStore.TIME_TO_FIRST_FRAME_MILLIS;
+
+public class MetricsStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ItemMetrics item(final String url, final long extractionMillis,
+                                    final long timeToFirstFrameMillis) {
+        return new ItemMetrics(0, url, 1000, extractionMillis, timeToFirstFrameMillis, 1, 200,
+                2, 300, 400);
+    }
+
+    private static void assertCount(final MetricsStore store, final String metric,
+                                    final long count) {
+        final String summary = store.getSummary(metric);
+        assertTrue(summary, summary.startsWith(metric + ": count=" + count + ","));
+    }
+
+    @Test
+    public void recordedItemsAreAggregated() throws Exception {
+        final MetricsStore store = new MetricsStore(null);
+        store.record(item("a", 50, 100));
+        store.record(item("b", 150, 300));
+        store.flush();
+
+        assertTrue(store.getSummary(TIME_TO_FIRST_FRAME_MILLIS)
+                .startsWith(TIME_TO_FIRST_FRAME_MILLIS + ": count=2, mean=200,"));
+        assertTrue(store.getSummary(EXTRACTION_MILLIS)
+                .startsWith(EXTRACTION_MILLIS + ": count=2, mean=100,"));
+
+        final List<ItemMetrics> items = store.getRecentItems();
+        assertEquals(2, items.size());
+        assertEquals("a", items.get(0).url);
+        assertEquals("b", items.get(1).url);
+    }
+
+    @Test
+    public void unsetValuesAreNotAggregated() throws Exception {
+        final MetricsStore store = new MetricsStore(null);
+        store.record(item("a", UNSET, 100));
+        store.record(item("b", 50, UNSET));
+        store.flush();
+
+        assertCount(store, EXTRACTION_MILLIS, 1);
+        assertCount(store, TIME_TO_FIRST_FRAME_MILLIS, 1);
+        assertCount(store, NETWORK_BYTES, 2);
+        assertEquals(2, store.getRecentItems().size());
+    }
+
+    @Test
+    public void onlyLatestItemsAreKept() throws Exception {
+        final MetricsStore store = new MetricsStore(null);
+        for (int i = 0; i < 150; i++) store.record(item(Integer.toString(i), 10, 10));
+        store.flush();
+
+        final List<ItemMetrics> items = store.getRecentItems();
+        assertEquals(100, items.size());
+        assertEquals("50", items.get(0).url);
+        assertEquals("149", items.get(99).url);
+        // But all of them are aggregated
+        assertCount(store, TIME_TO_FIRST_FRAME_MILLIS, 150);
+    }
+
+    @Test
+    public void metricsSurviveRestart() throws Exception {
+        final File file = new File(folder.getRoot(), "metrics.json");
+        final MetricsStore store = new MetricsStore(file);
+        store.record(item("a", 50, 100));
+        store.record(item("b", UNSET, 300));
+        store.flush();
+        assertTrue(file.isFile());
+
+        final MetricsStore restarted = new MetricsStore(file);
+        assertEquals(store.getSummary(TIME_TO_FIRST_FRAME_MILLIS),
+                restarted.getSummary(TIME_TO_FIRST_FRAME_MILLIS));
+        assertCount(restarted, EXTRACTION_MILLIS, 1);
+
+        final List<ItemMetrics> items = restarted.getRecentItems();
+        assertEquals(2, items.size());
+        final ItemMetrics restored = items.get(1);
+        assertEquals("b", restored.url);
+        assertEquals(1000, restored.timestamp);
+        assertEquals(UNSET, restored.extractionMillis);
+        assertEquals(300, restored.timeToFirstFrameMillis);
+        assertEquals(1, restored.rebufferCount);
+        assertEquals(200, restored.rebufferMillis);
+        assertEquals(2, restored.bitrateSwitches);
+        assertEquals(300, restored.cacheBytes);
+        assertEquals(400, restored.networkBytes);
+    }
+
+    @Test
+    public void unreadableMetricsAreDropped() throws Exception {
+        final File file = new File(folder.getRoot(), "metrics.json");
+        final OutputStream out = new FileOutputStream(file);
+        out.write("{\"version\": 1, \"histograms\": ".getBytes("UTF-8"));
+        out.close();
+
+        final MetricsStore store = new MetricsStore(file);
+        assertTrue(store.getRecentItems().isEmpty());
+        assertCount(store, TIME_TO_FIRST_FRAME_MILLIS, 0);
+
+        store.record(item("a", 50, 100));
+        store.flush();
+        assertEquals(1, new MetricsStore(file).getRecentItems().size());
+    }
+
+    @Test
+    public void clearIsPersisted() throws Exception {
+        final File file = new File(folder.getRoot(), "metrics.json");
+        final MetricsStore store = new MetricsStore(file);
+        store.record(item("a", 50, 100));
+        store.flush();
+
+        store.clear();
+        store.flush();
+        assertTrue(store.getRecentItems().isEmpty());
+
+        final MetricsStore restarted = new MetricsStore(file);
+        assertTrue(restarted.getRecentItems().isEmpty());
+        assertCount(restarted, TIME_TO_FIRST_FRAME_MILLIS, 0);
+    }
+}
@@ -0,0 +1,91 @@
+package org.schabi.newpipe.playlist;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class IndexedListTest {
+    private final Object a = new Object();
+    private final Object b = new Object();
+    private final Object c = new Object();
+
+    @Test
+    public void indexOfUsesReferentialEquality() {
+        final IndexedList<String> list = new IndexedList<>(Arrays.asList("x", "y"));
+        assertEquals(1, list.indexOf(list.get(1)));
+        assertEquals(-1, list.indexOf(new String("y")));
+    }
+
+    @Test
+    public void indexOfFollowsModifications() {
+        final IndexedList<Object> list = new IndexedList<>(Arrays.asList(a, b, c));
+        assertEquals(2, list.indexOf(c));
+
+        list.remove(0);
+        assertEquals(1, list.indexOf(c));
+        assertEquals(-1, list.indexOf(a));
+
+        list.move(1, 0);
+        assertEquals(0, list.indexOf(c));
+        assertEquals(1, list.indexOf(b));
+
+        list.add(0, a);
+        assertEquals(0, list.indexOf(a));
+        assertEquals(2, list.indexOf(b));
+    }
+
+    @Test
+    public void indexOfReturnsFirstOccurrence() {
+        final IndexedList<Object> list = new IndexedList<>(Arrays.asList(a, b, a));
+        assertEquals(0, list.indexOf(a));
+
+        list.remove(0);
+        assertEquals(1, list.indexOf(a));
+    }
+
+    @Test
+    public void indexOfMatchesArrayList() {
+        final Random random = new Random(42);
+        final List<Object> pool = new ArrayList<>();
+        for (int i = 0; i < 50; i++) pool.add(new Object());
+
+        final List<Object> expected = new ArrayList<>();
+        final IndexedList<Object> list = new IndexedList<>();
+
+        for (int step = 0; step < 5000; step++) {
+            final int size = expected.size();
+            final int operation = random.nextInt(5);
+            if (operation == 0 || size < 2) {
+                final Object item = pool.get(random.nextInt(pool.size()));
+                expected.add(item);
+                list.addAll(Arrays.asList(item));
+            } else if (operation == 1) {
+                final int index = random.nextInt(size);
+                assertEquals(expected.remove(index), list.remove(index));
+            } else if (operation == 2) {
+                final int source = random.nextInt(size);
+                final int target = random.nextInt(size);
+                expected.add(target, expected.remove(source));
+                list.move(source, target);
+            } else if (operation == 3) {
+                final int index = random.nextInt(size + 1);
+                final Object item = pool.get(random.nextInt(pool.size()));
+                expected.add(index, item);
+                list.add(index, item);
+            } else {
+                list.shuffle();
+                expected.clear();
+                expected.addAll(list.asList());
+            }
+
+            final Object probe = pool.get(random.nextInt(pool.size()));
+            assertEquals(expected.indexOf(probe), list.indexOf(probe));
+            assertEquals(expected, list.asList());
+        }
+    }
+}
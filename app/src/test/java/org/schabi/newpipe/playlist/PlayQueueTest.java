@@ -0,0 +1,99 @@
+package org.schabi.newpipe.playlist;
+
+import org.junit.Test;
+import org.schabi.newpipe.extractor.stream.StreamInfoItem;
+import org.schabi.newpipe.extractor.stream.StreamType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PlayQueueTest {
+
+    private static SinglePlayQueue queueOf(final int size, final int index) {
+        final List<StreamInfoItem> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(new StreamInfoItem(0, "https://www.youtube.com/watch?v=" + i,
+                    "Stream " + i, StreamType.VIDEO_STREAM));
+        }
+        return new SinglePlayQueue(items, index);
+    }
+
+    @Test
+    public void copyKeepsIndexAndItems() {
+        final PlayQueue queue = queueOf(5, 3);
+        queue.setRecovery(3, 1234);
+
+        final PlayQueue copy = queue.copy();
+
+        assertEquals(3, copy.getIndex());
+        assertEquals(queue.size(), copy.size());
+        assertFalse(copy.isShuffled());
+        for (int i = 0; i < queue.size(); i++) {
+            assertNotSame(queue.getItem(i), copy.getItem(i));
+            assertEquals(queue.getItem(i).getUrl(), copy.getItem(i).getUrl());
+        }
+        assertEquals(1234, copy.getItem().getRecoveryPosition());
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        final PlayQueue queue = queueOf(5, 1);
+        final PlayQueue copy = queue.copy();
+
+        copy.setIndex(4);
+        copy.remove(0);
+        copy.setRecovery(0, 1000);
+
+        assertEquals(1, queue.getIndex());
+        assertEquals(5, queue.size());
+        assertEquals(PlayQueueItem.RECOVERY_UNSET, queue.getItem(1).getRecoveryPosition());
+    }
+
+    @Test
+    public void copyKeepsShuffleState() {
+        final PlayQueue queue = queueOf(20, 7);
+        final String current = queue.getItem().getUrl();
+        queue.shuffle();
+
+        final PlayQueue copy = queue.copy();
+
+        assertTrue(copy.isShuffled());
+        assertEquals(queue.getIndex(), copy.getIndex());
+        for (int i = 0; i < queue.size(); i++) {
+            assertEquals(queue.getItem(i).getUrl(), copy.getItem(i).getUrl());
+        }
+
+        // The backup restores the original order
+        copy.unshuffle();
+        assertFalse(copy.isShuffled());
+        assertEquals(current, copy.getItem().getUrl());
+        assertEquals(7, copy.getIndex());
+        for (int i = 0; i < copy.size(); i++) {
+            assertEquals("https://www.youtube.com/watch?v=" + i, copy.getItem(i).getUrl());
+        }
+        assertTrue(queue.isShuffled());
+    }
+
+    @Test
+    public void copySharesItemsBetweenStreamsAndBackup() {
+        final PlayQueue queue = queueOf(10, 2);
+        queue.shuffle();
+
+        final PlayQueue copy = queue.copy();
+        final List<PlayQueueItem> shuffled = new ArrayList<>(copy.getStreams());
+        copy.unshuffle();
+
+        // Unshuffling swaps in the backup, which holds the very same items
+        for (final PlayQueueItem item : shuffled) {
+            final int index = copy.indexOf(item);
+            assertTrue(index != -1);
+            assertSame(item, copy.getItem(index));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.schabi.newpipe.subscription;
+
+import org.junit.Test;
+import org.schabi.newpipe.extractor.stream.StreamInfoItem;
+import org.schabi.newpipe.extractor.stream.StreamType;
+import org.schabi.newpipe.subscription.FeedManager.ChannelFeed;
+import org.schabi.newpipe.subscription.FeedMerger.MergedStream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FeedMergerTest {
+    private static final long NOW = 1524000000000L;
+
+    @Test
+    public void mergeNewestFirst() {
+        final FeedMerger merger = new FeedMerger(Arrays.asList(
+                channel(1, "a", "2018-04-10", "2018-04-01"),
+                channel(2, "b", "2018-03-01", "2018-04-15", "2018-04-05"),
+                channel(3)));
+
+        assertEquals(Arrays.asList("b1", "a0", "b2", "a1", "b0"), urlsOf(merger.nextPage(10)));
+        assertFalse(merger.hasNext());
+        assertTrue(merger.nextPage(10).isEmpty());
+    }
+
+    @Test
+    public void mergeInPages() {
+        final FeedMerger merger = new FeedMerger(Arrays.asList(
+                channel(1, "a", "2018-04-10", "2018-04-08", "2018-04-06"),
+                channel(2, "b", "2018-04-09", "2018-04-07", "2018-04-05")));
+
+        assertEquals(Arrays.asList("a0", "b0"), urlsOf(merger.nextPage(2)));
+        assertEquals(Arrays.asList("a1", "b1"), urlsOf(merger.nextPage(2)));
+        assertEquals(Arrays.asList("a2", "b2"), urlsOf(merger.nextPage(2)));
+        assertFalse(merger.hasNext());
+    }
+
+    @Test
+    public void dropDuplicates() {
+        final StreamInfoItem shared = stream(0, "shared", "2018-04-10");
+        final StreamInfoItem otherService = stream(1, "shared", "2018-04-09");
+        final ChannelFeed first = new ChannelFeed(1, Arrays.asList(shared,
+                stream(0, "a", "2018-04-01")), NOW);
+        final ChannelFeed second = new ChannelFeed(2, Arrays.asList(
+                stream(0, "shared", "2018-04-10"), otherService), NOW);
+
+        final List<MergedStream> merged = new FeedMerger(Arrays.asList(first, second))
+                .nextPage(10);
+        assertEquals(Arrays.asList("shared", "shared", "a"), urlsOf(merged));
+        assertEquals(0, merged.get(0).item.getServiceId());
+        assertEquals(1, merged.get(1).item.getServiceId());
+    }
+
+    @Test
+    public void keepChannelOrderWithoutUploadTimes() {
+        final FeedMerger merger = new FeedMerger(Collections.singletonList(
+                channel(1, "a", null, "unknown", "2018-04-01")));
+
+        final List<MergedStream> merged = merger.nextPage(10);
+        assertEquals(Arrays.asList("a0", "a1", "a2"), urlsOf(merged));
+        assertEquals(NOW, merged.get(0).sortTime);
+        assertEquals(NOW - 1, merged.get(1).sortTime);
+    }
+
+    private static ChannelFeed channel(final long subscriptionId, final String prefix,
+                                       final String... uploadDates) {
+        final List<StreamInfoItem> streams = new ArrayList<>();
+        for (int i = 0; i < uploadDates.length; i++) {
+            streams.add(stream(0, prefix + i, uploadDates[i]));
+        }
+        return new ChannelFeed(subscriptionId, streams, NOW);
+    }
+
+    private static ChannelFeed channel(final long subscriptionId) {
+        return new ChannelFeed(subscriptionId, Collections.<StreamInfoItem>emptyList(), NOW);
+    }
+
+    private static StreamInfoItem stream(final int serviceId, final String url,
+                                         final String uploadDate) {
+        final StreamInfoItem item = new StreamInfoItem(serviceId, url, url, StreamType.VIDEO_STREAM);
+        item.setUploadDate(uploadDate);
+        return item;
+    }
+
+    private static List<String> urlsOf(final List<MergedStream> streams) {
+        final List<String> urls = new ArrayList<>(streams.size());
+        for (final MergedStream stream : streams) urls.add(stream.item.getUrl());
+        return urls;
+    }
+}
@@ -0,0 +1,80 @@
+package org.schabi.newpipe.subscription;
+
+import org.junit.Test;
+import org.schabi.newpipe.database.feed.model.FeedRefreshEntity;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.schabi.newpipe.subscription.FeedRefreshPolicy.DEFAULT_CHECK_INTERVAL_MILLIS;
+import static org.schabi.newpipe.subscription.FeedRefreshPolicy.MAX_CHECK_INTERVAL_MILLIS;
+import static org.schabi.newpipe.subscription.FeedRefreshPolicy.MIN_CHECK_INTERVAL_MILLIS;
+
+public class FeedRefreshPolicyTest {
+    private static final long NOW = 1524000000000L;
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Test
+    public void estimateUploadInterval() {
+        assertNull(FeedRefreshPolicy.estimateUploadInterval(Collections.<Long>emptyList(), null));
+        assertEquals(Long.valueOf(DAY), FeedRefreshPolicy.estimateUploadInterval(
+                Collections.singletonList(NOW), DAY));
+        assertEquals(Long.valueOf(DAY), FeedRefreshPolicy.estimateUploadInterval(
+                Arrays.asList(NOW, NOW - DAY, NOW - 2 * DAY), null));
+        assertEquals(Long.valueOf(2 * DAY), FeedRefreshPolicy.estimateUploadInterval(
+                Arrays.asList(NOW, NOW - DAY, NOW - 2 * DAY), 3 * DAY));
+    }
+
+    @Test
+    public void checkInterval() {
+        assertEquals(DEFAULT_CHECK_INTERVAL_MILLIS,
+                FeedRefreshPolicy.checkInterval(null, null, NOW));
+        assertEquals(12 * HOUR, FeedRefreshPolicy.checkInterval(DAY, NOW - HOUR, NOW));
+        assertEquals(MIN_CHECK_INTERVAL_MILLIS, FeedRefreshPolicy.checkInterval(HOUR, NOW, NOW));
+
+        // Dormant channels are checked less often than their cadence suggests
+        assertEquals(5 * DAY, FeedRefreshPolicy.checkInterval(DAY, NOW - 20 * DAY, NOW));
+        assertEquals(MAX_CHECK_INTERVAL_MILLIS,
+                FeedRefreshPolicy.checkInterval(DAY, NOW - 365 * DAY, NOW));
+    }
+
+    @Test
+    public void backoffOnFailure() {
+        final FeedRefreshEntity checked = FeedRefreshPolicy.onChecked(1, null,
+                Arrays.asList(NOW - HOUR, null, NOW - DAY - HOUR), NOW);
+        assertEquals(0, checked.getFailureCount());
+        assertEquals(Long.valueOf(DAY), checked.getUploadInterval());
+        assertEquals(NOW + 12 * HOUR, checked.getNextCheckTime());
+
+        FeedRefreshEntity failed = checked;
+        long previousInterval = 0;
+        for (int i = 1; i <= 20; i++) {
+            failed = FeedRefreshPolicy.onFailed(1, failed, NOW);
+            final long interval = failed.getNextCheckTime() - NOW;
+            assertEquals(i, failed.getFailureCount());
+            assertTrue(interval >= previousInterval);
+            assertTrue(interval <= MAX_CHECK_INTERVAL_MILLIS);
+            previousInterval = interval;
+        }
+        assertEquals(MAX_CHECK_INTERVAL_MILLIS, previousInterval);
+        assertEquals(Long.valueOf(DAY), failed.getUploadInterval());
+    }
+
+    @Test
+    public void rateLimiterSpacesRequests() {
+        final RequestRateLimiter limiter = new RequestRateLimiter(60);
+        assertEquals(0, limiter.reserve(NOW));
+        assertEquals(1000, limiter.reserve(NOW));
+        assertEquals(1500, limiter.reserve(NOW + 500));
+        assertEquals(0, limiter.reserve(NOW + 10000));
+
+        final RequestRateLimiter unlimited = new RequestRateLimiter(RequestRateLimiter.UNLIMITED);
+        assertEquals(0, unlimited.reserve(NOW));
+        assertEquals(0, unlimited.reserve(NOW));
+    }
+}
@@ -11,6 +11,8 @@ import java.io.InputStream;
 import java.util.Arrays;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -51,6 +53,59 @@ public class ImportExportJsonHelperTest {
         }
     }
 
+    @Test
+    public void testParseErrorKeepsPosition() throws Exception {
+        final String source = "{\"subscriptions\":[\n" +
+                "{\"service_id\":0,\"url\":\"https://a.com\",\"name\":\"A\"},\n" +
+                "{\"service_id\":0,\"url\":gibberish}]}";
+
+        final ImportExportJsonHelper.ItemReader reader = ImportExportJsonHelper
+                .openReader(new ByteArrayInputStream(source.getBytes("UTF-8")));
+        assertEquals("https://a.com", reader.next().getUrl());
+        try {
+            reader.next();
+            fail("didn't throw exception");
+        } catch (SubscriptionExtractor.InvalidSourceException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("line 3"));
+        }
+    }
+
+    @Test
+    public void testStreamingReadAndWrite() throws Exception {
+        final String source = "{\"app_version\":\"0.11.6\",\"unknown\":{\"a\":[1,{\"b\":null}]}," +
+                "\"subscriptions\":[" +
+                "{\"service_id\":0,\"url\":\"https://a.com\",\"name\":\"A\",\"unknown\":[true]}," +
+                "{\"service_id\":0,\"url\":\"\",\"name\":\"No url\"}," +
+                "\"not an item\"," +
+                "{\"name\":\"B\",\"url\":\"https://b.com\",\"service_id\":1}]}";
+
+        final ImportExportJsonHelper.ItemReader reader = ImportExportJsonHelper
+                .openReader(new ByteArrayInputStream(source.getBytes("UTF-8")));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ImportExportJsonHelper.ItemWriter writer = ImportExportJsonHelper.openWriter(out);
+
+        SubscriptionItem item;
+        int count = 0;
+        while ((item = reader.next()) != null) {
+            writer.write(item);
+            count++;
+        }
+        assertNull(reader.next());
+        reader.close();
+        writer.finish();
+        assertEquals(2, count);
+
+        final List<SubscriptionItem> items = ImportExportJsonHelper
+                .readFrom(new ByteArrayInputStream(out.toByteArray()), null);
+        assertEquals(2, items.size());
+        assertEquals(0, items.get(0).getServiceId());
+        assertEquals("https://a.com", items.get(0).getUrl());
+        assertEquals("A", items.get(0).getName());
+        assertEquals(1, items.get(1).getServiceId());
+        assertEquals("https://b.com", items.get(1).getUrl());
+        assertEquals("B", items.get(1).getName());
+    }
+
     @Test
     public void ultimateTest() throws Exception {
         // Read from file
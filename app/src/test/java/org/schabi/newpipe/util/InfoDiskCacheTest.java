@@ -0,0 +1,141 @@
+package org.schabi.newpipe.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.schabi.newpipe.extractor.Info;
+import org.schabi.newpipe.extractor.channel.ChannelInfo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InfoDiskCacheTest {
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("newpipetest", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) file.delete();
+        }
+        directory.delete();
+    }
+
+    private static Info generateInfo(final String name) {
+        return new ChannelInfo(0, "https://www.youtube.com/channel/" + name, name, name);
+    }
+
+    private static void put(final InfoDiskCache cache, final String key, final Info info,
+                            final long expireTimestamp) throws IOException {
+        cache.put(key, InfoDiskCache.serialize(info), expireTimestamp);
+    }
+
+    private File[] listFiles() {
+        final File[] files = directory.listFiles();
+        assertNotNull(files);
+        return files;
+    }
+
+    @Test
+    public void entriesSurviveReload() throws IOException {
+        put(new InfoDiskCache(directory), "0a", generateInfo("first"),
+                System.currentTimeMillis() + HOUR);
+
+        final InfoCache.CacheData data = new InfoDiskCache(directory).get("0a");
+
+        assertNotNull(data);
+        assertEquals("first", data.getInfo().getName());
+    }
+
+    @Test
+    public void expiredEntriesAreDropped() throws IOException {
+        final InfoDiskCache cache = new InfoDiskCache(directory);
+        put(cache, "0a", generateInfo("first"), System.currentTimeMillis() - 1);
+
+        assertNull(cache.get("0a"));
+        assertEquals(0, listFiles().length);
+        assertEquals(0, cache.getSizeBytes());
+    }
+
+    @Test
+    public void collidingKeysAreNotMixedUp() throws IOException {
+        // Both keys have the same hash code, so they share a file
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+
+        final InfoDiskCache cache = new InfoDiskCache(directory);
+        put(cache, "Aa", generateInfo("first"), System.currentTimeMillis() + HOUR);
+
+        assertNull(cache.get("BB"));
+        assertNotNull(cache.get("Aa"));
+    }
+
+    @Test
+    public void corruptFilesAreDropped() throws IOException {
+        final InfoDiskCache cache = new InfoDiskCache(directory);
+        put(cache, "0a", generateInfo("first"), System.currentTimeMillis() + HOUR);
+
+        final File file = listFiles()[0];
+        final FileOutputStream output = new FileOutputStream(file);
+        output.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        output.close();
+
+        assertNull(cache.get("0a"));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesAreTrimmed() throws IOException {
+        // Random names don't compress, so all files have about the same size
+        final Random random = new Random(42);
+        final String[] names = new String[4];
+        for (int i = 0; i < names.length; i++) {
+            final StringBuilder name = new StringBuilder();
+            for (int c = 0; c < 4096; c++) name.append((char) ('a' + random.nextInt(26)));
+            names[i] = name.toString();
+        }
+
+        final long expireTimestamp = System.currentTimeMillis() + HOUR;
+        final InfoDiskCache probe = new InfoDiskCache(directory);
+        put(probe, "0a", generateInfo(names[0]), expireTimestamp);
+        final long fileSize = probe.getSizeBytes();
+        probe.clear();
+
+        // Room for three and a half files, trimmed to two and a half
+        final InfoDiskCache cache = new InfoDiskCache(directory, fileSize * 7 / 2);
+        put(cache, "0a", generateInfo(names[0]), expireTimestamp);
+        put(cache, "0b", generateInfo(names[1]), expireTimestamp);
+        put(cache, "0c", generateInfo(names[2]), expireTimestamp);
+
+        // The file system may only store seconds
+        for (final File file : listFiles()) {
+            assertTrue(file.setLastModified(System.currentTimeMillis() - HOUR));
+        }
+        assertNotNull(cache.get("0a"));
+
+        put(cache, "0d", generateInfo(names[3]), expireTimestamp);
+
+        assertEquals(2, listFiles().length);
+        assertNotNull(cache.get("0a"));
+        assertNotNull(cache.get("0d"));
+        assertNull(cache.get("0b"));
+        assertNull(cache.get("0c"));
+    }
+}
@@ -0,0 +1,38 @@
+package org.schabi.newpipe.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class UploadDateParserTest {
+    private static final long NOW = 1524000000000L;
+
+    @Test
+    public void parseAbsoluteDate() {
+        assertEquals(Long.valueOf(1521936000000L), UploadDateParser.parse("2018-03-25", NOW));
+        assertEquals(Long.valueOf(1521936000000L),
+                UploadDateParser.parse("Published on 2018-03-25T10:11:12Z", NOW));
+    }
+
+    @Test
+    public void parseRelativeDate() {
+        assertEquals(Long.valueOf(NOW - TimeUnit.MINUTES.toMillis(5)),
+                UploadDateParser.parse("5 minutes ago", NOW));
+        assertEquals(Long.valueOf(NOW - TimeUnit.HOURS.toMillis(1)),
+                UploadDateParser.parse("Streamed 1 hour ago", NOW));
+        assertEquals(Long.valueOf(NOW - TimeUnit.DAYS.toMillis(14)),
+                UploadDateParser.parse("2 Weeks ago", NOW));
+        assertEquals(Long.valueOf(NOW - TimeUnit.DAYS.toMillis(365)),
+                UploadDateParser.parse("1 year ago", NOW));
+    }
+
+    @Test
+    public void parseUnknownDate() {
+        assertNull(UploadDateParser.parse(null, NOW));
+        assertNull(UploadDateParser.parse("", NOW));
+        assertNull(UploadDateParser.parse("vor 3 Tagen", NOW));
+    }
+}
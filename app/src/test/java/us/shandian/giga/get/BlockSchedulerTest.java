@@ -0,0 +1,95 @@
+package us.shandian.giga.get;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import us.shandian.giga.util.BlockBitmap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test for {@link BlockScheduler}
+ */
+public class BlockSchedulerTest {
+
+    private DownloadMission mission;
+
+    @Before
+    public void setUp() {
+        mission = new DownloadMission("test.mp4", "http://example.com/test.mp4", "/tmp");
+        mission.blocks = 10;
+        mission.length = 10L * DownloadManager.BLOCK_SIZE;
+        mission.blockState = new BlockBitmap(10);
+    }
+
+    @Test
+    public void segmentsDoNotOverlap() {
+        BlockScheduler scheduler = new BlockScheduler(mission);
+
+        BlockScheduler.Segment first = scheduler.nextSegment(4);
+        BlockScheduler.Segment second = scheduler.nextSegment(4);
+        BlockScheduler.Segment third = scheduler.nextSegment(4);
+
+        assertEquals(0, first.next);
+        assertEquals(4, first.end);
+        assertEquals(4, second.next);
+        assertEquals(8, second.end);
+        assertEquals(8, third.next);
+        assertEquals(10, third.end);
+    }
+
+    @Test
+    public void downloadedBlocksAreSkipped() {
+        mission.preserveBlock(0);
+        mission.preserveBlock(2);
+        BlockScheduler scheduler = new BlockScheduler(mission);
+
+        BlockScheduler.Segment segment = scheduler.nextSegment(4);
+
+        assertEquals(1, segment.next);
+        assertEquals(2, segment.end);
+    }
+
+    @Test
+    public void idleThreadStealsBackHalfOfLargestSegment() {
+        BlockScheduler scheduler = new BlockScheduler(mission);
+
+        BlockScheduler.Segment small = scheduler.nextSegment(2);
+        BlockScheduler.Segment large = scheduler.nextSegment(8);
+        assertEquals(0, scheduler.claim(small));
+        assertEquals(2, scheduler.claim(large));
+
+        BlockScheduler.Segment stolen = scheduler.nextSegment(4);
+
+        assertEquals(6, stolen.next);
+        assertEquals(10, stolen.end);
+        assertEquals(6, large.end);
+    }
+
+    @Test
+    public void releasedBlocksAreHandedOutAgain() {
+        BlockScheduler scheduler = new BlockScheduler(mission);
+
+        BlockScheduler.Segment segment = scheduler.nextSegment(10);
+        long block = scheduler.claim(segment);
+        scheduler.release(block);
+        scheduler.finish(segment);
+
+        BlockScheduler.Segment retry = scheduler.nextSegment(1);
+        assertEquals(block, retry.next);
+    }
+
+    @Test
+    public void noWorkLeft() {
+        BlockScheduler scheduler = new BlockScheduler(mission);
+
+        BlockScheduler.Segment segment = scheduler.nextSegment(10);
+        while (scheduler.claim(segment) >= 0) {
+            mission.preserveBlock(segment.next - 1);
+        }
+        scheduler.finish(segment);
+
+        assertNull(scheduler.nextSegment(4));
+    }
+}
@@ -19,6 +19,7 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -118,7 +119,29 @@ public class DownloadManagerImplTest {
         verify(mission, never()).start();
         mission.running = false;
         downloadManager.resumeMission(0);
-        verify(mission, times(1)).start();
+        // Started by the queue on a download thread
+        verify(mission, timeout(1000).times(1)).start();
+    }
+
+    @Test
+    public void resumeMissionAfterRetriesRanOut() throws Exception {
+        // A thread running out of retries pauses the mission without an error
+        DownloadMission mission = missions.get(0);
+        mission.running = true;
+        mission.pause();
+        assertEquals(-1, mission.errCode);
+
+        downloadManager.resumeMission(0);
+        verify(mission, timeout(1000).times(1)).start();
+
+        // Older versions recorded an error instead
+        DownloadMission failed = missions.get(1);
+        failed.running = false;
+        failed.errCode = DownloadMission.ERROR_CONNECTION_FAILED;
+
+        downloadManager.resumeMission(1);
+        assertEquals(-1, failed.errCode);
+        verify(failed, timeout(1000).times(1)).start();
     }
 
     @Test
@@ -0,0 +1,117 @@
+package us.shandian.giga.get;
+
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for {@link DownloadQueue}
+ */
+public class DownloadQueueTest {
+
+    private final BlockingQueue<String> activated = new LinkedBlockingQueue<>();
+
+    private DownloadMission enqueue(DownloadQueue queue, final String name) {
+        DownloadMission mission = new DownloadMission(name, "http://example.com/" + name, "/tmp");
+        queue.enqueue(mission, new Runnable() {
+            @Override
+            public void run() {
+                activated.add(name);
+            }
+        });
+        return mission;
+    }
+
+    private String nextActivated() throws InterruptedException {
+        return activated.poll(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void activeMissionsAreLimited() throws InterruptedException {
+        DownloadQueue queue = new DownloadQueue(1, 4);
+
+        DownloadMission first = enqueue(queue, "a");
+        DownloadMission second = enqueue(queue, "b");
+
+        assertEquals("a", nextActivated());
+        assertNull(activated.poll(100, TimeUnit.MILLISECONDS));
+        assertTrue(second.queued);
+
+        queue.onMissionStopped(first);
+
+        assertEquals("b", nextActivated());
+        assertFalse(second.queued);
+    }
+
+    @Test
+    public void higherPriorityStartsFirst() throws InterruptedException {
+        DownloadQueue queue = new DownloadQueue(1, 4);
+
+        DownloadMission running = enqueue(queue, "a");
+        enqueue(queue, "b");
+        DownloadMission urgent = enqueue(queue, "c");
+        queue.setPriority(urgent, 1);
+
+        assertEquals("a", nextActivated());
+        queue.onMissionStopped(running);
+        assertEquals("c", nextActivated());
+    }
+
+    @Test
+    public void lifoStartsNewestFirst() throws InterruptedException {
+        DownloadQueue queue = new DownloadQueue(1, 4);
+        queue.setPolicy(DownloadQueue.Policy.LIFO);
+
+        DownloadMission running = enqueue(queue, "a");
+        DownloadMission older = enqueue(queue, "b");
+        DownloadMission newer = enqueue(queue, "c");
+
+        assertEquals("a", nextActivated());
+        queue.onMissionStopped(running);
+        assertEquals("c", nextActivated());
+        queue.onMissionStopped(newer);
+        assertEquals("b", nextActivated());
+        queue.onMissionStopped(older);
+    }
+
+    @Test
+    public void removedMissionIsNotStarted() throws InterruptedException {
+        DownloadQueue queue = new DownloadQueue(1, 4);
+
+        DownloadMission running = enqueue(queue, "a");
+        DownloadMission removed = enqueue(queue, "b");
+        enqueue(queue, "c");
+
+        assertTrue(queue.remove(removed));
+        assertEquals("a", nextActivated());
+        queue.onMissionStopped(running);
+        assertEquals("c", nextActivated());
+    }
+
+    @Test
+    public void connectionsShareBudget() throws InterruptedException {
+        DownloadQueue queue = new DownloadQueue(2, 4);
+        enqueue(queue, "a");
+        enqueue(queue, "b");
+        nextActivated();
+        nextActivated();
+
+        // The first connection of each mission is reserved
+        assertTrue(queue.acquireConnection(0));
+        assertTrue(queue.acquireConnection(0));
+
+        assertTrue(queue.acquireConnection(1));
+        assertTrue(queue.acquireConnection(1));
+        assertFalse(queue.acquireConnection(2));
+
+        queue.releaseConnection(1);
+        assertTrue(queue.acquireConnection(1));
+    }
+}
@@ -0,0 +1,177 @@
+package us.shandian.giga.get;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the old per block {@link RandomAccessFile} write path with the shared
+ * {@link FileChannel} path of {@link DownloadRunnable} against a local HTTP server.
+ * <p>
+ * Ignored by default, remove the {@link Ignore} annotation to run it.
+ */
+@Ignore
+public class DownloadWriteBenchmark {
+    private static final int FILE_SIZE = 64 * 1024 * 1024;
+    private static final int ROUNDS = 5;
+
+    private final byte[] content = new byte[FILE_SIZE];
+    private HttpServer server;
+    private String url;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(0).nextBytes(content);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/file", new RangeHandler());
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/file";
+
+        file = File.createTempFile("newpipebenchmark", ".bin");
+        file.deleteOnExit();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        file.delete();
+    }
+
+    @Test
+    public void compareWritePaths() throws IOException {
+        // Warm up both paths
+        downloadWithRandomAccessFile();
+        downloadWithFileChannel();
+
+        long legacy = 0;
+        long channel = 0;
+
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            downloadWithRandomAccessFile();
+            legacy += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            downloadWithFileChannel();
+            channel += System.nanoTime() - start;
+        }
+
+        assertEquals(FILE_SIZE, file.length());
+
+        System.out.println(String.format("RandomAccessFile, 512 B chunks: %.1f MB/s", throughput(legacy)));
+        System.out.println(String.format("FileChannel, 64 KiB direct buffer: %.1f MB/s", throughput(channel)));
+    }
+
+    private static double throughput(long nanos) {
+        return (double) FILE_SIZE * ROUNDS / (1024 * 1024) / (nanos / 1e9);
+    }
+
+    private void downloadWithRandomAccessFile() throws IOException {
+        final Object lock = new Object();
+        long progress = 0;
+
+        for (long start = 0; start < FILE_SIZE; start += DownloadManager.BLOCK_SIZE) {
+            HttpURLConnection conn = open(start);
+            RandomAccessFile f = new RandomAccessFile(file, "rw");
+            f.seek(start);
+            BufferedInputStream ipt = new BufferedInputStream(conn.getInputStream());
+            byte[] buf = new byte[512];
+
+            int len;
+            while ((len = ipt.read(buf, 0, 512)) != -1) {
+                f.write(buf, 0, len);
+                synchronized (lock) {
+                    progress += len;
+                }
+            }
+
+            f.close();
+            ipt.close();
+        }
+
+        assertEquals(FILE_SIZE, progress);
+    }
+
+    private void downloadWithFileChannel() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(DownloadRunnable.BUFFER_SIZE);
+        FileChannel output = new RandomAccessFile(file, "rw").getChannel();
+        long progress = 0;
+
+        for (long start = 0; start < FILE_SIZE; start += DownloadManager.BLOCK_SIZE) {
+            HttpURLConnection conn = open(start);
+            ReadableByteChannel input = Channels.newChannel(conn.getInputStream());
+            long position = start;
+
+            while (true) {
+                buffer.clear();
+                if (input.read(buffer) == -1) {
+                    break;
+                }
+                buffer.flip();
+                int len = buffer.remaining();
+                while (buffer.hasRemaining()) {
+                    output.write(buffer, position + buffer.position());
+                }
+                position += len;
+                progress += len;
+            }
+
+            input.close();
+        }
+
+        output.close();
+        assertEquals(FILE_SIZE, progress);
+    }
+
+    private HttpURLConnection open(long start) throws IOException {
+        long end = Math.min(start + DownloadManager.BLOCK_SIZE, FILE_SIZE) - 1;
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setRequestProperty("Range", "bytes=" + start + "-" + end);
+        assertEquals(206, conn.getResponseCode());
+        return conn;
+    }
+
+    /**
+     * Serves {@link #content} with support for single byte range requests
+     */
+    private class RangeHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            int start = Integer.parseInt(bounds[0]);
+            int end = Integer.parseInt(bounds[1]);
+
+            exchange.getResponseHeaders().add("Content-Range",
+                    "bytes " + start + "-" + end + "/" + FILE_SIZE);
+            exchange.sendResponseHeaders(206, end - start + 1);
+
+            OutputStream out = exchange.getResponseBody();
+            out.write(content, start, end - start + 1);
+            out.close();
+        }
+    }
+}
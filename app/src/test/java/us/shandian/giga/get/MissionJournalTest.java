@@ -0,0 +1,277 @@
+package us.shandian.giga.get;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import us.shandian.giga.util.BlockBitmap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for {@link MissionJournal}
+ */
+public class MissionJournalTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("newpipetest", ".journal");
+        file.delete();
+        file.deleteOnExit();
+    }
+
+    private static DownloadMission generateMission(String name) {
+        DownloadMission mission = new DownloadMission(name, "http://example.com/" + name, "/tmp");
+        mission.blocks = 100;
+        mission.length = 100L * DownloadManager.BLOCK_SIZE;
+        mission.blockState = new BlockBitmap(100);
+        mission.timestamp = 42;
+        return mission;
+    }
+
+    @Test
+    public void missionsSurviveReload() {
+        MissionJournal journal = new MissionJournal(file);
+        assertEquals(0, journal.load().size());
+
+        DownloadMission mission = generateMission("a.mp4");
+        mission.preserveBlock(3);
+        journal.checkpoint(mission);
+        mission.preserveBlock(70);
+        journal.checkpoint(mission);
+
+        List<DownloadMission> loaded = new MissionJournal(file).load();
+
+        assertEquals(1, loaded.size());
+        DownloadMission read = loaded.get(0);
+        assertEquals("a.mp4", read.name);
+        assertEquals(mission.url, read.url);
+        assertEquals(mission.length, read.length);
+        assertEquals(42, read.timestamp);
+        assertTrue(read.recovered);
+        assertTrue(read.isBlockPreserved(3));
+        assertTrue(read.isBlockPreserved(70));
+        assertEquals(2, read.blockState.cardinality());
+    }
+
+    @Test
+    public void removedMissionsAreDropped() {
+        MissionJournal journal = new MissionJournal(file);
+        journal.load();
+
+        DownloadMission first = generateMission("a.mp4");
+        DownloadMission second = generateMission("b.mp4");
+        journal.checkpoint(first);
+        journal.checkpoint(second);
+        journal.remove(first);
+
+        List<DownloadMission> loaded = new MissionJournal(file).load();
+
+        assertEquals(1, loaded.size());
+        assertEquals("b.mp4", loaded.get(0).name);
+    }
+
+    @Test
+    public void queuedMissionsSurviveReload() {
+        MissionJournal journal = new MissionJournal(file);
+        journal.load();
+
+        // Queued before it was initialized
+        DownloadMission waiting = new DownloadMission("a.mp4", "http://example.com/a.mp4", "/tmp");
+        waiting.queued = true;
+        journal.checkpoint(waiting);
+        DownloadMission paused = generateMission("b.mp4");
+        paused.queued = true;
+        journal.checkpoint(paused);
+        paused.queued = false;
+        journal.checkpoint(paused);
+
+        List<DownloadMission> loaded = new MissionJournal(file).load();
+
+        assertEquals(2, loaded.size());
+        assertTrue(loaded.get(0).queued);
+        assertFalse(loaded.get(0).isInitialized());
+        assertFalse(loaded.get(1).queued);
+        assertTrue(loaded.get(1).isInitialized());
+    }
+
+    @Test
+    public void clearedBlocksSurviveReload() {
+        MissionJournal journal = new MissionJournal(file);
+        journal.load();
+
+        DownloadMission mission = generateMission("a.mp4");
+        mission.preserveBlock(3);
+        mission.preserveBlock(4);
+        mission.preserveBlock(70);
+        journal.checkpoint(mission);
+
+        // A block found corrupt is downloaded again
+        mission.blockState.tryClear(4);
+        journal.checkpoint(mission);
+
+        DownloadMission read = new MissionJournal(file).load().get(0);
+        assertTrue(read.isBlockPreserved(3));
+        assertFalse(read.isBlockPreserved(4));
+        assertTrue(read.isBlockPreserved(70));
+
+        // All blocks are reset, then one is downloaded again
+        journal = new MissionJournal(file);
+        mission = journal.load().get(0);
+        mission.blockState = new BlockBitmap(100);
+        mission.preserveBlock(10);
+        journal.checkpoint(mission);
+
+        read = new MissionJournal(file).load().get(0);
+        assertEquals(1, read.blockState.cardinality());
+        assertTrue(read.isBlockPreserved(10));
+    }
+
+    @Test
+    public void tornRecordIsIgnored() throws IOException {
+        MissionJournal journal = new MissionJournal(file);
+        journal.load();
+
+        DownloadMission mission = generateMission("a.mp4");
+        mission.preserveBlock(1);
+        journal.checkpoint(mission);
+
+        // Simulate a crash in the middle of appending a record
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(new byte[]{0, 0, 0, 40, 2, 0});
+        out.close();
+
+        List<DownloadMission> loaded = new MissionJournal(file).load();
+
+        assertEquals(1, loaded.size());
+        assertTrue(loaded.get(0).isBlockPreserved(1));
+    }
+
+    @Test
+    public void corruptRecordIsIgnored() throws IOException {
+        MissionJournal journal = new MissionJournal(file);
+        journal.load();
+
+        DownloadMission mission = generateMission("a.mp4");
+        journal.checkpoint(mission);
+        long length = file.length();
+        mission.preserveBlock(5);
+        journal.checkpoint(mission);
+
+        // Flip a bit in the payload of the last record
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(length + 6);
+        int value = raf.read();
+        raf.seek(length + 6);
+        raf.write(value ^ 1);
+        raf.close();
+
+        List<DownloadMission> loaded = new MissionJournal(file).load();
+
+        assertEquals(1, loaded.size());
+        assertFalse(loaded.get(0).isBlockPreserved(5));
+    }
+
+    @Test
+    public void checksumsSurviveReload() {
+        MissionJournal journal = new MissionJournal(file);
+        journal.load();
+
+        DownloadMission mission = generateMission("a.mp4");
+        mission.checksums = new int[100];
+        mission.setChecksum(7, 0xCAFE);
+        mission.preserveBlock(7);
+        journal.checkpoint(mission);
+
+        DownloadMission read = new MissionJournal(file).load().get(0);
+
+        assertEquals(100, read.checksums.length);
+        assertEquals(0xCAFE, read.checksums[7]);
+
+        // Once more after the reload compacted the journal
+        read = new MissionJournal(file).load().get(0);
+        assertEquals(0xCAFE, read.checksums[7]);
+    }
+
+    @Test
+    public void failedCheckpointIsRecordedAgain() {
+        MissionJournal journal = new MissionJournal(file);
+        journal.load();
+
+        final boolean[] failSync = {false};
+        DownloadMission mission = new DownloadMission("a.mp4", "http://example.com/a.mp4", "/tmp") {
+            @Override
+            void syncData() throws IOException {
+                if (failSync[0]) throw new IOException("No space left on device");
+            }
+        };
+        mission.blocks = 100;
+        mission.length = 100L * DownloadManager.BLOCK_SIZE;
+        mission.blockState = new BlockBitmap(100);
+        mission.preserveBlock(1);
+        journal.checkpoint(mission);
+
+        failSync[0] = true;
+        mission.preserveBlock(2);
+        journal.checkpoint(mission);
+
+        failSync[0] = false;
+        mission.preserveBlock(3);
+        journal.checkpoint(mission);
+
+        DownloadMission read = new MissionJournal(file).load().get(0);
+        assertEquals(3, read.blockState.cardinality());
+        assertTrue(read.isBlockPreserved(2));
+    }
+
+    @Test
+    public void failedFirstCheckpointIsRecordedAgain() throws IOException {
+        MissionJournal journal = new MissionJournal(file);
+        journal.load();
+
+        DownloadMission first = generateMission("a.mp4");
+        journal.checkpoint(first);
+
+        // The journal can't be replaced while a directory is in its way
+        assertTrue(file.delete());
+        assertTrue(file.mkdir());
+        DownloadMission second = generateMission("b.mp4");
+        second.preserveBlock(5);
+        journal.checkpoint(second);
+        assertTrue(file.delete());
+
+        journal.checkpoint(second);
+
+        List<DownloadMission> loaded = new MissionJournal(file).load();
+        assertEquals(2, loaded.size());
+        assertEquals("b.mp4", loaded.get(1).name);
+        assertTrue(loaded.get(1).isBlockPreserved(5));
+    }
+
+    @Test
+    public void journalIsCompacted() {
+        MissionJournal journal = new MissionJournal(file);
+        journal.load();
+
+        DownloadMission mission = generateMission("a.mp4");
+        for (int block = 0; block < 100; block++) {
+            mission.preserveBlock(block);
+            journal.checkpoint(mission);
+        }
+        long appended = file.length();
+
+        List<DownloadMission> loaded = new MissionJournal(file).load();
+
+        assertEquals(100, loaded.get(0).blockState.cardinality());
+        assertTrue(file.length() < appended);
+    }
+}
@@ -0,0 +1,91 @@
+package us.shandian.giga.get;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.schabi.newpipe.extractor.stream.StreamInfoItem;
+import org.schabi.newpipe.extractor.stream.StreamType;
+import org.schabi.newpipe.playlist.PlayQueue;
+import org.schabi.newpipe.playlist.SinglePlayQueue;
+import org.schabi.newpipe.util.SerializedCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+/**
+ * Compares how long handing a play queue to a player takes, from putting it into the
+ * {@link SerializedCache} to the player taking it out, for queues of 10, 1,000 and 10,000
+ * items. The old path serialized the queue in {@link SerializedCache#put(java.io.Serializable,
+ * Class)}, the current one stores a {@link PlayQueue#copy()} with
+ * {@link SerializedCache#putWithoutCopy(java.io.Serializable, Class)}.
+ * <p>
+ * Ignored by default, remove the {@link Ignore} annotation to run it.
+ */
+@Ignore
+public class PlayQueueLaunchBenchmark {
+    private static final int[] QUEUE_SIZES = {10, 1000, 10000};
+    private static final int WARM_UP_ROUNDS = 5;
+    private static final int ROUNDS = 20;
+
+    private final SerializedCache cache = SerializedCache.getInstance();
+
+    @Test
+    public void compareLaunchLatency() {
+        for (final int size : QUEUE_SIZES) {
+            final PlayQueue queue = queueOf(size);
+
+            // Warm up both paths
+            for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+                launchSerialized(queue);
+                launchCopied(queue);
+            }
+
+            long serialized = 0;
+            long copied = 0;
+
+            for (int i = 0; i < ROUNDS; i++) {
+                long start = System.nanoTime();
+                final PlayQueue serializedQueue = launchSerialized(queue);
+                serialized += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                final PlayQueue copiedQueue = launchCopied(queue);
+                copied += System.nanoTime() - start;
+
+                assertEquals(size, serializedQueue.size());
+                assertEquals(size, copiedQueue.size());
+                assertEquals(queue.getIndex(), copiedQueue.getIndex());
+                assertNotSame(queue.getItem(), copiedQueue.getItem());
+                assertEquals(queue.getItem().getUrl(), copiedQueue.getItem().getUrl());
+            }
+
+            System.out.println(String.format("%d items, put: %.3f ms, putWithoutCopy(copy()): %.3f ms",
+                    size, millis(serialized), millis(copied)));
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6 / ROUNDS;
+    }
+
+    private PlayQueue launchSerialized(PlayQueue queue) {
+        String key = cache.put(queue, PlayQueue.class);
+        return cache.take(key, PlayQueue.class);
+    }
+
+    private PlayQueue launchCopied(PlayQueue queue) {
+        String key = cache.putWithoutCopy(queue.copy(), PlayQueue.class);
+        return cache.take(key, PlayQueue.class);
+    }
+
+    private static PlayQueue queueOf(int size) {
+        List<StreamInfoItem> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(new StreamInfoItem(0, "https://www.youtube.com/watch?v=" + i,
+                    "Stream " + i, StreamType.VIDEO_STREAM));
+        }
+        return new SinglePlayQueue(items, size / 2);
+    }
+}
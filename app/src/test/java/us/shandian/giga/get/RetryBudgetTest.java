@@ -0,0 +1,62 @@
+package us.shandian.giga.get;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for {@link RetryBudget}
+ */
+public class RetryBudgetTest {
+
+    @Test
+    public void delayDoublesWithJitter() {
+        assertEquals(500, RetryBudget.getDelay(1, 0));
+        assertEquals(999, RetryBudget.getDelay(1, 0.999));
+        assertEquals(1000, RetryBudget.getDelay(2, 0));
+        assertEquals(2000, RetryBudget.getDelay(3, 0));
+    }
+
+    @Test
+    public void delayIsCapped() {
+        assertEquals(RetryBudget.MAX_DELAY_MILLIS / 2, RetryBudget.getDelay(10, 0));
+        assertEquals(RetryBudget.MAX_DELAY_MILLIS / 2, RetryBudget.getDelay(100, 0));
+    }
+
+    @Test
+    public void budgetIsExhaustedAfterFailingForLong() {
+        RetryBudget budget = new RetryBudget();
+
+        // Many quick failures aren't enough
+        for (int i = 0; i < 3 * RetryBudget.MIN_FAILURES; i++) {
+            assertTrue(budget.onFailure(1000 + i) >= 0);
+        }
+        assertEquals(-1, budget.onFailure(1000 + RetryBudget.MAX_FAILING_MILLIS));
+    }
+
+    @Test
+    public void budgetNeedsSeveralFailures() {
+        RetryBudget budget = new RetryBudget();
+
+        // Neither is a single failure after a long time
+        assertTrue(budget.onFailure(1000) >= 0);
+        for (int i = 2; i < RetryBudget.MIN_FAILURES; i++) {
+            assertTrue(budget.onFailure(1000 + i * RetryBudget.MAX_FAILING_MILLIS) >= 0);
+        }
+        assertEquals(-1, budget.onFailure(1000 + 10 * RetryBudget.MAX_FAILING_MILLIS));
+    }
+
+    @Test
+    public void successResetsBudget() {
+        RetryBudget budget = new RetryBudget();
+
+        for (int i = 1; i < RetryBudget.MIN_FAILURES; i++) {
+            budget.onFailure(1000);
+        }
+        budget.onSuccess();
+
+        assertEquals(0, budget.getFailures());
+        assertTrue(budget.onFailure(1000 + RetryBudget.MAX_FAILING_MILLIS) >= 0);
+    }
+}
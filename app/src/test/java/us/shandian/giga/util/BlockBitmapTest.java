@@ -0,0 +1,92 @@
+package us.shandian.giga.util;
+
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for {@link BlockBitmap}
+ */
+public class BlockBitmapTest {
+
+    @Test
+    public void setAndClear() {
+        BlockBitmap bitmap = new BlockBitmap(130);
+
+        assertTrue(bitmap.trySet(0));
+        assertTrue(bitmap.trySet(64));
+        assertTrue(bitmap.trySet(129));
+        assertFalse(bitmap.trySet(64));
+
+        assertTrue(bitmap.get(64));
+        assertFalse(bitmap.get(63));
+        assertFalse(bitmap.get(130));
+        assertEquals(3, bitmap.cardinality());
+
+        assertTrue(bitmap.tryClear(64));
+        assertFalse(bitmap.tryClear(64));
+        assertFalse(bitmap.get(64));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void setOutOfRange() {
+        new BlockBitmap(10).trySet(10);
+    }
+
+    @Test
+    public void nextClearBit() {
+        BlockBitmap bitmap = new BlockBitmap(70);
+        for (int i = 0; i < 66; i++) {
+            bitmap.trySet(i);
+        }
+
+        assertEquals(66, bitmap.nextClearBit(0));
+        assertEquals(67, bitmap.nextClearBit(67));
+
+        for (int i = 66; i < 70; i++) {
+            bitmap.trySet(i);
+        }
+        assertEquals(70, bitmap.nextClearBit(0));
+    }
+
+    @Test
+    public void resizeKeepsBits() {
+        BlockBitmap bitmap = new BlockBitmap(10);
+        bitmap.trySet(3);
+
+        BlockBitmap resized = bitmap.resize(100);
+
+        assertEquals(100, resized.size());
+        assertTrue(resized.get(3));
+        assertEquals(1, resized.cardinality());
+    }
+
+    @Test
+    public void gsonRoundTrip() {
+        BlockBitmap bitmap = new BlockBitmap(200);
+        bitmap.trySet(1);
+        bitmap.trySet(199);
+
+        Gson gson = new Gson();
+        BlockBitmap read = gson.fromJson(gson.toJson(bitmap), BlockBitmap.class);
+
+        assertEquals(200, read.size());
+        assertTrue(read.get(1));
+        assertTrue(read.get(199));
+        assertEquals(2, read.cardinality());
+    }
+
+    @Test
+    public void readLegacyMap() {
+        BlockBitmap read = new Gson().fromJson("{\"2\":true,\"5\":true,\"7\":false}", BlockBitmap.class);
+
+        assertTrue(read.get(2));
+        assertTrue(read.get(5));
+        assertFalse(read.get(7));
+        assertEquals(2, read.cardinality());
+    }
+}
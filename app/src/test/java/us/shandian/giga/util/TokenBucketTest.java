@@ -0,0 +1,50 @@
+package us.shandian.giga.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test for {@link TokenBucket}
+ */
+public class TokenBucketTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void unlimitedNeverWaits() {
+        TokenBucket bucket = new TokenBucket();
+
+        assertEquals(0, bucket.reserve(Long.MAX_VALUE / 2, 0));
+    }
+
+    @Test
+    public void burstPassesWithoutWaiting() {
+        TokenBucket bucket = new TokenBucket(1000);
+
+        // 250 ms worth of tokens are available at once
+        assertEquals(0, bucket.reserve(250, 0));
+    }
+
+    @Test
+    public void debtIsPaidOffAtTheRate() {
+        TokenBucket bucket = new TokenBucket(1000);
+
+        // 250 bytes of burst, the other 750 take 750 ms
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(750), bucket.reserve(1000, 0));
+
+        // The debt is paid after 750 ms, then 500 bytes take another 500 ms
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500),
+                bucket.reserve(500, TimeUnit.MILLISECONDS.toNanos(750)));
+    }
+
+    @Test
+    public void idleTimeIsCappedByBurst() {
+        TokenBucket bucket = new TokenBucket(1000);
+        bucket.reserve(250, 0);
+
+        // Ten idle seconds only refill the burst
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(750), bucket.reserve(1000, 10 * SECOND));
+    }
+}